@@ -13,6 +13,7 @@ import java.sql.Timestamp;
  * Classe abstraite représentant une partie du jeu.
  * Elle contient les informations de base sur la partie, telles que l'identifiant, le nom, l'intervalle entre les tours,
  * l'état de la partie, le timestamp du dernier tour et le tour actuel.
+ * L'état, la date de la prochaine action et le tour actuel peuvent être lus depuis un autre thread que celui qui les modifie.
  */
 public abstract class Game implements Identifiable, ISerializable {
     /**
@@ -30,15 +31,15 @@ public abstract class Game implements Identifiable, ISerializable {
     /**
      * État de la partie (en attente, en cours, terminée).
      */
-    protected GameState state;
+    protected volatile GameState state;
     /**
      * Timestamp du dernier tour.
      */
-    protected Timestamp nextActionAt;
+    protected volatile Timestamp nextActionAt;
     /**
      * Tour actuel de la partie.
      */
-    protected int currentTurn;
+    protected volatile int currentTurn;
 
     /**
      * Constructeur de la classe Game.
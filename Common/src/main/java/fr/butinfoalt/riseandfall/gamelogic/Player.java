@@ -4,8 +4,9 @@ import fr.butinfoalt.riseandfall.gamelogic.data.*;
 import fr.butinfoalt.riseandfall.gamelogic.data.AttackPlayerOrderData;
 import fr.butinfoalt.riseandfall.network.common.ISerializable;
 import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+import fr.butinfoalt.riseandfall.util.IdIntMap;
 import fr.butinfoalt.riseandfall.util.ObjectIntMap;
-import fr.butinfoalt.riseandfall.util.ObjectIntMap.Entry;
+import fr.butinfoalt.riseandfall.util.ObjectIntMap.Cursor;
 import fr.butinfoalt.riseandfall.util.ToStringFormatter;
 
 import java.io.IOException;
@@ -28,11 +29,11 @@ public abstract class Player implements Identifiable, ISerializable {
     /**
      * Association entre les types de bâtiments et le nombre de bâtiments de chaque type.
      */
-    private final ObjectIntMap<BuildingType> buildingMap;
+    private final IdIntMap<BuildingType> buildingMap;
     /**
      * Association entre les types d'unités et le nombre d'unités de chaque type.
      */
-    private final ObjectIntMap<UnitType> unitMap;
+    private final IdIntMap<UnitType> unitMap;
     /**
      * Ordres de création de bâtiments en attente.
      */
@@ -73,12 +74,12 @@ public abstract class Player implements Identifiable, ISerializable {
     public Player(int id, Race race) {
         this.id = id;
         this.race = race;
-        this.buildingMap = new ObjectIntMap<>(
+        this.buildingMap = new IdIntMap<>(
                 ServerData.getBuildingTypes().stream()
                         .filter(buildingType -> buildingType.getAccessibleByRace() == null || buildingType.getAccessibleByRace() == this.race)
                         .collect(Collectors.toList())
         );
-        this.unitMap = new ObjectIntMap<>(
+        this.unitMap = new IdIntMap<>(
                 ServerData.getUnitTypes().stream()
                         .filter(unitType -> unitType.getAccessibleByRace() == null || unitType.getAccessibleByRace() == this.race)
                         .collect(Collectors.toList())
@@ -87,8 +88,9 @@ public abstract class Player implements Identifiable, ISerializable {
         this.pendingUnitsCreation = this.unitMap.createEmptyClone();
         this.pendingAttacks = new ArrayList<>();
 
-        for (Entry<BuildingType> entry : this.buildingMap) {
-            entry.setValue(entry.getKey().getInitialAmount());
+        Cursor<BuildingType> cursor = this.buildingMap.cursor();
+        while (cursor.next()) {
+            cursor.setValue(cursor.getKey().getInitialAmount());
         }
     }
 
@@ -197,8 +199,9 @@ public abstract class Player implements Identifiable, ISerializable {
      */
     public int getAllowedUnitCount() {
         int allowedCount = 0;
-        for (Entry<BuildingType> entry : this.buildingMap) {
-            allowedCount += entry.getValue() * entry.getKey().getMaxUnits();
+        Cursor<BuildingType> cursor = this.buildingMap.cursor();
+        while (cursor.next()) {
+            allowedCount += cursor.getValue() * cursor.getKey().getMaxUnits();
         }
 
         return allowedCount;
@@ -209,7 +212,7 @@ public abstract class Player implements Identifiable, ISerializable {
      *
      * @return La liste des bâtiments du joueur.
      */
-    public ObjectIntMap<BuildingType> getBuildingMap() {
+    public IdIntMap<BuildingType> getBuildingMap() {
         return this.buildingMap;
     }
 
@@ -218,7 +221,7 @@ public abstract class Player implements Identifiable, ISerializable {
      *
      * @return La liste des unités du joueur.
      */
-    public ObjectIntMap<UnitType> getUnitMap() {
+    public IdIntMap<UnitType> getUnitMap() {
         return this.unitMap;
     }
 
@@ -303,7 +306,7 @@ public abstract class Player implements Identifiable, ISerializable {
         ObjectIntMap.serialize(this.unitMap, writeHelper);
         ObjectIntMap.serialize(this.pendingUnitsCreation, writeHelper);
         ObjectIntMap.serialize(this.pendingBuildingsCreation, writeHelper);
-        writeHelper.writeInt(this.pendingAttacks.size());
+        writeHelper.writeSize(this.pendingAttacks.size());
         for (AttackPlayerOrderData attack : this.pendingAttacks) {
             attack.toBytes(writeHelper);
         }
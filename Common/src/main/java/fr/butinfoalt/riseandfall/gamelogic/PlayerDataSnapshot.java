@@ -0,0 +1,233 @@
+package fr.butinfoalt.riseandfall.gamelogic;
+
+import fr.butinfoalt.riseandfall.gamelogic.data.AttackPlayerOrderData;
+import fr.butinfoalt.riseandfall.gamelogic.data.BuildingType;
+import fr.butinfoalt.riseandfall.gamelogic.data.UnitType;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+import fr.butinfoalt.riseandfall.util.ObjectIntMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copie figée des données modifiables d'un joueur, telles qu'elles ont été envoyées à ses clients
+ * ou enregistrées dans la base de données.
+ * Elle sert de référence pour déterminer les champs modifiés depuis le dernier envoi ou la dernière sauvegarde,
+ * et n'est jamais modifiée après sa création.
+ */
+public final class PlayerDataSnapshot {
+    /**
+     * Bit indiquant que la quantité d'or a changé.
+     */
+    public static final int GOLD = 1;
+    /**
+     * Bit indiquant que la quantité d'intelligence a changé.
+     */
+    public static final int INTELLIGENCE = 1 << 1;
+    /**
+     * Bit indiquant que le tour d'élimination a changé.
+     */
+    public static final int ELIMINATION_TURN = 1 << 2;
+    /**
+     * Bit indiquant que des bâtiments ont changé.
+     */
+    public static final int BUILDINGS = 1 << 3;
+    /**
+     * Bit indiquant que des unités ont changé.
+     */
+    public static final int UNITS = 1 << 4;
+    /**
+     * Bit indiquant que des ordres de création d'unités ont changé.
+     */
+    public static final int PENDING_UNITS = 1 << 5;
+    /**
+     * Bit indiquant que des ordres de création de bâtiments ont changé.
+     */
+    public static final int PENDING_BUILDINGS = 1 << 6;
+    /**
+     * Bit indiquant que les ordres d'attaque ont changé.
+     */
+    public static final int PENDING_ATTACKS = 1 << 7;
+    /**
+     * Ensemble des bits, utilisé pour un envoi complet.
+     */
+    public static final int ALL_FIELDS = 0xFF;
+
+    /**
+     * Quantité d'or du joueur.
+     */
+    private final float goldAmount;
+    /**
+     * Quantité d'intelligence du joueur.
+     */
+    private final float intelligence;
+    /**
+     * Tour durant lequel le joueur a été éliminé, ou -1 s'il ne l'a pas été.
+     */
+    private final int eliminationTurn;
+    /**
+     * Copie des bâtiments du joueur, associés à leur quantité.
+     */
+    private final ObjectIntMap<BuildingType> buildingMap;
+    /**
+     * Copie des unités du joueur, associées à leur quantité.
+     */
+    private final ObjectIntMap<UnitType> unitMap;
+    /**
+     * Copie des ordres de création d'unités du joueur, associés à la quantité demandée.
+     */
+    private final ObjectIntMap<UnitType> pendingUnitsCreation;
+    /**
+     * Copie des ordres de création de bâtiments du joueur, associés à la quantité demandée.
+     */
+    private final ObjectIntMap<BuildingType> pendingBuildingsCreation;
+    /**
+     * Copie de la liste des ordres d'attaque du joueur, qui partage les ordres eux-mêmes puisqu'ils ne sont jamais modifiés.
+     */
+    private final List<AttackPlayerOrderData> pendingAttacks;
+
+    /**
+     * Constructeur de la copie des données d'un joueur.
+     *
+     * @param player Le joueur dont on copie les données modifiables.
+     */
+    public PlayerDataSnapshot(Player player) {
+        this.goldAmount = player.getGoldAmount();
+        this.intelligence = player.getIntelligence();
+        this.eliminationTurn = player.getEliminationTurn();
+        this.buildingMap = player.getBuildingMap().clone();
+        this.unitMap = player.getUnitMap().clone();
+        this.pendingUnitsCreation = player.getPendingUnitsCreation().clone();
+        this.pendingBuildingsCreation = player.getPendingBuildingsCreation().clone();
+        // Les ordres d'attaque sont remplacés et non modifiés, une copie de la liste suffit
+        this.pendingAttacks = new ArrayList<>(player.getPendingAttacks());
+    }
+
+    /**
+     * Détermine les champs qui diffèrent d'une copie précédente.
+     *
+     * @param previous La copie précédente, ou null si aucune donnée n'a encore été envoyée.
+     * @return Les bits des champs modifiés, ou {@link #ALL_FIELDS} si la copie précédente est absente.
+     */
+    public int getChangedFields(PlayerDataSnapshot previous) {
+        if (previous == null) {
+            return ALL_FIELDS;
+        }
+        int changedFields = 0;
+        if (Float.compare(this.goldAmount, previous.goldAmount) != 0) changedFields |= GOLD;
+        if (Float.compare(this.intelligence, previous.intelligence) != 0) changedFields |= INTELLIGENCE;
+        if (this.eliminationTurn != previous.eliminationTurn) changedFields |= ELIMINATION_TURN;
+        if (!this.buildingMap.equals(previous.buildingMap)) changedFields |= BUILDINGS;
+        if (!this.unitMap.equals(previous.unitMap)) changedFields |= UNITS;
+        if (!this.pendingUnitsCreation.equals(previous.pendingUnitsCreation)) changedFields |= PENDING_UNITS;
+        if (!this.pendingBuildingsCreation.equals(previous.pendingBuildingsCreation)) changedFields |= PENDING_BUILDINGS;
+        if (!this.pendingAttacks.equals(previous.pendingAttacks)) changedFields |= PENDING_ATTACKS;
+        return changedFields;
+    }
+
+    /**
+     * Sérialise les champs modifiés depuis une copie précédente.
+     * Pour les associations, seules les entrées modifiées sont écrites, sauf si la copie précédente est absente.
+     *
+     * @param previous      La copie précédente, ou null pour écrire toutes les données.
+     * @param changedFields Les bits des champs à écrire, obtenus avec {@link #getChangedFields(PlayerDataSnapshot)}.
+     * @param writeHelper   L'outil d'écriture pour sérialiser les données.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation.
+     */
+    public void serializeChanges(PlayerDataSnapshot previous, int changedFields, WriteHelper writeHelper) throws IOException {
+        if ((changedFields & GOLD) != 0) writeHelper.writeFloat(this.goldAmount);
+        if ((changedFields & INTELLIGENCE) != 0) writeHelper.writeFloat(this.intelligence);
+        if ((changedFields & ELIMINATION_TURN) != 0) writeHelper.writeInt(this.eliminationTurn);
+        if ((changedFields & BUILDINGS) != 0) {
+            ObjectIntMap.serializeChanges(this.buildingMap, previous == null ? null : previous.buildingMap, writeHelper);
+        }
+        if ((changedFields & UNITS) != 0) {
+            ObjectIntMap.serializeChanges(this.unitMap, previous == null ? null : previous.unitMap, writeHelper);
+        }
+        if ((changedFields & PENDING_UNITS) != 0) {
+            ObjectIntMap.serializeChanges(this.pendingUnitsCreation, previous == null ? null : previous.pendingUnitsCreation, writeHelper);
+        }
+        if ((changedFields & PENDING_BUILDINGS) != 0) {
+            ObjectIntMap.serializeChanges(this.pendingBuildingsCreation, previous == null ? null : previous.pendingBuildingsCreation, writeHelper);
+        }
+        if ((changedFields & PENDING_ATTACKS) != 0) {
+            writeHelper.writeSize(this.pendingAttacks.size());
+            for (AttackPlayerOrderData attack : this.pendingAttacks) {
+                attack.toBytes(writeHelper);
+            }
+        }
+    }
+
+    /**
+     * Récupère la quantité d'or copiée.
+     *
+     * @return La quantité d'or.
+     */
+    public float getGoldAmount() {
+        return this.goldAmount;
+    }
+
+    /**
+     * Récupère la quantité d'intelligence copiée.
+     *
+     * @return La quantité d'intelligence.
+     */
+    public float getIntelligence() {
+        return this.intelligence;
+    }
+
+    /**
+     * Récupère le tour d'élimination copié.
+     *
+     * @return Le tour d'élimination, ou -1 si le joueur n'était pas éliminé.
+     */
+    public int getEliminationTurn() {
+        return this.eliminationTurn;
+    }
+
+    /**
+     * Récupère les bâtiments copiés. L'association ne doit pas être modifiée.
+     *
+     * @return Les bâtiments du joueur.
+     */
+    public ObjectIntMap<BuildingType> getBuildingMap() {
+        return this.buildingMap;
+    }
+
+    /**
+     * Récupère les unités copiées. L'association ne doit pas être modifiée.
+     *
+     * @return Les unités du joueur.
+     */
+    public ObjectIntMap<UnitType> getUnitMap() {
+        return this.unitMap;
+    }
+
+    /**
+     * Récupère les ordres de création d'unités copiés. L'association ne doit pas être modifiée.
+     *
+     * @return Les ordres de création d'unités du joueur.
+     */
+    public ObjectIntMap<UnitType> getPendingUnitsCreation() {
+        return this.pendingUnitsCreation;
+    }
+
+    /**
+     * Récupère les ordres de création de bâtiments copiés. L'association ne doit pas être modifiée.
+     *
+     * @return Les ordres de création de bâtiments du joueur.
+     */
+    public ObjectIntMap<BuildingType> getPendingBuildingsCreation() {
+        return this.pendingBuildingsCreation;
+    }
+
+    /**
+     * Récupère les ordres d'attaque copiés. La liste ne doit pas être modifiée.
+     *
+     * @return Les ordres d'attaque du joueur.
+     */
+    public List<AttackPlayerOrderData> getPendingAttacks() {
+        return this.pendingAttacks;
+    }
+}
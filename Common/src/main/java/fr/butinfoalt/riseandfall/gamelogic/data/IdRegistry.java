@@ -0,0 +1,130 @@
+package fr.butinfoalt.riseandfall.gamelogic.data;
+
+import java.util.*;
+
+/**
+ * Liste immuable d'objets identifiables, indexée par leurs identifiants.
+ * <p>
+ * La recherche d'un objet par son identifiant se fait en temps constant : dans un tableau indexé par les identifiants
+ * lorsqu'ils sont assez compacts, comme les identifiants attribués par la base de données, ou dans une table de
+ * hachage sinon. Les méthodes de recherche de {@link Identifiable} utilisent cet index lorsqu'elles reçoivent un
+ * registre, au lieu de parcourir la collection.
+ * </p>
+ *
+ * @param <T> Le type des objets identifiables, qui doivent avoir des identifiants distincts.
+ */
+public final class IdRegistry<T extends Identifiable> extends AbstractList<T> implements RandomAccess {
+    /**
+     * Les objets du registre, dans l'ordre de la collection d'origine.
+     */
+    private final Identifiable[] elements;
+    /**
+     * Positions des objets indexées par leur identifiant, -1 pour un identifiant absent,
+     * ou null si les identifiants sont trop dispersés.
+     */
+    private final int[] indexById;
+    /**
+     * Positions des objets associées à leur identifiant, utilisées seulement lorsque {@link #indexById} est null.
+     */
+    private final Map<Integer, Integer> sparseIndexById;
+
+    /**
+     * Constructeur du registre.
+     *
+     * @param elements Les objets du registre, dans leur ordre de parcours.
+     * @throws IllegalArgumentException Si deux objets ont le même identifiant.
+     */
+    private IdRegistry(Collection<T> elements) {
+        this.elements = elements.toArray(new Identifiable[0]);
+
+        int minId = 0, maxId = -1;
+        for (Identifiable element : this.elements) {
+            minId = Math.min(minId, element.getId());
+            maxId = Math.max(maxId, element.getId());
+        }
+        if (minId >= 0 && maxId < 2 * this.elements.length + 64) {
+            this.indexById = new int[maxId + 1];
+            Arrays.fill(this.indexById, -1);
+            this.sparseIndexById = null;
+        } else {
+            this.indexById = null;
+            this.sparseIndexById = new HashMap<>();
+        }
+        for (int index = 0; index < this.elements.length; index++) {
+            int id = this.elements[index].getId();
+            if (this.indexOfId(id) != -1) {
+                throw new IllegalArgumentException("Duplicate id in registry: " + id);
+            }
+            if (this.indexById != null) {
+                this.indexById[id] = index;
+            } else {
+                this.sparseIndexById.put(id, index);
+            }
+        }
+    }
+
+    /**
+     * Crée le registre d'une collection d'objets identifiables.
+     *
+     * @param elements Les objets du registre, dans leur ordre de parcours.
+     * @param <T>      Le type des objets identifiables.
+     * @return Le registre, ou la collection elle-même si c'est déjà un registre.
+     * @throws IllegalArgumentException Si deux objets ont le même identifiant.
+     */
+    public static <T extends Identifiable> IdRegistry<T> of(Collection<T> elements) {
+        if (elements instanceof IdRegistry<T> registry) {
+            return registry;
+        }
+        return new IdRegistry<>(elements);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) this.elements[index];
+    }
+
+    @Override
+    public int size() {
+        return this.elements.length;
+    }
+
+    /**
+     * Récupère la position d'un objet dans le registre à partir de son identifiant.
+     *
+     * @param id L'identifiant de l'objet.
+     * @return La position de l'objet, ou -1 si aucun objet du registre n'a cet identifiant.
+     */
+    public int indexOfId(int id) {
+        if (this.indexById != null) {
+            return id >= 0 && id < this.indexById.length ? this.indexById[id] : -1;
+        }
+        return this.sparseIndexById.getOrDefault(id, -1);
+    }
+
+    /**
+     * Récupère un objet par son identifiant.
+     *
+     * @param id L'identifiant de l'objet à rechercher.
+     * @return L'objet trouvé, ou null si aucun objet du registre n'a cet identifiant.
+     */
+    public T getByIdOrNull(int id) {
+        int index = this.indexOfId(id);
+        return index == -1 ? null : this.get(index);
+    }
+
+    /**
+     * Récupère un objet par son identifiant.
+     *
+     * @param id L'identifiant de l'objet à rechercher.
+     * @return L'objet trouvé.
+     * @throws NoSuchElementException Si aucun objet du registre n'a cet identifiant.
+     */
+    public T getById(int id) throws NoSuchElementException {
+        int index = this.indexOfId(id);
+        if (index == -1) {
+            throw new NoSuchElementException("No object found with id " + id);
+        }
+        return this.get(index);
+    }
+}
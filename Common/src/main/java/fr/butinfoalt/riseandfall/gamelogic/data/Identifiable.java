@@ -19,6 +19,7 @@ public interface Identifiable {
 
     /**
      * Récupère un objet identifiable par son identifiant dans un tableau.
+     * La recherche se fait en temps constant si la collection est un {@link IdRegistry}, en parcourant la collection sinon.
      *
      * @param list La collection d'objets identifiables
      * @param id   L'identifiant de l'objet à rechercher
@@ -26,6 +27,9 @@ public interface Identifiable {
      * @return Un objet {@link Optional} contenant l'objet trouvé, ou vide si aucun objet n'a été trouvé
      */
     static <T extends Identifiable> Optional<T> getOptionalById(Collection<T> list, int id) {
+        if (list instanceof IdRegistry<T> registry) {
+            return Optional.ofNullable(registry.getByIdOrNull(id));
+        }
         return list.stream().filter(e -> e.getId() == id).findFirst();
     }
 
@@ -39,6 +43,9 @@ public interface Identifiable {
      * @throws NoSuchElementException Si aucun objet n'a été trouvé
      */
     static <T extends Identifiable> T getById(Collection<T> list, int id) throws NoSuchElementException {
+        if (list instanceof IdRegistry<T> registry) {
+            return registry.getById(id);
+        }
         Optional<T> foundObj = getOptionalById(list, id);
         if (foundObj.isEmpty()) {
             throw new NoSuchElementException();
@@ -56,6 +63,10 @@ public interface Identifiable {
      */
     static <T extends Identifiable> T getByIdOrNull(Collection<T> list, int id) {
         if (id < 0) return null;
+        if (list instanceof IdRegistry<T> registry) {
+            return registry.getByIdOrNull(id);
+        }
         return getOptionalById(list, id).orElse(null);
     }
+
 }
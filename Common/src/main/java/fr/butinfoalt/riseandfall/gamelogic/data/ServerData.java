@@ -1,5 +1,6 @@
 package fr.butinfoalt.riseandfall.gamelogic.data;
 
+import fr.butinfoalt.riseandfall.util.KeyUniverse;
 import fr.butinfoalt.riseandfall.util.logging.LogManager;
 
 import java.util.List;
@@ -11,17 +12,17 @@ import java.util.List;
  */
 public final class ServerData {
     /**
-     * Liste des races
+     * Liste des races, indexée par leur identifiant
      */
-    private static List<Race> races;
+    private static IdRegistry<Race> races;
     /**
-     * Liste des bâtiments
+     * Liste des bâtiments, indexée par leur identifiant
      */
-    private static List<BuildingType> buildingTypes;
+    private static IdRegistry<BuildingType> buildingTypes;
     /**
-     * Liste des unités
+     * Liste des unités, indexée par leur identifiant
      */
-    private static List<UnitType> unitTypes;
+    private static IdRegistry<UnitType> unitTypes;
 
     /**
      * On interdit la création d'instances de cette classe.
@@ -33,28 +34,32 @@ public final class ServerData {
      * Initialise les données statiques du serveur.
      * Cette méthode est appelé sur le serveur au démarrage et
      * sur le client lors de la réception du paquet de données du serveur.
+     * Les listes sont copiées dans des {@link IdRegistry registres}, pour que les recherches par identifiant
+     * effectuées à chaque désérialisation se fassent en temps constant.
      *
      * @param races         Liste des races
      * @param buildingTypes Liste des types de bâtiments
      * @param unitTypes     Liste des types d'unités
      */
     public static void init(List<Race> races, List<BuildingType> buildingTypes, List<UnitType> unitTypes) {
-        ServerData.races = races;
-        ServerData.buildingTypes = buildingTypes;
-        ServerData.unitTypes = unitTypes;
+        ServerData.races = IdRegistry.of(races);
+        ServerData.buildingTypes = IdRegistry.of(buildingTypes);
+        ServerData.unitTypes = IdRegistry.of(unitTypes);
+        // Les univers de clés des anciennes données ne serviront plus aux nouvelles associations
+        KeyUniverse.clearCache();
 
         LogManager.logMessage("%d races, %d types de bâtiments et %d types d'unités chargées".formatted(races.size(), buildingTypes.size(), unitTypes.size()));
     }
 
-    public static List<Race> getRaces() {
+    public static IdRegistry<Race> getRaces() {
         return races;
     }
 
-    public static List<BuildingType> getBuildingTypes() {
+    public static IdRegistry<BuildingType> getBuildingTypes() {
         return buildingTypes;
     }
 
-    public static List<UnitType> getUnitTypes() {
+    public static IdRegistry<UnitType> getUnitTypes() {
         return unitTypes;
     }
 }
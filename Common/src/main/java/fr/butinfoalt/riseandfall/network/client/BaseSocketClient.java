@@ -35,6 +35,11 @@ public class BaseSocketClient implements AutoCloseable {
      */
     private SocketWrapper socketWrapper;
 
+    /**
+     * Taille maximale du contenu d'une trame, en octets.
+     */
+    private int maxFrameSize = SocketWrapper.DEFAULT_MAX_FRAME_SIZE;
+
     /**
      * Constructeur de la classe BaseSocketClient.
      *
@@ -57,7 +62,7 @@ public class BaseSocketClient implements AutoCloseable {
             throw new IllegalStateException("Client is already connected");
         }
         Socket socket = new Socket(this.host, this.port);
-        this.socketWrapper = new SocketWrapper(socket, this.packetRegistry) {
+        this.socketWrapper = new BlockingSocketWrapper(socket, this.packetRegistry, this.maxFrameSize, SocketWrapper.DEFAULT_OUTBOUND_HIGH_WATER_MARK) {
             @Override
             protected void onDisconnected(SocketWrapper socketWrapper) {
                 boolean callDisconnected;
@@ -76,6 +81,18 @@ public class BaseSocketClient implements AutoCloseable {
         };
     }
 
+    /**
+     * Définit la taille maximale du contenu d'une trame, prise en compte à la prochaine connexion.
+     *
+     * @param maxFrameSize La taille maximale, en octets.
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("Maximum frame size must be positive, got " + maxFrameSize);
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
+
     /**
      * Enregistre un paquet à envoyer.
      *
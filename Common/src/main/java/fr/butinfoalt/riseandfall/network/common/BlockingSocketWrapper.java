@@ -0,0 +1,187 @@
+package fr.butinfoalt.riseandfall.network.common;
+
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+/**
+ * Wrapper de connexion utilisant un socket bloquant.
+ * Un thread dédié est démarré pour chaque connexion afin de lire les trames reçues,
+ * et un thread virtuel écrit les trames en attente d'envoi en les regroupant avant chaque vidage du flux.
+ */
+public abstract class BlockingSocketWrapper extends SocketWrapper {
+    /**
+     * Taille initiale du tampon de réception des trames.
+     */
+    private static final int INITIAL_FRAME_BUFFER_SIZE = 8192;
+
+    /**
+     * Taille au-delà de laquelle le tampon de réception est libéré après usage, pour ne pas conserver une trame exceptionnelle.
+     */
+    private static final int MAX_RETAINED_FRAME_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Taille du tampon d'écriture dans lequel les trames en attente sont regroupées avant d'être envoyées.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Nombre maximal de trames écrites entre deux vidages du flux de sortie.
+     */
+    private static final int MAX_WRITE_BATCH = 64;
+
+    /**
+     * Socket de la connexion.
+     */
+    private final Socket socket;
+
+    /**
+     * Helper pour la lecture des trames.
+     * Utilisé pour lire les données du socket.
+     */
+    private final ReadHelper readHelper;
+
+    /**
+     * Helper réutilisé pour décoder le contenu de chaque trame reçue, sans allocation.
+     */
+    private final ReadHelper frameReader = new ReadHelper();
+
+    /**
+     * Tampon réutilisé pour recevoir le contenu des trames.
+     * Utilisé uniquement par le thread de lecture.
+     */
+    private byte[] frameBuffer = new byte[INITIAL_FRAME_BUFFER_SIZE];
+
+    /**
+     * Flux de sortie du socket, tamponné.
+     * Utilisé uniquement par le thread d'écriture.
+     */
+    private final OutputStream outputStream;
+
+    /**
+     * Thread de lecture.
+     * Utilisé pour lire les paquets dans un thread séparé.
+     */
+    private final Thread readThread;
+
+    /**
+     * Thread d'écriture.
+     * Utilisé pour envoyer les trames en attente sans bloquer les threads qui envoient des paquets.
+     */
+    private final Thread writeThread;
+
+    /**
+     * Constructeur de la classe BlockingSocketWrapper.
+     * Initialise le socket, le registre de paquets et démarre le thread de lecture.
+     *
+     * @param socket                Le socket de la connexion.
+     * @param packetRegistry        Le registre des paquets.
+     * @param maxFrameSize          La taille maximale du contenu d'une trame, en octets.
+     * @param outboundHighWaterMark La taille cumulée maximale des trames en attente d'envoi, en octets.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de l'initialisation.
+     */
+    public BlockingSocketWrapper(Socket socket, PacketRegistry packetRegistry, int maxFrameSize, int outboundHighWaterMark) throws IOException {
+        super(packetRegistry, maxFrameSize, outboundHighWaterMark);
+        this.socket = socket;
+        this.readHelper = new ReadHelper(socket.getInputStream());
+        this.outputStream = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        this.readThread = new Thread(this::readTask, "Socket Wrapper Read Thread");
+        this.writeThread = Thread.ofVirtual().name("Socket Wrapper Write Thread").unstarted(this::writeTask);
+        this.readThread.start();
+        this.writeThread.start();
+    }
+
+    @Override
+    protected SocketAddress getRemoteAddress() {
+        return this.socket.getRemoteSocketAddress();
+    }
+
+    /**
+     * Méthode de lecture des paquets dans un thread séparé.
+     * Cette méthode lit les trames du socket tant que la connexion est active.
+     * Elle gère les exceptions d'entrée/sortie et ferme la connexion en cas d'erreur.
+     */
+    private void readTask() {
+        try {
+            while (this.socket.isConnected()) {
+                int frameLength = this.readHelper.readInt();
+                this.checkFrameLength(frameLength);
+                if (frameLength > this.frameBuffer.length) {
+                    this.frameBuffer = new byte[frameLength];
+                }
+                this.readHelper.readFully(this.frameBuffer, 0, frameLength);
+                this.frameReader.reset(this.frameBuffer, 0, frameLength);
+                this.handleFrame(this.frameReader);
+                if (this.frameBuffer.length > MAX_RETAINED_FRAME_BUFFER_SIZE) {
+                    this.frameBuffer = new byte[INITIAL_FRAME_BUFFER_SIZE];
+                }
+            }
+        } catch (IOException e) {
+            if (!this.isDisconnectionException(e)) {
+                throw new RuntimeException(e); // Autres exceptions de socket, on les relance
+            }
+        } finally {
+            try {
+                this.close();
+            } catch (IOException ignored) {
+            }
+            this.onDisconnected(this);
+        }
+    }
+
+    /**
+     * Méthode d'écriture des trames en attente dans un thread séparé.
+     * Toutes les trames disponibles sont écrites dans le tampon du flux avant un unique vidage,
+     * ce qui regroupe les paquets envoyés en rafale en un minimum d'appels système.
+     * Une erreur d'écriture ferme la connexion.
+     */
+    private void writeTask() {
+        OutboundQueue outboundQueue = this.getOutboundQueue();
+        FrameBuffer[] batch = new FrameBuffer[MAX_WRITE_BATCH];
+        try {
+            int count;
+            while ((count = outboundQueue.awaitAndPeek(batch)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    batch[i].writeTo(this.outputStream);
+                }
+                this.outputStream.flush();
+                outboundQueue.remove(count);
+                for (int i = 0; i < count; i++) {
+                    this.releaseFrame(batch[i]);
+                    batch[i] = null;
+                }
+            }
+        } catch (IOException e) {
+            if (!this.isDisconnectionException(e)) {
+                LogManager.logError("Erreur lors de l'envoi de données à %s".formatted(this.getName()), e);
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            try {
+                this.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    protected void onOutboundFramesQueued() {
+        // Le thread d'écriture est réveillé par la file elle-même
+    }
+
+    @Override
+    public void waitForSocketClose() throws InterruptedException {
+        this.readThread.join();
+        this.writeThread.join();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.getOutboundQueue().close();
+        this.socket.close();
+    }
+}
@@ -0,0 +1,112 @@
+package fr.butinfoalt.riseandfall.network.common;
+
+import java.io.IOException;
+import java.util.EnumMap;
+
+/**
+ * Paquet déjà sérialisé dans une trame, prêt à être envoyé tel quel à plusieurs connexions.
+ * <p>
+ * Un paquet diffusé à de nombreux clients n'est ainsi sérialisé qu'une seule fois par format d'encodage :
+ * la trame d'un format est créée lors du premier envoi à une connexion utilisant ce format, puis chaque envoi
+ * ne fait qu'ajouter une référence vers la même trame. Les trames sont rendues à leur pool une fois écrites
+ * sur toutes les connexions et libérées par le créateur avec {@link #release()}.
+ * Le paquet ne doit donc pas être modifié tant que des envois sont en cours.
+ * Le paquet encodé ne peut être envoyé qu'aux connexions utilisant le registre de paquets qui a servi à l'encoder.
+ * </p>
+ */
+public final class EncodedPacket {
+    /**
+     * Registre des paquets utilisé pour encoder l'identifiant du paquet.
+     */
+    private final PacketRegistry packetRegistry;
+
+    /**
+     * Taille maximale du contenu d'une trame, en octets.
+     */
+    private final int maxFrameSize;
+
+    /**
+     * Paquet à encoder.
+     */
+    private final IPacket packet;
+
+    /**
+     * Trames contenant le paquet sérialisé, pour chaque format déjà utilisé.
+     */
+    private final EnumMap<WireFormat, FrameBuffer> frames = new EnumMap<>(WireFormat.class);
+
+    /**
+     * Indique si le créateur du paquet encodé l'a libéré.
+     */
+    private boolean released = false;
+
+    /**
+     * Constructeur du paquet encodé.
+     * Le paquet n'est sérialisé qu'au premier envoi, une fois par format d'encodage.
+     *
+     * @param packetRegistry Le registre des paquets des connexions auxquelles le paquet sera envoyé.
+     * @param maxFrameSize   La taille maximale du contenu d'une trame, en octets.
+     * @param packet         Le paquet à encoder.
+     */
+    public EncodedPacket(PacketRegistry packetRegistry, int maxFrameSize, IPacket packet) {
+        this.packetRegistry = packetRegistry;
+        this.maxFrameSize = maxFrameSize;
+        this.packet = packet;
+    }
+
+    /**
+     * Récupère le registre des paquets utilisé pour l'encodage.
+     *
+     * @return Le registre des paquets.
+     */
+    PacketRegistry getPacketRegistry() {
+        return this.packetRegistry;
+    }
+
+    /**
+     * Récupère la classe du paquet encodé.
+     *
+     * @return La classe du paquet.
+     */
+    public Class<? extends IPacket> getPacketClass() {
+        return this.packet.getClass();
+    }
+
+    /**
+     * Ajoute une référence vers la trame d'un format pour un nouvel envoi, en sérialisant le paquet si nécessaire.
+     *
+     * @param wireFormat Le format d'encodage de la connexion.
+     * @return La trame, que l'appelant doit rendre au pool une fois écrite.
+     * @throws IOException           Si une erreur se produit lors de la sérialisation du paquet,
+     *                               ou si la trame dépasse la taille maximale autorisée.
+     * @throws IllegalStateException Si le paquet encodé a déjà été libéré.
+     */
+    synchronized FrameBuffer retainFrame(WireFormat wireFormat) throws IOException {
+        if (this.released) {
+            throw new IllegalStateException("Encoded packet %s has already been released".formatted(this.getPacketClass().getSimpleName()));
+        }
+        FrameBuffer frame = this.frames.get(wireFormat);
+        if (frame == null) {
+            frame = SocketWrapper.encodeFrame(this.packetRegistry, this.maxFrameSize, wireFormat, this.packet);
+            this.frames.put(wireFormat, frame);
+        }
+        frame.retain();
+        return frame;
+    }
+
+    /**
+     * Libère la référence du créateur vers les trames.
+     * Les envois en cours ne sont pas affectés, chaque trame est rendue à son pool une fois qu'ils sont tous terminés.
+     * Les appels suivants n'ont aucun effet.
+     */
+    public synchronized void release() {
+        if (this.released) {
+            return;
+        }
+        this.released = true;
+        for (FrameBuffer frame : this.frames.values()) {
+            SocketWrapper.FRAME_BUFFER_POOL.release(frame);
+        }
+        this.frames.clear();
+    }
+}
@@ -0,0 +1,173 @@
+package fr.butinfoalt.riseandfall.network.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tampon réutilisable dans lequel une trame complète est sérialisée avant d'être envoyée en une seule écriture.
+ * Le tampon s'agrandit au besoin, dans la limite d'une taille maximale fixée à chaque réutilisation.
+ * Les instances sont obtenues et rendues via un {@link FrameBufferPool}.
+ * Une trame peut être partagée entre plusieurs connexions : un compteur de références indique combien
+ * de détenteurs doivent encore la rendre au pool avant qu'elle puisse être réutilisée.
+ */
+public final class FrameBuffer extends OutputStream {
+    /**
+     * Données de la trame.
+     */
+    private byte[] data;
+
+    /**
+     * Nombre d'octets écrits dans le tampon.
+     */
+    private int size = 0;
+
+    /**
+     * Taille maximale que le tampon peut atteindre pour la trame en cours.
+     */
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Helper d'écriture associé à ce tampon, réutilisé pour chaque trame.
+     */
+    private final WriteHelper writeHelper = new WriteHelper(this);
+
+    /**
+     * Nombre de détenteurs de la trame en cours, qui doivent chacun la rendre au pool.
+     */
+    private final AtomicInteger referenceCount = new AtomicInteger();
+
+    /**
+     * Constructeur du tampon de trame.
+     *
+     * @param initialCapacity La capacité initiale du tampon, en octets.
+     */
+    public FrameBuffer(int initialCapacity) {
+        this.data = new byte[initialCapacity];
+    }
+
+    /**
+     * Vide le tampon pour le réutiliser pour une nouvelle trame.
+     *
+     * @param limit La taille maximale de la nouvelle trame, en octets.
+     */
+    public void reset(int limit) {
+        this.size = 0;
+        this.limit = limit;
+        this.referenceCount.set(1);
+    }
+
+    /**
+     * S'assure que le tampon peut contenir un nombre d'octets supplémentaires.
+     *
+     * @param additional Le nombre d'octets à ajouter.
+     * @throws IOException Si la taille maximale de la trame serait dépassée.
+     */
+    private void ensureCapacity(int additional) throws IOException {
+        int required = this.size + additional;
+        if (required < 0 || required > this.limit) {
+            throw new IOException("Frame exceeds the maximum size of %d bytes".formatted(this.limit));
+        }
+        if (required > this.data.length) {
+            int newCapacity = (int) Math.min(Math.max((long) this.data.length * 2, required), this.limit);
+            this.data = Arrays.copyOf(this.data, newCapacity);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.ensureCapacity(1);
+        this.data[this.size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.ensureCapacity(len);
+        System.arraycopy(b, off, this.data, this.size, len);
+        this.size += len;
+    }
+
+    /**
+     * Remplace un entier déjà écrit dans le tampon, par exemple pour renseigner la longueur de la trame.
+     *
+     * @param index La position de l'entier dans le tampon.
+     * @param value La valeur à écrire.
+     */
+    public void putInt(int index, int value) {
+        this.data[index] = (byte) (value >>> 24);
+        this.data[index + 1] = (byte) (value >>> 16);
+        this.data[index + 2] = (byte) (value >>> 8);
+        this.data[index + 3] = (byte) value;
+    }
+
+    /**
+     * Écrit le contenu du tampon dans un flux de sortie, en une seule écriture.
+     *
+     * @param outputStream Le flux de sortie.
+     * @throws IOException Si une erreur d'entrée/sortie se produit.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(this.data, 0, this.size);
+    }
+
+    /**
+     * Crée une vue sur le contenu du tampon, à partir d'une position donnée.
+     * La vue n'est valide que tant que le tampon n'a pas été rendu à son pool.
+     *
+     * @param offset La position du premier octet de la vue, par exemple pour reprendre une écriture partielle.
+     * @return Un ByteBuffer partageant les données du tampon.
+     */
+    public ByteBuffer asByteBuffer(int offset) {
+        return ByteBuffer.wrap(this.data, offset, this.size - offset);
+    }
+
+    /**
+     * Ajoute un détenteur à la trame, qui devra la rendre au pool une fois qu'il n'en a plus besoin.
+     * Le contenu de la trame ne doit plus être modifié une fois qu'elle est partagée.
+     *
+     * @throws IllegalStateException Si la trame a déjà été rendue à son pool.
+     */
+    public void retain() {
+        if (this.referenceCount.getAndIncrement() <= 0) {
+            throw new IllegalStateException("Frame buffer has already been released");
+        }
+    }
+
+    /**
+     * Retire un détenteur de la trame.
+     *
+     * @return true si c'était le dernier détenteur, et que le tampon peut donc être réutilisé.
+     */
+    boolean releaseReference() {
+        return this.referenceCount.decrementAndGet() == 0;
+    }
+
+    /**
+     * Récupère le helper d'écriture associé à ce tampon.
+     *
+     * @return Le helper d'écriture.
+     */
+    public WriteHelper getWriteHelper() {
+        return this.writeHelper;
+    }
+
+    /**
+     * Récupère le nombre d'octets écrits dans le tampon.
+     *
+     * @return La taille du contenu du tampon.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Récupère la capacité actuelle du tampon.
+     *
+     * @return La capacité du tampon, en octets.
+     */
+    public int capacity() {
+        return this.data.length;
+    }
+}
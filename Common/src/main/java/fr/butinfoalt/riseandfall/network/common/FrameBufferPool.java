@@ -0,0 +1,78 @@
+package fr.butinfoalt.riseandfall.network.common;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool de tampons de trames, pour éviter d'allouer un nouveau tampon à chaque paquet envoyé.
+ * Les tampons devenus trop grands ne sont pas conservés, pour ne pas garder en mémoire la taille d'une trame exceptionnelle.
+ */
+public class FrameBufferPool {
+    /**
+     * Tampons disponibles.
+     */
+    private final ArrayDeque<FrameBuffer> buffers = new ArrayDeque<>();
+
+    /**
+     * Capacité initiale des tampons créés par le pool.
+     */
+    private final int initialCapacity;
+
+    /**
+     * Nombre maximal de tampons conservés dans le pool.
+     */
+    private final int maxPooledBuffers;
+
+    /**
+     * Capacité maximale d'un tampon pour qu'il soit conservé dans le pool.
+     */
+    private final int maxRetainedCapacity;
+
+    /**
+     * Constructeur du pool de tampons.
+     *
+     * @param initialCapacity     La capacité initiale des tampons créés.
+     * @param maxPooledBuffers    Le nombre maximal de tampons conservés.
+     * @param maxRetainedCapacity La capacité maximale d'un tampon pour qu'il soit conservé.
+     */
+    public FrameBufferPool(int initialCapacity, int maxPooledBuffers, int maxRetainedCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * Obtient un tampon vide, depuis le pool si possible.
+     *
+     * @param limit La taille maximale de la trame qui sera écrite dans le tampon.
+     * @return Un tampon vide.
+     */
+    public FrameBuffer acquire(int limit) {
+        FrameBuffer buffer;
+        synchronized (this.buffers) {
+            buffer = this.buffers.pollFirst();
+        }
+        if (buffer == null) {
+            buffer = new FrameBuffer(Math.min(this.initialCapacity, limit));
+        }
+        buffer.reset(limit);
+        return buffer;
+    }
+
+    /**
+     * Rend un tampon au pool une fois son contenu envoyé.
+     * Le tampon n'est réellement réutilisable qu'une fois rendu par tous ses détenteurs.
+     * Le tampon ne doit plus être utilisé par l'appelant après cet appel.
+     *
+     * @param buffer Le tampon à rendre.
+     */
+    public void release(FrameBuffer buffer) {
+        if (!buffer.releaseReference() || buffer.capacity() > this.maxRetainedCapacity) {
+            return;
+        }
+        synchronized (this.buffers) {
+            if (this.buffers.size() < this.maxPooledBuffers) {
+                this.buffers.addFirst(buffer);
+            }
+        }
+    }
+}
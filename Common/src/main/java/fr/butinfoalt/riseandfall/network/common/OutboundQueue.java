@@ -0,0 +1,151 @@
+package fr.butinfoalt.riseandfall.network.common;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+
+/**
+ * File d'attente bornée des trames à envoyer sur une connexion.
+ * <p>
+ * Les threads qui envoient des paquets se contentent d'y déposer leurs trames, sans jamais attendre le réseau.
+ * Un écrivain propre à la connexion récupère les trames par lots pour les écrire en une seule fois.
+ * Les trames restent dans la file jusqu'à ce qu'elles aient été entièrement écrites, et leur taille cumulée
+ * est limitée par un seuil haut au-delà duquel le client est considéré comme ne lisant plus ses données.
+ * </p>
+ */
+public class OutboundQueue {
+    /**
+     * Trames en attente d'écriture, dans l'ordre d'envoi.
+     */
+    private final ArrayDeque<FrameBuffer> frames = new ArrayDeque<>();
+
+    /**
+     * Taille cumulée maximale des trames en attente, en octets.
+     */
+    private final long highWaterMark;
+
+    /**
+     * Taille cumulée des trames en attente, en octets.
+     */
+    private long queuedBytes = 0;
+
+    /**
+     * Indique si la file a été fermée.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructeur de la file d'attente.
+     *
+     * @param highWaterMark Taille cumulée maximale des trames en attente, en octets.
+     */
+    public OutboundQueue(long highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * Ajoute une trame à la fin de la file.
+     * Une trame est toujours acceptée si la file est vide, même si elle dépasse à elle seule le seuil haut.
+     *
+     * @param frame La trame à ajouter.
+     * @return true si la file était vide, et que l'écrivain doit donc être réveillé.
+     * @throws IOException Si la file est fermée ou si l'ajout de la trame dépasserait le seuil haut.
+     */
+    public synchronized boolean offer(FrameBuffer frame) throws IOException {
+        if (this.closed) {
+            throw new SocketException("Socket closed");
+        }
+        boolean wasEmpty = this.frames.isEmpty();
+        if (!wasEmpty && this.queuedBytes + frame.size() > this.highWaterMark) {
+            throw new IOException("Outbound queue exceeds the high-water mark of %d bytes (%d bytes pending)".formatted(this.highWaterMark, this.queuedBytes));
+        }
+        this.frames.addLast(frame);
+        this.queuedBytes += frame.size();
+        if (wasEmpty) {
+            this.notifyAll();
+        }
+        return wasEmpty;
+    }
+
+    /**
+     * Copie les premières trames de la file dans un tableau, sans les retirer.
+     *
+     * @param batch Le tableau dans lequel copier les trames, dont la taille limite le nombre de trames copiées.
+     * @return Le nombre de trames copiées.
+     */
+    public synchronized int peek(FrameBuffer[] batch) {
+        int count = 0;
+        for (FrameBuffer frame : this.frames) {
+            if (count == batch.length) {
+                break;
+            }
+            batch[count++] = frame;
+        }
+        return count;
+    }
+
+    /**
+     * Attend que des trames soient disponibles, puis copie les premières dans un tableau sans les retirer.
+     *
+     * @param batch Le tableau dans lequel copier les trames.
+     * @return Le nombre de trames copiées, ou 0 si la file a été fermée.
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente.
+     */
+    public synchronized int awaitAndPeek(FrameBuffer[] batch) throws InterruptedException {
+        while (this.frames.isEmpty() && !this.closed) {
+            this.wait();
+        }
+        return this.closed ? 0 : this.peek(batch);
+    }
+
+    /**
+     * Retire de la file les premières trames, une fois qu'elles ont été entièrement écrites.
+     *
+     * @param count Le nombre de trames à retirer.
+     * @return true si la file est vide après le retrait.
+     */
+    public synchronized boolean remove(int count) {
+        for (int i = 0; i < count && !this.frames.isEmpty(); i++) {
+            this.queuedBytes -= this.frames.removeFirst().size();
+        }
+        return this.frames.isEmpty();
+    }
+
+    /**
+     * Indique si la file est vide.
+     *
+     * @return true si aucune trame n'est en attente.
+     */
+    public synchronized boolean isEmpty() {
+        return this.frames.isEmpty();
+    }
+
+    /**
+     * Récupère la taille cumulée des trames en attente.
+     *
+     * @return La taille des trames en attente, en octets.
+     */
+    public synchronized long getQueuedBytes() {
+        return this.queuedBytes;
+    }
+
+    /**
+     * Indique si la file a été fermée.
+     *
+     * @return true si la file est fermée.
+     */
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Ferme la file et abandonne les trames en attente.
+     * Les trames abandonnées ne sont pas rendues à leur pool, car l'écrivain peut encore être en train de les lire.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        this.frames.clear();
+        this.queuedBytes = 0;
+        this.notifyAll();
+    }
+}
@@ -24,6 +24,18 @@ public class PacketRegistry {
      */
     private final HashMap<Class<? extends IPacket>, Byte> receivePacketToId = new HashMap<>();
 
+    /**
+     * Vérifie qu'un identifiant de paquet est utilisable.
+     * Le bit de poids fort de l'identifiant est réservé pour indiquer le format d'encodage de la trame.
+     *
+     * @param packetId Identifiant du paquet.
+     */
+    private static void checkPacketId(byte packetId) {
+        if (packetId < 0) {
+            throw new RuntimeException("Id %d is out of range, packet ids must be between 0 and 127".formatted(packetId));
+        }
+    }
+
     /**
      * Enregistre un paquet à envoyer.
      *
@@ -31,6 +43,7 @@ public class PacketRegistry {
      * @param packetClass Classe du paquet.
      */
     public void registerSendPacket(byte packetId, Class<? extends IPacket> packetClass) {
+        checkPacketId(packetId);
         if (this.sendIdToPacket.containsKey(packetId)) {
             throw new RuntimeException("Id %d is already used".formatted(packetId));
         }
@@ -43,6 +56,8 @@ public class PacketRegistry {
 
     /**
      * Enregistre un paquet à recevoir.
+     * Le paquet est décodé par le thread qui a lu la trame, puis son traitement est confié à la connexion avec
+     * {@link SocketWrapper#dispatchPacket(Runnable)}.
      *
      * @param packetId      Identifiant du paquet.
      * @param packetClass   Classe du paquet.
@@ -53,12 +68,14 @@ public class PacketRegistry {
     public <T extends IPacket> void registerReceivePacket(byte packetId, Class<T> packetClass, IPacketHandler<T> packetHandler, IDeserializer<T> packetDecoder) {
         this.registerReceivePacket(packetId, packetClass, (sender, readHelper) -> {
             T packet = packetDecoder.deserialize(readHelper);
-            packetHandler.handlePacket(sender, packet);
+            sender.dispatchPacket(() -> packetHandler.handlePacket(sender, packet));
         });
     }
 
     /**
      * Enregistre un paquet à recevoir avec un gestionnaire brut.
+     * Le gestionnaire est appelé par le thread qui a lu la trame, qui peut être une boucle d'entrées/sorties : il ne
+     * doit que décoder le paquet et confier tout traitement qui peut bloquer à un autre thread.
      *
      * @param packetId                Identifiant du paquet.
      * @param packetClass             Classe du paquet.
@@ -66,6 +83,7 @@ public class PacketRegistry {
      * @param <T>                     Type de paquet.
      */
     public <T extends IPacket> void registerReceivePacket(byte packetId, Class<T> packetClass, IRawHandler packetDecoderAndHandler) {
+        checkPacketId(packetId);
         if (this.receiveIdToPacket.containsKey(packetId)) {
             throw new RuntimeException("Id %d is already used".formatted(packetId));
         }
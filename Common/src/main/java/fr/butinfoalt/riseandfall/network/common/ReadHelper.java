@@ -1,24 +1,50 @@
 package fr.butinfoalt.riseandfall.network.common;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketException;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Classe utilitaire pour lire des données à partir d'un flux d'entrée.
+ * <p>
+ * Deux modes sont disponibles : la lecture depuis un {@link InputStream}, ou la lecture directe depuis un tableau
+ * d'octets déjà reçu (par exemple le contenu d'une trame). Dans ce second mode, les types primitifs sont décodés
+ * en place, sans aucune allocation, et une même instance peut être réutilisée pour chaque trame avec {@link #reset(byte[], int, int)}.
+ * </p>
  */
 public class ReadHelper {
     /**
-     * Le flux d'entrée à partir duquel lire les données.
+     * Le flux d'entrée à partir duquel lire les données, ou null si les données sont lues depuis un tableau d'octets.
      */
     private final InputStream inputStream;
 
+    /**
+     * Les octets à partir desquels les types primitifs sont décodés.
+     * En mode flux, il s'agit d'un tampon de travail dans lequel chaque valeur est lue avant d'être décodée.
+     */
+    private byte[] buffer;
+
+    /**
+     * Position de la prochaine lecture dans le tableau d'octets.
+     */
+    private int position;
+
+    /**
+     * Position de fin des données lisibles dans le tableau d'octets.
+     */
+    private int limit;
+
+    /**
+     * Format d'encodage des données lues.
+     */
+    private WireFormat wireFormat = WireFormat.V1;
+
     /**
      * Constructeur de la classe ReadHelper.
      *
@@ -26,6 +52,104 @@ public class ReadHelper {
      */
     public ReadHelper(InputStream inputStream) {
         this.inputStream = inputStream;
+        this.buffer = new byte[Long.BYTES];
+    }
+
+    /**
+     * Constructeur de la classe ReadHelper lisant les données depuis un tableau d'octets.
+     * Les données à lire sont définies avec {@link #reset(byte[], int, int)}.
+     */
+    public ReadHelper() {
+        this.inputStream = null;
+        this.buffer = new byte[0];
+    }
+
+    /**
+     * Définit les données à lire, en mode tableau d'octets.
+     * Le tableau n'est pas copié et ne doit pas être modifié tant que la lecture n'est pas terminée.
+     *
+     * @param data   Le tableau contenant les données.
+     * @param offset La position du début des données dans le tableau.
+     * @param length La longueur des données.
+     */
+    public void reset(byte[] data, int offset, int length) {
+        if (this.inputStream != null) {
+            throw new IllegalStateException("Cannot reset a stream-backed ReadHelper");
+        }
+        this.buffer = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Récupère le format d'encodage des données lues.
+     *
+     * @return Le format d'encodage.
+     */
+    public WireFormat getWireFormat() {
+        return this.wireFormat;
+    }
+
+    /**
+     * Définit le format d'encodage des données lues, par exemple celui indiqué par la trame en cours.
+     *
+     * @param wireFormat Le format d'encodage.
+     */
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    /**
+     * Renvoie le nombre d'octets restant à lire, en mode tableau d'octets.
+     *
+     * @return Le nombre d'octets restants, ou 0 en mode flux.
+     */
+    public int remaining() {
+        return this.inputStream == null ? this.limit - this.position : 0;
+    }
+
+    /**
+     * Rend disponibles un nombre d'octets dans {@link #buffer} et renvoie la position à partir de laquelle les décoder.
+     *
+     * @param len Le nombre d'octets nécessaires, au plus 8 en mode flux.
+     * @return La position des octets dans {@link #buffer}.
+     * @throws IOException Si les données disponibles sont insuffisantes.
+     */
+    private int take(int len) throws IOException {
+        if (this.inputStream != null) {
+            if (this.inputStream.readNBytes(this.buffer, 0, len) != len) {
+                throw new SocketException("Socket closed");
+            }
+            return 0;
+        }
+        if (this.limit - this.position < len) {
+            throw new EOFException("End of data reached while reading %d bytes".formatted(len));
+        }
+        int index = this.position;
+        this.position += len;
+        return index;
+    }
+
+    /**
+     * Lit un nombre spécifié d'octets dans un tableau existant.
+     *
+     * @param destination Le tableau dans lequel copier les octets lus.
+     * @param offset      La position dans le tableau à partir de laquelle copier les octets.
+     * @param len         Le nombre d'octets à lire.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
+     */
+    public void readFully(byte[] destination, int offset, int len) throws IOException {
+        if (this.inputStream != null) {
+            if (this.inputStream.readNBytes(destination, offset, len) != len) {
+                throw new SocketException("Socket closed");
+            }
+            return;
+        }
+        if (len < 0 || this.limit - this.position < len) {
+            throw new EOFException("End of data reached while reading %d bytes".formatted(len));
+        }
+        System.arraycopy(this.buffer, this.position, destination, offset, len);
+        this.position += len;
     }
 
     /**
@@ -36,11 +160,16 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public byte[] readBytesArray(int len) throws IOException {
-        byte[] buffer = this.inputStream.readNBytes(len);
-        if (buffer.length != len) {
-            throw new SocketException("Socket closed");
+        if (this.inputStream != null) {
+            byte[] buffer = this.inputStream.readNBytes(len);
+            if (buffer.length != len) {
+                throw new SocketException("Socket closed");
+            }
+            return buffer;
         }
-        return buffer;
+        byte[] bytes = new byte[len];
+        this.readFully(bytes, 0, len);
+        return bytes;
     }
 
     /**
@@ -60,7 +189,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public byte readByte() throws IOException {
-        return this.readBytesArray(1)[0];
+        return this.buffer[this.take(1)];
     }
 
     /**
@@ -70,7 +199,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public short readShort() throws IOException {
-        return ByteBuffer.wrap(this.readBytesArray(2)).getShort();
+        return (short) this.decode(this.take(Short.BYTES), Short.BYTES);
     }
 
     /**
@@ -80,7 +209,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public int readInt() throws IOException {
-        return ByteBuffer.wrap(this.readBytesArray(4)).getInt();
+        return (int) this.decode(this.take(Integer.BYTES), Integer.BYTES);
     }
 
     /**
@@ -90,7 +219,38 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public long readLong() throws IOException {
-        return ByteBuffer.wrap(this.readBytesArray(8)).getLong();
+        return this.decode(this.take(Long.BYTES), Long.BYTES);
+    }
+
+    /**
+     * Lit un entier de taille variable, écrit avec {@link WriteHelper#writeVarInt(int)}.
+     *
+     * @return L'entier lu.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture, ou si l'entier est mal formé.
+     */
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = this.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Lit la taille d'une chaîne, d'une liste ou d'un tableau, écrite avec {@link WriteHelper#writeSize(int)}.
+     *
+     * @return La taille lue, ou -1 en l'absence de données.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
+     */
+    public int readSize() throws IOException {
+        if (this.wireFormat == WireFormat.V1) {
+            return this.readInt();
+        }
+        return this.readVarInt() - 1;
     }
 
     /**
@@ -100,7 +260,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public float readFloat() throws IOException {
-        return ByteBuffer.wrap(this.readBytesArray(4)).getFloat();
+        return Float.intBitsToFloat(this.readInt());
     }
 
     /**
@@ -110,7 +270,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public double readDouble() throws IOException {
-        return ByteBuffer.wrap(this.readBytesArray(8)).getDouble();
+        return Double.longBitsToDouble(this.readLong());
     }
 
     /**
@@ -120,7 +280,22 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public char readChar() throws IOException {
-        return ByteBuffer.wrap(this.readBytesArray(2)).getChar();
+        return (char) this.decode(this.take(Character.BYTES), Character.BYTES);
+    }
+
+    /**
+     * Décode une valeur en big-endian à partir de {@link #buffer}.
+     *
+     * @param index La position du premier octet de la valeur.
+     * @param bytes Le nombre d'octets de la valeur.
+     * @return La valeur décodée.
+     */
+    private long decode(int index, int bytes) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = value << 8 | this.buffer[index + i] & 0xFF;
+        }
+        return value;
     }
 
     /**
@@ -151,7 +326,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public boolean[] readSizedBooleanArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readBooleanArray(size);
     }
@@ -164,7 +339,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public byte[] readSizedByteArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readBytesArray(size);
     }
@@ -178,9 +353,8 @@ public class ReadHelper {
      */
     public short[] readShortArray(int size) throws IOException {
         short[] shorts = new short[size];
-        ByteBuffer buffer = ByteBuffer.wrap(this.readBytesArray(size * 2));
         for (int i = 0; i < size; i++) {
-            shorts[i] = buffer.getShort();
+            shorts[i] = this.readShort();
         }
         return shorts;
     }
@@ -193,7 +367,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public short[] readSizedShortArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readShortArray(size);
     }
@@ -207,9 +381,8 @@ public class ReadHelper {
      */
     public int[] readIntArray(int size) throws IOException {
         int[] ints = new int[size];
-        ByteBuffer buffer = ByteBuffer.wrap(this.readBytesArray(size * 4));
         for (int i = 0; i < size; i++) {
-            ints[i] = buffer.getInt();
+            ints[i] = this.readInt();
         }
         return ints;
     }
@@ -222,7 +395,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public int[] readSizedIntArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readIntArray(size);
     }
@@ -236,9 +409,8 @@ public class ReadHelper {
      */
     public long[] readLongArray(int size) throws IOException {
         long[] longs = new long[size];
-        ByteBuffer buffer = ByteBuffer.wrap(this.readBytesArray(size * 8));
         for (int i = 0; i < size; i++) {
-            longs[i] = buffer.getLong();
+            longs[i] = this.readLong();
         }
         return longs;
     }
@@ -251,7 +423,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public long[] readSizedLongArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readLongArray(size);
     }
@@ -265,9 +437,8 @@ public class ReadHelper {
      */
     public float[] readFloatArray(int size) throws IOException {
         float[] floats = new float[size];
-        ByteBuffer buffer = ByteBuffer.wrap(this.readBytesArray(size * 4));
         for (int i = 0; i < size; i++) {
-            floats[i] = buffer.getFloat();
+            floats[i] = this.readFloat();
         }
         return floats;
     }
@@ -280,7 +451,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public float[] readSizedFloatArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readFloatArray(size);
     }
@@ -294,9 +465,8 @@ public class ReadHelper {
      */
     public double[] readDoubleArray(int size) throws IOException {
         double[] doubles = new double[size];
-        ByteBuffer buffer = ByteBuffer.wrap(this.readBytesArray(size * 8));
         for (int i = 0; i < size; i++) {
-            doubles[i] = buffer.getDouble();
+            doubles[i] = this.readDouble();
         }
         return doubles;
     }
@@ -309,7 +479,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public double[] readSizedDoubleArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readDoubleArray(size);
     }
@@ -323,9 +493,8 @@ public class ReadHelper {
      */
     public char[] readCharArray(int size) throws IOException {
         char[] chars = new char[size];
-        ByteBuffer buffer = ByteBuffer.wrap(this.readBytesArray(size * 2));
         for (int i = 0; i < size; i++) {
-            chars[i] = buffer.getChar();
+            chars[i] = this.readChar();
         }
         return chars;
     }
@@ -338,7 +507,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public char[] readSizedCharArray() throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         return this.readCharArray(size);
     }
@@ -351,6 +520,17 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public String readString() throws IOException {
+        if (this.inputStream == null) {
+            // Décodage direct depuis le tableau, sans copie intermédiaire
+            int size = this.readSize();
+            if (size < 0) return null;
+            if (this.limit - this.position < size) {
+                throw new EOFException("End of data reached while reading %d bytes".formatted(size));
+            }
+            String s = new String(this.buffer, this.position, size, StandardCharsets.UTF_8);
+            this.position += size;
+            return s;
+        }
         byte[] b = this.readSizedByteArray();
         if (b == null) return null;
         return new String(b, StandardCharsets.UTF_8);
@@ -365,7 +545,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public <T extends ISerializable> List<T> readSerializableList(IDeserializer<T> deserializer) throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         List<T> list = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
@@ -385,7 +565,7 @@ public class ReadHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
      */
     public <T extends ISerializable, U> List<T> readSerializableList(IContextDeserializer<T, U> deserializer, U context) throws IOException {
-        int size = this.readInt();
+        int size = this.readSize();
         if (size < 0) return null;
         List<T> list = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
@@ -405,8 +585,14 @@ public class ReadHelper {
             long remainingSize = this.readLong();
             byte[] buffer = new byte[1024];
             while (remainingSize > 0) {
-                int read = this.inputStream.read(buffer, 0, (int) Math.min(buffer.length, remainingSize));
-                if (read == -1) {
+                int read;
+                if (this.inputStream != null) {
+                    read = this.inputStream.read(buffer, 0, (int) Math.min(buffer.length, remainingSize));
+                } else {
+                    read = (int) Math.min(Math.min(buffer.length, remainingSize), this.remaining());
+                    this.readFully(buffer, 0, read);
+                }
+                if (read <= 0) {
                     throw new IOException("End of stream reached before reading file");
                 }
                 fos.write(buffer, 0, read);
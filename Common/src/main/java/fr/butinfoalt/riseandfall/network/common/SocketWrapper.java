@@ -4,20 +4,45 @@ import fr.butinfoalt.riseandfall.util.logging.LogManager;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.util.Objects;
 
 /**
  * Classe abstraite représentant un wrapper pour une connexion implémentant le protocole de paquets.
- * Cette classe gère la lecture et l'écriture de paquets sur un socket.
+ * <p>
+ * Chaque paquet est transmis dans une trame préfixée par sa longueur : un entier indiquant la taille du contenu,
+ * suivi de l'identifiant du paquet puis de ses données. Ce découpage permet de décoder les paquets de manière
+ * incrémentale, que la connexion soit lue par un thread bloquant ({@link BlockingSocketWrapper})
+ * ou par une boucle d'entrées/sorties non bloquante.
+ * </p>
+ * <p>
+ * L'envoi d'un paquet ne fait que sérialiser sa trame et la déposer dans une {@link OutboundQueue} bornée :
+ * c'est l'écrivain propre à chaque implémentation qui la transmet ensuite, en regroupant les trames en attente.
+ * Un client qui ne lit plus ses données ne peut donc pas bloquer les threads qui lui envoient des paquets,
+ * et il est déconnecté lorsque sa file dépasse le seuil haut.
+ * </p>
  */
 public abstract class SocketWrapper {
     /**
-     * Socket de la connexion.
+     * Taille de l'en-tête d'une trame, qui contient la longueur du contenu de la trame.
      */
-    private final Socket socket;
+    public static final int FRAME_HEADER_SIZE = Integer.BYTES;
+
+    /**
+     * Taille maximale par défaut du contenu d'une trame, en octets.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Taille cumulée maximale par défaut des trames en attente d'envoi sur une connexion, en octets.
+     */
+    public static final int DEFAULT_OUTBOUND_HIGH_WATER_MARK = 4 * 1024 * 1024;
+
+    /**
+     * Pool de tampons partagé par toutes les connexions pour sérialiser les trames envoyées.
+     */
+    static final FrameBufferPool FRAME_BUFFER_POOL = new FrameBufferPool(4096, 64, 256 * 1024);
 
     /**
      * Registre des paquets.
@@ -26,38 +51,31 @@ public abstract class SocketWrapper {
     private final PacketRegistry packetRegistry;
 
     /**
-     * Helper pour la lecture des paquets.
-     * Utilisé pour lire les données du socket.
+     * Taille maximale du contenu d'une trame, en octets, en émission comme en réception.
      */
-    private final ReadHelper readHelper;
+    private final int maxFrameSize;
 
     /**
-     * Helper pour l'écriture des paquets.
-     * Utilisé pour écrire les données dans le socket.
+     * File des trames en attente d'envoi.
      */
-    private final WriteHelper writeHelper;
+    private final OutboundQueue outboundQueue;
 
     /**
-     * Thread de lecture.
-     * Utilisé pour lire les paquets dans un thread séparé.
+     * Format d'encodage des paquets envoyés, négocié avec l'autre extrémité.
      */
-    private final Thread readThread;
+    private volatile WireFormat sendWireFormat = WireFormat.V1;
 
     /**
      * Constructeur de la classe SocketWrapper.
-     * Initialise le socket, le registre de paquets et les helpers de lecture et d'écriture.
      *
-     * @param socket         Le socket de la connexion.
-     * @param packetRegistry Le registre des paquets.
-     * @throws IOException Si une erreur d'entrée/sortie se produit lors de l'initialisation.
+     * @param packetRegistry        Le registre des paquets.
+     * @param maxFrameSize          La taille maximale du contenu d'une trame, en octets.
+     * @param outboundHighWaterMark La taille cumulée maximale des trames en attente d'envoi, en octets.
      */
-    public SocketWrapper(Socket socket, PacketRegistry packetRegistry) throws IOException {
-        this.socket = socket;
+    protected SocketWrapper(PacketRegistry packetRegistry, int maxFrameSize, int outboundHighWaterMark) {
         this.packetRegistry = packetRegistry;
-        this.readHelper = new ReadHelper(socket.getInputStream());
-        this.writeHelper = new WriteHelper(socket.getOutputStream());
-        this.readThread = new Thread(this::readTask, "Socket Wrapper Read Thread");
-        this.readThread.start();
+        this.maxFrameSize = maxFrameSize;
+        this.outboundQueue = new OutboundQueue(outboundHighWaterMark);
     }
 
     /**
@@ -67,7 +85,7 @@ public abstract class SocketWrapper {
      * @return Le nom de la connexion (adresse IP).
      */
     public String getName() {
-        SocketAddress address = this.socket.getRemoteSocketAddress();
+        SocketAddress address = this.getRemoteAddress();
         if (address instanceof InetSocketAddress inetSocketAddress) {
             return inetSocketAddress.getHostString();
         }
@@ -75,58 +93,134 @@ public abstract class SocketWrapper {
     }
 
     /**
-     * Méthode de lecture des paquets dans un thread séparé.
-     * Cette méthode lit les paquets du socket tant que la connexion est active.
-     * Elle gère les exceptions d'entrée/sortie et ferme la connexion en cas d'erreur.
+     * Renvoie l'adresse distante de la connexion.
+     *
+     * @return L'adresse distante, ou null si elle n'est pas connue.
      */
-    private void readTask() {
-        try {
-            while (this.socket.isConnected()) {
-                byte packetId = this.readHelper.readByte();
-                this.handlePacket(packetId);
-            }
-        } catch (IOException e) {
-            if (e instanceof SocketException) {
-                switch (e.getMessage()) {
-                    case "Socket closed" -> {
-                        // Fermeture propre de la socket, on ignore cette exception
-                    }
-                    case "Connection reset" -> {
-                        // La connexion a été réinitialisée, on affiche un message de log
-                        LogManager.logMessage("Connection reset by peer: %s".formatted(this.getName()));
-                    }
-                    case "Connection timed out" -> {
-                        // La connexion a expiré, on affiche un message de log
-                        LogManager.logMessage("Connection timed out: %s".formatted(this.getName()));
-                    }
-                    default -> throw new RuntimeException(e); // Autres exceptions de socket, on les relance
-                }
-            } else {
-                throw new RuntimeException(e);
-            }
-        } finally {
-            try {
-                this.close();
-            } catch (IOException ignored) {
-            }
-            this.onDisconnected(this);
-        }
-    }
+    protected abstract SocketAddress getRemoteAddress();
 
     /**
-     * Gère la réception d'un paquet.
-     * Cette méthode décode le paquet en fonction de son ID et appelle le gestionnaire de paquets approprié.
+     * Gère la réception d'une trame complète.
+     * Cette méthode décode l'identifiant du paquet contenu dans la trame et appelle le gestionnaire de paquets approprié.
      *
-     * @param packetId L'ID du paquet à traiter.
+     * @param frameReader Le helper de lecture positionné au début du contenu de la trame.
      * @throws IOException Si une erreur d'entrée/sortie se produit lors du traitement du paquet.
      */
-    private <T extends IPacket> void handlePacket(byte packetId) throws IOException {
+    protected void handleFrame(ReadHelper frameReader) throws IOException {
+        int rawPacketId = frameReader.readByte();
+        frameReader.setWireFormat((rawPacketId & WireFormat.V2_PACKET_ID_FLAG) != 0 ? WireFormat.V2 : WireFormat.V1);
+        byte packetId = (byte) (rawPacketId & ~WireFormat.V2_PACKET_ID_FLAG);
         IRawHandler handler = this.packetRegistry.getRawHandler(packetId);
         if (handler == null) {
             LogManager.logError("Unknown packet ID: %d from %s".formatted(packetId, this.getName()));
             return;
         }
-        handler.deserialize(this, this.readHelper);
+        handler.deserialize(this, frameReader);
+    }
+
+    /**
+     * Exécute le traitement d'un paquet décodé.
+     * Par défaut, le traitement est exécuté directement par le thread qui a lu la trame, dédié à la connexion.
+     * Les implémentations dont le thread de lecture est partagé entre plusieurs connexions le confient à un autre
+     * thread, en conservant l'ordre de réception des paquets.
+     *
+     * @param task Le traitement du paquet.
+     */
+    protected void dispatchPacket(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * Vérifie la longueur annoncée par l'en-tête d'une trame reçue.
+     *
+     * @param frameLength La longueur du contenu de la trame.
+     * @throws IOException Si la longueur est invalide ou dépasse la taille maximale autorisée.
+     */
+    protected void checkFrameLength(int frameLength) throws IOException {
+        if (frameLength <= 0 || frameLength > this.maxFrameSize) {
+            throw new IOException("Invalid frame length %d from %s (maximum %d)".formatted(frameLength, this.getName(), this.maxFrameSize));
+        }
+    }
+
+    /**
+     * Sérialise un paquet dans une trame prête à être envoyée en une seule écriture, en-tête de longueur compris.
+     * Le tampon renvoyé provient d'un pool et doit être rendu avec {@link #releaseFrame(FrameBuffer)} une fois envoyé.
+     *
+     * @param packet Le paquet à sérialiser.
+     * @return Le tampon contenant la trame.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation du paquet,
+     *                     ou si la trame dépasse la taille maximale autorisée.
+     */
+    protected FrameBuffer encodeFrame(IPacket packet) throws IOException {
+        return encodeFrame(this.packetRegistry, this.maxFrameSize, this.sendWireFormat, packet);
+    }
+
+    /**
+     * Sérialise un paquet dans une trame obtenue depuis le pool partagé.
+     *
+     * @param packetRegistry Le registre des paquets, utilisé pour obtenir l'identifiant du paquet.
+     * @param maxFrameSize   La taille maximale du contenu de la trame, en octets.
+     * @param wireFormat     Le format d'encodage du contenu du paquet.
+     * @param packet         Le paquet à sérialiser.
+     * @return Le tampon contenant la trame.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation du paquet,
+     *                     ou si la trame dépasse la taille maximale autorisée.
+     */
+    static FrameBuffer encodeFrame(PacketRegistry packetRegistry, int maxFrameSize, WireFormat wireFormat, IPacket packet) throws IOException {
+        FrameBuffer frame = FRAME_BUFFER_POOL.acquire(FRAME_HEADER_SIZE + maxFrameSize);
+        try {
+            WriteHelper writeHelper = frame.getWriteHelper();
+            writeHelper.setWireFormat(wireFormat);
+            writeHelper.writeInt(0); // Longueur renseignée une fois le paquet sérialisé
+            byte packetId = packetRegistry.getSendPacketId(packet.getClass());
+            writeHelper.writeByte(wireFormat == WireFormat.V1 ? packetId : (byte) (packetId | WireFormat.V2_PACKET_ID_FLAG));
+            packet.toBytes(writeHelper);
+            frame.putInt(0, frame.size() - FRAME_HEADER_SIZE);
+            return frame;
+        } catch (IOException | RuntimeException e) {
+            FRAME_BUFFER_POOL.release(frame);
+            throw e;
+        }
+    }
+
+    /**
+     * Rend au pool un tampon obtenu avec {@link #encodeFrame(IPacket)}.
+     *
+     * @param frame Le tampon à rendre.
+     */
+    protected void releaseFrame(FrameBuffer frame) {
+        FRAME_BUFFER_POOL.release(frame);
+    }
+
+    /**
+     * Vérifie qu'une exception de lecture correspond à une déconnexion normale du client, et la journalise le cas échéant.
+     *
+     * @param e L'exception levée lors de la lecture.
+     * @return true si l'exception correspond à une fermeture de la connexion, false s'il s'agit d'une erreur inattendue.
+     */
+    protected boolean isDisconnectionException(IOException e) {
+        if (!(e instanceof SocketException) || e.getMessage() == null) {
+            return false;
+        }
+        switch (e.getMessage()) {
+            case "Socket closed" -> {
+                // Fermeture propre de la socket, on ignore cette exception
+                return true;
+            }
+            case "Connection reset" -> {
+                // La connexion a été réinitialisée, on affiche un message de log
+                LogManager.logMessage("Connection reset by peer: %s".formatted(this.getName()));
+                return true;
+            }
+            case "Connection timed out" -> {
+                // La connexion a expiré, on affiche un message de log
+                LogManager.logMessage("Connection timed out: %s".formatted(this.getName()));
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
     }
 
     /**
@@ -134,32 +228,102 @@ public abstract class SocketWrapper {
      *
      * @throws InterruptedException Si le thread est interrompu pendant l'attente.
      */
-    public void waitForSocketClose() throws InterruptedException {
-        this.readThread.join();
-    }
+    public abstract void waitForSocketClose() throws InterruptedException;
 
     /**
      * Ferme la connexion.
      *
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la fermeture de la connexion.
      */
-    public void close() throws IOException {
-        this.socket.close();
-    }
+    public abstract void close() throws IOException;
 
     /**
-     * Envoie un paquet au serveur.
+     * Envoie un paquet à l'autre extrémité de la connexion.
+     * Le paquet est sérialisé immédiatement puis mis en file d'attente : cette méthode ne bloque jamais sur le réseau.
+     * Si la file dépasse son seuil haut, la connexion est fermée.
      *
      * @param packet Le paquet à envoyer.
-     * @throws IOException Si une erreur d'entrée/sortie se produit lors de l'envoi du paquet.
+     * @throws IOException Si une erreur se produit lors de la sérialisation du paquet, si la connexion est fermée
+     *                     ou si l'autre extrémité ne lit plus assez vite les données envoyées.
      */
     public void sendPacket(IPacket packet) throws IOException {
-        byte packetId = this.packetRegistry.getSendPacketId(packet.getClass());
-        this.writeHelper.writeByte(packetId);
-        packet.toBytes(this.writeHelper);
-        this.socket.getOutputStream().flush();
+        this.enqueueFrame(this.encodeFrame(packet));
     }
 
+    /**
+     * Envoie un paquet déjà encodé, sans le sérialiser à nouveau.
+     * La trame est partagée avec les autres connexions auxquelles le paquet est envoyé.
+     *
+     * @param packet Le paquet encodé à envoyer, qui reste à la charge de l'appelant.
+     * @throws IOException Si la connexion est fermée ou si l'autre extrémité ne lit plus assez vite les données envoyées.
+     */
+    public void sendPacket(EncodedPacket packet) throws IOException {
+        if (packet.getPacketRegistry() != this.packetRegistry) {
+            throw new IllegalArgumentException("Packet %s was encoded with another packet registry".formatted(packet.getPacketClass().getSimpleName()));
+        }
+        this.enqueueFrame(packet.retainFrame(this.sendWireFormat));
+    }
+
+    /**
+     * Ajoute une trame à la file d'envoi, et ferme la connexion si la file dépasse son seuil haut.
+     *
+     * @param frame La trame à envoyer, dont la référence est transférée à la file.
+     * @throws IOException Si la connexion est fermée ou si la file dépasse son seuil haut.
+     */
+    private void enqueueFrame(FrameBuffer frame) throws IOException {
+        boolean wasEmpty;
+        try {
+            wasEmpty = this.outboundQueue.offer(frame);
+        } catch (IOException e) {
+            this.releaseFrame(frame);
+            if (!this.outboundQueue.isClosed()) {
+                LogManager.logMessage("Client %s doesn't read fast enough, closing the connection".formatted(this.getName()));
+                try {
+                    this.close();
+                } catch (IOException ignored) {
+                }
+            }
+            throw e;
+        }
+        if (wasEmpty) {
+            this.onOutboundFramesQueued();
+        }
+    }
+
+    /**
+     * Récupère le format d'encodage des paquets envoyés sur cette connexion.
+     *
+     * @return Le format d'encodage.
+     */
+    public WireFormat getSendWireFormat() {
+        return this.sendWireFormat;
+    }
+
+    /**
+     * Définit le format d'encodage des paquets envoyés sur cette connexion.
+     * Ne doit être appelée qu'une fois que l'autre extrémité a annoncé comprendre ce format.
+     * Les trames indiquant leur format, ce changement peut intervenir à tout moment sans perturber la lecture.
+     *
+     * @param sendWireFormat Le format d'encodage.
+     */
+    public void setSendWireFormat(WireFormat sendWireFormat) {
+        this.sendWireFormat = sendWireFormat;
+    }
+
+    /**
+     * Récupère la file des trames en attente d'envoi.
+     *
+     * @return La file d'envoi de la connexion.
+     */
+    protected OutboundQueue getOutboundQueue() {
+        return this.outboundQueue;
+    }
+
+    /**
+     * Appelée lorsque des trames sont ajoutées à une file d'envoi jusque-là vide, pour réveiller l'écrivain si nécessaire.
+     */
+    protected abstract void onOutboundFramesQueued();
+
     /**
      * Appelée lorsque la connexion est perdue.
      *
@@ -0,0 +1,57 @@
+package fr.butinfoalt.riseandfall.network.common;
+
+/**
+ * Format d'encodage du contenu des paquets.
+ * <p>
+ * Le format utilisé est indiqué dans chaque trame par le bit de poids fort de l'identifiant du paquet,
+ * ce qui permet de décoder chaque trame sans dépendre de l'état de la négociation.
+ * Une connexion envoie ses paquets au format {@link #V1} tant que l'autre extrémité n'a pas annoncé
+ * qu'elle comprenait un format plus récent (voir {@link fr.butinfoalt.riseandfall.network.packets.PacketInitInfo}).
+ * </p>
+ */
+public enum WireFormat {
+    /**
+     * Format historique : entiers sur 4 octets, tailles sur 4 octets,
+     * et associations {@link fr.butinfoalt.riseandfall.util.ObjectIntMap} écrites en entier, valeurs nulles comprises.
+     */
+    V1,
+    /**
+     * Format compact : tailles des chaînes, listes et tableaux encodées en entiers de taille variable,
+     * et associations {@link fr.butinfoalt.riseandfall.util.ObjectIntMap} réduites à leurs entrées non nulles.
+     */
+    V2;
+
+    /**
+     * Format le plus récent pris en charge par cette version de l'application.
+     */
+    public static final WireFormat LATEST = V2;
+
+    /**
+     * Bit de l'identifiant du paquet indiquant que la trame est encodée au format {@link #V2}.
+     */
+    static final int V2_PACKET_ID_FLAG = 0x80;
+
+    /**
+     * Récupère le format correspondant à un identifiant reçu sur le réseau.
+     * Un identifiant inconnu, annoncé par une version plus récente, est ramené au format le plus récent pris en charge.
+     *
+     * @param id L'identifiant du format.
+     * @return Le format correspondant.
+     */
+    public static WireFormat fromId(int id) {
+        if (id <= 0) {
+            return V1;
+        }
+        return id >= LATEST.ordinal() ? LATEST : values()[id];
+    }
+
+    /**
+     * Renvoie le plus ancien des deux formats, c'est-à-dire celui que les deux extrémités comprennent.
+     *
+     * @param other L'autre format.
+     * @return Le format commun.
+     */
+    public WireFormat min(WireFormat other) {
+        return this.ordinal() <= other.ordinal() ? this : other;
+    }
+}
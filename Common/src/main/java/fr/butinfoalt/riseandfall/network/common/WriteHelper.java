@@ -14,6 +14,16 @@ public class WriteHelper {
      */
     private final OutputStream outputStream;
 
+    /**
+     * Tampon de travail réutilisé pour convertir les types primitifs en octets sans allocation.
+     */
+    private final byte[] scratch = new byte[Long.BYTES];
+
+    /**
+     * Format d'encodage utilisé pour les tailles et les associations.
+     */
+    private WireFormat wireFormat = WireFormat.V1;
+
     /**
      * Constructeur de la classe WriteHelper.
      *
@@ -23,6 +33,39 @@ public class WriteHelper {
         this.outputStream = outputStream;
     }
 
+    /**
+     * Récupère le format d'encodage utilisé par ce helper.
+     *
+     * @return Le format d'encodage.
+     */
+    public WireFormat getWireFormat() {
+        return this.wireFormat;
+    }
+
+    /**
+     * Définit le format d'encodage utilisé par ce helper.
+     *
+     * @param wireFormat Le format d'encodage.
+     */
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    /**
+     * Écrit les octets de poids faible d'une valeur dans le flux de sortie, en big-endian.
+     *
+     * @param value La valeur à écrire.
+     * @param bytes Le nombre d'octets à écrire.
+     * @throws IOException Si une erreur d'entrée/sortie se produit.
+     */
+    private void writeScratch(long value, int bytes) throws IOException {
+        for (int i = bytes - 1; i >= 0; i--) {
+            this.scratch[i] = (byte) value;
+            value >>>= 8;
+        }
+        this.outputStream.write(this.scratch, 0, bytes);
+    }
+
     /**
      * Écrit un booléen dans le flux de sortie.
      *
@@ -40,7 +83,7 @@ public class WriteHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit.
      */
     public void writeByte(byte b) throws IOException {
-        this.outputStream.write(new byte[]{b});
+        this.outputStream.write(b);
     }
 
     /**
@@ -50,7 +93,7 @@ public class WriteHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit.
      */
     public void writeShort(short s) throws IOException {
-        this.outputStream.write(ByteBuffer.allocate(2).putShort(s).array());
+        this.writeScratch(s, Short.BYTES);
     }
 
     /**
@@ -60,7 +103,7 @@ public class WriteHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit.
      */
     public void writeInt(int i) throws IOException {
-        this.outputStream.write(ByteBuffer.allocate(4).putInt(i).array());
+        this.writeScratch(i, Integer.BYTES);
     }
 
     /**
@@ -70,7 +113,41 @@ public class WriteHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit.
      */
     public void writeLong(long l) throws IOException {
-        this.outputStream.write(ByteBuffer.allocate(8).putLong(l).array());
+        this.writeScratch(l, Long.BYTES);
+    }
+
+    /**
+     * Écrit un entier de taille variable dans le flux de sortie.
+     * L'entier est découpé en groupes de 7 bits, du poids faible au poids fort, le bit de poids fort de chaque octet
+     * indiquant si un autre octet suit : une valeur inférieure à 128 n'occupe qu'un octet, une valeur négative en occupe 5.
+     *
+     * @param i L'entier à écrire.
+     * @throws IOException Si une erreur d'entrée/sortie se produit.
+     */
+    public void writeVarInt(int i) throws IOException {
+        int length = 0;
+        while ((i & ~0x7F) != 0) {
+            this.scratch[length++] = (byte) ((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        this.scratch[length++] = (byte) i;
+        this.outputStream.write(this.scratch, 0, length);
+    }
+
+    /**
+     * Écrit la taille d'une chaîne, d'une liste ou d'un tableau, ou -1 pour indiquer l'absence de données.
+     * Au format {@link WireFormat#V1}, la taille est écrite sur 4 octets ; au format {@link WireFormat#V2},
+     * elle est décalée de 1 pour que l'absence de données soit encodée par 0, puis écrite en entier de taille variable.
+     *
+     * @param size La taille à écrire, ou -1.
+     * @throws IOException Si une erreur d'entrée/sortie se produit.
+     */
+    public void writeSize(int size) throws IOException {
+        if (this.wireFormat == WireFormat.V1) {
+            this.writeInt(size);
+        } else {
+            this.writeVarInt(size + 1);
+        }
     }
 
     /**
@@ -80,7 +157,7 @@ public class WriteHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit.
      */
     public void writeFloat(float f) throws IOException {
-        this.outputStream.write(ByteBuffer.allocate(4).putFloat(f).array());
+        this.writeScratch(Float.floatToRawIntBits(f), Integer.BYTES);
     }
 
     /**
@@ -90,7 +167,7 @@ public class WriteHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit.
      */
     public void writeDouble(double d) throws IOException {
-        this.outputStream.write(ByteBuffer.allocate(8).putDouble(d).array());
+        this.writeScratch(Double.doubleToRawLongBits(d), Long.BYTES);
     }
 
     /**
@@ -100,7 +177,7 @@ public class WriteHelper {
      * @throws IOException Si une erreur d'entrée/sortie se produit.
      */
     public void writeChar(char c) throws IOException {
-        this.outputStream.write(ByteBuffer.allocate(2).putChar(c).array());
+        this.writeScratch(c, Character.BYTES);
     }
 
     /**
@@ -132,10 +209,10 @@ public class WriteHelper {
      */
     public void writeSizedBooleanArray(boolean[] booleans) throws IOException {
         if (booleans == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(booleans.length);
+        this.writeSize(booleans.length);
         this.writeBooleanArray(booleans);
     }
 
@@ -158,10 +235,10 @@ public class WriteHelper {
      */
     public void writeSizedByteArray(byte[] bytes) throws IOException {
         if (bytes == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(bytes.length);
+        this.writeSize(bytes.length);
         this.writeByteArray(bytes);
     }
 
@@ -188,10 +265,10 @@ public class WriteHelper {
      */
     public void writeSizedShortArray(short[] shorts) throws IOException {
         if (shorts == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(shorts.length);
+        this.writeSize(shorts.length);
         this.writeShortArray(shorts);
     }
 
@@ -218,10 +295,10 @@ public class WriteHelper {
      */
     public void writeSizedIntArray(int[] ints) throws IOException {
         if (ints == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(ints.length);
+        this.writeSize(ints.length);
         this.writeIntArray(ints);
     }
 
@@ -248,10 +325,10 @@ public class WriteHelper {
      */
     public void writeSizedLongArray(long[] longs) throws IOException {
         if (longs == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(longs.length);
+        this.writeSize(longs.length);
         this.writeLongArray(longs);
     }
 
@@ -278,10 +355,10 @@ public class WriteHelper {
      */
     public void writeSizedFloatArray(float[] floats) throws IOException {
         if (floats == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(floats.length);
+        this.writeSize(floats.length);
         this.writeFloatArray(floats);
     }
 
@@ -308,10 +385,10 @@ public class WriteHelper {
      */
     public void writeSizedDoubleArray(double[] doubles) throws IOException {
         if (doubles == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(doubles.length);
+        this.writeSize(doubles.length);
         this.writeDoubleArray(doubles);
     }
 
@@ -338,10 +415,10 @@ public class WriteHelper {
      */
     public void writeSizedCharArray(char[] chars) throws IOException {
         if (chars == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(chars.length);
+        this.writeSize(chars.length);
         this.writeCharArray(chars);
     }
 
@@ -363,10 +440,10 @@ public class WriteHelper {
      */
     public void writeSerializableList(Collection<? extends ISerializable> serializables) throws IOException {
         if (serializables == null) {
-            this.writeInt(-1);
+            this.writeSize(-1);
             return;
         }
-        this.writeInt(serializables.size());
+        this.writeSize(serializables.size());
         for (ISerializable serializable : serializables) {
             serializable.toBytes(this);
         }
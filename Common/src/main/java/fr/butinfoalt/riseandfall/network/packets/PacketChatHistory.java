@@ -0,0 +1,118 @@
+package fr.butinfoalt.riseandfall.network.packets;
+
+import fr.butinfoalt.riseandfall.network.common.IPacket;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paquet envoyé au client avec une page de l'historique d'une conversation.
+ * Le serveur envoie la page la plus récente de chaque conversation lorsque le client se connecte, puis les pages plus
+ * anciennes à la demande du client avec {@link PacketRequestChatHistory}.
+ */
+public class PacketChatHistory implements IPacket {
+    /**
+     * Curseur indiquant qu'il n'y a pas de message plus ancien dans la conversation.
+     */
+    public static final long NO_OLDER_MESSAGES = -1;
+
+    /**
+     * Curseur indiquant que le client a déjà reçu les messages plus anciens que cette page et doit garder son curseur actuel.
+     */
+    public static final long KEEP_CURSOR = -2;
+
+    /**
+     * Message de l'historique d'une conversation.
+     *
+     * @param senderId  L'identifiant du joueur qui a envoyé le message, l'autre joueur de la conversation l'ayant reçu.
+     * @param message   Le contenu du message.
+     * @param timestamp L'horodatage du message, en millisecondes depuis l'époque Unix.
+     */
+    public record Entry(int senderId, String message, long timestamp) {
+    }
+
+    /**
+     * Identifiant de l'autre joueur de la conversation.
+     */
+    private final int otherPlayerId;
+    /**
+     * Messages de la page, du plus ancien au plus récent.
+     */
+    private final List<Entry> messages;
+    /**
+     * Curseur à renvoyer dans {@link PacketRequestChatHistory} pour obtenir la page précédente,
+     * ou {@link #NO_OLDER_MESSAGES} ou {@link #KEEP_CURSOR}.
+     */
+    private final long olderCursor;
+
+    /**
+     * Constructeur du paquet d'historique de conversation.
+     *
+     * @param otherPlayerId L'identifiant de l'autre joueur de la conversation.
+     * @param messages      Les messages de la page, du plus ancien au plus récent.
+     * @param olderCursor   Le curseur de la page précédente, ou {@link #NO_OLDER_MESSAGES} ou {@link #KEEP_CURSOR}.
+     */
+    public PacketChatHistory(int otherPlayerId, List<Entry> messages, long olderCursor) {
+        this.otherPlayerId = otherPlayerId;
+        this.messages = messages;
+        this.olderCursor = olderCursor;
+    }
+
+    /**
+     * Constructeur du paquet d'historique de conversation à partir d'un helper de lecture.
+     *
+     * @param readHelper Le helper de lecture pour lire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la désérialisation.
+     */
+    public PacketChatHistory(ReadHelper readHelper) throws IOException {
+        this.otherPlayerId = readHelper.readInt();
+        this.olderCursor = readHelper.readLong();
+        int size = readHelper.readSize();
+        this.messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            this.messages.add(new Entry(readHelper.readInt(), readHelper.readString(), readHelper.readLong()));
+        }
+    }
+
+    /**
+     * Sérialise le paquet en un flux de données.
+     *
+     * @param writeHelper Le helper d'écriture pour écrire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation.
+     */
+    @Override
+    public void toBytes(WriteHelper writeHelper) throws IOException {
+        writeHelper.writeInt(this.otherPlayerId);
+        writeHelper.writeLong(this.olderCursor);
+        writeHelper.writeSize(this.messages.size());
+        for (Entry entry : this.messages) {
+            writeHelper.writeInt(entry.senderId());
+            writeHelper.writeString(entry.message());
+            writeHelper.writeLong(entry.timestamp());
+        }
+    }
+
+    /**
+     * @return L'identifiant de l'autre joueur de la conversation.
+     */
+    public int getOtherPlayerId() {
+        return this.otherPlayerId;
+    }
+
+    /**
+     * @return Les messages de la page, du plus ancien au plus récent.
+     */
+    public List<Entry> getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * @return Le curseur de la page précédente, ou {@link #NO_OLDER_MESSAGES} ou {@link #KEEP_CURSOR}.
+     */
+    public long getOlderCursor() {
+        return this.olderCursor;
+    }
+}
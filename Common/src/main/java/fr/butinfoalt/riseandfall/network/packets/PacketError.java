@@ -65,6 +65,8 @@ public class PacketError implements IPacket {
 
         QUIT_NON_WAITING("Vous ne pouvez plus quitter une partie qui a déjà commencé."),
         QUIT_GAME_FAILED("Échec de la déconnexion de la partie, veuillez réessayer ou redémarrer le jeu si le problème persiste."),
+
+        HISTORY_GAME_NOT_FOUND("L'historique de cette partie n'est pas disponible."),
         ;
 
         /**
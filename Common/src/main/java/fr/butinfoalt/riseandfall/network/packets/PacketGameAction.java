@@ -70,6 +70,11 @@ public class PacketGameAction implements IPacket {
          * Envoyé au serveur pour passer au tour suivant.
          */
         NEXT_TURN,
+        /**
+         * Envoyé au serveur pour redemander toutes les données du joueur, lorsque la version des données
+         * du client ne correspond pas à celle d'une mise à jour partielle reçue.
+         */
+        RESYNC_GAME_DATA,
         ;
     }
 }
@@ -3,32 +3,37 @@ package fr.butinfoalt.riseandfall.network.packets;
 import fr.butinfoalt.riseandfall.util.Version;
 import fr.butinfoalt.riseandfall.network.common.IPacket;
 import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
 import fr.butinfoalt.riseandfall.network.common.WriteHelper;
 
 import java.io.IOException;
 
 /**
- * Packet qui contient les informations d'initialisation du client, c'est-à-dire sa version et le nom d'utilisateur.
+ * Packet qui contient les informations d'initialisation d'une extrémité de la connexion, c'est-à-dire sa version
+ * et le format d'encodage des paquets le plus récent qu'elle comprend.
+ * Le client l'envoie dès la réception des données du serveur, et le serveur lui répond avec le format retenu :
+ * chaque extrémité n'utilise ce format pour ses envois qu'après avoir reçu le paquet de l'autre.
+ * Un client qui n'envoie pas ce paquet continue de recevoir des paquets au format {@link WireFormat#V1}.
  */
 public class PacketInitInfo implements IPacket {
     /**
-     * Version du client
+     * Version de l'émetteur
      */
-    private final Version clientVersion;
+    private final Version version;
     /**
-     * Nom d'utilisateur du client
+     * Format d'encodage le plus récent compris par l'émetteur, ou format retenu dans la réponse du serveur
      */
-    private final String username;
+    private final WireFormat wireFormat;
 
     /**
      * Constructeur du paquet d'initialisation
      *
-     * @param clientVersion Version du client
-     * @param username      Nom d'utilisateur du client
+     * @param version    Version de l'émetteur
+     * @param wireFormat Format d'encodage le plus récent compris par l'émetteur
      */
-    public PacketInitInfo(Version clientVersion, String username) {
-        this.clientVersion = clientVersion;
-        this.username = username;
+    public PacketInitInfo(Version version, WireFormat wireFormat) {
+        this.version = version;
+        this.wireFormat = wireFormat;
     }
 
     /**
@@ -38,8 +43,8 @@ public class PacketInitInfo implements IPacket {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la désérialisation
      */
     public PacketInitInfo(ReadHelper readHelper) throws IOException {
-        this.clientVersion = new Version(readHelper);
-        this.username = readHelper.readString();
+        this.version = new Version(readHelper);
+        this.wireFormat = WireFormat.fromId(readHelper.readByte());
     }
 
     /**
@@ -50,25 +55,25 @@ public class PacketInitInfo implements IPacket {
      */
     @Override
     public void toBytes(WriteHelper writeHelper) throws IOException {
-        this.clientVersion.toBytes(writeHelper);
-        writeHelper.writeString(this.username);
+        this.version.toBytes(writeHelper);
+        writeHelper.writeByte((byte) this.wireFormat.ordinal());
     }
 
     /**
-     * Récupère la version du client
+     * Récupère la version de l'émetteur
      *
-     * @return La version du client
+     * @return La version de l'émetteur
      */
-    public Version getClientVersion() {
-        return this.clientVersion;
+    public Version getVersion() {
+        return this.version;
     }
 
     /**
-     * Récupère le nom d'utilisateur du client
+     * Récupère le format d'encodage annoncé par l'émetteur
      *
-     * @return Le nom d'utilisateur du client
+     * @return Le format d'encodage
      */
-    public String getUsername() {
-        return this.username;
+    public WireFormat getWireFormat() {
+        return this.wireFormat;
     }
 }
@@ -0,0 +1,70 @@
+package fr.butinfoalt.riseandfall.network.packets;
+
+import fr.butinfoalt.riseandfall.network.common.IPacket;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+
+import java.io.IOException;
+
+/**
+ * Paquet envoyé par le client pour demander la page de l'historique d'une conversation qui précède un curseur.
+ * Le serveur répond avec un {@link PacketChatHistory}.
+ */
+public class PacketRequestChatHistory implements IPacket {
+    /**
+     * Identifiant de l'autre joueur de la conversation.
+     */
+    private final int otherPlayerId;
+    /**
+     * Curseur reçu avec la dernière page de la conversation, seuls les messages plus anciens sont demandés.
+     */
+    private final long cursor;
+
+    /**
+     * Constructeur du paquet de demande d'historique.
+     *
+     * @param otherPlayerId L'identifiant de l'autre joueur de la conversation.
+     * @param cursor        Le curseur reçu avec la dernière page de la conversation.
+     */
+    public PacketRequestChatHistory(int otherPlayerId, long cursor) {
+        this.otherPlayerId = otherPlayerId;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Constructeur du paquet de demande d'historique à partir d'un helper de lecture.
+     *
+     * @param readHelper Le helper de lecture pour lire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la désérialisation.
+     */
+    public PacketRequestChatHistory(ReadHelper readHelper) throws IOException {
+        this.otherPlayerId = readHelper.readInt();
+        this.cursor = readHelper.readLong();
+    }
+
+    /**
+     * Sérialise le paquet en un flux de données.
+     *
+     * @param writeHelper Le helper d'écriture pour écrire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation.
+     */
+    @Override
+    public void toBytes(WriteHelper writeHelper) throws IOException {
+        writeHelper.writeInt(this.otherPlayerId);
+        writeHelper.writeLong(this.cursor);
+    }
+
+    /**
+     * @return L'identifiant de l'autre joueur de la conversation.
+     */
+    public int getOtherPlayerId() {
+        return this.otherPlayerId;
+    }
+
+    /**
+     * @return Le curseur reçu avec la dernière page de la conversation.
+     */
+    public long getCursor() {
+        return this.cursor;
+    }
+}
@@ -0,0 +1,56 @@
+package fr.butinfoalt.riseandfall.network.packets;
+
+import fr.butinfoalt.riseandfall.network.common.IPacket;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+
+import java.io.IOException;
+
+/**
+ * Paquet envoyé par le client pour consulter l'historique d'une partie archivée à laquelle il a participé.
+ * Le serveur répond avec la partie dans son état final, comme pour une partie rejointe, suivie des joueurs et des
+ * résultats de tous ses tours, ou avec une erreur si la partie n'est pas trouvée.
+ */
+public class PacketRequestGameHistory implements IPacket {
+    /**
+     * Identifiant de la partie archivée.
+     */
+    private final int gameId;
+
+    /**
+     * Constructeur du paquet de demande d'historique de partie.
+     *
+     * @param gameId L'identifiant de la partie archivée.
+     */
+    public PacketRequestGameHistory(int gameId) {
+        this.gameId = gameId;
+    }
+
+    /**
+     * Constructeur du paquet de demande d'historique de partie à partir d'un helper de lecture.
+     *
+     * @param readHelper Le helper de lecture pour lire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la désérialisation.
+     */
+    public PacketRequestGameHistory(ReadHelper readHelper) throws IOException {
+        this.gameId = readHelper.readInt();
+    }
+
+    /**
+     * Sérialise le paquet en un flux de données.
+     *
+     * @param writeHelper Le helper d'écriture pour écrire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation.
+     */
+    @Override
+    public void toBytes(WriteHelper writeHelper) throws IOException {
+        writeHelper.writeInt(this.gameId);
+    }
+
+    /**
+     * @return L'identifiant de la partie archivée.
+     */
+    public int getGameId() {
+        return this.gameId;
+    }
+}
@@ -0,0 +1,104 @@
+package fr.butinfoalt.riseandfall.network.packets;
+
+import fr.butinfoalt.riseandfall.network.common.IPacket;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Paquet envoyé par le client qui se reconnecte au serveur, avant son token d'authentification,
+ * pour indiquer les données de la partie qu'il a déjà reçues.
+ * Le serveur n'envoie alors que les résultats des tours et les messages de chat manquants,
+ * au lieu de rejouer tout l'historique de la partie.
+ */
+public class PacketResumeSession implements IPacket {
+    /**
+     * Identifiant de la partie dont le client a conservé les données.
+     */
+    private final int gameId;
+    /**
+     * Dernier tour dont le client a reçu les résultats, ou 0 s'il n'en a reçu aucun.
+     */
+    private final int lastResultsTurn;
+    /**
+     * Date du dernier message reçu dans chaque conversation, associée à l'identifiant de l'autre joueur.
+     */
+    private final Map<Integer, Long> lastChatTimestamps;
+
+    /**
+     * Constructeur du paquet de reprise de session.
+     *
+     * @param gameId             L'identifiant de la partie dont le client a conservé les données.
+     * @param lastResultsTurn    Le dernier tour dont le client a reçu les résultats, ou 0 s'il n'en a reçu aucun.
+     * @param lastChatTimestamps La date du dernier message reçu dans chaque conversation, associée à l'identifiant de l'autre joueur.
+     */
+    public PacketResumeSession(int gameId, int lastResultsTurn, Map<Integer, Long> lastChatTimestamps) {
+        this.gameId = gameId;
+        this.lastResultsTurn = lastResultsTurn;
+        this.lastChatTimestamps = lastChatTimestamps;
+    }
+
+    /**
+     * Constructeur du paquet de reprise de session à partir d'un helper de lecture.
+     *
+     * @param readHelper Le helper de lecture pour lire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la désérialisation.
+     */
+    public PacketResumeSession(ReadHelper readHelper) throws IOException {
+        this.gameId = readHelper.readInt();
+        this.lastResultsTurn = readHelper.readInt();
+        int size = readHelper.readSize();
+        this.lastChatTimestamps = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            this.lastChatTimestamps.put(readHelper.readInt(), readHelper.readLong());
+        }
+    }
+
+    /**
+     * Sérialise le paquet en un flux de données.
+     *
+     * @param writeHelper Le helper d'écriture pour écrire les données du paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation.
+     */
+    @Override
+    public void toBytes(WriteHelper writeHelper) throws IOException {
+        writeHelper.writeInt(this.gameId);
+        writeHelper.writeInt(this.lastResultsTurn);
+        writeHelper.writeSize(this.lastChatTimestamps.size());
+        for (Map.Entry<Integer, Long> entry : this.lastChatTimestamps.entrySet()) {
+            writeHelper.writeInt(entry.getKey());
+            writeHelper.writeLong(entry.getValue());
+        }
+    }
+
+    /**
+     * Récupère l'identifiant de la partie dont le client a conservé les données.
+     *
+     * @return L'identifiant de la partie.
+     */
+    public int getGameId() {
+        return this.gameId;
+    }
+
+    /**
+     * Récupère le dernier tour dont le client a reçu les résultats.
+     *
+     * @return Le dernier tour reçu, ou 0 si le client n'a reçu aucun résultat.
+     */
+    public int getLastResultsTurn() {
+        return this.lastResultsTurn;
+    }
+
+    /**
+     * Récupère la date du dernier message reçu par le client dans sa conversation avec un autre joueur.
+     *
+     * @param otherPlayerId L'identifiant de l'autre joueur de la conversation.
+     * @return La date du dernier message reçu en millisecondes, ou -1 si le client n'a aucun message de cette conversation.
+     */
+    public long getLastChatTimestamp(int otherPlayerId) {
+        return this.lastChatTimestamps.getOrDefault(otherPlayerId, -1L);
+    }
+}
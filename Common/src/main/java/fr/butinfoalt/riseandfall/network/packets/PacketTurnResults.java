@@ -53,7 +53,7 @@ public class PacketTurnResults implements IPacket {
     public PacketTurnResults(ReadHelper readHelper, DataDeserializer dataDeserializer) throws IOException {
         this.turn = readHelper.readInt();
         this.attackResults = readHelper.readSerializableList(AttackResult::new, dataDeserializer);
-        int eliminatedPlayersCount = readHelper.readInt();
+        int eliminatedPlayersCount = readHelper.readSize();
         this.eliminatedPlayers = new ArrayList<>(eliminatedPlayersCount);
         for (int i = 0; i < eliminatedPlayersCount; i++) {
             this.eliminatedPlayers.add(dataDeserializer.getPlayerById(readHelper.readInt()));
@@ -70,7 +70,7 @@ public class PacketTurnResults implements IPacket {
     public void toBytes(WriteHelper writeHelper) throws IOException {
         writeHelper.writeInt(this.turn);
         writeHelper.writeSerializableList(this.attackResults);
-        writeHelper.writeInt(this.eliminatedPlayers.size());
+        writeHelper.writeSize(this.eliminatedPlayers.size());
         for (Player player : this.eliminatedPlayers) {
             writeHelper.writeInt(player.getId());
         }
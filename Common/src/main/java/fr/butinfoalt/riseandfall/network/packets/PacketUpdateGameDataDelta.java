@@ -0,0 +1,73 @@
+package fr.butinfoalt.riseandfall.network.packets;
+
+import fr.butinfoalt.riseandfall.gamelogic.Game;
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
+import fr.butinfoalt.riseandfall.network.common.IPacket;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+
+import java.io.IOException;
+
+/**
+ * Paquet envoyé au client pour mettre à jour les données de la partie et uniquement les données modifiées du joueur.
+ * Chaque état des données du joueur envoyé porte un numéro de version : le paquet contient la version sur laquelle
+ * les modifications s'appliquent et la version obtenue. Un client dont la version ne correspond pas ignore les
+ * modifications et demande un envoi complet avec {@link PacketGameAction.Action#RESYNC_GAME_DATA}.
+ * Ce paquet n'est jamais désérialisé en une instance de cette classe, mais directement dans l'objet joueur.
+ */
+public class PacketUpdateGameDataDelta implements IPacket {
+    /**
+     * Version de base indiquant que le paquet contient toutes les données du joueur et s'applique quelle que soit la version du client.
+     */
+    public static final int FULL_DATA_BASE_VERSION = -1;
+
+    private final Game game;
+    private final int baseVersion;
+    private final int version;
+    private final PlayerDataSnapshot previous;
+    private final PlayerDataSnapshot current;
+    private final int changedFields;
+
+    /**
+     * Constructeur du paquet de mise à jour partielle des données du joueur.
+     *
+     * @param game        La partie à mettre à jour.
+     * @param baseVersion La version des données sur laquelle s'appliquent les modifications.
+     * @param version     La version des données obtenue après application des modifications.
+     * @param previous    Les données du joueur dans la version de base.
+     * @param current     Les données du joueur dans la nouvelle version.
+     */
+    public PacketUpdateGameDataDelta(Game game, int baseVersion, int version, PlayerDataSnapshot previous, PlayerDataSnapshot current) {
+        this.game = game;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.previous = previous;
+        this.current = current;
+        this.changedFields = current.getChangedFields(previous);
+    }
+
+    /**
+     * Constructeur du paquet contenant toutes les données du joueur.
+     *
+     * @param game    La partie à mettre à jour.
+     * @param version La version des données envoyées.
+     * @param current Les données du joueur.
+     */
+    public PacketUpdateGameDataDelta(Game game, int version, PlayerDataSnapshot current) {
+        this(game, FULL_DATA_BASE_VERSION, version, null, current);
+    }
+
+    /**
+     * Sérialise le paquet en un flux de données.
+     *
+     * @param writeHelper Le helper d'écriture qui fournit les méthodes pour écrire les données.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la sérialisation.
+     */
+    @Override
+    public void toBytes(WriteHelper writeHelper) throws IOException {
+        this.game.serializeModifiableData(writeHelper);
+        writeHelper.writeInt(this.baseVersion);
+        writeHelper.writeInt(this.version);
+        writeHelper.writeByte((byte) this.changedFields);
+        this.current.serializeChanges(this.previous, this.changedFields, writeHelper);
+    }
+}
@@ -5,9 +5,13 @@ import fr.butinfoalt.riseandfall.util.logging.LogManager;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -19,6 +23,10 @@ import java.util.Set;
  * Elle permet également d'enregistrer des paquets à envoyer et à recevoir.
  * Elle étend la classe Thread pour exécuter le serveur dans un thread séparé.
  * </p>
+ * <p>
+ * Selon le {@link TransportMode} choisi au démarrage, chaque client est lu par un thread dédié
+ * ou par l'une des boucles d'entrées/sorties non bloquantes partagées par le serveur.
+ * </p>
  */
 public class BaseSocketServer extends Thread implements Closeable {
     /**
@@ -39,16 +47,69 @@ public class BaseSocketServer extends Thread implements Closeable {
      */
     private final PacketRegistry packetRegistry = new PacketRegistry();
 
+    /**
+     * Mode de transport utilisé pour gérer les connexions des clients.
+     */
+    private final TransportMode transportMode;
+
+    /**
+     * Boucles d'entrées/sorties non bloquantes, vide si le mode de transport est {@link TransportMode#THREAD_PER_CONNECTION}.
+     */
+    private final NioEventLoop[] eventLoops;
+
+    /**
+     * Index de la prochaine boucle d'entrées/sorties à laquelle attribuer un client.
+     */
+    private int nextEventLoop = 0;
+
+    /**
+     * Taille maximale du contenu d'une trame, en octets, appliquée aux connexions des clients.
+     */
+    private int maxFrameSize = SocketWrapper.DEFAULT_MAX_FRAME_SIZE;
+
+    /**
+     * Taille cumulée maximale des trames en attente d'envoi sur une connexion, en octets.
+     */
+    private int outboundHighWaterMark = SocketWrapper.DEFAULT_OUTBOUND_HIGH_WATER_MARK;
+
     /**
      * Constructeur de la classe BaseSocketServer.
-     * Initialise le serveur socket sur le port spécifié.
+     * Initialise le serveur socket sur le port spécifié, avec un thread de lecture par client.
      *
      * @param port Le port sur lequel le serveur écoute les connexions des clients.
      * @throws IOException Si une erreur se produit lors de la création du serveur socket.
      */
     public BaseSocketServer(int port) throws IOException {
+        this(port, TransportMode.THREAD_PER_CONNECTION, 0);
+    }
+
+    /**
+     * Constructeur de la classe BaseSocketServer.
+     * Initialise le serveur socket sur le port spécifié avec le mode de transport choisi.
+     *
+     * @param port          Le port sur lequel le serveur écoute les connexions des clients.
+     * @param transportMode Le mode de transport utilisé pour gérer les connexions des clients.
+     * @param ioThreads     Le nombre de boucles d'entrées/sorties à démarrer en mode {@link TransportMode#NIO_SELECTOR}.
+     * @throws IOException Si une erreur se produit lors de la création du serveur socket.
+     */
+    public BaseSocketServer(int port, TransportMode transportMode, int ioThreads) throws IOException {
         super("Socket Server Thread");
-        this.server = new ServerSocket(port, 5);
+        this.transportMode = transportMode;
+        if (transportMode == TransportMode.NIO_SELECTOR) {
+            if (ioThreads <= 0) {
+                throw new IllegalArgumentException("At least one IO thread is required, got " + ioThreads);
+            }
+            // Le canal reste en mode bloquant pour l'acceptation, seules les connexions clientes sont non bloquantes
+            this.server = ServerSocketChannel.open().bind(new InetSocketAddress(port), 5).socket();
+            this.eventLoops = new NioEventLoop[ioThreads];
+            for (int i = 0; i < ioThreads; i++) {
+                this.eventLoops[i] = new NioEventLoop(i);
+                this.eventLoops[i].start();
+            }
+        } else {
+            this.server = new ServerSocket(port, 5);
+            this.eventLoops = new NioEventLoop[0];
+        }
     }
 
     /**
@@ -99,6 +160,53 @@ public class BaseSocketServer extends Thread implements Closeable {
         this.packetRegistry.registerSendAndReceivePacket(packetId, packetClass, packetHandler, packetDecoder);
     }
 
+    /**
+     * Définit la taille maximale du contenu d'une trame pour les prochaines connexions.
+     * Un paquet plus grand ne pourra pas être envoyé, et un client annonçant une trame plus grande sera déconnecté.
+     *
+     * @param maxFrameSize La taille maximale, en octets.
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("Maximum frame size must be positive, got " + maxFrameSize);
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Définit la taille cumulée maximale des trames en attente d'envoi sur une connexion.
+     * Un client dont la file d'envoi dépasse cette taille est considéré comme ne lisant plus ses données et est déconnecté.
+     * Prise en compte pour les connexions acceptées après l'appel.
+     *
+     * @param outboundHighWaterMark La taille maximale, en octets.
+     */
+    public void setOutboundHighWaterMark(int outboundHighWaterMark) {
+        if (outboundHighWaterMark <= 0) {
+            throw new IllegalArgumentException("Outbound high-water mark must be positive, got " + outboundHighWaterMark);
+        }
+        this.outboundHighWaterMark = outboundHighWaterMark;
+    }
+
+    /**
+     * Prépare un paquet pour l'envoyer à plusieurs clients avec {@link SocketWrapper#sendPacket(EncodedPacket)},
+     * en ne le sérialisant qu'une seule fois par format d'encodage utilisé par ces clients.
+     *
+     * @param packet Le paquet à envoyer.
+     * @return Le paquet encodé, à libérer avec {@link EncodedPacket#release()} une fois tous les envois effectués.
+     */
+    public EncodedPacket encodePacket(IPacket packet) {
+        return new EncodedPacket(this.packetRegistry, this.maxFrameSize, packet);
+    }
+
+    /**
+     * Récupère le mode de transport utilisé par le serveur.
+     *
+     * @return Le mode de transport.
+     */
+    public TransportMode getTransportMode() {
+        return this.transportMode;
+    }
+
     /**
      * Méthode principale exécutée par le thread du serveur.
      * Accepte les connexions des clients et crée un SocketWrapper pour chaque client.
@@ -107,17 +215,31 @@ public class BaseSocketServer extends Thread implements Closeable {
         try {
             do {
                 Socket clientSocket = server.accept();
-                SocketWrapper socketWrapper = new SocketWrapper(clientSocket, this.packetRegistry) {
-                    @Override
-                    protected void onDisconnected(SocketWrapper socketWrapper) {
-                        BaseSocketServer.this.onClientDisconnected(socketWrapper);
-                    }
-                };
-                this.onClientConnected(socketWrapper);
+                if (this.transportMode == TransportMode.NIO_SELECTOR) {
+                    NioEventLoop eventLoop = this.eventLoops[this.nextEventLoop];
+                    this.nextEventLoop = (this.nextEventLoop + 1) % this.eventLoops.length;
+                    ChannelSocketWrapper socketWrapper = new ChannelSocketWrapper(clientSocket.getChannel(), this.packetRegistry, this.maxFrameSize, this.outboundHighWaterMark, eventLoop) {
+                        @Override
+                        protected void onDisconnected(SocketWrapper socketWrapper) {
+                            BaseSocketServer.this.onClientDisconnected(socketWrapper);
+                        }
+                    };
+                    this.onClientConnected(socketWrapper);
+                    eventLoop.register(socketWrapper);
+                } else {
+                    SocketWrapper socketWrapper = new BlockingSocketWrapper(clientSocket, this.packetRegistry, this.maxFrameSize, this.outboundHighWaterMark) {
+                        @Override
+                        protected void onDisconnected(SocketWrapper socketWrapper) {
+                            BaseSocketServer.this.onClientDisconnected(socketWrapper);
+                        }
+                    };
+                    this.onClientConnected(socketWrapper);
+                }
             } while (!this.isInterrupted());
             this.close();
         } catch (IOException e) {
-            if (!(e instanceof SocketException && "Socket closed".equals(e.getMessage()))) {
+            // En mode NIO, la fermeture du serveur pendant l'acceptation lève une ClosedChannelException
+            if (!(e instanceof ClosedChannelException || e instanceof SocketException && "Socket closed".equals(e.getMessage()))) {
                 throw new RuntimeException(e);
             }
         }
@@ -132,7 +254,8 @@ public class BaseSocketServer extends Thread implements Closeable {
     @Override
     public void close() throws IOException {
         this.server.close();
-        for (SocketWrapper socketWrapper : this.connectedClients) {
+        // Copie de l'ensemble car un client peut être retiré dès sa fermeture
+        for (SocketWrapper socketWrapper : this.getConnectedClientsSnapshot()) {
             socketWrapper.close();
         }
         try {
@@ -144,6 +267,9 @@ public class BaseSocketServer extends Thread implements Closeable {
         } catch (InterruptedException e) {
             LogManager.logError("Interrompu lors de la fermeture du serveur", e);
         }
+        for (NioEventLoop eventLoop : this.eventLoops) {
+            eventLoop.close();
+        }
     }
 
     /**
@@ -164,6 +290,16 @@ public class BaseSocketServer extends Thread implements Closeable {
         this.connectedClients.remove(client);
     }
 
+    /**
+     * Indique si un client est encore connecté au serveur.
+     *
+     * @param client Le wrapper de socket du client.
+     * @return true si le client est connecté, false s'il s'est déconnecté.
+     */
+    public synchronized boolean isConnected(SocketWrapper client) {
+        return this.connectedClients.contains(client);
+    }
+
     /**
      * Récupère l'ensemble des clients connectés au serveur.
      *
@@ -172,4 +308,13 @@ public class BaseSocketServer extends Thread implements Closeable {
     public Set<SocketWrapper> getConnectedClients() {
         return Collections.unmodifiableSet(this.connectedClients);
     }
+
+    /**
+     * Récupère une copie de la liste des clients connectés au serveur.
+     *
+     * @return Une liste contenant les clients connectés au moment de l'appel.
+     */
+    private synchronized ArrayList<SocketWrapper> getConnectedClientsSnapshot() {
+        return new ArrayList<>(this.connectedClients);
+    }
 }
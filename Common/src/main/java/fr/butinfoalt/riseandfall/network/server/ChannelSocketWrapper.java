@@ -0,0 +1,369 @@
+package fr.butinfoalt.riseandfall.network.server;
+
+import fr.butinfoalt.riseandfall.network.common.FrameBuffer;
+import fr.butinfoalt.riseandfall.network.common.OutboundQueue;
+import fr.butinfoalt.riseandfall.network.common.PacketRegistry;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.SocketWrapper;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Wrapper de connexion utilisant un canal non bloquant géré par une {@link NioEventLoop}.
+ * Les trames reçues sont accumulées dans un tampon et décodées dès qu'elles sont complètes,
+ * sans qu'aucun thread ne soit dédié à la connexion.
+ * Les paquets décodés sont traités hors de la boucle, par un thread virtuel démarré à la réception d'un paquet lorsque
+ * la connexion n'en traite aucun, qui les traite dans leur ordre de réception et s'arrête lorsqu'il n'en reste plus.
+ * Les trames en attente d'envoi sont écrites par la boucle, en une seule écriture groupée lorsque c'est possible.
+ */
+public abstract class ChannelSocketWrapper extends SocketWrapper {
+    /**
+     * Taille initiale du tampon de lecture, agrandi si une trame plus grande est reçue.
+     */
+    private static final int INITIAL_READ_BUFFER_SIZE = 8192;
+
+    /**
+     * Nombre maximal de trames transmises au canal en une seule écriture groupée.
+     */
+    private static final int MAX_WRITE_BATCH = 64;
+
+    /**
+     * Nombre maximal de paquets reçus en attente de traitement.
+     * Un client qui envoie des paquets plus vite qu'ils ne sont traités est déconnecté au-delà de ce nombre.
+     */
+    private static final int MAX_PENDING_PACKETS = 1024;
+
+    /**
+     * Canal de la connexion, configuré en mode non bloquant.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Boucle d'entrées/sorties qui gère cette connexion.
+     */
+    private final NioEventLoop eventLoop;
+
+    /**
+     * Verrou libéré lorsque la connexion est fermée.
+     */
+    private final CountDownLatch closeLatch = new CountDownLatch(1);
+
+    /**
+     * Tampon de lecture contenant les octets reçus qui ne forment pas encore une trame complète.
+     * Utilisé uniquement par le thread de la boucle d'entrées/sorties.
+     */
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+
+    /**
+     * Helper réutilisé pour décoder les trames directement depuis le tampon de lecture, sans copie.
+     */
+    private final ReadHelper frameReader = new ReadHelper();
+
+    /**
+     * Trames en cours d'écriture, réutilisé à chaque écriture groupée.
+     * Utilisé uniquement par le thread de la boucle d'entrées/sorties.
+     */
+    private final FrameBuffer[] writeBatch = new FrameBuffer[MAX_WRITE_BATCH];
+
+    /**
+     * Vues sur les trames en cours d'écriture, transmises au canal.
+     * Utilisé uniquement par le thread de la boucle d'entrées/sorties.
+     */
+    private final ByteBuffer[] writeViews = new ByteBuffer[MAX_WRITE_BATCH];
+
+    /**
+     * Nombre d'octets déjà écrits de la trame en tête de file, lorsqu'elle n'a été que partiellement envoyée.
+     * Conservé par connexion, puisque la même trame peut être partagée avec d'autres connexions.
+     */
+    private int headFrameOffset = 0;
+
+    /**
+     * Traitements des paquets reçus qui n'ont pas encore été exécutés, dans leur ordre de réception.
+     */
+    private final ArrayDeque<Runnable> pendingPackets = new ArrayDeque<>();
+
+    /**
+     * Indique qu'un thread est chargé de traiter les paquets en attente.
+     */
+    private boolean processingPackets = false;
+
+    /**
+     * Clé de sélection de la connexion, null tant que la connexion n'est pas enregistrée auprès de la boucle.
+     */
+    private SelectionKey selectionKey;
+
+    /**
+     * Indique si la connexion a été fermée.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructeur de la classe ChannelSocketWrapper.
+     * La connexion doit ensuite être enregistrée auprès de la boucle avec {@link NioEventLoop#register(ChannelSocketWrapper)}.
+     *
+     * @param channel               Le canal de la connexion.
+     * @param packetRegistry        Le registre des paquets.
+     * @param maxFrameSize          La taille maximale du contenu d'une trame, en octets.
+     * @param outboundHighWaterMark La taille cumulée maximale des trames en attente d'envoi, en octets.
+     * @param eventLoop             La boucle d'entrées/sorties qui gère cette connexion.
+     * @throws IOException Si une erreur se produit lors de la configuration du canal.
+     */
+    public ChannelSocketWrapper(SocketChannel channel, PacketRegistry packetRegistry, int maxFrameSize, int outboundHighWaterMark, NioEventLoop eventLoop) throws IOException {
+        super(packetRegistry, maxFrameSize, outboundHighWaterMark);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.channel.configureBlocking(false);
+    }
+
+    @Override
+    protected SocketAddress getRemoteAddress() {
+        return this.channel.socket().getRemoteSocketAddress();
+    }
+
+    /**
+     * Récupère le canal de la connexion.
+     *
+     * @return Le canal de la connexion.
+     */
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Appelée par la boucle une fois la connexion enregistrée auprès du sélecteur.
+     * Active l'intérêt en écriture si des trames ont été mises en attente avant l'enregistrement.
+     *
+     * @param key La clé de sélection de la connexion.
+     */
+    void onRegistered(SelectionKey key) {
+        OutboundQueue outboundQueue = this.getOutboundQueue();
+        synchronized (outboundQueue) {
+            this.selectionKey = key;
+            if (!outboundQueue.isEmpty()) {
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    /**
+     * Traite les événements signalés par le sélecteur pour cette connexion.
+     * Toute erreur entraîne la fermeture de la connexion sans interrompre la boucle.
+     *
+     * @param key La clé de sélection de la connexion.
+     */
+    void processSelectedKey(SelectionKey key) {
+        try {
+            if (key.isValid() && key.isWritable()) {
+                this.onWritable();
+            }
+            if (key.isValid() && key.isReadable()) {
+                this.onReadable();
+            }
+        } catch (IOException e) {
+            if (!this.isDisconnectionException(e)) {
+                LogManager.logError("Erreur réseau avec le client %s".formatted(this.getName()), e);
+            }
+            this.closeQuietly();
+        } catch (RuntimeException e) {
+            LogManager.logError("Erreur lors du traitement d'un paquet de %s".formatted(this.getName()), e);
+            this.closeQuietly();
+        }
+    }
+
+    /**
+     * Lit les octets disponibles sur le canal et traite toutes les trames complètes reçues.
+     *
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture ou du traitement d'un paquet.
+     */
+    private void onReadable() throws IOException {
+        if (this.channel.read(this.readBuffer) == -1) {
+            this.close();
+            return;
+        }
+
+        this.readBuffer.flip();
+        int requiredCapacity = 0;
+        while (this.readBuffer.remaining() >= FRAME_HEADER_SIZE) {
+            int frameLength = this.readBuffer.getInt(this.readBuffer.position());
+            this.checkFrameLength(frameLength);
+            if (this.readBuffer.remaining() < FRAME_HEADER_SIZE + frameLength) {
+                requiredCapacity = FRAME_HEADER_SIZE + frameLength;
+                break;
+            }
+            int frameStart = this.readBuffer.position() + FRAME_HEADER_SIZE;
+            this.readBuffer.position(frameStart + frameLength);
+            this.frameReader.reset(this.readBuffer.array(), this.readBuffer.arrayOffset() + frameStart, frameLength);
+            this.handleFrame(this.frameReader);
+            if (this.isClosed()) {
+                return;
+            }
+        }
+        this.readBuffer.compact();
+
+        // Agrandissement du tampon si la trame en cours de réception ne peut pas y tenir entièrement
+        if (requiredCapacity > this.readBuffer.capacity()) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(requiredCapacity);
+            this.readBuffer.flip();
+            newBuffer.put(this.readBuffer);
+            this.readBuffer = newBuffer;
+        }
+    }
+
+    /**
+     * Confie le traitement d'un paquet décodé au thread qui traite les paquets de la connexion, pour que la boucle ne
+     * soit jamais bloquée par un traitement. Le thread est démarré s'il n'y en a pas déjà un.
+     * La connexion est fermée si trop de paquets sont déjà en attente.
+     *
+     * @param task Le traitement du paquet.
+     */
+    @Override
+    protected void dispatchPacket(Runnable task) {
+        boolean overloaded;
+        synchronized (this.pendingPackets) {
+            overloaded = this.pendingPackets.size() >= MAX_PENDING_PACKETS;
+            if (!overloaded) {
+                this.pendingPackets.addLast(task);
+                if (this.processingPackets) {
+                    return;
+                }
+                this.processingPackets = true;
+            }
+        }
+        if (overloaded) {
+            LogManager.logMessage("Client %s sends packets faster than they are handled, closing the connection".formatted(this.getName()));
+            this.closeQuietly();
+            return;
+        }
+        Thread.ofVirtual().name("Socket Wrapper Packet Thread").start(this::processPendingPackets);
+    }
+
+    /**
+     * Traite les paquets en attente jusqu'à ce qu'il n'en reste plus.
+     * Une erreur pendant le traitement d'un paquet ferme la connexion, comme une erreur de décodage.
+     */
+    private void processPendingPackets() {
+        while (true) {
+            Runnable task;
+            synchronized (this.pendingPackets) {
+                task = this.pendingPackets.pollFirst();
+                if (task == null) {
+                    this.processingPackets = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LogManager.logError("Erreur lors du traitement d'un paquet de %s".formatted(this.getName()), e);
+                this.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Écrit les trames en attente dès que le canal est disponible en écriture.
+     * Les trames sont transmises au canal en une seule écriture groupée, et celle qui n'a été que partiellement
+     * écrite reste en tête de file : la position atteinte est conservée pour la prochaine tentative.
+     *
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de l'écriture.
+     */
+    private void onWritable() throws IOException {
+        OutboundQueue outboundQueue = this.getOutboundQueue();
+        int count = outboundQueue.peek(this.writeBatch);
+        for (int i = 0; i < count; i++) {
+            this.writeViews[i] = this.writeBatch[i].asByteBuffer(i == 0 ? this.headFrameOffset : 0);
+        }
+        this.channel.write(this.writeViews, 0, count);
+
+        int written = 0;
+        while (written < count && !this.writeViews[written].hasRemaining()) {
+            written++;
+        }
+        this.headFrameOffset = written < count ? this.writeViews[written].position() : 0;
+        // Le retrait et la mise à jour de l'intérêt en écriture sont atomiques vis-à-vis de onOutboundFramesQueued
+        synchronized (outboundQueue) {
+            if (outboundQueue.remove(written) && this.selectionKey.isValid()) {
+                this.selectionKey.interestOpsAnd(~SelectionKey.OP_WRITE);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (i < written) {
+                this.releaseFrame(this.writeBatch[i]);
+            }
+            this.writeBatch[i] = null;
+            this.writeViews[i] = null;
+        }
+    }
+
+    /**
+     * Active l'intérêt en écriture de la connexion et réveille la boucle pour qu'elle envoie les trames en attente.
+     */
+    @Override
+    protected void onOutboundFramesQueued() {
+        OutboundQueue outboundQueue = this.getOutboundQueue();
+        synchronized (outboundQueue) {
+            if (this.selectionKey == null || !this.selectionKey.isValid() || outboundQueue.isEmpty()) {
+                return;
+            }
+            this.selectionKey.interestOpsOr(SelectionKey.OP_WRITE);
+        }
+        this.eventLoop.wakeup();
+    }
+
+    /**
+     * Indique si la connexion a été fermée.
+     *
+     * @return true si la connexion est fermée, false sinon.
+     */
+    private synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void waitForSocketClose() throws InterruptedException {
+        this.closeLatch.await();
+    }
+
+    /**
+     * Ferme la connexion et notifie sa déconnexion.
+     * Les appels suivants n'ont aucun effet.
+     *
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la fermeture du canal.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        synchronized (this.pendingPackets) {
+            this.pendingPackets.clear();
+        }
+        this.getOutboundQueue().close();
+        try {
+            this.channel.close();
+        } finally {
+            this.onDisconnected(this);
+            this.closeLatch.countDown();
+        }
+    }
+
+    /**
+     * Ferme la connexion en ignorant les erreurs éventuelles.
+     */
+    void closeQuietly() {
+        try {
+            this.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
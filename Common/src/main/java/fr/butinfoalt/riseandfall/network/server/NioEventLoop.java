@@ -0,0 +1,119 @@
+package fr.butinfoalt.riseandfall.network.server;
+
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Boucle d'entrées/sorties non bloquante gérant un ensemble de connexions clientes.
+ * Chaque boucle possède son propre {@link Selector} et s'exécute dans un thread dédié.
+ */
+public class NioEventLoop extends Thread implements Closeable {
+    /**
+     * Sélecteur utilisé pour attendre les événements de lecture et d'écriture des connexions.
+     */
+    private final Selector selector;
+
+    /**
+     * Connexions en attente d'enregistrement auprès du sélecteur.
+     * L'enregistrement doit être effectué depuis le thread de la boucle pour ne pas bloquer sur le sélecteur.
+     */
+    private final ConcurrentLinkedQueue<ChannelSocketWrapper> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Indique si la boucle doit continuer à s'exécuter.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructeur de la boucle d'entrées/sorties.
+     *
+     * @param index Le numéro de la boucle, utilisé pour nommer le thread.
+     * @throws IOException Si une erreur se produit lors de l'ouverture du sélecteur.
+     */
+    public NioEventLoop(int index) throws IOException {
+        super("Socket Server IO Thread #" + index);
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Ajoute une connexion à cette boucle.
+     * L'enregistrement effectif sera réalisé par le thread de la boucle.
+     *
+     * @param socketWrapper La connexion à gérer.
+     */
+    public void register(ChannelSocketWrapper socketWrapper) {
+        this.pendingRegistrations.add(socketWrapper);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Réveille la boucle pour qu'elle prenne en compte un changement d'intérêt d'une connexion.
+     */
+    void wakeup() {
+        this.selector.wakeup();
+    }
+
+    /**
+     * Méthode principale exécutée par le thread de la boucle.
+     * Attend les événements des connexions et les traite jusqu'à la fermeture de la boucle.
+     */
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                this.selector.select();
+            } catch (IOException e) {
+                LogManager.logError("Erreur lors de l'attente des événements réseau", e);
+                continue;
+            }
+            this.registerPendingConnections();
+
+            Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                ((ChannelSocketWrapper) key.attachment()).processSelectedKey(key);
+            }
+        }
+    }
+
+    /**
+     * Enregistre auprès du sélecteur les connexions ajoutées depuis la dernière itération.
+     */
+    private void registerPendingConnections() {
+        ChannelSocketWrapper socketWrapper;
+        while ((socketWrapper = this.pendingRegistrations.poll()) != null) {
+            try {
+                SelectionKey key = socketWrapper.getChannel().register(this.selector, SelectionKey.OP_READ, socketWrapper);
+                socketWrapper.onRegistered(key);
+            } catch (ClosedChannelException e) {
+                socketWrapper.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Arrête la boucle et ferme son sélecteur.
+     * Les connexions gérées par cette boucle doivent avoir été fermées au préalable.
+     *
+     * @throws IOException Si une erreur se produit lors de la fermeture du sélecteur.
+     */
+    @Override
+    public void close() throws IOException {
+        this.running = false;
+        this.selector.wakeup();
+        try {
+            this.join();
+        } catch (InterruptedException e) {
+            LogManager.logError("Interrompu lors de l'arrêt de la boucle réseau", e);
+        }
+        this.selector.close();
+    }
+}
@@ -0,0 +1,34 @@
+package fr.butinfoalt.riseandfall.network.server;
+
+/**
+ * Mode de transport utilisé par le serveur pour gérer les connexions des clients.
+ */
+public enum TransportMode {
+    /**
+     * Un thread de lecture bloquant est démarré pour chaque client connecté.
+     */
+    THREAD_PER_CONNECTION,
+    /**
+     * Les connexions sont multiplexées sur un petit nombre de boucles d'entrées/sorties non bloquantes,
+     * chacune basée sur un {@link java.nio.channels.Selector}.
+     */
+    NIO_SELECTOR;
+
+    /**
+     * Récupère le mode de transport correspondant à un nom de configuration.
+     * Les valeurs acceptées sont "thread" et "nio", sans tenir compte de la casse.
+     *
+     * @param name Le nom du mode de transport, ou null pour le mode par défaut.
+     * @return Le mode de transport correspondant.
+     * @throws IllegalArgumentException Si le nom ne correspond à aucun mode de transport.
+     */
+    public static TransportMode fromName(String name) {
+        if (name == null || name.isBlank() || name.equalsIgnoreCase("thread")) {
+            return THREAD_PER_CONNECTION;
+        }
+        if (name.equalsIgnoreCase("nio")) {
+            return NIO_SELECTOR;
+        }
+        throw new IllegalArgumentException("Unknown transport mode: " + name);
+    }
+}
@@ -0,0 +1,294 @@
+package fr.butinfoalt.riseandfall.util;
+
+import fr.butinfoalt.riseandfall.gamelogic.data.Identifiable;
+
+import java.util.*;
+
+/**
+ * Une association entre des objets identifiables et des entiers, stockée dans un tableau.
+ * <p>
+ * Les clés possibles sont celles d'un {@link KeyUniverse univers de clés} partagé, qui donne la position de chaque clé
+ * à partir de son identifiant : une lecture ou une écriture est un accès au tableau, sans recherche dans une table de
+ * hachage ni conversion en {@link Integer}. Les copies partagent l'univers de l'association d'origine, et les
+ * opérations sur deux associations du même univers se font case par case.
+ * </p>
+ * <p>
+ * Elle s'utilise comme une {@link ObjectIntMap}, dont elle reprend toutes les méthodes. Les parcours fréquents
+ * gagnent à utiliser {@link #cursor()} plutôt que l'itérateur, qui crée un objet par entrée.
+ * </p>
+ *
+ * @param <T> Le type d'objet identifiable à associer aux entiers.
+ */
+public class IdIntMap<T extends Identifiable> extends ObjectIntMap<T> {
+    /**
+     * L'univers des clés de l'association, partagé avec ses copies.
+     */
+    private final KeyUniverse<T> universe;
+    /**
+     * Les valeurs de l'association, à la position de leur clé dans l'univers.
+     */
+    private final int[] values;
+
+    /**
+     * Constructeur de la classe IdIntMap.
+     * Toutes les clés sont associées à la valeur 0.
+     *
+     * @param keyUniverse Les valeurs possibles pour les clés de l'association.
+     */
+    public IdIntMap(Collection<T> keyUniverse) {
+        this(KeyUniverse.of(keyUniverse));
+    }
+
+    /**
+     * Constructeur de la classe IdIntMap à partir d'un univers de clés.
+     * Toutes les clés sont associées à la valeur 0.
+     *
+     * @param universe L'univers des clés de l'association.
+     */
+    public IdIntMap(KeyUniverse<T> universe) {
+        this(universe, new int[universe.size()]);
+    }
+
+    /**
+     * Constructeur d'une association à partir de son univers et de son tableau de valeurs, utilisé par les copies.
+     *
+     * @param universe L'univers des clés de l'association.
+     * @param values   Les valeurs, à la position de leur clé dans l'univers.
+     */
+    private IdIntMap(KeyUniverse<T> universe, int[] values) {
+        this.universe = universe;
+        this.values = values;
+    }
+
+    /**
+     * Permet d'obtenir l'univers des clés de l'association.
+     *
+     * @return L'univers des clés, partagé avec les copies de l'association.
+     */
+    public KeyUniverse<T> getUniverse() {
+        return this.universe;
+    }
+
+    /**
+     * Récupère la position d'une clé dans le tableau des valeurs.
+     *
+     * @param key La clé à rechercher.
+     * @return La position de la clé.
+     * @throws IllegalArgumentException Si la clé n'appartient pas à l'univers de l'association.
+     */
+    private int slotOf(T key) {
+        int slot = this.universe.slotOf(key);
+        if (slot == -1) {
+            throw new IllegalArgumentException("Type not found in the map: " + key);
+        }
+        return slot;
+    }
+
+    @Override
+    public void set(T key, int value) {
+        this.values[this.slotOf(key)] = value;
+    }
+
+    @Override
+    public int get(T key) {
+        return this.values[this.slotOf(key)];
+    }
+
+    @Override
+    public int increment(T key, int count) {
+        return this.values[this.slotOf(key)] += count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Si l'autre association a le même univers de clés, les valeurs sont ajoutées case par case.
+     */
+    @Override
+    public void increment(ObjectIntMap<T> other) {
+        if (other instanceof IdIntMap<T> ids && ids.universe == this.universe) {
+            for (int i = 0; i < this.values.length; i++) {
+                this.values[i] += ids.values[i];
+            }
+        } else {
+            super.increment(other);
+        }
+    }
+
+    @Override
+    public int decrement(T key, int count) {
+        return this.values[this.slotOf(key)] -= count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Si l'autre association a le même univers de clés, les valeurs sont soustraites case par case.
+     */
+    @Override
+    public void decrement(ObjectIntMap<T> other) {
+        if (other instanceof IdIntMap<T> ids && ids.universe == this.universe) {
+            for (int i = 0; i < this.values.length; i++) {
+                this.values[i] -= ids.values[i];
+            }
+        } else {
+            super.decrement(other);
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(this.values, 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int value : this.values) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int countNonZero() {
+        int count = 0;
+        for (int value : this.values) {
+            if (value != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Permet de calculer la somme des valeurs de l'association.
+     *
+     * @return La somme de toutes les valeurs.
+     */
+    public int sum() {
+        int sum = 0;
+        for (int value : this.values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * {@inheritDoc}
+     * L'ensemble renvoyé n'est pas modifiable.
+     */
+    @Override
+    public SequencedSet<T> getKeys() {
+        return this.universe.getKeys();
+    }
+
+    /**
+     * {@inheritDoc}
+     * La collection renvoyée est une vue non modifiable des valeurs, qui suit les modifications de l'association.
+     */
+    @Override
+    public SequencedCollection<Integer> getValues() {
+        return new AbstractList<>() {
+            @Override
+            public Integer get(int index) {
+                return IdIntMap.this.values[index];
+            }
+
+            @Override
+            public int size() {
+                return IdIntMap.this.values.length;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return this.values.length;
+    }
+
+    @Override
+    public IdIntMap<T> createEmptyClone() {
+        return new IdIntMap<>(this.universe);
+    }
+
+    @Override
+    public Cursor<T> cursor() {
+        return new SlotCursor();
+    }
+
+    @Override
+    public IdIntMap<T> clone(Collection<T> keyUniverse) {
+        return this.clone(KeyUniverse.of(keyUniverse));
+    }
+
+    /**
+     * Crée une copie de l'association limitée à un autre univers de clés.
+     * Les clés de cet univers absentes de l'association sont associées à 0.
+     *
+     * @param universe L'univers des clés de la copie.
+     * @return La copie de l'association.
+     */
+    public IdIntMap<T> clone(KeyUniverse<T> universe) {
+        IdIntMap<T> cloned = new IdIntMap<>(universe);
+        for (int i = 0; i < cloned.values.length; i++) {
+            cloned.values[i] = this.get(cloned.universe.keyAt(i));
+        }
+        return cloned;
+    }
+
+    @Override
+    public IdIntMap<T> clone() {
+        return new IdIntMap<>(this.universe, this.values.clone());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        IdIntMap<?> that = (IdIntMap<?>) o;
+        return this.universe.equals(that.universe) && Arrays.equals(this.values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.universe.hashCode() + Arrays.hashCode(this.values);
+    }
+
+    @Override
+    public String toString() {
+        ToStringFormatter formatter = new ToStringFormatter("IdIntMap");
+        for (int i = 0; i < this.values.length; i++) {
+            formatter.add(this.universe.keyAt(i).toString(), this.values[i]);
+        }
+        return formatter.build();
+    }
+
+    /**
+     * Un curseur qui parcourt directement le tableau des valeurs.
+     */
+    private final class SlotCursor implements Cursor<T> {
+        /**
+         * Position de l'entrée courante dans le tableau des valeurs, -1 avant le premier appel à {@link #next()}.
+         */
+        private int slot = -1;
+
+        @Override
+        public boolean next() {
+            return ++this.slot < IdIntMap.this.values.length;
+        }
+
+        @Override
+        public T getKey() {
+            return IdIntMap.this.universe.keyAt(this.slot);
+        }
+
+        @Override
+        public int getValue() {
+            return IdIntMap.this.values[this.slot];
+        }
+
+        @Override
+        public void setValue(int value) {
+            IdIntMap.this.values[this.slot] = value;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package fr.butinfoalt.riseandfall.util;
+
+import fr.butinfoalt.riseandfall.gamelogic.data.IdRegistry;
+import fr.butinfoalt.riseandfall.gamelogic.data.Identifiable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ensemble ordonné et immuable des clés possibles d'une {@link IdIntMap}.
+ * Chaque clé a une position, qui est celle de sa valeur dans le tableau de valeurs des associations de cet univers.
+ * La position d'une clé est retrouvée à partir de son identifiant par un {@link IdRegistry}.
+ * <p>
+ * Les univers sont partagés : {@link #of(Collection)} renvoie le même univers pour les mêmes clés dans le même ordre,
+ * et les copies d'une association gardent son univers. Créer ou copier une association ne coûte donc que
+ * l'allocation de son tableau de valeurs.
+ * </p>
+ *
+ * @param <T> Le type des clés, qui doivent avoir des identifiants distincts.
+ */
+public final class KeyUniverse<T extends Identifiable> {
+    /**
+     * Univers déjà construits, associés à la liste de leurs clés.
+     * Le cache n'est vidé que par {@link #clearCache()}, au chargement des données du jeu : il ne doit contenir que des
+     * univers formés de données du jeu, dont le nombre est borné (tous les types, ceux d'une race, etc.), et jamais
+     * d'univers formés d'objets créés pendant la partie, comme les joueurs.
+     */
+    private static final Map<List<? extends Identifiable>, KeyUniverse<?>> UNIVERSES = new ConcurrentHashMap<>();
+
+    /**
+     * Clés de l'univers, dans l'ordre de leurs positions, indexées par leur identifiant.
+     */
+    private final IdRegistry<T> keys;
+    /**
+     * Vue des clés sous forme d'ensemble ordonné, pour {@link ObjectIntMap#getKeys()}.
+     */
+    private final SequencedSet<T> keySet;
+    /**
+     * Code de hachage des clés, calculé une seule fois puisque l'univers est immuable.
+     */
+    private final int hashCode;
+
+    /**
+     * Constructeur d'un univers de clés.
+     *
+     * @param keys Les clés de l'univers, dans l'ordre de leurs positions.
+     */
+    private KeyUniverse(IdRegistry<T> keys) {
+        this.keys = keys;
+        this.keySet = Collections.unmodifiableSequencedSet(new LinkedHashSet<>(keys));
+        this.hashCode = keys.hashCode();
+    }
+
+    /**
+     * Récupère l'univers des clés données, en le construisant s'il n'existe pas encore.
+     * Un univers déjà construit est retrouvé sans indexer les clés, par l'égalité des listes.
+     *
+     * @param keys Les clés de l'univers, dans l'ordre de leurs positions.
+     * @param <T>  Le type des clés.
+     * @return L'univers partagé de ces clés.
+     * @throws IllegalArgumentException Si deux clés ont le même identifiant.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Identifiable> KeyUniverse<T> of(Collection<T> keys) {
+        List<T> list = keys instanceof List<T> keyList ? keyList : List.copyOf(keys);
+        KeyUniverse<?> universe = UNIVERSES.get(list);
+        if (universe == null) {
+            IdRegistry<T> registry = IdRegistry.of(list);
+            universe = UNIVERSES.computeIfAbsent(registry, k -> new KeyUniverse<>(registry));
+        }
+        return (KeyUniverse<T>) universe;
+    }
+
+    /**
+     * Oublie les univers déjà construits, par exemple lorsque les données du jeu sont rechargées et que les anciennes
+     * clés ne seront plus utilisées. Les associations existantes gardent leur univers.
+     */
+    public static void clearCache() {
+        UNIVERSES.clear();
+    }
+
+    /**
+     * Récupère le nombre de clés de l'univers.
+     *
+     * @return Le nombre de clés.
+     */
+    public int size() {
+        return this.keys.size();
+    }
+
+    /**
+     * Récupère la clé à une position.
+     *
+     * @param slot La position de la clé.
+     * @return La clé à cette position.
+     */
+    public T keyAt(int slot) {
+        return this.keys.get(slot);
+    }
+
+    /**
+     * Récupère les clés de l'univers.
+     *
+     * @return Un ensemble non modifiable des clés, dans l'ordre de leurs positions.
+     */
+    public SequencedSet<T> getKeys() {
+        return this.keySet;
+    }
+
+    /**
+     * Récupère la position d'une clé.
+     *
+     * @param key La clé à rechercher.
+     * @return La position de la clé, ou -1 si elle n'appartient pas à l'univers.
+     */
+    public int slotOf(Object key) {
+        if (!(key instanceof Identifiable identifiable)) {
+            return -1;
+        }
+        int slot = this.slotOfId(identifiable.getId());
+        return slot != -1 && this.keys.get(slot).equals(key) ? slot : -1;
+    }
+
+    /**
+     * Récupère la position de la clé d'un identifiant.
+     *
+     * @param id L'identifiant de la clé.
+     * @return La position de la clé, ou -1 si aucune clé de l'univers n'a cet identifiant.
+     */
+    public int slotOfId(int id) {
+        return this.keys.indexOfId(id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        KeyUniverse<?> that = (KeyUniverse<?>) o;
+        return this.hashCode == that.hashCode && this.keys.equals(that.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringFormatter("KeyUniverse")
+                .add("keys", this.keys)
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package fr.butinfoalt.riseandfall.util;
 
 import fr.butinfoalt.riseandfall.gamelogic.data.Identifiable;
 import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
 import fr.butinfoalt.riseandfall.network.common.WriteHelper;
 
 import java.io.IOException;
@@ -10,6 +11,7 @@ import java.util.function.IntFunction;
 
 /**
  * Une classe pour associer des objets à des entiers.
+ * Pour des clés identifiables, {@link IdIntMap} offre la même interface en stockant les valeurs dans un tableau.
  *
  * @param <T> Le type d'objet à associer aux entiers.
  */
@@ -32,6 +34,14 @@ public class ObjectIntMap<T> implements Iterable<ObjectIntMap.Entry<T>>, Cloneab
         }
     }
 
+    /**
+     * Constructeur réservé aux sous-classes qui stockent elles-mêmes leurs valeurs.
+     * Elles doivent redéfinir toutes les méthodes qui accèdent à l'association interne.
+     */
+    protected ObjectIntMap() {
+        this.map = null;
+    }
+
     /**
      * Permet de définir la valeur associée à un objet.
      *
@@ -163,6 +173,30 @@ public class ObjectIntMap<T> implements Iterable<ObjectIntMap.Entry<T>>, Cloneab
         return new ObjectIntMap<>(this.getKeys());
     }
 
+    /**
+     * Permet d'obtenir un curseur sur les entrées de l'association, qui les parcourt sans créer d'objet par entrée.
+     *
+     * @return Un curseur placé avant la première entrée.
+     */
+    public Cursor<T> cursor() {
+        return new KeyCursor<>(this);
+    }
+
+    /**
+     * Permet de compter les entrées dont la valeur n'est pas nulle.
+     *
+     * @return Le nombre d'entrées dont la valeur est différente de 0.
+     */
+    public int countNonZero() {
+        int count = 0;
+        for (int value : this.map.values()) {
+            if (value != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Permet d'obtenir un itérateur sur les entrées de l'association.
      * Nécessaire pour l'implémentation de l'interface Iterable.
@@ -231,21 +265,35 @@ public class ObjectIntMap<T> implements Iterable<ObjectIntMap.Entry<T>>, Cloneab
     }
 
     /**
-     * Sérialise l'association entre des objets identifiables et les entiers
+     * Sérialise l'association entre des objets identifiables et les entiers.
+     * Au format {@link WireFormat#V1}, toutes les entrées sont écrites ; au format {@link WireFormat#V2},
+     * seules les entrées non nulles sont écrites, précédées de leur nombre, avec des entiers de taille variable.
      *
      * @param map         L'association entre les objets identifiables et les entiers à sérialiser
      * @param writeHelper L'outil d'écriture utilisée pour écrire les données de l'association.
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de l'écriture des données.
      */
     public static <T extends Identifiable> void serialize(ObjectIntMap<T> map, WriteHelper writeHelper) throws IOException {
-        for (Entry<T> entry : map) {
-            writeHelper.writeInt(entry.getKey().getId());
-            writeHelper.writeInt(entry.getValue());
+        Cursor<T> cursor = map.cursor();
+        if (writeHelper.getWireFormat() == WireFormat.V1) {
+            while (cursor.next()) {
+                writeHelper.writeInt(cursor.getKey().getId());
+                writeHelper.writeInt(cursor.getValue());
+            }
+            return;
+        }
+        writeHelper.writeVarInt(map.countNonZero());
+        while (cursor.next()) {
+            if (cursor.getValue() != 0) {
+                writeHelper.writeVarInt(cursor.getKey().getId());
+                writeHelper.writeVarInt(cursor.getValue());
+            }
         }
     }
 
     /**
-     * Désérialise l'association entre des objets identifiables et les entiers
+     * Désérialise l'association entre des objets identifiables et les entiers.
+     * Au format {@link WireFormat#V2}, les entrées absentes des données sont remises à 0.
      *
      * @param map        L'association entre les objets identifiables et les entiers à désérialiser
      * @param readHelper L'outil de lecture utilisé pour lire les données de l'association.
@@ -253,10 +301,63 @@ public class ObjectIntMap<T> implements Iterable<ObjectIntMap.Entry<T>>, Cloneab
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture des données.
      */
     public static <T extends Identifiable> void deserialize(ObjectIntMap<T> map, ReadHelper readHelper, IntFunction<T> getter) throws IOException {
-        int size = map.size();
-        for (int i = 0; i < size; i++) {
-            T key = getter.apply(readHelper.readInt());
-            map.set(key, readHelper.readInt());
+        if (readHelper.getWireFormat() == WireFormat.V1) {
+            int size = map.size();
+            for (int i = 0; i < size; i++) {
+                T key = getter.apply(readHelper.readInt());
+                map.set(key, readHelper.readInt());
+            }
+            return;
+        }
+        map.reset();
+        int nonZeroEntries = readHelper.readVarInt();
+        for (int i = 0; i < nonZeroEntries; i++) {
+            T key = getter.apply(readHelper.readVarInt());
+            map.set(key, readHelper.readVarInt());
+        }
+    }
+
+    /**
+     * Sérialise les entrées d'une association qui diffèrent d'un état précédent.
+     * Les entrées sont écrites avec des entiers de taille variable, précédées de leur nombre, quel que soit le format d'encodage.
+     *
+     * @param map         L'association à sérialiser.
+     * @param previous    L'état précédent de l'association, ou null pour écrire toutes les entrées non nulles.
+     * @param writeHelper L'outil d'écriture utilisé pour écrire les données de l'association.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de l'écriture des données.
+     */
+    public static <T extends Identifiable> void serializeChanges(ObjectIntMap<T> map, ObjectIntMap<T> previous, WriteHelper writeHelper) throws IOException {
+        int changedEntries = 0;
+        Cursor<T> cursor = map.cursor();
+        while (cursor.next()) {
+            if (cursor.getValue() != (previous == null ? 0 : previous.get(cursor.getKey()))) {
+                changedEntries++;
+            }
+        }
+        writeHelper.writeVarInt(changedEntries);
+        cursor = map.cursor();
+        while (cursor.next()) {
+            if (cursor.getValue() != (previous == null ? 0 : previous.get(cursor.getKey()))) {
+                writeHelper.writeVarInt(cursor.getKey().getId());
+                writeHelper.writeVarInt(cursor.getValue());
+            }
+        }
+    }
+
+    /**
+     * Désérialise les entrées modifiées d'une association, écrites avec {@link #serializeChanges(ObjectIntMap, ObjectIntMap, WriteHelper)}.
+     * Les entrées absentes des données gardent leur valeur actuelle.
+     *
+     * @param map        L'association à mettre à jour.
+     * @param readHelper L'outil de lecture utilisé pour lire les données de l'association.
+     * @param getter     Une fonction pour obtenir un objet identifiable à partir d'un entier.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture des données.
+     */
+    public static <T extends Identifiable> void deserializeChanges(ObjectIntMap<T> map, ReadHelper readHelper, IntFunction<T> getter) throws IOException {
+        int changedEntries = readHelper.readVarInt();
+        for (int i = 0; i < changedEntries; i++) {
+            T key = getter.apply(readHelper.readVarInt());
+            map.set(key, readHelper.readVarInt());
         }
     }
 
@@ -282,7 +383,7 @@ public class ObjectIntMap<T> implements Iterable<ObjectIntMap.Entry<T>>, Cloneab
          */
         public ObjectIntMapIterator(ObjectIntMap<T> objectIntMap) {
             this.objectIntMap = objectIntMap;
-            this.internalIterator = objectIntMap.map.keySet().iterator();
+            this.internalIterator = objectIntMap.getKeys().iterator();
         }
 
         /**
@@ -309,6 +410,102 @@ public class ObjectIntMap<T> implements Iterable<ObjectIntMap.Entry<T>>, Cloneab
         }
     }
 
+    /**
+     * Un curseur sur les entrées d'une association. Contrairement à l'itérateur, il ne crée pas d'objet par entrée :
+     * le curseur lui-même donne accès à l'entrée courante.
+     * <pre>{@code
+     * ObjectIntMap.Cursor<UnitType> cursor = map.cursor();
+     * while (cursor.next()) {
+     *     total += cursor.getValue() * cursor.getKey().getDamage();
+     * }
+     * }</pre>
+     *
+     * @param <T> Le type d'objet associé aux entiers.
+     */
+    public interface Cursor<T> {
+        /**
+         * Avance le curseur à l'entrée suivante.
+         *
+         * @return true si le curseur est sur une entrée, false s'il a dépassé la dernière.
+         */
+        boolean next();
+
+        /**
+         * Récupère la clé de l'entrée courante.
+         *
+         * @return La clé de l'entrée courante.
+         */
+        T getKey();
+
+        /**
+         * Récupère la valeur de l'entrée courante.
+         *
+         * @return La valeur associée à la clé de l'entrée courante.
+         */
+        int getValue();
+
+        /**
+         * Définit la valeur de l'entrée courante.
+         *
+         * @param value La valeur à associer à la clé de l'entrée courante.
+         */
+        void setValue(int value);
+    }
+
+    /**
+     * Un curseur qui parcourt les clés de l'association et accède à leurs valeurs par la clé.
+     *
+     * @param <T> Le type d'objet associé aux entiers.
+     */
+    private static final class KeyCursor<T> implements Cursor<T> {
+        /**
+         * L'association parcourue.
+         */
+        private final ObjectIntMap<T> objectIntMap;
+        /**
+         * L'itérateur sur les clés de l'association.
+         */
+        private final Iterator<T> keys;
+        /**
+         * La clé de l'entrée courante, null avant le premier appel à {@link #next()}.
+         */
+        private T key;
+
+        /**
+         * Constructeur du curseur.
+         *
+         * @param objectIntMap L'association à parcourir.
+         */
+        private KeyCursor(ObjectIntMap<T> objectIntMap) {
+            this.objectIntMap = objectIntMap;
+            this.keys = objectIntMap.getKeys().iterator();
+        }
+
+        @Override
+        public boolean next() {
+            if (!this.keys.hasNext()) {
+                return false;
+            }
+            this.key = this.keys.next();
+            return true;
+        }
+
+        @Override
+        public T getKey() {
+            return this.key;
+        }
+
+        @Override
+        public int getValue() {
+            return this.objectIntMap.get(this.key);
+        }
+
+        @Override
+        public void setValue(int value) {
+            this.objectIntMap.set(this.key, value);
+        }
+    }
+
     /**
      * Une entrée de l'association entre une clé et une valeur.
      *
@@ -11,13 +11,22 @@ import fr.butinfoalt.riseandfall.gamelogic.data.ServerData;
 import fr.butinfoalt.riseandfall.network.client.BaseSocketClient;
 import fr.butinfoalt.riseandfall.network.common.ReadHelper;
 import fr.butinfoalt.riseandfall.network.common.SocketWrapper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
 import fr.butinfoalt.riseandfall.network.packets.*;
+import fr.butinfoalt.riseandfall.util.Version;
 import fr.butinfoalt.riseandfall.util.logging.LogManager;
 import javafx.application.Platform;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimerTask;
 
@@ -67,6 +76,12 @@ public class RiseAndFallClient extends BaseSocketClient {
         this.registerReceivePacket((byte) 11, PacketDiscoverPlayer.class, this::onDiscoverPlayer, PacketDiscoverPlayer::new);
         this.registerSendAndReceivePacket((byte) 12, PacketMessage.class, this::onMessageReceived, PacketMessage::new);
         this.registerReceivePacket((byte) 13, PacketTurnResults.class, this::onTurnResults, readHelper -> new PacketTurnResults(readHelper, ClientDataDeserializer.INSTANCE));
+        this.registerSendAndReceivePacket((byte) 14, PacketInitInfo.class, this::onInitInfo, PacketInitInfo::new);
+        this.registerReceivePacket((byte) 15, PacketUpdateGameDataDelta.class, this::onUpdateGameDataDelta);
+        this.registerSendPacket((byte) 16, PacketResumeSession.class);
+        this.registerReceivePacket((byte) 17, PacketChatHistory.class, this::onChatHistory, PacketChatHistory::new);
+        this.registerSendPacket((byte) 18, PacketRequestChatHistory.class);
+        this.registerSendPacket((byte) 19, PacketRequestGameHistory.class);
     }
 
     /**
@@ -93,9 +108,26 @@ public class RiseAndFallClient extends BaseSocketClient {
      * @param packet Le paquet reçu.
      */
     private void onServerData(SocketWrapper sender, PacketServerData packet) {
-        ServerData.init(packet.getRaces(), packet.getBuildingTypes(), packet.getUnitTypes());
+        // Une session n'est reprise que si les données du serveur n'ont pas changé, car les données
+        // de la partie conservées par le client référencent les instances actuelles des races et des types
+        boolean resumeSession = RiseAndFall.getGame() != null && RiseAndFall.getPlayer() != null && isSameServerData(packet);
+        if (!resumeSession) {
+            if (RiseAndFall.getGame() != null) {
+                RiseAndFall.resetGame();
+            }
+            ServerData.init(packet.getRaces(), packet.getBuildingTypes(), packet.getUnitTypes());
+        }
+        try {
+            // Annonce du format d'encodage le plus récent compris par le client, le serveur répondra avec le format retenu
+            sender.sendPacket(new PacketInitInfo(Version.CURRENT_VERSION, WireFormat.LATEST));
+        } catch (IOException e) {
+            LogManager.logError("Erreur lors de l'envoi des informations d'initialisation", e);
+        }
         try {
             String token = Files.readString(Environment.AUTH_TOKEN_FILE, StandardCharsets.UTF_8);
+            if (resumeSession) {
+                sender.sendPacket(createResumeSessionPacket(RiseAndFall.getGame()));
+            }
             LogManager.logMessage("Envoi du token d'authentification...");
             sender.sendPacket(new PacketToken(token));
             return;
@@ -108,6 +140,41 @@ public class RiseAndFallClient extends BaseSocketClient {
         Platform.runLater(() -> RiseAndFallApplication.switchToView(View.LOGIN));
     }
 
+    /**
+     * Vérifie si les données reçues du serveur sont identiques à celles déjà chargées par le client.
+     *
+     * @param packet Le paquet de données du serveur reçu.
+     * @return true si les données sont identiques.
+     */
+    private static boolean isSameServerData(PacketServerData packet) {
+        if (ServerData.getRaces() == null) {
+            return false;
+        }
+        try {
+            ByteArrayOutputStream current = new ByteArrayOutputStream();
+            new PacketServerData(ServerData.getRaces(), ServerData.getUnitTypes(), ServerData.getBuildingTypes()).toBytes(new WriteHelper(current));
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            packet.toBytes(new WriteHelper(received));
+            return Arrays.equals(current.toByteArray(), received.toByteArray());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Crée le paquet de reprise de session décrivant les données de la partie déjà reçues par le client.
+     *
+     * @param game La partie dont le client a conservé les données.
+     * @return Le paquet de reprise de session.
+     */
+    private static PacketResumeSession createResumeSessionPacket(ClientGame game) {
+        Map<Integer, Long> lastChatTimestamps = new HashMap<>();
+        for (OtherClientPlayer otherPlayer : game.getOtherPlayers()) {
+            lastChatTimestamps.put(otherPlayer.getId(), otherPlayer.getLastReceivedMessageTimestamp());
+        }
+        return new PacketResumeSession(game.getId(), game.getLastResultsTurn(), lastChatTimestamps);
+    }
+
     /**
      * Change la vue de l'application en fonction de l'état du jeu.
      * Si un message d'erreur est fourni, il sera affiché sur la vue associée.
@@ -162,6 +229,15 @@ public class RiseAndFallClient extends BaseSocketClient {
     private void onJoinedGame(SocketWrapper client, ReadHelper readHelper) throws IOException {
         ClientGame game = new ClientGame(readHelper);
         CurrentClientPlayer player = new CurrentClientPlayer(readHelper);
+        ClientGame previousGame = RiseAndFall.getGame();
+        CurrentClientPlayer previousPlayer = RiseAndFall.getPlayer();
+        if (previousGame != null && previousPlayer != null && previousGame.getId() == game.getId() && previousPlayer.getId() == player.getId()) {
+            // Reprise de session : on conserve les joueurs découverts, les messages et les résultats déjà reçus
+            previousGame.copyModifiableData(game);
+            previousPlayer.copyModifiableData(player);
+            Platform.runLater(() -> this.switchToGameView(previousGame, previousPlayer));
+            return;
+        }
         RiseAndFall.setGame(game);
         RiseAndFall.setPlayer(player);
         Platform.runLater(() -> this.switchToGameView(game, player));
@@ -183,6 +259,38 @@ public class RiseAndFallClient extends BaseSocketClient {
         Platform.runLater(() -> this.switchToGameView(game, player));
     }
 
+    /**
+     * Méthode appelée lorsque le paquet {@link PacketUpdateGameDataDelta} est reçu.
+     * Elle met à jour les données modifiables du jeu, puis applique les modifications des données du joueur
+     * si elles portent sur la version détenue par le client. Sinon, elle redemande toutes les données au serveur.
+     *
+     * @param sender     Le socket connecté au serveur.
+     * @param readHelper L'outil de lecture pour désérialiser le paquet.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la désérialisation.
+     */
+    private void onUpdateGameDataDelta(SocketWrapper sender, ReadHelper readHelper) throws IOException {
+        ClientGame game = RiseAndFall.getGame();
+        CurrentClientPlayer player = RiseAndFall.getPlayer();
+        if (game == null || player == null) {
+            // Mise à jour reçue avant le paquet de jointure de partie, les données complètes suivront
+            return;
+        }
+        game.updateModifiableData(readHelper);
+        int baseVersion = readHelper.readInt();
+        int version = readHelper.readInt();
+        int changedFields = readHelper.readByte() & 0xFF;
+        boolean fullData = baseVersion == PacketUpdateGameDataDelta.FULL_DATA_BASE_VERSION;
+        if (!fullData && (player.isResyncRequested() || baseVersion != player.getDataVersion())) {
+            if (!player.isResyncRequested()) {
+                player.setResyncRequested();
+                sender.sendPacket(new PacketGameAction(PacketGameAction.Action.RESYNC_GAME_DATA));
+            }
+            return;
+        }
+        player.applyModifiableDataDelta(readHelper, changedFields, fullData, version);
+        Platform.runLater(() -> this.switchToGameView(game, player));
+    }
+
     /**
      * Méthode appelée lorsque le paquet {@link PacketGameAction} est reçu.
      *
@@ -228,6 +336,10 @@ public class RiseAndFallClient extends BaseSocketClient {
                     LogManager.logMessage("Erreur reçue lors de la tentative de quitter la partie : " + errorType.getMessage());
                     this.switchToGameView(RiseAndFall.getGame().getState(), errorType.getMessage());
                 }
+                case HISTORY_GAME_NOT_FOUND -> {
+                    GameListController controller = View.GAME_LIST.getController();
+                    controller.showError(errorType.getMessage());
+                }
                 default -> LogManager.logError("Erreur inconnue : " + errorType.getMessage());
             }
         });
@@ -276,6 +388,29 @@ public class RiseAndFallClient extends BaseSocketClient {
         inChatWith.addReceivedMessage(chatMessage);
     }
 
+    /**
+     * Méthode appelée lorsque le paquet {@link PacketChatHistory} est reçu.
+     * Elle ajoute la page de l'historique à la conversation avec l'autre joueur.
+     *
+     * @param sender Le socket connecté au serveur.
+     * @param packet Le paquet contenant la page de l'historique de la conversation.
+     */
+    private void onChatHistory(SocketWrapper sender, PacketChatHistory packet) {
+        ClientGame game = RiseAndFall.getGame();
+        CurrentClientPlayer player = RiseAndFall.getPlayer();
+        OtherClientPlayer otherPlayer = game == null ? null : game.getOtherPlayer(packet.getOtherPlayerId());
+        if (player == null || otherPlayer == null) {
+            // Historique reçu après avoir quitté la partie, ou pour un joueur qui n'est pas encore connu du client
+            return;
+        }
+        List<ChatMessage> messages = new ArrayList<>(packet.getMessages().size());
+        for (PacketChatHistory.Entry entry : packet.getMessages()) {
+            boolean sentByPlayer = entry.senderId() == player.getId();
+            messages.add(new ChatMessage(sentByPlayer ? player : otherPlayer, sentByPlayer ? otherPlayer : player, entry.message(), -1, entry.timestamp()));
+        }
+        otherPlayer.addHistoryPage(messages, packet.getOlderCursor());
+    }
+
     /**
      * Méthode appelée lorsque le paquet {@link PacketTurnResults} est reçu.
      *
@@ -290,6 +425,17 @@ public class RiseAndFallClient extends BaseSocketClient {
         Platform.runLater(() -> ((AttackLogsController) View.ATTACKS_LOGS.getController()).updateDisplayedItem(packet.getTurn(), packet.getAttackResults(), packet.getEliminatedPlayers()));
     }
 
+    /**
+     * Méthode appelée lorsque le paquet {@link PacketInitInfo} est reçu en réponse à celui du client.
+     * Les paquets suivants sont envoyés au format d'encodage retenu par le serveur.
+     *
+     * @param sender Le socket connecté au serveur.
+     * @param packet Le paquet contenant le format d'encodage retenu.
+     */
+    private void onInitInfo(SocketWrapper sender, PacketInitInfo packet) {
+        sender.setSendWireFormat(packet.getWireFormat().min(WireFormat.LATEST));
+    }
+
     /**
      * Démarre une boucle de reconnexion qui tentera de se reconnecter au serveur après un délai spécifié.
      * Une reconnexion sera ensuite tentée toutes les 2 secondes jusqu'à ce que la connexion soit rétablie ou que la reconnexion soit annulée.
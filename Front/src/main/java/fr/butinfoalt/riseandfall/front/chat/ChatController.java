@@ -88,6 +88,12 @@ public class ChatController {
             }
         });
         this.chatListView.setStyle("-fx-background-color: #1a1a1a; -fx-background-insets: 0; -fx-padding: 0;");
+        this.messageScrollPane.vvalueProperty().addListener((obs, oldValue, newValue) -> {
+            // Les messages plus anciens ne sont demandés que lorsque l'utilisateur remonte en haut de la conversation
+            if (this.currentlyChattingWith != null && newValue.doubleValue() <= this.messageScrollPane.getVmin() && oldValue.doubleValue() > newValue.doubleValue()) {
+                this.currentlyChattingWith.requestOlderMessages();
+            }
+        });
     }
 
     /**
@@ -256,6 +262,36 @@ public class ChatController {
         }
     }
 
+    /**
+     * Ajoute une page de l'historique à la conversation actuelle.
+     * Une page plus ancienne est ajoutée au-dessus des messages affichés sans déplacer ceux que l'utilisateur est en train de lire.
+     *
+     * @param inChatWith Le joueur avec lequel on discute.
+     * @param messages   Les messages de la page.
+     * @param olderPage  Indique si la page a été demandée en remontant dans la conversation.
+     */
+    public void onHistoryPage(OtherClientPlayer inChatWith, List<ChatMessage> messages, boolean olderPage) {
+        if (!inChatWith.equals(this.currentlyChattingWith)) {
+            return;
+        }
+        for (ChatMessage message : messages) {
+            this.createMessageBox(message);
+        }
+        if (!olderPage) {
+            this.updateDisplayedMessages();
+            return;
+        }
+        double previousHeight = this.messageContainer.getHeight();
+        this.messageContainer.getChildren().setAll(this.messageViews.sequencedValues());
+        this.messageScrollPane.applyCss();
+        this.messageScrollPane.layout();
+        double height = this.messageContainer.getHeight();
+        double scrollableHeight = height - this.messageScrollPane.getViewportBounds().getHeight();
+        if (scrollableHeight > 0) {
+            this.messageScrollPane.setVvalue((height - previousHeight) / scrollableHeight);
+        }
+    }
+
     /**
      * Supprime un message de la conversation actuelle.
      * Utilisée lorsqu'un message en cours d'envoi est supprimé pour être remplacé par le message final.
@@ -81,6 +81,27 @@ public class ClientGame extends Game {
         return this.attackResults.getOrDefault(turn, Collections.emptyList());
     }
 
+    /**
+     * Obtient le dernier tour dont le client a reçu les résultats.
+     *
+     * @return Le dernier tour reçu, ou 0 si aucun résultat n'a été reçu.
+     */
+    public int getLastResultsTurn() {
+        return this.attackResults.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    /**
+     * Reprend les données modifiables d'une autre instance de la même partie.
+     * Utilisée lors d'une reprise de session, pour conserver les joueurs découverts et les résultats déjà reçus.
+     *
+     * @param game La partie reçue du serveur.
+     */
+    public void copyModifiableData(Game game) {
+        this.state = game.getState();
+        this.nextActionAt = game.getNextActionAt();
+        this.currentTurn = game.getCurrentTurn();
+    }
+
     public List<ClientPlayer> getAllPlayers() {
         ArrayList<ClientPlayer> allPlayers = new ArrayList<>(this.otherPlayers.values());
         allPlayers.add(RiseAndFall.getPlayer());
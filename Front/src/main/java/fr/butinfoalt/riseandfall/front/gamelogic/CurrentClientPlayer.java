@@ -1,9 +1,13 @@
 package fr.butinfoalt.riseandfall.front.gamelogic;
 
 import fr.butinfoalt.riseandfall.front.ClientDataDeserializer;
+import fr.butinfoalt.riseandfall.gamelogic.Player;
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
 import fr.butinfoalt.riseandfall.gamelogic.data.AttackPlayerOrderData;
+import fr.butinfoalt.riseandfall.gamelogic.data.BuildingType;
 import fr.butinfoalt.riseandfall.gamelogic.data.Identifiable;
 import fr.butinfoalt.riseandfall.gamelogic.data.ServerData;
+import fr.butinfoalt.riseandfall.gamelogic.data.UnitType;
 import fr.butinfoalt.riseandfall.network.common.ReadHelper;
 import fr.butinfoalt.riseandfall.network.packets.data.OrderDeserializationContext;
 import fr.butinfoalt.riseandfall.util.ObjectIntMap;
@@ -15,6 +19,16 @@ import java.io.IOException;
  * Hérite de la classe ClientPlayer pour gérer les données spécifiques du joueur côté client.
  */
 public class CurrentClientPlayer extends ClientPlayer {
+    /**
+     * Version des données modifiables du joueur, ou -1 si le client n'a pas encore reçu de version de référence.
+     */
+    private int dataVersion = -1;
+
+    /**
+     * Indique si le client a redemandé toutes les données du joueur et attend leur réception.
+     */
+    private boolean resyncRequested = false;
+
     /**
      * Constructeur de la classe ClientPlayer.
      * Le joueur coté client est créé à partir des données reçues du serveur.
@@ -44,4 +58,91 @@ public class CurrentClientPlayer extends ClientPlayer {
         ObjectIntMap.deserialize(this.getPendingBuildingsCreation(), readHelper, value -> Identifiable.getById(ServerData.getBuildingTypes(), value));
         this.setPendingAttacks(readHelper.readSerializableList(AttackPlayerOrderData::new, new OrderDeserializationContext(this, ClientDataDeserializer.INSTANCE)));
     }
+
+    /**
+     * Méthode pour reprendre les données modifiables d'une autre instance du même joueur.
+     * Utilisée lors d'une reprise de session, pour conserver l'instance référencée par les messages et les résultats déjà reçus.
+     *
+     * @param player Le joueur reçu du serveur.
+     */
+    public void copyModifiableData(Player player) {
+        this.setGoldAmount(player.getGoldAmount());
+        this.setIntelligence(player.getIntelligence());
+        this.setEliminationTurn(player.getEliminationTurn());
+        for (ObjectIntMap.Entry<BuildingType> entry : player.getBuildingMap()) {
+            this.getBuildingMap().set(entry.getKey(), entry.getValue());
+        }
+        for (ObjectIntMap.Entry<UnitType> entry : player.getUnitMap()) {
+            this.getUnitMap().set(entry.getKey(), entry.getValue());
+        }
+        this.setPendingUnitsCreation(player.getPendingUnitsCreation());
+        this.setPendingBuildingsCreation(player.getPendingBuildingsCreation());
+        this.setPendingAttacks(player.getPendingAttacks());
+    }
+
+    /**
+     * Méthode pour appliquer une mise à jour partielle des données modifiables du joueur.
+     * Seuls les champs indiqués sont lus ; pour les associations, seules les entrées modifiées sont présentes,
+     * sauf s'il s'agit d'un envoi complet.
+     *
+     * @param readHelper    L'outil de lecture pour désérialiser les données du joueur.
+     * @param changedFields Les bits des champs présents, définis dans {@link PlayerDataSnapshot}.
+     * @param fullData      true si le paquet contient toutes les données du joueur.
+     * @param version       La version des données obtenue après la mise à jour.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture des données.
+     */
+    public void applyModifiableDataDelta(ReadHelper readHelper, int changedFields, boolean fullData, int version) throws IOException {
+        if (fullData) {
+            this.getBuildingMap().reset();
+            this.getUnitMap().reset();
+            this.getPendingUnitsCreation().reset();
+            this.getPendingBuildingsCreation().reset();
+        }
+        if ((changedFields & PlayerDataSnapshot.GOLD) != 0) this.setGoldAmount(readHelper.readFloat());
+        if ((changedFields & PlayerDataSnapshot.INTELLIGENCE) != 0) this.setIntelligence(readHelper.readFloat());
+        if ((changedFields & PlayerDataSnapshot.ELIMINATION_TURN) != 0) this.setEliminationTurn(readHelper.readInt());
+        if ((changedFields & PlayerDataSnapshot.BUILDINGS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getBuildingMap(), readHelper, value -> Identifiable.getById(ServerData.getBuildingTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.UNITS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getUnitMap(), readHelper, value -> Identifiable.getById(ServerData.getUnitTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_UNITS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getPendingUnitsCreation(), readHelper, value -> Identifiable.getById(ServerData.getUnitTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_BUILDINGS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getPendingBuildingsCreation(), readHelper, value -> Identifiable.getById(ServerData.getBuildingTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_ATTACKS) != 0) {
+            this.setPendingAttacks(readHelper.readSerializableList(AttackPlayerOrderData::new, new OrderDeserializationContext(this, ClientDataDeserializer.INSTANCE)));
+        }
+        this.dataVersion = version;
+        this.resyncRequested = false;
+    }
+
+    /**
+     * Méthode pour obtenir la version des données modifiables du joueur.
+     *
+     * @return La version des données, ou -1 si aucune version de référence n'a été reçue.
+     */
+    public int getDataVersion() {
+        return this.dataVersion;
+    }
+
+    /**
+     * Méthode pour savoir si le client attend la réception de toutes les données du joueur.
+     *
+     * @return true si les données ont été redemandées au serveur.
+     */
+    public boolean isResyncRequested() {
+        return this.resyncRequested;
+    }
+
+    /**
+     * Méthode pour indiquer que toutes les données du joueur ont été redemandées au serveur.
+     * Les mises à jour partielles reçues d'ici là sont ignorées.
+     */
+    public void setResyncRequested() {
+        this.resyncRequested = true;
+    }
 }
@@ -5,12 +5,21 @@ import fr.butinfoalt.riseandfall.front.chat.ChatController;
 import fr.butinfoalt.riseandfall.gamelogic.data.ChatMessage;
 import fr.butinfoalt.riseandfall.gamelogic.data.NamedItem;
 import fr.butinfoalt.riseandfall.gamelogic.data.Race;
+import fr.butinfoalt.riseandfall.network.packets.PacketChatHistory;
+import fr.butinfoalt.riseandfall.network.packets.PacketRequestChatHistory;
 import fr.butinfoalt.riseandfall.util.ToStringFormatter;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
 import javafx.application.Platform;
 
+import java.io.IOException;
 import java.util.*;
 
 public class OtherClientPlayer extends ClientPlayer implements NamedItem {
+    /**
+     * Délai après lequel une demande d'historique restée sans réponse, par exemple à cause d'une déconnexion, peut être renvoyée.
+     */
+    private static final long HISTORY_REQUEST_TIMEOUT_MS = 10_000;
+
     /**
      * Nom du joueur.
      */
@@ -22,6 +31,17 @@ public class OtherClientPlayer extends ClientPlayer implements NamedItem {
     private final SortedSet<ChatMessage> messages = new TreeSet<>(Comparator.comparing(ChatMessage::getTimestamp));
     private final HashMap<Long, ChatMessage> sendingMessages = new HashMap<>();
 
+    /**
+     * Curseur à envoyer au serveur pour obtenir les messages plus anciens de la conversation,
+     * ou {@link PacketChatHistory#NO_OLDER_MESSAGES} s'il n'y en a pas.
+     */
+    private long olderMessagesCursor = PacketChatHistory.NO_OLDER_MESSAGES;
+
+    /**
+     * Date de la dernière demande de messages plus anciens restée sans réponse, ou -1 si aucune demande n'est en cours.
+     */
+    private long olderMessagesRequestedAt = -1;
+
     /**
      * Constructeur de la classe OtherClientPlayer.
      *
@@ -97,6 +117,61 @@ public class OtherClientPlayer extends ClientPlayer implements NamedItem {
         this.addMessage(message);
     }
 
+    /**
+     * Ajoute une page de l'historique de la conversation reçue du serveur.
+     * Les messages de l'historique ne déclenchent pas de notification.
+     *
+     * @param page        Les messages de la page, du plus ancien au plus récent.
+     * @param olderCursor Le curseur des messages plus anciens, ou {@link PacketChatHistory#NO_OLDER_MESSAGES} s'il n'y en a pas,
+     *                    ou {@link PacketChatHistory#KEEP_CURSOR} si les messages plus anciens ont déjà été reçus.
+     */
+    public synchronized void addHistoryPage(List<ChatMessage> page, long olderCursor) {
+        boolean olderPage = this.olderMessagesRequestedAt != -1;
+        this.olderMessagesRequestedAt = -1;
+        if (olderCursor != PacketChatHistory.KEEP_CURSOR) {
+            this.olderMessagesCursor = olderCursor;
+        }
+        this.messages.addAll(page);
+        ChatController chatController = View.CHAT.getController();
+        Platform.runLater(() -> chatController.onHistoryPage(this, page, olderPage));
+    }
+
+    /**
+     * Demande au serveur la page de messages qui précède les messages déjà reçus, s'il en reste et qu'aucune demande
+     * n'est déjà en cours.
+     */
+    public synchronized void requestOlderMessages() {
+        if (this.olderMessagesCursor < 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (this.olderMessagesRequestedAt != -1 && now - this.olderMessagesRequestedAt < HISTORY_REQUEST_TIMEOUT_MS) {
+            return;
+        }
+        try {
+            RiseAndFall.getClient().sendPacket(new PacketRequestChatHistory(this.getId(), this.olderMessagesCursor));
+            this.olderMessagesRequestedAt = now;
+        } catch (IOException e) {
+            LogManager.logError("Impossible de demander l'historique du chat avec " + this.name, e);
+        }
+    }
+
+    /**
+     * Obtient la date du dernier message reçu du serveur dans le chat avec ce joueur.
+     * Les messages en cours d'envoi, datés par le client, sont ignorés.
+     *
+     * @return La date du dernier message reçu en millisecondes, ou -1 si aucun message n'a été reçu.
+     */
+    public synchronized long getLastReceivedMessageTimestamp() {
+        long lastTimestamp = -1;
+        for (ChatMessage message : this.messages) {
+            if (!this.sendingMessages.containsValue(message)) {
+                lastTimestamp = message.getTimestamp();
+            }
+        }
+        return lastTimestamp;
+    }
+
     /**
      * Obtient la liste des messages de chat de ce joueur.
      *
@@ -1,5 +1,6 @@
 -- Détruire les tables existantes
 DROP TABLE IF EXISTS
+    data_version,
     chat_message,
     attacks_lost_units,
     attacks_destroyed_units,
@@ -52,7 +53,10 @@ CREATE TABLE game (
     max_players INT NOT NULL DEFAULT 30,
     password_hash VARCHAR(255) DEFAULT NULL,
     state ENUM('WAITING', 'RUNNING', 'ENDED') NOT NULL DEFAULT 'WAITING',
-    next_action_at TIMESTAMP DEFAULT NULL
+    next_action_at TIMESTAMP DEFAULT NULL,
+    random_seed BIGINT NOT NULL,
+    archived BOOLEAN NOT NULL DEFAULT false,
+    INDEX idx_archived (archived)
 );
 
 CREATE TABLE player (
@@ -194,11 +198,20 @@ CREATE TABLE chat_message (
     sent_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (sender_player_id) REFERENCES player(id) ON UPDATE CASCADE ON DELETE CASCADE,
     FOREIGN KEY (receiver_player_id) REFERENCES player(id) ON UPDATE CASCADE ON DELETE CASCADE,
-    INDEX idx_sent_at (sent_at)
+    INDEX idx_sent_at (sent_at),
+    INDEX idx_conversation (sender_player_id, receiver_player_id, id)
+);
+
+-- Version des données modifiées par le serveur, incrémentée par la première écriture qui suit chaque calcul de l'empreinte
+CREATE TABLE data_version (
+    id INT PRIMARY KEY,
+    version BIGINT UNSIGNED NOT NULL DEFAULT 0
 );
 
 
 -- Insertion des données statiques
+INSERT INTO data_version (id, version) VALUES (1, 0);
+
 INSERT INTO race (id, name, description, gold_multiplier, intelligence_multiplier, damage_multiplier, health_multiplier)
 VALUES
     (1, 'Mort-Vivant', 'Individu mort qui revient à la vie', 1.30, 0.75, 1, 0.75),
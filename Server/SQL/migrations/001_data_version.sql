@@ -0,0 +1,7 @@
+-- Ajoute la version des données modifiées par le serveur, comparée au démarrage avec celle de l'instantané
+CREATE TABLE IF NOT EXISTS data_version (
+    id INT PRIMARY KEY,
+    version BIGINT UNSIGNED NOT NULL DEFAULT 0
+);
+
+INSERT IGNORE INTO data_version (id, version) VALUES (1, 0);
@@ -0,0 +1,9 @@
+-- Ajoute la graine des parties, dont sont dérivés les tirages aléatoires de chaque tour
+ALTER TABLE game ADD COLUMN IF NOT EXISTS random_seed BIGINT NOT NULL DEFAULT 0 AFTER next_action_at;
+
+-- Graine aléatoire pour chaque partie existante : 64 bits tirés de l'empreinte d'une valeur propre à la ligne
+UPDATE game
+SET random_seed = CAST(CONV(SUBSTRING(MD5(CONCAT(id, '-', RAND(), '-', UUID())), 1, 16), 16, -10) AS SIGNED)
+WHERE random_seed = 0;
+
+ALTER TABLE game ALTER COLUMN random_seed DROP DEFAULT;
@@ -0,0 +1,4 @@
+-- Ajoute l'archivage des parties terminées, qui ne sont plus chargées au démarrage du serveur
+ALTER TABLE game ADD COLUMN IF NOT EXISTS archived BOOLEAN NOT NULL DEFAULT FALSE;
+
+CREATE INDEX IF NOT EXISTS idx_archived ON game (archived);
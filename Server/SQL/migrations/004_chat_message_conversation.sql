@@ -0,0 +1,2 @@
+-- Ajoute l'index des conversations, utilisé pour charger les pages de l'historique d'une discussion entre deux joueurs
+CREATE INDEX IF NOT EXISTS idx_conversation ON chat_message (sender_player_id, receiver_player_id, id);
@@ -0,0 +1,161 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.gamelogic.data.AttackResult;
+import fr.butinfoalt.riseandfall.gamelogic.data.IdRegistry;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.data.User;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache borné des parties archivées.
+ * <p>
+ * Une partie terminée dont tous les joueurs sont sortis est archivée : elle n'est plus gardée en mémoire ni chargée au
+ * démarrage du serveur. Elle est rechargée depuis le stockage, avec les résultats de ses attaques, lorsqu'un de ses
+ * joueurs consulte son historique, et gardée dans ce cache tant qu'elle fait partie des parties archivées les plus
+ * récemment consultées. Les identifiants qui ne correspondent à aucune partie archivée sont aussi gardés en cache, pour
+ * que des demandes répétées n'interrogent pas le stockage à chaque fois.
+ * </p>
+ * <p>
+ * Un chargement interroge le stockage : le cache ne doit jamais être utilisé depuis une boucle d'entrées/sorties ni
+ * depuis la file d'une partie. Les parties chargées sont en lecture seule : elles ne sont jamais sauvegardées.
+ * </p>
+ */
+public class ArchivedGameCache {
+    /**
+     * Partie archivée chargée depuis le stockage.
+     *
+     * @param game          La partie, avec ses joueurs.
+     * @param attackResults Les résultats des attaques de la partie, associés au tour durant lequel elles ont été effectuées.
+     */
+    public record ArchivedGame(ServerGame game, Map<Integer, List<AttackResult>> attackResults) {
+        /**
+         * Récupère le joueur d'un utilisateur dans la partie.
+         *
+         * @param user L'utilisateur.
+         * @return Le joueur de l'utilisateur, ou null s'il n'a pas participé à la partie.
+         */
+        public ServerPlayer getPlayer(User user) {
+            for (ServerPlayer player : this.game.getPlayers()) {
+                if (player.getUser().getId() == user.getId()) {
+                    return player;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Entrée gardée en cache pour un identifiant qui ne correspond à aucune partie archivée.
+     */
+    private static final ArchivedGame NOT_FOUND = new ArchivedGame(null, Map.of());
+
+    /**
+     * Instance du serveur, pour accéder au stockage des parties.
+     */
+    private final RiseAndFallServer server;
+
+    /**
+     * Parties chargées, ou {@link #NOT_FOUND} pour les identifiants sans partie archivée, associées à leur identifiant,
+     * de la moins récemment utilisée à la plus récemment utilisée.
+     */
+    private final LinkedHashMap<Integer, ArchivedGame> games;
+
+    /**
+     * Nombre de demandes servies par le cache, y compris pour les identifiants sans partie archivée.
+     */
+    private long hits = 0;
+
+    /**
+     * Nombre de demandes qui ont nécessité un chargement depuis le stockage.
+     */
+    private long misses = 0;
+
+    /**
+     * Constructeur du cache.
+     *
+     * @param server  Instance du serveur.
+     * @param maxSize Le nombre maximal de parties archivées gardées en mémoire.
+     */
+    public ArchivedGameCache(RiseAndFallServer server, int maxSize) {
+        this.server = server;
+        this.games = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ArchivedGame> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Récupère une partie archivée, en la chargeant depuis le stockage si elle n'est pas dans le cache.
+     * Si le chargement échoue, rien n'est gardé en cache et la partie sera de nouveau chargée à la prochaine demande.
+     *
+     * @param gameId L'identifiant de la partie.
+     * @return La partie archivée, ou null si aucune partie archivée n'a cet identifiant ou si le chargement a échoué.
+     */
+    public ArchivedGame get(int gameId) {
+        synchronized (this) {
+            ArchivedGame game = this.games.get(gameId);
+            if (game != null) {
+                this.hits++;
+                return game == NOT_FOUND ? null : game;
+            }
+            this.misses++;
+        }
+        // Chargement hors du verrou, pour ne pas bloquer les autres lectures du cache pendant les requêtes
+        ArchivedGame game;
+        try {
+            game = this.load(gameId);
+        } catch (SQLException e) {
+            LogManager.logError("Erreur lors du chargement de la partie archivée " + gameId + ".", e);
+            return null;
+        }
+        synchronized (this) {
+            ArchivedGame existing = this.games.putIfAbsent(gameId, game);
+            if (existing != null) {
+                game = existing;
+            }
+        }
+        return game == NOT_FOUND ? null : game;
+    }
+
+    /**
+     * Charge une partie archivée et les résultats de ses attaques depuis le stockage.
+     *
+     * @param gameId L'identifiant de la partie.
+     * @return La partie archivée, ou {@link #NOT_FOUND} si aucune partie archivée n'a cet identifiant.
+     * @throws SQLException Si une erreur se produit lors du chargement.
+     */
+    private ArchivedGame load(int gameId) throws SQLException {
+        ServerGame game = this.server.getRepository().loadArchivedGame(this.server, gameId);
+        if (game == null) {
+            return NOT_FOUND;
+        }
+        Map<Integer, List<AttackResult>> attackResults = this.server.getRepository().loadAttackResults(gameId, IdRegistry.of(game.getPlayers()));
+        return new ArchivedGame(game, attackResults);
+    }
+
+    /**
+     * Oublie l'entrée d'une partie, par exemple lorsqu'elle vient d'être archivée et qu'une demande précédente l'avait
+     * gardée comme absente.
+     *
+     * @param gameId L'identifiant de la partie.
+     */
+    public synchronized void invalidate(int gameId) {
+        this.games.remove(gameId);
+    }
+
+    /**
+     * Récupère le taux de succès du cache, pour le suivi de son dimensionnement.
+     *
+     * @return La description du nombre de parties en cache, de succès et d'échecs.
+     */
+    public synchronized String getStats() {
+        return "%d parties archivées en cache, %d succès, %d chargements".formatted(this.games.size(), this.hits, this.misses);
+    }
+}
@@ -10,13 +10,17 @@ import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Classe responsable de la gestion de l'authentification des clients.
  * Elle traite les paquets d'authentification reçus du client et gère les tokens.
+ * <p>
+ * La connexion, l'authentification par token et l'inscription interrogent le stockage. Comme tous les paquets décodés,
+ * elles sont traitées hors de la boucle d'entrées/sorties qui a reçu le paquet, dans l'ordre de réception des
+ * paquets de chaque connexion.
+ * </p>
  */
 public class AuthenticationManager {
     /**
@@ -37,9 +41,15 @@ public class AuthenticationManager {
 
     /**
      * Map des connexions des utilisateurs.
-     * Utilisée pour associer un socket à un utilisateur.
+     * Utilisée pour associer un socket à un utilisateur, depuis les boucles d'entrées/sorties et les threads
+     * d'authentification.
      */
-    private final Map<SocketWrapper, User> userConnections = new HashMap<>();
+    private final Map<SocketWrapper, User> userConnections = new ConcurrentHashMap<>();
+
+    /**
+     * Données de reprise de session envoyées par les clients qui ne sont pas encore authentifiés.
+     */
+    private final Map<SocketWrapper, PacketResumeSession> resumeSessions = new ConcurrentHashMap<>();
 
     /**
      * Constructeur de la classe AuthenticationManager.
@@ -75,7 +85,7 @@ public class AuthenticationManager {
     }
 
     /**
-     * Génère un token d'authentification pour un utilisateur et l'enregistre dans la base de données.
+     * Génère un token d'authentification pour un utilisateur et l'enregistre dans le stockage.
      *
      * @param user L'utilisateur pour lequel le token est généré.
      * @return Le token généré.
@@ -86,12 +96,10 @@ public class AuthenticationManager {
             tokenBuilder.append(TOKEN_ALPHABET[SRNG.nextInt(TOKEN_ALPHABET.length)]);
         }
         String token = tokenBuilder.toString();
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO user_token (user_id, token) VALUES (?, ?)")) {
-            statement.setInt(1, user.getId());
-            statement.setString(2, token);
-            statement.executeUpdate();
+        try {
+            this.server.getRepository().saveToken(user.getId(), token);
         } catch (Exception e) {
-            LogManager.logError("Erreur lors de la sauvegarde du token en base de données", e);
+            LogManager.logError("Erreur lors de la sauvegarde du token dans le stockage", e);
         }
         return token;
     }
@@ -106,15 +114,11 @@ public class AuthenticationManager {
     private User getUserFromCredentials(String username, String password) {
         String hashedPassword = hashPassword(password);
         try {
-            try (PreparedStatement statement = this.server.getDb().prepareStatement("SELECT id FROM user WHERE username = ? AND password_hash = ?")) {
-                statement.setString(1, username);
-                statement.setString(2, hashedPassword);
-                ResultSet resultSet = statement.executeQuery();
-                if (resultSet.next()) {
-                    User user = this.server.getUserManager().getUser(resultSet.getInt("id"));
-                    LogManager.logMessage("Utilisateur authentifié : " + user);
-                    return user;
-                }
+            int userId = this.server.getRepository().findUserId(username, hashedPassword);
+            if (userId != -1) {
+                User user = this.server.getUserManager().getUser(userId);
+                LogManager.logMessage("Utilisateur authentifié : " + user);
+                return user;
             }
         } catch (Exception e) {
             LogManager.logError("Erreur lors de la récupération de l'utilisateur", e);
@@ -129,11 +133,10 @@ public class AuthenticationManager {
      * @return L'utilisateur associé au token, ou null si aucun utilisateur n'est trouvé.
      */
     private User getUserFromToken(String token) {
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("SELECT user.id FROM user JOIN user_token ON user.id = user_token.user_id WHERE token = ?")) {
-            statement.setString(1, token);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                return this.server.getUserManager().getUser(resultSet.getInt("user.id"));
+        try {
+            int userId = this.server.getRepository().findUserIdByToken(token);
+            if (userId != -1) {
+                return this.server.getUserManager().getUser(userId);
             }
         } catch (Exception e) {
             LogManager.logError("Erreur lors de la récupération de l'utilisateur à partir du token", e);
@@ -148,10 +151,8 @@ public class AuthenticationManager {
      * @return true si le nom d'utilisateur est déjà utilisé, false sinon.
      */
     private boolean isUsernameInUse(String username) {
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("SELECT * FROM user WHERE username = ? LIMIT 1")) {
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            return resultSet.next();
+        try {
+            return this.server.getRepository().isUsernameTaken(username);
         } catch (Exception e) {
             LogManager.logError("Erreur lors de la vérification du nom d'utilisateur", e);
         }
@@ -167,17 +168,10 @@ public class AuthenticationManager {
      */
     private User createUser(String username, String password) {
         String hashedPassword = hashPassword(password);
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO user(username, password_hash) VALUES (?, ?) RETURNING id")) {
-            statement.setString(1, username);
-            statement.setString(2, hashedPassword);
-            statement.execute();
-            ResultSet resultSet = statement.getResultSet();
-            if (resultSet.next()) {
-                User user = new User(resultSet.getInt("id"), username);
-                LogManager.logMessage("Nouvel utilisateur créé : " + user);
-                return user;
-            }
-            LogManager.logError("Erreur lors de la création de l'utilisateur, aucun id retourné");
+        try {
+            User user = new User(this.server.getRepository().createUser(username, hashedPassword), username);
+            LogManager.logMessage("Nouvel utilisateur créé : " + user);
+            return user;
         } catch (Exception e) {
             LogManager.logError("Erreur lors de la création de l'utilisateur", e);
         }
@@ -190,7 +184,7 @@ public class AuthenticationManager {
      * @param sender Le socket du client qui a envoyé le paquet.
      * @param packet Le paquet d'authentification reçu.
      */
-    public synchronized void onAuthentification(SocketWrapper sender, PacketAuthentification packet) {
+    public void onAuthentification(SocketWrapper sender, PacketAuthentification packet) {
         if (this.userConnections.containsKey(sender)) {
             try {
                 sender.sendPacket(new PacketError(ErrorType.LOGIN_GENERIC_ERROR));
@@ -233,6 +227,17 @@ public class AuthenticationManager {
         this.onUserConnected(sender, user, packet);
     }
 
+    /**
+     * Méthode appelée lors de la réception d'un paquet de reprise de session.
+     * Le client l'envoie avant son token : les données sont retenues jusqu'à son authentification.
+     *
+     * @param sender Le socket du client qui a envoyé le paquet.
+     * @param packet Le paquet de reprise de session reçu.
+     */
+    public void onResumeSession(SocketWrapper sender, PacketResumeSession packet) {
+        this.resumeSessions.put(sender, packet);
+    }
+
     /**
      * Méthode appelée lors de la réception d'un paquet d'enregistrement.
      *
@@ -268,6 +273,7 @@ public class AuthenticationManager {
     /**
      * Méthode appelée lorsque l'utilisateur est connecté.
      * Elle enregistre l'utilisateur dans la map des connexions et envoie les paquets nécessaires au client.
+     * Si le client s'est déconnecté pendant son authentification, sa connexion est oubliée.
      *
      * @param sender      Le socket du client qui s'est connecté.
      * @param user        L'utilisateur qui s'est connecté.
@@ -275,15 +281,18 @@ public class AuthenticationManager {
      */
     private void onUserConnected(SocketWrapper sender, User user, PacketToken tokenToSend) {
         this.userConnections.put(sender, user);
+        // La déconnexion retire le client des clients connectés avant d'oublier sa connexion
+        if (!this.server.isConnected(sender)) {
+            this.userConnections.remove(sender, user);
+            this.resumeSessions.remove(sender);
+            return;
+        }
         try {
             sender.sendPacket(tokenToSend);
         } catch (IOException e) {
             LogManager.logError("Erreur lors de l'envoi du token", e);
         }
-        GameManager gameManager = this.server.getGameManager();
-        gameManager.sendJoinGamePacket(sender, user);
-        gameManager.sendDiscoverPlayerPacket(sender, user);
-        gameManager.sendTurnsResults(sender, user);
+        this.server.getGameManager().sendInitialGameData(sender, user, this.resumeSessions.remove(sender));
     }
 
     /**
@@ -292,7 +301,7 @@ public class AuthenticationManager {
      * @param sender Le socket du client.
      * @return L'utilisateur associé au socket, ou null si aucun utilisateur n'est trouvé.
      */
-    public synchronized User getUser(SocketWrapper sender) {
+    public User getUser(SocketWrapper sender) {
         return this.userConnections.get(sender);
     }
 
@@ -302,7 +311,7 @@ public class AuthenticationManager {
      * @param user L'utilisateur dont on veut obtenir les connexions.
      * @return La liste des connexions associées à l'utilisateur.
      */
-    public synchronized List<SocketWrapper> getConnectionsFor(User user) {
+    public List<SocketWrapper> getConnectionsFor(User user) {
         List<SocketWrapper> connections = new ArrayList<>();
         for (Map.Entry<SocketWrapper, User> entry : this.userConnections.entrySet()) {
             if (entry.getValue().equals(user)) {
@@ -317,7 +326,8 @@ public class AuthenticationManager {
      *
      * @param client Le wrapper de socket qui se déconnecte.
      */
-    public synchronized void onClientDisconnected(SocketWrapper client) {
+    public void onClientDisconnected(SocketWrapper client) {
         this.userConnections.remove(client);
+        this.resumeSessions.remove(client);
     }
 }
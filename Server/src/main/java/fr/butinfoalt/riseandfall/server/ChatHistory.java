@@ -0,0 +1,252 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.network.packets.PacketChatHistory;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.repository.StoredChatMessage;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Historique des conversations de chat, découpé en pages.
+ * <p>
+ * Les messages les plus récents de chaque conversation d'une partie sont gardés en mémoire : ils sont chargés avec une
+ * seule requête la première fois qu'un joueur de la partie demande son historique, puis complétés par les nouveaux
+ * messages. Seules les pages plus anciennes que cette fenêtre sont lues dans le stockage.
+ * Une page est désignée par un curseur, l'identifiant du plus ancien message de la page reçue juste avant, ce qui la
+ * rend stable même si de nouveaux messages sont envoyés entre deux demandes.
+ * </p>
+ */
+public class ChatHistory {
+    /**
+     * Nombre de messages envoyés dans une page d'historique.
+     */
+    public static final int PAGE_SIZE = 50;
+
+    /**
+     * Messages les plus récents d'une conversation.
+     */
+    private static final class Conversation {
+        /**
+         * Messages associés à leur identifiant, du plus ancien au plus récent.
+         */
+        private final TreeMap<Long, StoredChatMessage> messages = new TreeMap<>();
+
+        /**
+         * Indique si les messages en mémoire sont tous les messages de la conversation.
+         */
+        private boolean complete;
+
+        private Conversation(boolean complete) {
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Fenêtre des messages récents des conversations d'une partie. Protégée par son propre verrou.
+     */
+    private static final class GameWindow {
+        /**
+         * Conversations associées à la clé de la paire de joueurs.
+         * Une conversation absente d'une fenêtre chargée n'a aucun message.
+         */
+        private final Map<Long, Conversation> conversations = new HashMap<>();
+
+        /**
+         * Indique si les messages récents de la partie ont été chargés.
+         */
+        private boolean loaded = false;
+    }
+
+    private final RiseAndFallServer server;
+
+    /**
+     * Nombre maximal de messages gardés en mémoire par conversation.
+     */
+    private final int windowSize;
+
+    /**
+     * Fenêtres des parties, associées à leur identifiant.
+     */
+    private final Map<Integer, GameWindow> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Constructeur de l'historique.
+     *
+     * @param server     Instance du serveur, pour accéder au stockage des messages.
+     * @param windowSize Le nombre maximal de messages gardés en mémoire par conversation.
+     */
+    public ChatHistory(RiseAndFallServer server, int windowSize) {
+        this.server = server;
+        this.windowSize = Math.max(PAGE_SIZE, windowSize);
+    }
+
+    /**
+     * Calcule la clé d'une conversation, identique quel que soit l'ordre des deux joueurs.
+     *
+     * @param playerId      L'identifiant d'un joueur.
+     * @param otherPlayerId L'identifiant de l'autre joueur.
+     * @return La clé de la conversation.
+     */
+    private static long conversationKey(int playerId, int otherPlayerId) {
+        return ((long) Math.min(playerId, otherPlayerId) << 32) | (Math.max(playerId, otherPlayerId) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Ajoute un nouveau message à la fenêtre de sa partie, si celle-ci est chargée.
+     *
+     * @param game    La partie des deux joueurs.
+     * @param message Le message enregistré.
+     */
+    public void append(ServerGame game, StoredChatMessage message) {
+        GameWindow window = this.windows.get(game.getId());
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            if (!window.loaded) {
+                return; // Le message sera lu dans le stockage lors du chargement
+            }
+            Conversation conversation = window.conversations.computeIfAbsent(conversationKey(message.senderId(), message.receiverId()), key -> new Conversation(true));
+            // Un chargement concurrent peut avoir déjà lu ce message dans le stockage
+            conversation.messages.putIfAbsent(message.id(), message);
+            while (conversation.messages.size() > this.windowSize) {
+                conversation.messages.pollFirstEntry();
+                conversation.complete = false;
+            }
+        }
+    }
+
+    /**
+     * Récupère une page de l'historique d'une conversation, à envoyer au client d'un joueur.
+     *
+     * @param player      Le joueur qui reçoit la page.
+     * @param otherPlayer L'autre joueur de la conversation.
+     * @param cursor      Le curseur de la page demandée, ou {@link Long#MAX_VALUE} pour la page la plus récente.
+     * @param since       La date du dernier message déjà reçu par le client dans cette conversation, ou -1 s'il n'en a aucun.
+     *                    Seuls les messages plus récents sont envoyés.
+     * @return La page de l'historique, dont les messages sont triés du plus ancien au plus récent.
+     */
+    public PacketChatHistory getPage(ServerPlayer player, ServerPlayer otherPlayer, long cursor, long since) {
+        ServerGame game = player.getGame();
+        List<StoredChatMessage> page = new ArrayList<>();
+        long databaseCursor = cursor;
+        boolean reachedKnownMessages = false;
+        boolean needsDatabase = true;
+
+        GameWindow window = this.windows.computeIfAbsent(game.getId(), id -> new GameWindow());
+        synchronized (window) {
+            this.ensureLoaded(game, window);
+            if (window.loaded) {
+                Conversation conversation = window.conversations.get(conversationKey(player.getId(), otherPlayer.getId()));
+                NavigableMap<Long, StoredChatMessage> older = conversation == null ? Collections.emptyNavigableMap() : conversation.messages.headMap(cursor, false);
+                for (StoredChatMessage message : older.descendingMap().values()) {
+                    if (page.size() == PAGE_SIZE) {
+                        break;
+                    }
+                    if (message.timestamp() <= since) {
+                        reachedKnownMessages = true;
+                        break;
+                    }
+                    page.add(message);
+                }
+                needsDatabase = conversation != null && !conversation.complete;
+                if (needsDatabase) {
+                    // Les messages plus anciens que la fenêtre ne sont que dans le stockage
+                    databaseCursor = Math.min(cursor, conversation.messages.firstKey());
+                }
+            }
+        }
+
+        if (needsDatabase && !reachedKnownMessages && page.size() < PAGE_SIZE) {
+            reachedKnownMessages = this.loadOlderMessages(player, otherPlayer, databaseCursor, since, page);
+        }
+
+        long olderCursor;
+        if (reachedKnownMessages) {
+            olderCursor = PacketChatHistory.KEEP_CURSOR;
+        } else if (page.size() == PAGE_SIZE) {
+            olderCursor = page.getLast().id();
+        } else {
+            olderCursor = PacketChatHistory.NO_OLDER_MESSAGES;
+        }
+        List<PacketChatHistory.Entry> entries = new ArrayList<>(page.size());
+        for (StoredChatMessage message : page.reversed()) {
+            entries.add(new PacketChatHistory.Entry(message.senderId(), message.message(), message.timestamp()));
+        }
+        return new PacketChatHistory(otherPlayer.getId(), entries, olderCursor);
+    }
+
+    /**
+     * Retire la fenêtre d'une partie de la mémoire, par exemple lorsqu'elle est archivée.
+     *
+     * @param game La partie à retirer.
+     */
+    public void remove(ServerGame game) {
+        this.windows.remove(game.getId());
+    }
+
+    /**
+     * Charge les messages récents de toutes les conversations d'une partie si ce n'est pas déjà fait.
+     * Doit être appelée avec le verrou de la fenêtre. En cas d'erreur, la fenêtre reste non chargée et les pages sont
+     * lues directement dans le stockage.
+     *
+     * @param game   La partie dont on charge les messages.
+     * @param window La fenêtre à remplir.
+     */
+    private void ensureLoaded(ServerGame game, GameWindow window) {
+        if (window.loaded) {
+            return;
+        }
+        try {
+            // Un message de plus que la taille de la fenêtre est chargé pour savoir si la conversation est complète
+            for (StoredChatMessage message : this.server.getRepository().loadRecentChatMessages(game.getId(), this.windowSize + 1)) {
+                Conversation conversation = window.conversations.computeIfAbsent(conversationKey(message.senderId(), message.receiverId()), key -> new Conversation(true));
+                conversation.messages.put(message.id(), message);
+            }
+        } catch (SQLException e) {
+            window.conversations.clear();
+            LogManager.logError("Erreur lors du chargement des messages de chat de la partie " + game.getName() + ".", e);
+            return;
+        }
+        for (Conversation conversation : window.conversations.values()) {
+            if (conversation.messages.size() > this.windowSize) {
+                conversation.messages.pollFirstEntry();
+                conversation.complete = false;
+            }
+        }
+        window.loaded = true;
+    }
+
+    /**
+     * Complète une page avec les messages plus anciens qu'un identifiant, lus dans le stockage.
+     *
+     * @param player      Le joueur qui reçoit la page.
+     * @param otherPlayer L'autre joueur de la conversation.
+     * @param beforeId    L'identifiant à partir duquel lire les messages plus anciens.
+     * @param since       La date du dernier message déjà reçu par le client, ou -1 s'il n'en a aucun.
+     * @param page        La page à compléter, du message le plus récent au plus ancien.
+     * @return true si la lecture s'est arrêtée sur un message déjà reçu par le client.
+     */
+    private boolean loadOlderMessages(ServerPlayer player, ServerPlayer otherPlayer, long beforeId, long since, List<StoredChatMessage> page) {
+        try {
+            for (StoredChatMessage message : this.server.getRepository().loadChatMessagesBefore(player.getId(), otherPlayer.getId(), beforeId, PAGE_SIZE - page.size())) {
+                if (message.timestamp() <= since) {
+                    return true;
+                }
+                page.add(message);
+            }
+        } catch (SQLException e) {
+            LogManager.logError("Erreur lors de la récupération de l'historique de chat du joueur " + player.getUser().getUsername() + ".", e);
+        }
+        return false;
+    }
+}
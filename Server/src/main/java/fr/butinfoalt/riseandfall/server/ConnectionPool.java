@@ -0,0 +1,326 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool borné de connexions à la base de données.
+ * <p>
+ * Chaque thread emprunte une connexion le temps de ses requêtes, puis la rend en la fermant.
+ * Un thread qui détient déjà une connexion récupère la même lors d'un nouvel emprunt, ce qui permet aux méthodes
+ * imbriquées de partager la connexion, et donc la transaction, de leur appelant.
+ * Une connexion n'est validée auprès du serveur que si elle est restée inutilisée plus longtemps qu'un délai donné.
+ * </p>
+ */
+public class ConnectionPool implements AutoCloseable {
+    /**
+     * Interface pour ouvrir une nouvelle connexion JDBC.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        /**
+         * Ouvre une nouvelle connexion JDBC.
+         *
+         * @return La connexion ouverte.
+         * @throws SQLException Si la connexion ne peut pas être établie.
+         */
+        Connection connect() throws SQLException;
+    }
+
+    /**
+     * Métriques du pool à un instant donné.
+     *
+     * @param maxSize          Nombre maximal de connexions.
+     * @param openConnections  Nombre de connexions ouvertes.
+     * @param inUse            Nombre de connexions empruntées.
+     * @param peakInUse        Nombre maximal de connexions empruntées simultanément.
+     * @param borrows          Nombre d'emprunts, hors emprunts imbriqués d'un même thread.
+     * @param timeouts         Nombre d'emprunts abandonnés faute de connexion disponible.
+     * @param averageWaitNanos Temps d'attente moyen d'un emprunt, en nanosecondes.
+     * @param maxWaitNanos     Temps d'attente maximal d'un emprunt, en nanosecondes.
+     * @param utilization      Part du temps de connexion disponible effectivement passée à l'état emprunté, entre 0 et 1.
+     */
+    public record Metrics(int maxSize, int openConnections, int inUse, int peakInUse, long borrows, long timeouts,
+                          long averageWaitNanos, long maxWaitNanos, double utilization) {
+        @Override
+        public String toString() {
+            return "%d/%d connexions empruntées (%d ouvertes, pic %d), %d emprunts, attente moyenne %.2f ms, max %.2f ms, %d expirations, utilisation %.1f %%".formatted(
+                    this.inUse, this.maxSize, this.openConnections, this.peakInUse, this.borrows,
+                    this.averageWaitNanos / 1e6, this.maxWaitNanos / 1e6, this.timeouts, this.utilization * 100);
+        }
+    }
+
+    /**
+     * Fabrique utilisée pour ouvrir les nouvelles connexions.
+     */
+    private final ConnectionFactory connectionFactory;
+    /**
+     * Nombre maximal de connexions ouvertes en même temps.
+     */
+    private final int maxSize;
+    /**
+     * Délai d'inactivité au-delà duquel une connexion est validée avant d'être prêtée, en nanosecondes.
+     */
+    private final long validationIdleNanos;
+    /**
+     * Temps d'attente maximal d'une connexion disponible, en nanosecondes.
+     */
+    private final long borrowTimeoutNanos;
+    /**
+     * Nombre maximal de requêtes préparées gardées en cache par connexion.
+     */
+    private final int statementCacheSize;
+
+    /**
+     * Verrou protégeant les connexions disponibles, le compte des connexions et les métriques.
+     * Un verrou explicite est utilisé plutôt que le moniteur du pool pour qu'un thread virtuel en attente d'une
+     * connexion libère son thread porteur.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition signalée lorsqu'une connexion est rendue, qu'une place se libère ou que le pool est fermé.
+     */
+    private final Condition available = this.lock.newCondition();
+
+    /**
+     * Connexions disponibles, la plus récemment rendue en tête.
+     * Protégées par {@link #lock}.
+     */
+    private final ArrayDeque<PooledConnection> idleConnections = new ArrayDeque<>();
+
+    /**
+     * Connexion détenue par chaque thread.
+     */
+    private final ThreadLocal<PooledConnection> heldConnection = new ThreadLocal<>();
+
+    /**
+     * Date de création du pool, pour le calcul de l'utilisation, en nanosecondes.
+     */
+    private final long createdAt = System.nanoTime();
+
+    // Compteurs et métriques du pool, protégés par le verrou
+    /**
+     * Nombre de connexions ouvertes, disponibles ou empruntées, y compris celles en cours d'ouverture.
+     */
+    private int openConnections = 0;
+    /**
+     * Nombre de connexions empruntées.
+     */
+    private int inUse = 0;
+    /**
+     * Nombre maximal de connexions empruntées simultanément.
+     */
+    private int peakInUse = 0;
+    /**
+     * Nombre d'emprunts, hors emprunts imbriqués d'un même thread.
+     */
+    private long borrows = 0;
+    /**
+     * Nombre d'emprunts abandonnés faute de connexion disponible.
+     */
+    private long timeouts = 0;
+    /**
+     * Temps d'attente cumulé des emprunts, en nanosecondes.
+     */
+    private long totalWaitNanos = 0;
+    /**
+     * Temps d'attente maximal d'un emprunt, en nanosecondes.
+     */
+    private long maxWaitNanos = 0;
+    /**
+     * Temps cumulé passé par les connexions à l'état emprunté, en nanosecondes.
+     */
+    private long busyNanos = 0;
+    /**
+     * Indique que le pool est fermé et ne prête plus de connexion.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructeur du pool de connexions.
+     *
+     * @param connectionFactory   La fabrique des connexions JDBC.
+     * @param maxSize             Le nombre maximal de connexions ouvertes.
+     * @param validationIdleMillis Le délai d'inactivité au-delà duquel une connexion est validée avant d'être prêtée, en millisecondes.
+     * @param borrowTimeoutMillis Le temps d'attente maximal d'une connexion disponible, en millisecondes.
+     * @param statementCacheSize  Le nombre maximal de requêtes préparées gardées en cache par connexion.
+     */
+    public ConnectionPool(ConnectionFactory connectionFactory, int maxSize, long validationIdleMillis, long borrowTimeoutMillis, int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The pool size must be positive");
+        }
+        this.connectionFactory = connectionFactory;
+        this.maxSize = maxSize;
+        this.validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(validationIdleMillis);
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * Emprunte une connexion au pool, en attendant qu'une connexion se libère si elles sont toutes utilisées.
+     * Si le thread détient déjà une connexion, c'est elle qui est renvoyée.
+     *
+     * @return La connexion empruntée, à fermer pour la rendre au pool.
+     * @throws SQLException Si aucune connexion ne s'est libérée à temps, ou si une nouvelle connexion ne peut pas être ouverte.
+     */
+    public PooledConnection borrow() throws SQLException {
+        PooledConnection held = this.heldConnection.get();
+        if (held != null) {
+            held.holdCount++;
+            return held;
+        }
+        PooledConnection connection = this.acquire();
+        connection.holdCount = 1;
+        connection.borrowedAt = System.nanoTime();
+        this.heldConnection.set(connection);
+        return connection;
+    }
+
+    /**
+     * Récupère une connexion disponible, valide si nécessaire, ou en ouvre une nouvelle.
+     *
+     * @return La connexion.
+     * @throws SQLException Si aucune connexion ne s'est libérée à temps, ou si une nouvelle connexion ne peut pas être ouverte.
+     */
+    private PooledConnection acquire() throws SQLException {
+        long start = System.nanoTime();
+        PooledConnection connection;
+        this.lock.lock();
+        try {
+            long remaining = this.borrowTimeoutNanos;
+            while (this.idleConnections.isEmpty() && this.openConnections >= this.maxSize) {
+                if (this.closed) {
+                    throw new SQLException("The connection pool is closed");
+                }
+                if (remaining <= 0) {
+                    this.timeouts++;
+                    throw new SQLTransientConnectionException("No database connection available after %d ms (%s)".formatted(
+                            TimeUnit.NANOSECONDS.toMillis(this.borrowTimeoutNanos), this.getMetrics()));
+                }
+                try {
+                    remaining = this.available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection", e);
+                }
+            }
+            if (this.closed) {
+                throw new SQLException("The connection pool is closed");
+            }
+            connection = this.idleConnections.pollFirst();
+            if (connection == null) {
+                // On réserve la place de la nouvelle connexion avant de l'ouvrir hors du verrou
+                this.openConnections++;
+            }
+            this.inUse++;
+            this.peakInUse = Math.max(this.peakInUse, this.inUse);
+            this.borrows++;
+            long waited = System.nanoTime() - start;
+            this.totalWaitNanos += waited;
+            this.maxWaitNanos = Math.max(this.maxWaitNanos, waited);
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (connection != null && System.nanoTime() - connection.lastReleasedAt > this.validationIdleNanos && !connection.validate()) {
+            LogManager.logMessage("Connexion à la base de données invalide, ouverture d'une nouvelle connexion...");
+            connection.closePhysically();
+            connection = null;
+        }
+        if (connection == null) {
+            try {
+                connection = new PooledConnection(this, this.connectionFactory.connect(), this.statementCacheSize);
+            } catch (SQLException | RuntimeException e) {
+                this.lock.lock();
+                try {
+                    this.openConnections--;
+                    this.inUse--;
+                    this.available.signal();
+                } finally {
+                    this.lock.unlock();
+                }
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Rend une connexion au pool, si c'est le dernier emprunt en cours du thread qui la détient.
+     * Une connexion inutilisable est fermée au lieu d'être rendue.
+     *
+     * @param connection La connexion à rendre.
+     */
+    void release(PooledConnection connection) {
+        if (--connection.holdCount > 0) {
+            return;
+        }
+        this.heldConnection.remove();
+        boolean reusable = connection.reset();
+        long now = System.nanoTime();
+        connection.lastReleasedAt = now;
+        boolean closeConnection;
+        this.lock.lock();
+        try {
+            this.inUse--;
+            this.busyNanos += now - connection.borrowedAt;
+            closeConnection = this.closed || !reusable;
+            if (closeConnection) {
+                this.openConnections--;
+            } else {
+                this.idleConnections.addFirst(connection);
+            }
+            this.available.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        if (closeConnection) {
+            connection.closePhysically();
+        }
+    }
+
+    /**
+     * Récupère les métriques du pool.
+     *
+     * @return Les métriques actuelles.
+     */
+    public Metrics getMetrics() {
+        this.lock.lock();
+        try {
+            long elapsed = Math.max(1, System.nanoTime() - this.createdAt);
+            return new Metrics(this.maxSize, this.openConnections, this.inUse, this.peakInUse, this.borrows, this.timeouts,
+                    this.borrows == 0 ? 0 : this.totalWaitNanos / this.borrows, this.maxWaitNanos,
+                    Math.min(1, (double) this.busyNanos / ((double) elapsed * this.maxSize)));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Ferme le pool et les connexions disponibles. Les connexions empruntées sont fermées lorsqu'elles sont rendues.
+     */
+    @Override
+    public void close() {
+        PooledConnection[] connections;
+        this.lock.lock();
+        try {
+            this.closed = true;
+            connections = this.idleConnections.toArray(new PooledConnection[0]);
+            this.openConnections -= connections.length;
+            this.idleConnections.clear();
+            this.available.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        for (PooledConnection connection : connections) {
+            connection.closePhysically();
+        }
+    }
+}
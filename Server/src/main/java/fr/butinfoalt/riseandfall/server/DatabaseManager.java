@@ -12,23 +12,29 @@ import static fr.butinfoalt.riseandfall.server.Environment.DB_PASSWORD;
 import static fr.butinfoalt.riseandfall.server.Environment.DB_USER;
 
 /**
- * Classe qui gère la connexion à la base de données.
- * Elle permet de se connecter à la base de données, de vérifier la validité de la connexion
- * et de fermer la connexion lorsque nécessaire.
+ * Classe qui gère les connexions à la base de données.
+ * Elle maintient un pool de connexions que les différents threads du serveur empruntent le temps de leurs requêtes,
+ * au lieu de partager une seule connexion.
  */
 public class DatabaseManager implements AutoCloseable {
     /**
-     * La connexion à la base de données.
+     * Le pool de connexions à la base de données.
      */
-    private Connection db;
+    private final ConnectionPool pool;
 
     /**
      * Constructeur de la classe DatabaseManager.
-     * Il charge le driver MySQL et établit une connexion à la base de données.
+     * Il charge le driver MySQL, crée le pool de connexions et vérifie qu'une connexion peut être établie.
      */
     public DatabaseManager() {
         loadMysqlDriver();
-        this.db = connectToDatabase();
+        this.pool = new ConnectionPool(DatabaseManager::connectToDatabase, DB_POOL_SIZE, DB_POOL_VALIDATION_IDLE_MS, DB_POOL_BORROW_TIMEOUT_MS, DB_STATEMENT_CACHE_SIZE);
+        try {
+            this.pool.borrow().close();
+            LogManager.logMessage("Connexion à la base de données établie (pool de %d connexions).".formatted(DB_POOL_SIZE));
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la connexion à la base.", e);
+        }
     }
 
     /**
@@ -44,64 +50,42 @@ public class DatabaseManager implements AutoCloseable {
     }
 
     /**
-     * Méthode pour établir une connexion à la base de données.
+     * Méthode pour établir une nouvelle connexion à la base de données.
      *
      * @return La connexion à la base de données.
+     * @throws SQLException Si la connexion ne peut pas être établie.
      */
-    private static Connection connectToDatabase() {
+    private static Connection connectToDatabase() throws SQLException {
         String url = "jdbc:mariadb://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME + "?serverTimezone=UTC";
-
-        try {
-            Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASSWORD);
-            if (conn.isValid(2)) {
-                LogManager.logMessage("Connexion à la base de données établie.");
-            }
-            return conn;
-        } catch (SQLException e) {
-            throw new RuntimeException("Erreur lors de la connexion à la base.", e);
-        }
+        return DriverManager.getConnection(url, DB_USER, DB_PASSWORD);
     }
 
     /**
-     * Méthode pour vérifier si la connexion à la base de données est toujours valide.
+     * Méthode pour emprunter une connexion à la base de données.
+     * La connexion doit être fermée pour être rendue au pool, de préférence avec un bloc try-with-resources.
+     * Un thread qui détient déjà une connexion récupère la même.
      *
-     * @return true si la connexion est valide, false sinon.
+     * @return La connexion empruntée.
+     * @throws SQLException Si aucune connexion n'est disponible à temps ou si une nouvelle connexion ne peut pas être établie.
      */
-    private boolean checkDatabaseConnection() {
-        if (this.db == null) {
-            return false;
-        }
-        try {
-            return this.db.isValid(2);
-        } catch (SQLException e) {
-            LogManager.logError("Erreur lors de la vérification de la connexion à la base de données.", e);
-            return false;
-        }
+    public PooledConnection getDb() throws SQLException {
+        return this.pool.borrow();
     }
 
     /**
-     * Méthode pour obtenir la connexion à la base de données, et la recréer si besoin.
+     * Méthode pour obtenir les métriques du pool de connexions (temps d'attente et utilisation).
      *
-     * @return La connexion à la base de données.
+     * @return Les métriques du pool.
      */
-    public Connection getDb() {
-        if (this.checkDatabaseConnection()) {
-            return this.db;
-        }
-        LogManager.logMessage("Connexion à la base de données invalide, tentative de reconnexion...");
-        return this.db = connectToDatabase();
+    public ConnectionPool.Metrics getPoolMetrics() {
+        return this.pool.getMetrics();
     }
 
     /**
-     * Méthode pour fermer la connexion à la base de données.
+     * Méthode pour fermer les connexions à la base de données.
      */
     public void close() {
-        if (this.db != null) {
-            try {
-                this.db.close();
-            } catch (SQLException e) {
-                LogManager.logError("Erreur lors de la fermeture de la connexion à la base de données.", e);
-            }
-        }
+        LogManager.logMessage("Pool de connexions à la base de données : " + this.pool.getMetrics());
+        this.pool.close();
     }
 }
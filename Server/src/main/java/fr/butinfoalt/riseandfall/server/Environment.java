@@ -1,5 +1,8 @@
 package fr.butinfoalt.riseandfall.server;
 
+import fr.butinfoalt.riseandfall.network.common.SocketWrapper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
+import fr.butinfoalt.riseandfall.network.server.TransportMode;
 import fr.butinfoalt.riseandfall.util.logging.LogManager;
 import io.github.cdimascio.dotenv.Dotenv;
 
@@ -8,9 +11,13 @@ import io.github.cdimascio.dotenv.Dotenv;
  * Utilise la bibliothèque dotenv pour charger les variables d'un fichier .env.
  */
 public class Environment {
-    public static final int SERVER_PORT, DB_PORT;
-    public static final String SERVER_HOST, DB_HOST, DB_NAME, DB_USER, DB_PASSWORD;
+    public static final int SERVER_PORT, DB_PORT, NETWORK_IO_THREADS, NETWORK_MAX_FRAME_SIZE, NETWORK_OUTBOUND_HIGH_WATER_MARK;
+    public static final int DB_POOL_SIZE, DB_STATEMENT_CACHE_SIZE, DB_WRITER_THREADS, GAME_ARCHIVE_CACHE_SIZE, TURN_RESULT_CACHE_SIZE, CHAT_HISTORY_WINDOW_SIZE, JOURNAL_SEGMENT_SIZE, TURN_MAX_CONCURRENT_ACTIONS;
+    public static final long DB_POOL_VALIDATION_IDLE_MS, DB_POOL_BORROW_TIMEOUT_MS, DB_FLUSH_TIMEOUT_MS, MEMORY_SNAPSHOT_INTERVAL_MS, JOURNAL_SNAPSHOT_INTERVAL_MS, JOURNAL_FORCE_INTERVAL_MS, SERVER_SNAPSHOT_INTERVAL_MS, TURN_TIMER_TICK_MS;
+    public static final String SERVER_HOST, DB_HOST, DB_NAME, DB_USER, DB_PASSWORD, STORAGE, MEMORY_SEED_FILE, MEMORY_STORAGE_FILE, JOURNAL_DIR, SERVER_SNAPSHOT_FILE;
     public static final boolean DEBUG_MODE;
+    public static final TransportMode NETWORK_TRANSPORT;
+    public static final WireFormat NETWORK_WIRE_FORMAT;
 
     static {
         Dotenv dotenv = Dotenv.load();
@@ -22,8 +29,55 @@ public class Environment {
         DB_NAME = dotenv.get("DB_NAME");
         DB_USER = dotenv.get("DB_USER");
         DB_PASSWORD = dotenv.get("DB_PASSWORD");
+        STORAGE = dotenv.get("STORAGE");
+        String seedFile = dotenv.get("MEMORY_SEED_FILE");
+        MEMORY_SEED_FILE = seedFile == null ? "Server/SQL/init.sql" : seedFile;
+        MEMORY_STORAGE_FILE = dotenv.get("MEMORY_STORAGE_FILE");
+        String snapshotInterval = dotenv.get("MEMORY_SNAPSHOT_INTERVAL_MS");
+        MEMORY_SNAPSHOT_INTERVAL_MS = snapshotInterval == null ? 60_000 : Long.parseLong(snapshotInterval);
+        String poolSize = dotenv.get("DB_POOL_SIZE");
+        DB_POOL_SIZE = poolSize == null ? 8 : Integer.parseInt(poolSize);
+        String validationIdle = dotenv.get("DB_POOL_VALIDATION_IDLE_MS");
+        DB_POOL_VALIDATION_IDLE_MS = validationIdle == null ? 30_000 : Long.parseLong(validationIdle);
+        String borrowTimeout = dotenv.get("DB_POOL_BORROW_TIMEOUT_MS");
+        DB_POOL_BORROW_TIMEOUT_MS = borrowTimeout == null ? 10_000 : Long.parseLong(borrowTimeout);
+        String statementCacheSize = dotenv.get("DB_STATEMENT_CACHE_SIZE");
+        DB_STATEMENT_CACHE_SIZE = statementCacheSize == null ? 64 : Integer.parseInt(statementCacheSize);
+        String writerThreads = dotenv.get("DB_WRITER_THREADS");
+        DB_WRITER_THREADS = writerThreads == null ? 2 : Integer.parseInt(writerThreads);
+        String flushTimeout = dotenv.get("DB_FLUSH_TIMEOUT_MS");
+        DB_FLUSH_TIMEOUT_MS = flushTimeout == null ? 30_000 : Long.parseLong(flushTimeout);
+        String archiveCacheSize = dotenv.get("GAME_ARCHIVE_CACHE_SIZE");
+        GAME_ARCHIVE_CACHE_SIZE = archiveCacheSize == null ? 16 : Integer.parseInt(archiveCacheSize);
+        String turnResultCacheSize = dotenv.get("TURN_RESULT_CACHE_SIZE");
+        TURN_RESULT_CACHE_SIZE = turnResultCacheSize == null ? 10_000 : Integer.parseInt(turnResultCacheSize);
+        String chatHistoryWindowSize = dotenv.get("CHAT_HISTORY_WINDOW_SIZE");
+        CHAT_HISTORY_WINDOW_SIZE = chatHistoryWindowSize == null ? 100 : Integer.parseInt(chatHistoryWindowSize);
+        JOURNAL_DIR = dotenv.get("JOURNAL_DIR");
+        String journalSegmentSize = dotenv.get("JOURNAL_SEGMENT_SIZE");
+        JOURNAL_SEGMENT_SIZE = journalSegmentSize == null ? 16_777_216 : Integer.parseInt(journalSegmentSize);
+        String journalSnapshotInterval = dotenv.get("JOURNAL_SNAPSHOT_INTERVAL_MS");
+        JOURNAL_SNAPSHOT_INTERVAL_MS = journalSnapshotInterval == null ? 60_000 : Long.parseLong(journalSnapshotInterval);
+        String journalForceInterval = dotenv.get("JOURNAL_FORCE_INTERVAL_MS");
+        JOURNAL_FORCE_INTERVAL_MS = journalForceInterval == null ? 1_000 : Long.parseLong(journalForceInterval);
+        SERVER_SNAPSHOT_FILE = dotenv.get("SERVER_SNAPSHOT_FILE");
+        String serverSnapshotInterval = dotenv.get("SERVER_SNAPSHOT_INTERVAL_MS");
+        SERVER_SNAPSHOT_INTERVAL_MS = serverSnapshotInterval == null ? 300_000 : Long.parseLong(serverSnapshotInterval);
+        String turnTimerTick = dotenv.get("TURN_TIMER_TICK_MS");
+        TURN_TIMER_TICK_MS = turnTimerTick == null ? 100 : Long.parseLong(turnTimerTick);
+        String turnMaxConcurrentActions = dotenv.get("TURN_MAX_CONCURRENT_ACTIONS");
+        TURN_MAX_CONCURRENT_ACTIONS = turnMaxConcurrentActions == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(turnMaxConcurrentActions);
         String debugMode = dotenv.get("DEBUG_MODE");
         DEBUG_MODE = debugMode != null && debugMode.equalsIgnoreCase("true");
+        NETWORK_TRANSPORT = TransportMode.fromName(dotenv.get("NETWORK_TRANSPORT"));
+        String ioThreads = dotenv.get("NETWORK_IO_THREADS");
+        NETWORK_IO_THREADS = ioThreads == null ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : Integer.parseInt(ioThreads);
+        String maxFrameSize = dotenv.get("NETWORK_MAX_FRAME_SIZE");
+        NETWORK_MAX_FRAME_SIZE = maxFrameSize == null ? SocketWrapper.DEFAULT_MAX_FRAME_SIZE : Integer.parseInt(maxFrameSize);
+        String outboundHighWaterMark = dotenv.get("NETWORK_OUTBOUND_HIGH_WATER_MARK");
+        NETWORK_OUTBOUND_HIGH_WATER_MARK = outboundHighWaterMark == null ? SocketWrapper.DEFAULT_OUTBOUND_HIGH_WATER_MARK : Integer.parseInt(outboundHighWaterMark);
+        String wireFormat = dotenv.get("NETWORK_WIRE_FORMAT");
+        NETWORK_WIRE_FORMAT = wireFormat == null ? WireFormat.LATEST : WireFormat.valueOf(wireFormat.trim().toUpperCase());
         if (DEBUG_MODE) {
             LogManager.logMessage("Mode debug activé !");
         }
@@ -0,0 +1,127 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File des tâches d'une partie, exécutées une par une dans leur ordre d'arrivée.
+ * <p>
+ * Toutes les modifications d'une partie et de ses joueurs passent par sa file : les paquets des joueurs, le démarrage
+ * de la partie et les tours. Elles n'ont donc pas besoin d'un verrou commun, et les parties différentes avancent en
+ * parallèle. La file est vidée par un thread virtuel démarré à l'arrivée d'une tâche dans une file vide, qui s'arrête
+ * lorsque la file est vide.
+ * </p>
+ * <p>
+ * La file est protégée par un {@link ReentrantLock} plutôt que par son moniteur : un thread virtuel qui attend que la
+ * file soit vide libère ainsi son thread porteur.
+ * </p>
+ */
+public class GameMailbox implements Executor {
+    /**
+     * La partie dont les tâches sont exécutées par la file.
+     */
+    private final ServerGame game;
+    /**
+     * Tâches en attente d'exécution, dans leur ordre d'arrivée.
+     * Protégées par {@link #lock}.
+     */
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    /**
+     * Verrou protégeant les tâches en attente et l'indicateur {@link #scheduled}.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition signalée lorsque la file devient vide et que sa dernière tâche est terminée.
+     */
+    private final Condition idle = this.lock.newCondition();
+    /**
+     * Indique qu'un thread est chargé de vider la file.
+     * Protégé par {@link #lock}.
+     */
+    private boolean scheduled = false;
+
+    /**
+     * Constructeur de la file des tâches d'une partie.
+     *
+     * @param game La partie dont les tâches sont exécutées par la file.
+     */
+    public GameMailbox(ServerGame game) {
+        this.game = game;
+    }
+
+    /**
+     * Ajoute une tâche à la file. Elle sera exécutée après toutes les tâches déjà ajoutées.
+     * Une erreur pendant la tâche est journalisée sans interrompre les tâches suivantes.
+     *
+     * @param task La tâche à exécuter.
+     */
+    @Override
+    public void execute(Runnable task) {
+        this.lock.lock();
+        try {
+            this.tasks.addLast(task);
+            if (this.scheduled) {
+                return;
+            }
+            this.scheduled = true;
+        } finally {
+            this.lock.unlock();
+        }
+        Thread.ofVirtual().name("Game " + this.game.getId() + " Mailbox").start(this::drain);
+    }
+
+    /**
+     * Attend que la file soit vide et que sa dernière tâche soit terminée.
+     *
+     * @param deadline La date limite d'attente, en nanosecondes.
+     * @return true si la file est vide, false si la date limite est dépassée.
+     */
+    public boolean awaitIdle(long deadline) {
+        this.lock.lock();
+        try {
+            while (this.scheduled) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.idle.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Exécute les tâches de la file jusqu'à ce qu'elle soit vide.
+     */
+    private void drain() {
+        while (true) {
+            Runnable task;
+            this.lock.lock();
+            try {
+                task = this.tasks.pollFirst();
+                if (task == null) {
+                    this.scheduled = false;
+                    this.idle.signalAll();
+                    return;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LogManager.logError("Erreur lors de l'exécution d'une tâche de la partie " + this.game.getName(), e);
+            }
+        }
+    }
+}
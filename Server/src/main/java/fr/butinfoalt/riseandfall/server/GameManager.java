@@ -3,27 +3,41 @@ package fr.butinfoalt.riseandfall.server;
 import fr.butinfoalt.riseandfall.gamelogic.GameState;
 import fr.butinfoalt.riseandfall.gamelogic.Player;
 import fr.butinfoalt.riseandfall.gamelogic.data.*;
+import fr.butinfoalt.riseandfall.network.common.EncodedPacket;
+import fr.butinfoalt.riseandfall.network.common.IPacket;
 import fr.butinfoalt.riseandfall.network.common.ReadHelper;
 import fr.butinfoalt.riseandfall.network.common.SocketWrapper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
 import fr.butinfoalt.riseandfall.network.packets.*;
 import fr.butinfoalt.riseandfall.network.packets.PacketError.ErrorType;
 import fr.butinfoalt.riseandfall.network.packets.data.OrderDeserializationContext;
 import fr.butinfoalt.riseandfall.server.data.GameNameGenerator;
 import fr.butinfoalt.riseandfall.server.data.ServerGame;
 import fr.butinfoalt.riseandfall.server.data.User;
+import fr.butinfoalt.riseandfall.server.journal.TurnJournal;
 import fr.butinfoalt.riseandfall.server.orders.AttacksExecutionContext;
+import fr.butinfoalt.riseandfall.server.repository.StoredChatMessage;
 import fr.butinfoalt.riseandfall.util.Iterables;
 import fr.butinfoalt.riseandfall.util.ObjectIntMap;
 import fr.butinfoalt.riseandfall.util.logging.LogManager;
 
 import java.io.IOException;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.*;
-import java.util.function.IntFunction;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Classe gérant les parties de jeu.
+ * <p>
+ * Les paquets qui modifient une partie ou ses joueurs sont traités dans la {@link GameMailbox file des tâches} de la
+ * partie, comme ses tours : il n'y a pas de verrou commun à toutes les parties, et le traitement des paquets d'une
+ * partie n'attend jamais celui d'une autre.
+ * </p>
  */
 public class GameManager {
     /**
@@ -33,18 +47,66 @@ public class GameManager {
     private final RiseAndFallServer server;
 
     /**
-     * Liste des parties
+     * Liste des parties non archivées, lue depuis les files de toutes les parties.
      */
     private final List<ServerGame> games;
 
+    /**
+     * Identifiants des utilisateurs dont la demande pour rejoindre une partie est en cours de traitement,
+     * pour qu'un utilisateur ne puisse pas rejoindre deux parties en même temps.
+     */
+    private final Set<Integer> joiningUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Joueur de chaque utilisateur dans une partie qu'il n'a pas quittée, associé à l'identifiant de l'utilisateur.
+     */
+    private final Map<Integer, ServerPlayer> activePlayers = new ConcurrentHashMap<>();
+
+    /**
+     * Parties archivées rechargées à la demande.
+     */
+    private final ArchivedGameCache archivedGames;
+
+    /**
+     * Gestionnaire de sauvegarde des parties et des joueurs dans le stockage.
+     */
+    private final GamePersistence persistence;
+
+    /**
+     * Journal des tours, dans lequel les modifications de l'état des parties sont ajoutées avant d'être écrites dans le stockage.
+     */
+    private final TurnJournal journal;
+
+    /**
+     * Résultats des attaques des tours précédents, renvoyés aux joueurs qui se connectent.
+     */
+    private final TurnResultCache turnResults;
+
+    /**
+     * Messages récents des conversations de chaque partie, envoyés par pages aux joueurs.
+     */
+    private final ChatHistory chatHistory;
+
     /**
      * Constructeur de la classe GameManager.
      *
-     * @param server Instance du serveur.
+     * @param server  Instance du serveur.
+     * @param games   Les parties non archivées.
+     * @param players Les joueurs des parties non archivées.
      */
-    public GameManager(RiseAndFallServer server, List<ServerGame> games) {
+    public GameManager(RiseAndFallServer server, List<ServerGame> games, List<ServerPlayer> players) {
         this.server = server;
-        this.games = games;
+        this.games = new CopyOnWriteArrayList<>(games);
+        this.journal = new TurnJournal(Environment.JOURNAL_DIR, Environment.JOURNAL_SEGMENT_SIZE, Environment.JOURNAL_SNAPSHOT_INTERVAL_MS, Environment.JOURNAL_FORCE_INTERVAL_MS);
+        this.persistence = new GamePersistence(server.getRepository(), this.journal, Environment.DB_WRITER_THREADS, Environment.DB_FLUSH_TIMEOUT_MS);
+        this.archivedGames = new ArchivedGameCache(server, Environment.GAME_ARCHIVE_CACHE_SIZE);
+        this.turnResults = new TurnResultCache(server, this.persistence, Environment.TURN_RESULT_CACHE_SIZE);
+        this.chatHistory = new ChatHistory(server, Environment.CHAT_HISTORY_WINDOW_SIZE);
+        for (ServerPlayer player : players) {
+            if (!player.hasExitedGame()) {
+                this.activePlayers.put(player.getUser().getId(), player);
+            }
+        }
 
         if (games.stream().noneMatch(game -> game.getState() == GameState.WAITING)) {
             // Si aucune partie n'est en attente, on en crée une nouvelle
@@ -58,10 +120,19 @@ public class GameManager {
      * @param player Le joueur dont on veut récupérer les connexions.
      * @return La liste des connexions pour le joueur donné.
      */
-    public synchronized List<SocketWrapper> getConnectionsFor(ServerPlayer player) {
+    public List<SocketWrapper> getConnectionsFor(ServerPlayer player) {
         return this.server.getAuthManager().getConnectionsFor(player.getUser());
     }
 
+    /**
+     * Récupère les parties non archivées.
+     *
+     * @return Une copie de la liste des parties non archivées.
+     */
+    public List<ServerGame> getGames() {
+        return new ArrayList<>(this.games);
+    }
+
     /**
      * Récupère la joueur dans une partie en cours pour un utilisateur donné.
      *
@@ -69,13 +140,18 @@ public class GameManager {
      * @return Le joueur dans une partie en cours, ou null si l'utilisateur n'est pas dans une partie en cours.
      */
     public ServerPlayer getPlayerInRunningGame(User user) {
-        for (ServerGame game : this.games) {
-            ServerPlayer player = game.getPlayerFor(user);
-            if (player != null && !player.hasExitedGame()) {
-                return player;
-            }
-        }
-        return null;
+        return this.activePlayers.get(user.getId());
+    }
+
+    /**
+     * Récupère une partie non archivée à partir de son identifiant.
+     * Les parties archivées ne sont consultables que par leur historique, avec {@link #onRequestGameHistory}.
+     *
+     * @param gameId L'identifiant de la partie.
+     * @return La partie, ou null si elle n'existe pas ou si elle est archivée.
+     */
+    public ServerGame getGame(int gameId) {
+        return Identifiable.getByIdOrNull(this.games, gameId);
     }
 
     /**
@@ -93,38 +169,23 @@ public class GameManager {
     }
 
     /**
-     * Crée une nouvelle partie et l'enregistre en base de données.
+     * Crée une nouvelle partie et l'enregistre dans le stockage.
      *
      * @param name Le nom de la partie.
      * @return La nouvelle partie créée.
      */
-    public synchronized ServerGame newGame(String name) {
+    public ServerGame newGame(String name) {
         LogManager.logMessage("Création de la partie : " + name);
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO game(name) VALUES (?) RETURNING id, turn_interval, current_turn, min_players, max_players, state, password_hash IS NOT NULL as is_private, state, next_action_at")) {
-            statement.setString(1, name);
-            statement.execute();
-            ResultSet resultSet = statement.getResultSet();
-            if (resultSet.next()) {
-                int gameId = resultSet.getInt("id");
-                int turnInterval = resultSet.getInt("turn_interval");
-                int currentTurn = resultSet.getInt("current_turn");
-                int minPlayers = resultSet.getInt("min_players");
-                int maxPlayers = resultSet.getInt("max_players");
-                boolean isPrivate = resultSet.getBoolean("is_private");
-                GameState state = GameState.valueOf(resultSet.getString("state"));
-                Timestamp nextActionAt = resultSet.getTimestamp("next_action_at");
-
-                ServerGame game = new ServerGame(this.server, gameId, name, turnInterval, minPlayers, maxPlayers, isPrivate, state, nextActionAt, currentTurn);
-                this.games.add(game);
-                LogManager.logMessage("Partie créée avec succès : " + name + " (ID: " + gameId + ")");
-                return game;
-            } else {
-                LogManager.logError("Erreur lors de la création de la partie : aucune ligne retournée.");
-            }
+        ServerGame game;
+        try {
+            game = this.server.getRepository().createGame(this.server, name);
         } catch (SQLException e) {
-            LogManager.logError("Erreur lors de la création de la partie " + name + " dans la base de données.", e);
+            LogManager.logError("Erreur lors de la création de la partie " + name + " dans le stockage.", e);
+            return null;
         }
-        return null;
+        this.games.add(game);
+        LogManager.logMessage("Partie créée avec succès : " + name + " (ID: " + game.getId() + ")");
+        return game;
     }
 
     /**
@@ -137,6 +198,31 @@ public class GameManager {
         return this.newGame(gameName);
     }
 
+    /**
+     * Demande la création d'une nouvelle partie avec un nom aléatoire, dans un thread virtuel.
+     * La création interroge le stockage : elle ne doit pas bloquer la file de la partie qui la demande.
+     */
+    public void requestNewRandomGame() {
+        Thread.ofVirtual().name("Game Creation").start(() -> {
+            try {
+                this.newRandomGame();
+            } catch (RuntimeException e) {
+                LogManager.logError("Erreur lors de la création d'une nouvelle partie", e);
+            }
+        });
+    }
+
+    /**
+     * Renvoie un futur complété lorsque les écritures déjà demandées pour une partie sont terminées, sans bloquer la
+     * file de la partie.
+     *
+     * @param game La partie dont on attend les écritures.
+     * @return Un futur complété avec true si les écritures sont terminées, false si le délai d'attente a expiré.
+     */
+    public CompletableFuture<Boolean> flushAsync(ServerGame game) {
+        return this.persistence.flushAsync(game);
+    }
+
     /**
      * Ajoute un joueur à une partie de jeu à partir d'un utilisateur.
      *
@@ -147,69 +233,141 @@ public class GameManager {
      */
     private ServerPlayer addPlayerToGame(User user, ServerGame game, Race race) {
         int playerId;
-        try (PreparedStatement statement = server.getDb().prepareStatement(
-                "INSERT INTO player (user_id, game_id, race_id) VALUES (?, ?, ?)",
-                Statement.RETURN_GENERATED_KEYS)) {
-
-            statement.setInt(1, user.getId());
-            statement.setInt(2, game.getId());
-            statement.setInt(3, race.getId());
-
-            int affectedRows = statement.executeUpdate();
-
-            if (affectedRows == 0) {
-                throw new SQLException("Creating player failed, no rows affected.");
-            }
-
-            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    playerId = generatedKeys.getInt(1);
-                } else {
-                    throw new SQLException("Creating player failed, no ID obtained.");
-                }
-            }
-
+        try {
+            playerId = this.server.getRepository().createPlayer(user.getId(), game.getId(), race.getId());
         } catch (SQLException e) {
             LogManager.logError("Erreur lors de l'ajout du joueur à la partie " + game.getName() + " pour l'utilisateur " + user.getUsername(), e);
             return null;
         }
         ServerPlayer player = new ServerPlayer(playerId, user, game, race);
         this.server.getUserManager().addPlayer(player);
+        this.activePlayers.put(user.getId(), player);
         game.addPlayer(player);
+        this.journal.appendPlayerJoined(player);
         return player;
     }
 
     /**
      * Envoie les mises à jour de données du joueur à toutes les connexions associées.
+     * Les clients qui ont négocié un format d'encodage récent ne reçoivent que les données modifiées depuis le dernier envoi,
+     * les autres reçoivent toutes les données du joueur.
      *
      * @param player Le joueur dont les données doivent être mises à jour.
      */
     public void sendPlayerDataUpdates(ServerPlayer player) {
         List<SocketWrapper> connections = this.getConnectionsFor(player);
-        if (!connections.isEmpty()) {
-            PacketUpdateGameData packet = new PacketUpdateGameData(player.getGame(), player);
-            for (SocketWrapper connection : connections) {
-                try {
-                    connection.sendPacket(packet);
-                } catch (IOException e) {
-                    LogManager.logError("Erreur lors de l'envoi du paquet de mise à jour des données du joueur " + player.getUser().getUsername() + " à la connexion " + connection.getName(), e);
-                }
+        if (connections.isEmpty()) {
+            return;
+        }
+        List<SocketWrapper> fullDataConnections = new ArrayList<>();
+        List<SocketWrapper> deltaConnections = new ArrayList<>();
+        for (SocketWrapper connection : connections) {
+            (supportsDataDelta(connection) ? deltaConnections : fullDataConnections).add(connection);
+        }
+        Function<SocketWrapper, String> errorMessage = connection -> "Erreur lors de l'envoi du paquet de mise à jour des données du joueur " + player.getUser().getUsername() + " à la connexion " + connection.getName();
+        if (!fullDataConnections.isEmpty()) {
+            this.broadcastPacket(new PacketUpdateGameData(player.getGame(), player), fullDataConnections, errorMessage);
+        }
+        if (!deltaConnections.isEmpty()) {
+            this.broadcastPacket(player.createDataDeltaPacket(), deltaConnections, errorMessage);
+        }
+    }
+
+    /**
+     * Envoie toutes les données modifiables du joueur à une connexion qui comprend les mises à jour partielles,
+     * pour qu'elle dispose de la version de référence des données.
+     *
+     * @param player     Le joueur dont les données doivent être envoyées.
+     * @param connection La connexion qui reçoit les données.
+     */
+    private void sendFullPlayerData(ServerPlayer player, SocketWrapper connection) {
+        try {
+            connection.sendPacket(player.createFullDataPacket());
+        } catch (IOException e) {
+            LogManager.logError("Erreur lors de l'envoi des données complètes du joueur " + player.getUser().getUsername() + " à la connexion " + connection.getName(), e);
+        }
+    }
+
+    /**
+     * Indique si une connexion comprend le paquet {@link PacketUpdateGameDataDelta}.
+     * Ce paquet a été introduit en même temps que la négociation du format d'encodage : seuls les clients
+     * qui ont négocié un format plus récent que {@link WireFormat#V1} le comprennent.
+     *
+     * @param connection La connexion à vérifier.
+     * @return true si la connexion peut recevoir des mises à jour partielles.
+     */
+    private static boolean supportsDataDelta(SocketWrapper connection) {
+        return connection.getSendWireFormat() != WireFormat.V1;
+    }
+
+    /**
+     * Méthode appelée lorsqu'un client redemande toutes les données de son joueur,
+     * parce que la version de ses données ne correspond pas à celle d'une mise à jour partielle reçue.
+     *
+     * @param sender Le socket du client qui a envoyé la demande.
+     */
+    public void onResyncGameData(SocketWrapper sender) {
+        ServerPlayer player = this.getPlayerInRunningGame(sender);
+        if (player == null) {
+            LogManager.logError("La connexion " + sender.getName() + " n'est pas dans une partie. Impossible de renvoyer les données du joueur.");
+            return;
+        }
+        player.getGame().getMailbox().execute(() -> this.sendFullPlayerData(player, sender));
+    }
+
+    /**
+     * Envoie un paquet déjà encodé à plusieurs connexions.
+     * Une erreur d'envoi sur une connexion est journalisée sans interrompre l'envoi aux autres connexions.
+     *
+     * @param packet       Le paquet encodé à envoyer.
+     * @param connections  Les connexions qui reçoivent le paquet.
+     * @param errorMessage Fonction qui construit le message d'erreur à journaliser pour une connexion.
+     */
+    private void sendEncodedPacket(EncodedPacket packet, Iterable<SocketWrapper> connections, Function<SocketWrapper, String> errorMessage) {
+        for (SocketWrapper connection : connections) {
+            try {
+                connection.sendPacket(packet);
+            } catch (IOException e) {
+                LogManager.logError(errorMessage.apply(connection), e);
             }
         }
     }
 
+    /**
+     * Envoie un paquet à plusieurs connexions, en ne le sérialisant qu'une seule fois par format d'encodage.
+     *
+     * @param packet       Le paquet à envoyer.
+     * @param connections  Les connexions qui reçoivent le paquet.
+     * @param errorMessage Fonction qui construit le message d'erreur à journaliser pour une connexion.
+     */
+    private void broadcastPacket(IPacket packet, Iterable<SocketWrapper> connections, Function<SocketWrapper, String> errorMessage) {
+        EncodedPacket encodedPacket = this.server.encodePacket(packet);
+        try {
+            this.sendEncodedPacket(encodedPacket, connections, errorMessage);
+        } finally {
+            encodedPacket.release();
+        }
+    }
+
     /**
      * Envoie un paquet de jointure de partie au client spécifié.
      * Méthode privée utilisée lorsqu'on a déjà récupéré toutes les informations nécessaires pour envoyer le paquet.
      *
-     * @param packet Le paquet de jointure de partie à envoyer.
+     * Les clients qui comprennent les mises à jour partielles reçoivent ensuite la version de référence des données du joueur.
+     *
+     * @param game   La partie rejointe.
+     * @param player Le joueur qui a rejoint la partie.
      * @param client Le client qui reçoit le paquet.
      */
-    private void sendJoinGamePacket(PacketJoinedGame<ServerGame, ServerPlayer> packet, SocketWrapper client) {
+    private void sendJoinGamePacket(ServerGame game, ServerPlayer player, SocketWrapper client) {
         try {
-            client.sendPacket(packet);
+            client.sendPacket(new PacketJoinedGame<>(game, player));
         } catch (IOException e) {
             LogManager.logError("Erreur lors de l'envoi du paquet de jointure de partie au client " + client.getName(), e);
+            return;
+        }
+        if (supportsDataDelta(client)) {
+            this.sendFullPlayerData(player, client);
         }
     }
 
@@ -226,10 +384,32 @@ public class GameManager {
             this.sendWaitingGames(connection);
         } else {
             ServerGame game = player.getGame();
-            this.sendJoinGamePacket(new PacketJoinedGame<>(game, player), connection);
+            this.sendJoinGamePacket(game, player, connection);
         }
     }
 
+    /**
+     * Envoie à un client qui vient de s'authentifier les données de sa partie en cours : la partie, les joueurs découverts
+     * et les résultats des tours précédents, ou la liste des parties en attente s'il n'est dans aucune partie.
+     * Les données d'une partie sont envoyées depuis sa file, pour ne pas être lues pendant une modification.
+     *
+     * @param connection La connexion du client.
+     * @param user       L'utilisateur authentifié.
+     * @param resume     Les données déjà reçues par le client, ou null s'il n'en a aucune.
+     */
+    public void sendInitialGameData(SocketWrapper connection, User user, PacketResumeSession resume) {
+        ServerPlayer player = this.getPlayerInRunningGame(user);
+        if (player == null) {
+            this.sendWaitingGames(connection);
+            return;
+        }
+        player.getGame().getMailbox().execute(() -> {
+            this.sendJoinGamePacket(connection, user);
+            this.sendDiscoverPlayerPacket(connection, user, resume);
+            this.sendTurnsResults(connection, user, resume);
+        });
+    }
+
     /**
      * Envoie un paquet de jointure de partie à tous les clients associés à un utilisateur.
      *
@@ -239,7 +419,7 @@ public class GameManager {
      */
     public void sendJoinGamePacket(ServerGame game, ServerPlayer player, User user) {
         for (SocketWrapper connection : this.server.getAuthManager().getConnectionsFor(user)) {
-            this.sendJoinGamePacket(new PacketJoinedGame<>(game, player), connection);
+            this.sendJoinGamePacket(game, player, connection);
         }
     }
 
@@ -249,11 +429,20 @@ public class GameManager {
      * @param sender Le socket du client qui recevra la liste des parties en attente.
      */
     public void sendWaitingGames(SocketWrapper sender) {
-        try {
-            sender.sendPacket(new PacketWaitingGames<>(this.games.stream().filter(game -> game.getState() == GameState.WAITING).toList()));
-        } catch (IOException e) {
-            LogManager.logError("Erreur lors de l'envoi des parties en attente au client :", e);
+        this.sendWaitingGames(List.of(sender));
+    }
+
+    /**
+     * Envoie la liste des parties en attente à plusieurs clients, en ne la sérialisant qu'une seule fois.
+     *
+     * @param connections Les connexions des clients qui recevront la liste des parties en attente.
+     */
+    public void sendWaitingGames(Collection<SocketWrapper> connections) {
+        if (connections.isEmpty()) {
+            return;
         }
+        this.broadcastPacket(new PacketWaitingGames<>(this.games.stream().filter(game -> game.getState() == GameState.WAITING).toList()), connections,
+                connection -> "Erreur lors de l'envoi des parties en attente au client " + connection.getName() + " :");
     }
 
     /**
@@ -265,6 +454,31 @@ public class GameManager {
      * @param game       La partie dans laquelle est le joueur.
      */
     private void sendDiscoveredPlayers(SocketWrapper connection, ServerPlayer player, ServerGame game) {
+        this.sendDiscoveredPlayers(connection, player, game, null);
+    }
+
+    /**
+     * Envoie la liste des joueurs découverts à un joueur et une connexion spécifique.
+     * Si le client reprend une session sur cette partie, seuls les messages de chat qu'il n'a pas encore reçus sont envoyés.
+     *
+     * @param connection La connexion du client qui recevra les paquets de découverte des joueurs.
+     * @param player     Le joueur à qui correspond la connexion.
+     * @param game       La partie dans laquelle est le joueur.
+     * @param resume     Les données déjà reçues par le client sur cette partie, ou null s'il n'en a aucune.
+     */
+    private void sendDiscoveredPlayers(SocketWrapper connection, ServerPlayer player, ServerGame game, PacketResumeSession resume) {
+        this.sendDiscoverPlayerPackets(connection, player, game);
+        sendChats(connection, player, resume);
+    }
+
+    /**
+     * Envoie un paquet de découverte de chacun des autres joueurs d'une partie à une connexion.
+     *
+     * @param connection La connexion du client qui recevra les paquets de découverte des joueurs.
+     * @param player     Le joueur à qui correspond la connexion.
+     * @param game       La partie dans laquelle est le joueur.
+     */
+    private void sendDiscoverPlayerPackets(SocketWrapper connection, ServerPlayer player, ServerGame game) {
         // On envoie la liste de tous les autres joueurs puisqu'il n'y a pas d'espions.
         for (ServerPlayer otherPlayer : game.getPlayers()) {
             if (otherPlayer != player) {
@@ -275,58 +489,32 @@ public class GameManager {
                 }
             }
         }
-        sendChats(connection, player);
     }
 
     /**
-     * Récupère les messages de chat pour un joueur spécifique à partir de la base de données.
-     *
-     * @param player Le joueur pour lequel on veut récupérer les messages de chat.
-     * @return Une liste de messages de chat pour le joueur spécifié.
-     */
-    private List<ChatMessage> getMessagesForPlayer(ServerPlayer player) {
-        ArrayList<ChatMessage> messages = new ArrayList<>();
-        UserManager userManager = this.server.getUserManager();
-
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("SELECT * FROM chat_message WHERE sender_player_id = ? OR receiver_player_id = ? ORDER BY sent_at")) {
-            statement.setInt(1, player.getId());
-            statement.setInt(2, player.getId());
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                int senderId = resultSet.getInt("sender_player_id");
-                int receiverId = resultSet.getInt("receiver_player_id");
-                String message = resultSet.getString("message");
-                long timestamp = resultSet.getTimestamp("sent_at").getTime();
-                ServerPlayer sender = userManager.getPlayer(senderId);
-                ServerPlayer receiver = userManager.getPlayer(receiverId);
-                messages.add(new ChatMessage(sender, receiver, message, -1, timestamp));
-            }
-        } catch (SQLException e) {
-            LogManager.logError("Erreur lors de la récupération des messages de chat du joueur " + player.getUser().getUsername() + " dans la base de données.", e);
-        }
-
-        return messages;
-    }
-
-    /**
-     * Envoie les messages de chat à un joueur spécifique lors de sa connexion.
-     * Cette méthode est appelée pour envoyer les messages de chat précédents au joueur lorsqu'il se connecte.
+     * Envoie la page la plus récente de chaque conversation d'un joueur lors de sa connexion.
+     * Les pages plus anciennes sont envoyées à la demande du client, lorsque l'utilisateur remonte dans la conversation.
+     * <p>
+     * Si le client reprend une session, seuls les messages plus récents que le dernier message reçu dans chaque conversation sont envoyés.
      *
      * @param connection La connexion du joueur qui reçoit les messages de chat.
      * @param player     Le joueur qui reçoit les messages de chat.
+     * @param resume     Les données déjà reçues par le client sur la partie du joueur, ou null s'il n'en a aucune.
      */
-    private void sendChats(SocketWrapper connection, ServerPlayer player) {
-        List<ChatMessage> allMessages = getMessagesForPlayer(player);
-        if (allMessages.isEmpty()) {
-            return;
-        }
+    private void sendChats(SocketWrapper connection, ServerPlayer player, PacketResumeSession resume) {
         try {
-            for (ChatMessage message : allMessages) {
-                PacketMessage packetMessage = new PacketMessage(message);
-                connection.sendPacket(packetMessage);
+            for (ServerPlayer otherPlayer : player.getGame().getPlayers()) {
+                if (otherPlayer == player) {
+                    continue;
+                }
+                long since = resume == null ? -1 : resume.getLastChatTimestamp(otherPlayer.getId());
+                PacketChatHistory page = this.chatHistory.getPage(player, otherPlayer, Long.MAX_VALUE, since);
+                if (!page.getMessages().isEmpty()) {
+                    connection.sendPacket(page);
+                }
             }
         } catch (IOException e) {
-            LogManager.logError("Erreur lors de l'envoi du paquet de chat au joueur " + player.getUser().getUsername() + " à la connexion " + connection.getName(), e);
+            LogManager.logError("Erreur lors de l'envoi de l'historique de chat au joueur " + player.getUser().getUsername() + " à la connexion " + connection.getName(), e);
         }
     }
 
@@ -352,12 +540,34 @@ public class GameManager {
      * @param user   L'utilisateur pour lequel on envoie le paquet de découverte du joueur.
      */
     public void sendDiscoverPlayerPacket(SocketWrapper sender, User user) {
+        this.sendDiscoverPlayerPacket(sender, user, null);
+    }
+
+    /**
+     * Envoie un paquet de découverte de joueur à un client spécifique qui reprend éventuellement une session.
+     *
+     * @param sender Le socket du client qui recevra le paquet de découverte du joueur.
+     * @param user   L'utilisateur pour lequel on envoie le paquet de découverte du joueur.
+     * @param resume Les données déjà reçues par le client, ou null s'il n'en a aucune.
+     */
+    public void sendDiscoverPlayerPacket(SocketWrapper sender, User user, PacketResumeSession resume) {
         ServerPlayer player = getPlayerInRunningGame(user);
         if (player != null) {
-            this.sendDiscoveredPlayers(sender, player, player.getGame());
+            this.sendDiscoveredPlayers(sender, player, player.getGame(), resumeFor(resume, player.getGame()));
         }
     }
 
+    /**
+     * Vérifie que les données de reprise de session d'un client portent sur une partie donnée.
+     *
+     * @param resume Les données déjà reçues par le client, ou null s'il n'en a aucune.
+     * @param game   La partie dans laquelle est le joueur.
+     * @return Les données de reprise si elles portent sur la partie, null sinon.
+     */
+    private static PacketResumeSession resumeFor(PacketResumeSession resume, ServerGame game) {
+        return resume != null && resume.getGameId() == game.getId() ? resume : null;
+    }
+
     /**
      * Envoie les résultats d'un tour à un client spécifique.
      *
@@ -382,10 +592,8 @@ public class GameManager {
     private void sendTurnResults(ServerPlayer player, int turn, List<AttackResult> attacksResults, List<Player> eliminatedPlayers) {
         List<SocketWrapper> connections = this.getConnectionsFor(player);
         if (!connections.isEmpty()) {
-            PacketTurnResults packet = new PacketTurnResults(turn, attacksResults, eliminatedPlayers);
-            for (SocketWrapper connection : connections) {
-                this.sendTurnResults(connection, packet);
-            }
+            this.broadcastPacket(new PacketTurnResults(turn, attacksResults, eliminatedPlayers), connections,
+                    connection -> "Erreur lors de l'envoi des résultats du tour au client " + connection.getName());
         }
     }
 
@@ -396,197 +604,237 @@ public class GameManager {
      * @param user       L'utilisateur pour lequel on envoie les résultats des tours.
      */
     public void sendTurnsResults(SocketWrapper connection, User user) {
+        this.sendTurnsResults(connection, user, null);
+    }
+
+    /**
+     * Envoie les résultats des tours précédents à une connexion spécifique.
+     * Si le client reprend une session sur la partie, seuls les tours dont il n'a pas reçu les résultats sont envoyés.
+     *
+     * @param connection La connexion du client qui recevra les résultats des tours.
+     * @param user       L'utilisateur pour lequel on envoie les résultats des tours.
+     * @param resume     Les données déjà reçues par le client, ou null s'il n'en a aucune.
+     */
+    public void sendTurnsResults(SocketWrapper connection, User user, PacketResumeSession resume) {
         ServerPlayer player = this.getPlayerInRunningGame(user);
         if (player != null) {
             ServerGame game = player.getGame();
-            Map<Integer, List<AttackResult>> attackResults = this.loadAttackResultsInvolvingPlayer(player);
-            Map<Integer, List<Player>> eliminatedPlayers = game.getPlayers().stream()
-                    .filter(playerInGame -> playerInGame.getEliminationTurn() != -1)
-                    .collect(Collectors.groupingBy(Player::getEliminationTurn, Collectors.toCollection(ArrayList::new)));
-
-            int currentTurn = game.getCurrentTurn();
-            int maxTurn = game.getState() == GameState.ENDED ? currentTurn + 1 : currentTurn;
-            for (int turn = 1; turn < maxTurn; turn++) {
-                this.sendTurnResults(connection, new PacketTurnResults(
-                        turn,
-                        attackResults.getOrDefault(turn, Collections.emptyList()),
-                        eliminatedPlayers.getOrDefault(turn, Collections.emptyList())
-                ));
+            resume = resumeFor(resume, game);
+            int firstTurn = resume == null ? 1 : resume.getLastResultsTurn() + 1;
+            if (firstTurn >= getResultsEndTurn(game)) {
+                return;
             }
+            this.sendTurnsResults(connection, game, firstTurn, this.turnResults.getResultsInvolving(player, firstTurn));
         }
     }
 
     /**
-     * Appelée lorsqu'une partie est mise à jour.
-     * Elle met à jour l'état de la partie dans la base de données et envoie les mises à jour de données aux joueurs de la partie.
-     * Cette méthode est une surcharge de la méthode {@link #handleGameUpdate(ServerGame game, ServerPlayer exceptPlayer)} avec exceptPlayer à null.
+     * Renvoie le tour qui suit le dernier tour dont les résultats sont connus : le tour en cours n'a pas encore de
+     * résultats, sauf si la partie est terminée.
      *
-     * @param game La partie mise à jour.
+     * @param game La partie.
+     * @return Le numéro du premier tour sans résultats.
      */
-    public void handleGameUpdate(ServerGame game) {
-        this.handleGameUpdate(game, null);
+    private static int getResultsEndTurn(ServerGame game) {
+        int currentTurn = game.getCurrentTurn();
+        return game.getState() == GameState.ENDED ? currentTurn + 1 : currentTurn;
     }
 
     /**
-     * Supprime le contenu d'une table spécifique pour un joueur donné.
-     * On suppose que la table contient une colonne `player_id` pour identifier les données du joueur,
-     * et que le nom de la table passé en paramètre n'est pas dangereux (pas de vérification d'injections SQL).
+     * Envoie les résultats des tours d'une partie à une connexion, à partir d'un tour donné.
      *
-     * @param player    Le joueur dont on veut supprimer les données de la table.
-     * @param tableName Le nom de la table à nettoyer (pas de vérification d'injection SQL).
+     * @param connection    La connexion du client qui recevra les résultats des tours.
+     * @param game          La partie.
+     * @param firstTurn     Le premier tour dont les résultats sont envoyés.
+     * @param attackResults Les résultats des attaques impliquant le joueur du client, associés à leur tour.
      */
-    private void emptyTableByPlayer(ServerPlayer player, String tableName) {
-        try (PreparedStatement preparedStatement = this.server.getDb().prepareStatement("DELETE FROM " + tableName + " WHERE player_id = ?")) {
-            preparedStatement.setInt(1, player.getId());
-            preparedStatement.executeUpdate();
-        } catch (SQLException e) {
-            LogManager.logError("Erreur lors de la suppression des données du joueur " + player.getUser().getUsername() + " dans la table " + tableName + ".", e);
+    private void sendTurnsResults(SocketWrapper connection, ServerGame game, int firstTurn, Map<Integer, List<AttackResult>> attackResults) {
+        Map<Integer, List<Player>> eliminatedPlayers = game.getPlayers().stream()
+                .filter(playerInGame -> playerInGame.getEliminationTurn() != -1)
+                .collect(Collectors.groupingBy(Player::getEliminationTurn, Collectors.toCollection(ArrayList::new)));
+
+        int maxTurn = getResultsEndTurn(game);
+        for (int turn = firstTurn; turn < maxTurn; turn++) {
+            this.sendTurnResults(connection, new PacketTurnResults(
+                    turn,
+                    attackResults.getOrDefault(turn, Collections.emptyList()),
+                    eliminatedPlayers.getOrDefault(turn, Collections.emptyList())
+            ));
         }
     }
 
     /**
-     * Supprime les ordres en attente du joueur dans la base de données.
-     * Cette méthode est appelée pour nettoyer les ordres en attente lorsque le joueur met à jour ses ordres.
+     * Appelée lorsqu'une partie est mise à jour.
+     * Elle met à jour l'état de la partie dans le stockage et envoie les mises à jour de données aux joueurs de la partie.
+     * Cette méthode est une surcharge de la méthode {@link #handleGameUpdate(ServerGame game, ServerPlayer exceptPlayer)} avec exceptPlayer à null.
      *
-     * @param player Le joueur dont on veut supprimer les ordres en attente.
+     * @param game La partie mise à jour.
      */
-    private void clearPendingOrders(ServerPlayer player) {
-        this.emptyTableByPlayer(player, "building_creation_order");
-        this.emptyTableByPlayer(player, "unit_creation_order");
-        this.emptyTableByPlayer(player, "attack_player_order");
-    }
-
-    private void clearBuildingsAndUnits(ServerPlayer player) {
-        this.emptyTableByPlayer(player, "player_building");
-        this.emptyTableByPlayer(player, "player_unit");
+    public void handleGameUpdate(ServerGame game) {
+        this.handleGameUpdate(game, null);
     }
 
     /**
-     * Prépare les détails des résultats d'attaques pour l'insertion dans la base de données.
+     * Récupère les métriques des sauvegardes des parties dans le stockage.
      *
-     * @param map         La map contenant ces détails du résultat d'attaque, où la clé est un objet identifiable (par exemple, un type de bâtiment ou d'unité) et la valeur est le nombre d'instances détruites ou perdues.
-     * @param statement   La requête préparée pour insérer les détails des résultats d'attaques.
-     * @param attackLogId L'identifiant du journal d'attaque auquel ces détails sont associés.
-     * @throws SQLException Si une erreur SQL se produit lors de l'exécution de la requête.
+     * @return Les métriques actuelles.
      */
-    private void saveAttackResultDetails(ObjectIntMap<? extends Identifiable> map, PreparedStatement statement, int attackLogId) throws SQLException {
-        for (ObjectIntMap.Entry<? extends Identifiable> entry : map) {
-            statement.setInt(1, attackLogId);
-            statement.setInt(2, entry.getKey().getId());
-            statement.setInt(3, entry.getValue());
-            statement.addBatch();
-        }
+    public GamePersistence.Metrics getPersistenceMetrics() {
+        return this.persistence.getMetrics();
     }
 
     /**
-     * Charge les détails d'un résultat d'attaque à partir de la base de données.
-     *
-     * @param map              La map dans laquelle les détails seront chargés, où la clé est un objet identifiable (par exemple, un type de bâtiment ou d'unité) et la valeur est le nombre d'instances détruites ou perdues.
-     * @param tableName        Le nom de la table à partir de laquelle charger les détails des résultats d'attaques.
-     * @param objectColumnName Le nom de la colonne dans la table qui contient l'identifiant de l'objet (par exemple, `building_type_id` ou `unit_type_id`).
-     * @param attackLogId      L'identifiant du journal d'attaque auquel ces détails sont associés.
-     * @param typeResolver     Une fonction qui résout l'identifiant de l'objet en un type spécifique (par exemple, `BuildingType` ou `UnitType`).
-     * @param <T>              Le type de l'objet identifiable (par exemple, `BuildingType` ou `UnitType`).
-     * @throws SQLException Si une erreur SQL se produit lors de l'exécution de la requête.
-     */
-    private <T> void loadAttackResultDetails(ObjectIntMap<T> map, String tableName, String objectColumnName, int attackLogId, IntFunction<T> typeResolver) throws SQLException {
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("SELECT * FROM " + tableName + " WHERE attack_log_id = ?")) {
-            statement.setInt(1, attackLogId);
-            ResultSet destroyedBuildingsResultSet = statement.executeQuery();
-            while (destroyedBuildingsResultSet.next()) {
-                int objectId = destroyedBuildingsResultSet.getInt(objectColumnName);
-                int amount = destroyedBuildingsResultSet.getInt("amount");
-                map.set(typeResolver.apply(objectId), amount);
+     * Attend la fin des tâches en attente dans les files des parties, termine les écritures en attente dans le stockage
+     * puis arrête les threads d'écriture, et ferme le journal des tours.
+     * Appelée à l'arrêt du serveur, une fois que plus aucun paquet ni aucun tour ne peut arriver.
+     */
+    public void closePersistence() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Environment.DB_FLUSH_TIMEOUT_MS);
+        for (ServerGame game : this.games) {
+            if (!game.getMailbox().awaitIdle(deadline)) {
+                LogManager.logError("Des tâches de parties n'ont pas pu être terminées avant l'arrêt du serveur.");
+                break;
             }
         }
+        this.persistence.close();
+        this.journal.close();
     }
 
     /**
-     * Charge les résultats des attaques impliquant un joueur spécifique à partir de la base de données.
-     *
-     * @param player Le joueur pour lequel on veut charger les résultats des attaques.
-     * @return Une map où la clé est le numéro du tour et la valeur est une liste des résultats d'attaques pour ce tour.
-     */
-    private Map<Integer, List<AttackResult>> loadAttackResultsInvolvingPlayer(ServerPlayer player) {
-        Map<Integer, List<AttackResult>> attackResults = new HashMap<>();
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("SELECT * FROM attacks_logs WHERE attacker_player_id = ? OR target_player_id = ?")) {
-            statement.setInt(1, player.getId());
-            statement.setInt(2, player.getId());
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                int attackLogId = resultSet.getInt("id");
-                int attackerId = resultSet.getInt("attacker_player_id");
-                int targetId = resultSet.getInt("target_player_id");
-                int turn = resultSet.getInt("turn");
-
-                ServerPlayer attacker = this.server.getUserManager().getPlayer(attackerId);
-                ServerPlayer target = this.server.getUserManager().getPlayer(targetId);
-
-                ObjectIntMap<BuildingType> destroyedBuildings = target.getBuildingMap().createEmptyClone();
-                this.loadAttackResultDetails(destroyedBuildings, "attacks_destroyed_buildings", "building_type_id", attackLogId, value -> Identifiable.getById(ServerData.getBuildingTypes(), value));
-                ObjectIntMap<UnitType> destroyedUnits = target.getUnitMap().createEmptyClone();
-                this.loadAttackResultDetails(destroyedUnits, "attacks_destroyed_units", "unit_type_id", attackLogId, value -> Identifiable.getById(ServerData.getUnitTypes(), value));
-
-                ObjectIntMap<UnitType> lostUnits = attacker.getUnitMap().createEmptyClone();
-                if (attacker.equals(player)) { // On n'envoie pas les unités perdues si le joueur n'est pas l'attaquant
-                    this.loadAttackResultDetails(lostUnits, "attacks_lost_units", "unit_type_id", attackLogId, value -> Identifiable.getById(ServerData.getUnitTypes(), value));
+     * Rattrape les modifications ajoutées au journal des tours que le stockage n'avait pas reçues lors du dernier arrêt
+     * du serveur. À appeler une seule fois au démarrage, après le chargement des parties et avant leur reprise.
+     * <p>
+     * Le journal contient le dernier état de chaque partie et de chaque joueur : il est appliqué aux parties chargées,
+     * qui sont ensuite sauvegardées. Les résultats des tours absents du stockage y sont écrits, et les suppressions de
+     * joueurs et les archivages interrompus sont terminés. Les tours ne sont jamais réexécutés.
+     * </p>
+     */
+    public void recoverFromJournal() {
+        Set<ServerGame> recoveredGames = new LinkedHashSet<>();
+        Set<ServerGame> gamesToArchive = new LinkedHashSet<>();
+        List<ServerPlayer> playersToDelete = new ArrayList<>();
+        Map<Integer, Map<Integer, List<AttackResult>>> storedResults = new HashMap<>();
+        this.journal.replay((type, gameId, key, data) -> {
+            ServerGame game = Identifiable.getByIdOrNull(this.games, gameId);
+            if (game == null) {
+                // Partie déjà archivée
+                return;
+            }
+            switch (type) {
+                case GAME_STATE -> {
+                    game.updateModifiableData(data);
+                    recoveredGames.add(game);
+                }
+                case PLAYER_STATE -> {
+                    ServerPlayer player = this.server.getUserManager().getPlayer(key);
+                    if (player == null || player.getGame() != game) {
+                        return;
+                    }
+                    player.setExitedGame(data.readBoolean());
+                    player.readModifiableData(data, this.server.getDataDeserializer());
+                    recoveredGames.add(game);
+                }
+                case PLAYER_STATE_CHANGES -> {
+                    ServerPlayer player = this.server.getUserManager().getPlayer(key);
+                    if (player == null || player.getGame() != game) {
+                        return;
+                    }
+                    player.setExitedGame(data.readBoolean());
+                    int changedFields = data.readByte() & 0xFF;
+                    player.applyModifiableDataChanges(data, changedFields, false, this.server.getDataDeserializer());
+                    recoveredGames.add(game);
+                }
+                case TURN_RESULTS -> {
+                    List<AttackResult> results = data.readSerializableList(AttackResult::new, this.server.getDataDeserializer());
+                    Map<Integer, List<AttackResult>> stored = storedResults.get(gameId);
+                    if (stored == null) {
+                        try {
+                            stored = this.server.getRepository().loadAttackResults(gameId, IdRegistry.of(game.getPlayers()));
+                        } catch (SQLException e) {
+                            throw new RuntimeException("Erreur lors du chargement des résultats des attaques de la partie " + game.getName(), e);
+                        }
+                        storedResults.put(gameId, stored);
+                    }
+                    if (!stored.containsKey(key)) {
+                        this.saveAttackResults(game, key, results);
+                    }
                 }
+                case GAME_ARCHIVED -> gamesToArchive.add(game);
+                case PLAYER_REMOVED -> {
+                    ServerPlayer player = this.server.getUserManager().getPlayer(key);
+                    if (player == null || player.getGame() != game) {
+                        // Suppression déjà enregistrée dans le stockage
+                        return;
+                    }
+                    game.removePlayer(player.getUser());
+                    this.activePlayers.remove(player.getUser().getId(), player);
+                    this.server.getUserManager().removePlayer(player);
+                    playersToDelete.add(player);
+                    recoveredGames.add(game);
+                }
+                case PLAYER_JOINED, CHAT_MESSAGE -> {
+                    // Déjà enregistrés dans le stockage au moment de l'événement
+                }
+            }
+        });
 
-                attackResults.computeIfAbsent(turn, k -> new ArrayList<>()).add(new AttackResult(attacker, target, destroyedBuildings, destroyedUnits, lostUnits));
+        for (ServerGame game : recoveredGames) {
+            for (ServerPlayer player : game.getPlayers()) {
+                if (player.hasExitedGame()) {
+                    this.activePlayers.remove(player.getUser().getId(), player);
+                }
             }
-        } catch (SQLException e) {
-            LogManager.logError("Erreur lors de la récupération des résultats d'attaques impliquant le joueur " + player.getUser().getUsername() + ".", e);
+            this.persistence.saveGame(game);
+        }
+        for (ServerPlayer player : playersToDelete) {
+            this.deletePlayer(player);
         }
-        return attackResults;
+        for (ServerGame game : gamesToArchive) {
+            this.archiveGame(game);
+        }
+        if (!recoveredGames.isEmpty() || !gamesToArchive.isEmpty()) {
+            LogManager.logMessage("%d parties rétablies, %d joueurs supprimés et %d parties archivées depuis le journal des tours.".formatted(recoveredGames.size(), playersToDelete.size(), gamesToArchive.size()));
+        }
+    }
+
+
+    /**
+     * Récupère l'état du cache des résultats des tours précédents.
+     *
+     * @return La description du contenu du cache et de son taux de succès.
+     */
+    public String getTurnResultCacheStats() {
+        return this.turnResults.getStats();
     }
 
     /**
-     * Enregistre les résultats des attaques effectuées durant le tour dans la base de données.
+     * Demande l'enregistrement des résultats des attaques effectuées durant le tour dans le stockage.
+     * L'écriture est exécutée en arrière-plan par la file d'écriture de la partie.
      *
      * @param game                    La partie dans laquelle les attaques ont été effectuées.
      * @param attacksExecutionContext Le contexte d'exécution des attaques, contenant les résultats des attaques effectuées durant le tour.
      */
     public void saveAttackResults(ServerGame game, AttacksExecutionContext attacksExecutionContext) {
-        // Préparation de la requête primaire
-        try (PreparedStatement attacksStatement = this.server.getDb().prepareStatement("INSERT INTO attacks_logs(attacker_player_id, target_player_id, turn) VALUES (?, ?, ?) RETURNING id")) {
-            for (AttackResult result : attacksExecutionContext.getAttackResults()) {
-                attacksStatement.setInt(1, result.getAttacker().getId());
-                attacksStatement.setInt(2, result.getTarget().getId());
-                attacksStatement.setInt(3, game.getCurrentTurn());
-                attacksStatement.addBatch();
-            }
-            // Exécution de la requête primaire
-            attacksStatement.executeBatch();
-
-            // On récupère les identifiants des attaques insérées et on prépare les requêtes secondaires.
-            ResultSet resultSet = attacksStatement.getResultSet();
-            Iterator<AttackResult> iterator = attacksExecutionContext.getAttackResults().iterator();
-            try (PreparedStatement destroyedBuildingsStatement = this.server.getDb().prepareStatement("INSERT INTO attacks_destroyed_buildings(attack_log_id, building_type_id, amount) VALUES (?, ?, ?)");
-                 PreparedStatement destroyedUnitsStatement = this.server.getDb().prepareStatement("INSERT INTO attacks_destroyed_units(attack_log_id, unit_type_id, amount) VALUES (?, ?, ?)");
-                 PreparedStatement lostUnitsStatement = this.server.getDb().prepareStatement("INSERT INTO attacks_lost_units(attack_log_id, unit_type_id, amount) VALUES (?, ?, ?)")) {
-                while (resultSet.next()) {
-                    assert iterator.hasNext() : "Des résultats d'attaques supplémentaires ont été retournés par la base de données !";
-                    int attackLogId = resultSet.getInt("id");
-                    AttackResult result = iterator.next();
-
-                    this.saveAttackResultDetails(result.getDestroyedBuildings(), destroyedBuildingsStatement, attackLogId);
-                    this.saveAttackResultDetails(result.getDestroyedUnits(), destroyedUnitsStatement, attackLogId);
-                    this.saveAttackResultDetails(result.getLostUnits(), lostUnitsStatement, attackLogId);
-                }
-                assert !iterator.hasNext() : "Il reste des attaques à traiter mais la base de données n'a pas retourné assez de résultats !";
+        this.saveAttackResults(game, game.getCurrentTurn(), List.copyOf(attacksExecutionContext.getAttackResults()));
+    }
 
-                // On exécute les requêtes secondaires.
-                destroyedBuildingsStatement.executeBatch();
-                destroyedUnitsStatement.executeBatch();
-                lostUnitsStatement.executeBatch();
-            }
-        } catch (SQLException e) {
-            LogManager.logError("Erreur lors de l'enregistrement des attaques pour le tour " + game.getCurrentTurn() + " de la partie " + game.getName() + ".", e);
-        }
+    /**
+     * Demande l'enregistrement des résultats des attaques d'un tour dans le stockage.
+     * Les résultats sont ajoutés au journal des tours, où ils restent jusqu'à ce que l'écriture en arrière-plan soit validée.
+     *
+     * @param game          La partie dans laquelle les attaques ont été effectuées.
+     * @param turn          Le tour durant lequel les attaques ont été effectuées.
+     * @param attackResults Les résultats des attaques, qui ne seront plus modifiés.
+     */
+    private void saveAttackResults(ServerGame game, int turn, List<AttackResult> attackResults) {
+        long sequence = this.journal.appendTurnResults(game, turn, attackResults);
+        this.persistence.submit(game, "les attaques du tour " + turn + " de la partie " + game.getName(),
+                repository -> repository.saveAttackResults(turn, attackResults), () -> this.journal.committed(sequence));
     }
 
     /**
      * Appelée lorsqu'un tour est exécuté.
+     * Les résultats des attaques sont enregistrés en arrière-plan et envoyés aux joueurs.
      *
      * @param game                    La partie dans laquelle le tour a été exécuté.
      * @param attacksExecutionContext Le contexte d'exécution des attaques, contenant les résultats des attaques effectuées durant le tour.
@@ -595,6 +843,7 @@ public class GameManager {
     public void handleTurnExecuted(ServerGame game, AttacksExecutionContext attacksExecutionContext, List<Player> eliminatedPlayers) {
         if (!attacksExecutionContext.getAttackResults().isEmpty()) {
             this.saveAttackResults(game, attacksExecutionContext);
+            this.turnResults.record(game, game.getCurrentTurn(), attacksExecutionContext.getAttackResults());
             Map<Player, List<AttackResult>> attackResultsByPlayer = new HashMap<>();
             for (AttackResult result : attacksExecutionContext.getAttackResults()) {
                 attackResultsByPlayer.computeIfAbsent(result.getAttacker(), k -> new ArrayList<>()).add(result);
@@ -602,33 +851,37 @@ public class GameManager {
                 AttackResult filteredAttackResult = result.getLostUnits().isEmpty() ? result : new AttackResult(result.getAttacker(), result.getTarget(), result.getDestroyedBuildings(), result.getDestroyedUnits(), result.getLostUnits().createEmptyClone());
                 attackResultsByPlayer.computeIfAbsent(result.getTarget(), k -> new ArrayList<>()).add(filteredAttackResult);
             }
-            for (ServerPlayer player : game.getPlayers()) {
-                List<AttackResult> results = attackResultsByPlayer.getOrDefault(player, Collections.emptyList());
-                this.sendTurnResults(player, game.getCurrentTurn(), results, eliminatedPlayers);
-            }
-        }
-    }
-
-    private void savePlayer(ServerPlayer player) {
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("UPDATE player SET gold = ?, intelligence = ?, elimination_turn = ?, exited_game = ? WHERE id = ?")) {
-            statement.setFloat(1, player.getGoldAmount());
-            statement.setFloat(2, player.getIntelligence());
-            if (player.getEliminationTurn() == -1) {
-                statement.setNull(3, Types.INTEGER); // Si le joueur n'est pas éliminé, on met la colonne à NULL
-            } else {
-                statement.setInt(3, player.getEliminationTurn());
+            // Les joueurs non impliqués dans une attaque reçoivent tous le même paquet, sérialisé une seule fois
+            EncodedPacket emptyResultsPacket = null;
+            try {
+                for (ServerPlayer player : game.getPlayers()) {
+                    List<AttackResult> results = attackResultsByPlayer.get(player);
+                    if (results != null) {
+                        this.sendTurnResults(player, game.getCurrentTurn(), results, eliminatedPlayers);
+                        continue;
+                    }
+                    List<SocketWrapper> connections = this.getConnectionsFor(player);
+                    if (connections.isEmpty()) {
+                        continue;
+                    }
+                    if (emptyResultsPacket == null) {
+                        emptyResultsPacket = this.server.encodePacket(new PacketTurnResults(game.getCurrentTurn(), Collections.emptyList(), eliminatedPlayers));
+                    }
+                    this.sendEncodedPacket(emptyResultsPacket, connections,
+                            connection -> "Erreur lors de l'envoi des résultats du tour au client " + connection.getName());
+                }
+            } finally {
+                if (emptyResultsPacket != null) {
+                    emptyResultsPacket.release();
+                }
             }
-            statement.setBoolean(4, player.hasExitedGame());
-            statement.setInt(5, player.getId());
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            LogManager.logError("Erreur lors de la mise à jour des données du joueur " + player.getUser().getUsername() + " dans la base de données.", e);
         }
     }
 
     /**
      * Appelée lorsqu'une partie est mise à jour.
-     * Elle met à jour l'état de la partie dans la base de données et envoie les mises à jour de données aux joueurs de la partie.
+     * Elle enregistre l'état de la partie et les données modifiées de ses joueurs dans le stockage, dans une seule
+     * transaction, puis envoie les mises à jour de données aux joueurs de la partie.
      *
      * @param game         La partie mise à jour.
      * @param exceptPlayer Le joueur à qui on ne doit pas envoyer les mises à jour, ou null si aucun joueur ne doit être omis.
@@ -636,46 +889,7 @@ public class GameManager {
      *                     n'a pas encore reçu les données initiales.
      */
     public void handleGameUpdate(ServerGame game, ServerPlayer exceptPlayer) {
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("UPDATE game SET state = ?, next_action_at = ?, current_turn = ? WHERE id = ?")) {
-            statement.setString(1, game.getState().name());
-            statement.setTimestamp(2, game.getNextActionAt());
-            statement.setInt(3, game.getCurrentTurn());
-            statement.setInt(4, game.getId());
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            LogManager.logError("Erreur lors de la mise à jour de la partie " + game.getName() + " dans la base de données.", e);
-        }
-
-        for (ServerPlayer player : game.getPlayers()) {
-            this.savePlayer(player);
-            this.clearPendingOrders(player);
-
-            this.clearBuildingsAndUnits(player);
-
-            try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO player_building (player_id, building_id, quantity) VALUES (?, ?, ?)")) {
-                for (ObjectIntMap.Entry<BuildingType> entry : player.getBuildingMap()) {
-                    statement.setInt(1, player.getId());
-                    statement.setInt(2, entry.getKey().getId());
-                    statement.setInt(3, entry.getValue());
-                    statement.addBatch();
-                }
-                statement.executeBatch();
-            } catch (SQLException e) {
-                LogManager.logError("Erreur lors de la sauvegarde des bâtiments pour le joueur " + player.getUser().getUsername() + ".", e);
-            }
-
-            try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO player_unit (player_id, unit_id, quantity) VALUES (?, ?, ?)")) {
-                for (ObjectIntMap.Entry<UnitType> entry : player.getUnitMap()) {
-                    statement.setInt(1, player.getId());
-                    statement.setInt(2, entry.getKey().getId());
-                    statement.setInt(3, entry.getValue());
-                    statement.addBatch();
-                }
-                statement.executeBatch();
-            } catch (SQLException e) {
-                LogManager.logError("Erreur lors de la sauvegarde des unites pour le joueur " + player.getUser().getUsername() + ".", e);
-            }
-        }
+        this.persistence.saveGame(game);
 
         for (ServerPlayer player : game.getPlayers()) {
             if (player != exceptPlayer) {
@@ -691,6 +905,7 @@ public class GameManager {
      * @param game La partie qui vient de démarrer.
      */
     public void handleGameStart(ServerGame game) {
+        this.turnResults.startGame(game);
         for (ServerPlayer player : game.getPlayers()) {
             this.sendDiscoveredPlayers(player, game);
         }
@@ -704,7 +919,7 @@ public class GameManager {
      * @param sender Le socket du client qui a envoyé le paquet.
      * @param packet Le paquet de création ou de jointure de partie reçu.
      */
-    public synchronized void onCreateOrJoinGame(SocketWrapper sender, PacketCreateOrJoinGame packet) {
+    public void onCreateOrJoinGame(SocketWrapper sender, PacketCreateOrJoinGame packet) {
         User user = this.server.getAuthManager().getUser(sender);
         if (user == null) {
             LogManager.logError("La connexion " + sender.getName() + " n'est pas authentifiée. Impossible de créer une partie.");
@@ -713,28 +928,56 @@ public class GameManager {
 
         ServerPlayer player = this.getPlayerInRunningGame(user);
         if (player != null) {
-            ServerGame game = player.getGame();
-            // L'utilisateur est déjà dans une partie en cours, on lui envoie les données de cette partie là
-            this.sendJoinGamePacket(game, player, user);
-            if (game.getState() != GameState.WAITING) {
-                this.sendDiscoveredPlayers(sender, player, game);
+            player.getGame().getMailbox().execute(() -> this.sendCurrentGame(sender, player, user));
+            return;
+        }
+
+        ServerGame game = this.getGame(packet.getGameId());
+        if (game == null) {
+            LogManager.logError("La partie " + packet.getGameId() + " n'existe pas.");
+            this.sendJoinError(sender, ErrorType.JOINING_GAME_NOT_FOUND);
+            return;
+        }
+        if (!this.joiningUsers.add(user.getId())) {
+            LogManager.logError("L'utilisateur " + user.getUsername() + " est déjà en train de rejoindre une partie.");
+            this.sendJoinError(sender, ErrorType.JOINING_GAME_FAILED);
+            return;
+        }
+        game.getMailbox().execute(() -> {
+            try {
+                this.joinGame(sender, user, game, packet.getChosenRace());
+            } finally {
+                this.joiningUsers.remove(user.getId());
             }
+        });
+    }
+
+    /**
+     * Ajoute un utilisateur à une partie, depuis la file de cette partie.
+     * Les conditions pour rejoindre la partie sont vérifiées dans la file, pour que deux utilisateurs ne puissent pas
+     * prendre la même place.
+     *
+     * @param sender La connexion du client qui demande à rejoindre la partie.
+     * @param user   L'utilisateur qui demande à rejoindre la partie.
+     * @param game   La partie à rejoindre.
+     * @param race   La race choisie par le joueur.
+     */
+    private void joinGame(SocketWrapper sender, User user, ServerGame game, Race race) {
+        ServerPlayer player = this.getPlayerInRunningGame(user);
+        if (player != null) {
+            // L'utilisateur a rejoint une partie depuis sa demande
+            this.sendCurrentGame(sender, player, user);
             return;
         }
 
-        ServerGame game;
         ErrorType joinError;
-        Optional<ServerGame> optionalGame = Identifiable.getOptionalById(this.games, packet.getGameId());
-        if (optionalGame.isEmpty()) {
-            LogManager.logError("La partie " + packet.getGameId() + " n'existe pas.");
-            joinError = ErrorType.JOINING_GAME_NOT_FOUND;
-        } else if ((game = optionalGame.get()).getState() != GameState.WAITING) {
+        if (game.getState() != GameState.WAITING) {
             LogManager.logError("La partie " + game.getName() + " n'est pas en attente. Impossible de rejoindre.");
             joinError = ErrorType.JOINING_NON_WAITING;
         } else if (game.getPlayers().size() >= game.getMaxPlayers()) {
             LogManager.logError("La partie " + game.getName() + " est pleine. Impossible de rejoindre.");
             joinError = ErrorType.JOINING_GAME_FULL;
-        } else if ((player = this.addPlayerToGame(user, game, packet.getChosenRace())) == null) {
+        } else if ((player = this.addPlayerToGame(user, game, race)) == null) {
             LogManager.logError("Impossible d'ajouter le joueur " + user.getUsername() + " à la partie " + game.getName() + ".");
             joinError = ErrorType.JOINING_GAME_FAILED;
         } else {
@@ -745,7 +988,31 @@ public class GameManager {
             }
             return;
         }
-        // Si on arrive ici, c'est qu'il y a eu une erreur lors de la jointure de la partie
+        this.sendJoinError(sender, joinError);
+    }
+
+    /**
+     * Envoie à un utilisateur déjà dans une partie les données de cette partie, depuis la file de la partie.
+     *
+     * @param sender La connexion du client qui a demandé à rejoindre une partie.
+     * @param player Le joueur de l'utilisateur.
+     * @param user   L'utilisateur.
+     */
+    private void sendCurrentGame(SocketWrapper sender, ServerPlayer player, User user) {
+        ServerGame game = player.getGame();
+        this.sendJoinGamePacket(game, player, user);
+        if (game.getState() != GameState.WAITING) {
+            this.sendDiscoveredPlayers(sender, player, game);
+        }
+    }
+
+    /**
+     * Envoie une erreur de jointure de partie à un client, suivie de la liste des parties en attente.
+     *
+     * @param sender    La connexion du client.
+     * @param joinError Le type de l'erreur.
+     */
+    private void sendJoinError(SocketWrapper sender, ErrorType joinError) {
         try {
             sender.sendPacket(new PacketError(joinError));
         } catch (IOException e) {
@@ -759,11 +1026,12 @@ public class GameManager {
      * Méthode appelée lorsqu'un client envoie des ordres en attente pour la partie.
      * Elle vérifie si le joueur a les ressources nécessaires pour exécuter les ordres, puis met à jour les ordres en attente du joueur.
      * Le paquet est désérialisé manuellement car il nécessite de récupérer le joueur depuis la connexion pour être désérialisé correctement.
+     * Il est lu immédiatement, puis vérifié et appliqué depuis la file de la partie du joueur.
      *
      * @param sender     Le socket du client qui a envoyé le paquet.
      * @param readHelper L'outil de lecture pour lire les données du paquet.
      */
-    public synchronized void onUpdateOrders(SocketWrapper sender, ReadHelper readHelper) throws IOException {
+    public void onUpdateOrders(SocketWrapper sender, ReadHelper readHelper) throws IOException {
         ServerPlayer player = this.getPlayerInRunningGame(sender);
         if (player == null) {
             LogManager.logError("La connexion " + sender.getName() + " n'est pas dans une partie. Impossible de mettre à jour les ordres.");
@@ -774,6 +1042,21 @@ public class GameManager {
             return;
         }
         PacketUpdateOrders packet = new PacketUpdateOrders(readHelper, new OrderDeserializationContext(player, this.server.getDataDeserializer()));
+        player.getGame().getMailbox().execute(() -> this.updateOrders(player, packet));
+    }
+
+    /**
+     * Vérifie que le joueur a les ressources nécessaires pour exécuter les ordres reçus, puis remplace ses ordres en attente.
+     * Appelée depuis la file de la partie du joueur.
+     *
+     * @param player Le joueur qui a envoyé les ordres.
+     * @param packet Le paquet des ordres reçus.
+     */
+    private void updateOrders(ServerPlayer player, PacketUpdateOrders packet) {
+        if (player.getGame().getState() != GameState.RUNNING || player.hasExitedGame()) {
+            LogManager.logError("Le joueur " + player.getUser().getUsername() + " essaie de mettre à jour les ordres alors que la partie n'est pas en cours.");
+            return;
+        }
         ObjectIntMap<UnitType> pendingUnitsCreation = packet.getPendingUnitsCreation();
         ObjectIntMap<BuildingType> pendingBuildingsCreation = packet.getPendingBuildingsCreation();
         Collection<AttackPlayerOrderData> pendingAttacks = packet.getPendingAttacks();
@@ -839,76 +1122,18 @@ public class GameManager {
             LogManager.logError("Le joueur " + player.getUser().getUsername() + " n'a pas assez de ressources pour exécuter les ordres demandés.");
             return;
         }
-        // Si on arrive ici, c'est que le joueur a les ressources nécessaires pour exécuter les ordres. On retire les anciens ordres en attente et on ajoute les nouveaux.
+        // Si on arrive ici, c'est que le joueur a les ressources nécessaires pour exécuter les ordres. On remplace les anciens ordres en attente par les nouveaux.
         if (pendingUnitsCreation != null) {
-            this.emptyTableByPlayer(player, "unit_creation_order");
-            try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO unit_creation_order (player_id, unit_type_id, amount) VALUES (?, ?, ?)")) {
-                for (ObjectIntMap.Entry<UnitType> order : pendingUnitsCreation) {
-                    if (order.getValue() == 0) continue; // Pas besoin de sauvegarder un ordre avec une quantité nulle
-                    statement.setInt(1, player.getId());
-                    statement.setInt(2, order.getKey().getId());
-                    statement.setInt(3, order.getValue());
-                    statement.addBatch();
-                }
-                statement.executeBatch();
-            } catch (SQLException e) {
-                LogManager.logError("Erreur lors de l'ajout des ordres de création d'unité pour le joueur " + player.getUser().getUsername() + ".", e);
-            }
             player.setPendingUnitsCreation(pendingUnitsCreation);
         }
-
         if (pendingBuildingsCreation != null) {
-            this.emptyTableByPlayer(player, "building_creation_order");
-            try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO building_creation_order (player_id, building_type_id, amount) VALUES (?, ?, ?)")) {
-                for (ObjectIntMap.Entry<BuildingType> order : pendingBuildingsCreation) {
-                    statement.setInt(1, player.getId());
-                    statement.setInt(2, order.getKey().getId());
-                    statement.setInt(3, order.getValue());
-                    statement.addBatch();
-                }
-                statement.executeBatch();
-            } catch (SQLException e) {
-                LogManager.logError("Erreur lors de l'ajout des ordres de création de bâtiment pour le joueur " + player.getUser().getUsername() + ".", e);
-            }
             player.setPendingBuildingsCreation(pendingBuildingsCreation);
         }
-
         if (pendingAttacks != null) {
-            this.emptyTableByPlayer(player, "attack_player_order");
-            if (!pendingAttacks.isEmpty()) {
-                try (PreparedStatement attackStatement = this.server.getDb().prepareStatement("INSERT INTO attack_player_order (player_id, target_player_id) VALUES (?, ?) RETURNING id")) {
-                    for (AttackPlayerOrderData order : pendingAttacks) {
-                        attackStatement.setInt(1, player.getId());
-                        attackStatement.setInt(2, order.getTargetPlayer().getId());
-                        attackStatement.addBatch();
-                    }
-                    attackStatement.executeBatch();
-                    ResultSet resultSet = attackStatement.getResultSet();
-                    Iterator<AttackPlayerOrderData> iterator = pendingAttacks.iterator();
-
-                    try (PreparedStatement unitsStatement = this.server.getDb().prepareStatement("INSERT INTO attack_player_order_unit (order_id, unit_type_id, amount) VALUES (?, ?, ?)")) {
-                        while (resultSet.next()) {
-                            assert iterator.hasNext() : "Le nombre d'ordres d'attaque ne correspond pas au nombre de résultats retournés par la base de données.";
-                            AttackPlayerOrderData order = iterator.next();
-                            int orderId = resultSet.getInt("id");
-
-                            // On ajoute les unités utilisées pour chaque ordre d'attaque
-                            for (ObjectIntMap.Entry<UnitType> entry : order.getUsingUnits()) {
-                                unitsStatement.setInt(1, orderId);
-                                unitsStatement.setInt(2, entry.getKey().getId());
-                                unitsStatement.setInt(3, entry.getValue());
-                                unitsStatement.addBatch();
-                            }
-                        }
-                        assert !iterator.hasNext() : "Il reste des ordres d'attaque à traiter, mais il n'y a pas assez de résultats retournés par la base de données.";
-                        unitsStatement.executeBatch();
-                    }
-                } catch (SQLException e) {
-                    LogManager.logError("Erreur lors de l'ajout des ordres d'attaque pour le joueur " + player.getUser().getUsername() + ".", e);
-                }
-            }
             player.setPendingAttacks(pendingAttacks);
         }
+        // Seuls les ordres modifiés sont écrits dans le stockage
+        this.persistence.savePlayer(player);
 
         this.sendPlayerDataUpdates(player);
     }
@@ -920,7 +1145,7 @@ public class GameManager {
      *
      * @param sender Le socket du client qui a envoyé la demande.
      */
-    public synchronized void onNextTurn(SocketWrapper sender) {
+    public void onNextTurn(SocketWrapper sender) {
         if (!Environment.DEBUG_MODE) {
             LogManager.logError("Le paquet de passage au tour suivant manuel n'est autorisé qu'en mode débogage.");
             return;
@@ -933,10 +1158,24 @@ public class GameManager {
         }
 
         ServerGame game = player.getGame();
+        game.getMailbox().execute(() -> this.forceNextTurn(player, game));
+    }
+
+    /**
+     * Démarre la partie ou la passe au tour suivant à la demande d'un joueur, depuis la file de la partie.
+     *
+     * @param player Le joueur qui a fait la demande.
+     * @param game   La partie du joueur.
+     */
+    private void forceNextTurn(ServerPlayer player, ServerGame game) {
         switch (game.getState()) {
             case WAITING -> {
                 LogManager.logMessage("[DEBUG] Le joueur " + player.getUser().getUsername() + " a démarré la partie " + game.getName() + ".");
-                game.start();
+                try {
+                    game.start();
+                } catch (IllegalStateException e) {
+                    LogManager.logError("Erreur lors du démarrage de la partie " + game.getName() + " par le joueur " + player.getUser().getUsername() + ": ", e);
+                }
             }
             case RUNNING -> {
                 LogManager.logMessage("[DEBUG] Le joueur " + player.getUser().getUsername() + " a passé la partie " + game.getName() + " au tour suivant.");
@@ -955,33 +1194,60 @@ public class GameManager {
     /**
      * Méthode appelée lorsqu'un client demande à quitter la partie.
      * Elle vérifie si le joueur est dans une partie en cours, et si la partie est en attente,
-     * puis supprime le joueur de la partie et de la base de données.
+     * puis supprime le joueur de la partie et du stockage.
      * Si la partie est déjà en cours, elle envoie un paquet d'erreur au client.
+     * Un client qui n'est dans aucune partie, par exemple parce qu'il consultait l'historique d'une partie archivée,
+     * retourne à la liste des parties en attente.
      *
      * @param sender Le socket du client qui a envoyé la demande de déconnexion.
      */
-    public synchronized void onClientQuitGame(SocketWrapper sender) {
+    public void onClientQuitGame(SocketWrapper sender) {
         ServerPlayer player = this.getPlayerInRunningGame(sender);
         if (player == null) {
+            try {
+                sender.sendPacket(new PacketGameAction(PacketGameAction.Action.QUIT_GAME));
+            } catch (IOException e) {
+                LogManager.logError("Erreur lors de l'envoi du paquet de déconnexion au client " + sender.getName(), e);
+            }
+            this.sendWaitingGames(sender);
+            return;
+        }
+        player.getGame().getMailbox().execute(() -> this.quitGame(sender, player));
+    }
+
+    /**
+     * Demande la suppression d'un joueur déjà retiré de sa partie en attente.
+     * La suppression est exécutée par la file d'écriture de la partie, après la sauvegarde du joueur qui vient de rejoindre
+     * la partie. Elle est gardée dans le journal des tours jusqu'à sa validation : si elle échoue, elle est rattrapée au
+     * prochain démarrage du serveur.
+     *
+     * @param player Le joueur à supprimer.
+     */
+    private void deletePlayer(ServerPlayer player) {
+        long sequence = this.journal.appendPlayerRemoved(player);
+        this.persistence.submit(player.getGame(), "la suppression du joueur " + player.getUser().getUsername(),
+                repository -> repository.deletePlayer(player.getId()), () -> this.journal.committed(sequence));
+    }
+
+    /**
+     * Retire un joueur de sa partie, depuis la file de la partie.
+     *
+     * @param sender La connexion du client qui a demandé à quitter la partie.
+     * @param player Le joueur qui quitte la partie.
+     */
+    private void quitGame(SocketWrapper sender, ServerPlayer player) {
+        if (this.activePlayers.get(player.getUser().getId()) != player) {
+            // Le joueur a déjà quitté la partie depuis sa demande
             this.sendWaitingGames(sender);
             return;
         }
         ServerGame serverGame = player.getGame();
         switch (serverGame.getState()) {
             case WAITING -> {
-                try (PreparedStatement statement = server.getDb().prepareStatement("DELETE FROM player WHERE id = ?")) {
-                    statement.setInt(1, player.getId());
-                    statement.executeUpdate();
-                } catch (SQLException e) {
-                    LogManager.logError("Erreur lors de la suppression du joueur " + player.getUser().getUsername() + " de la base de données.", e);
-                    try {
-                        sender.sendPacket(new PacketError(ErrorType.QUIT_GAME_FAILED));
-                    } catch (IOException ioException) {
-                        LogManager.logError("Erreur lors de l'envoi du paquet d'erreur au client " + sender.getName(), ioException);
-                    }
-                    return;
-                }
                 serverGame.removePlayer(player.getUser());
+                this.activePlayers.remove(player.getUser().getId(), player);
+                this.server.getUserManager().removePlayer(player);
+                this.deletePlayer(player);
             }
             case RUNNING -> {
                 LogManager.logError("Le joueur " + player.getUser().getUsername() + " a quitté la partie " + serverGame.getName() + " alors qu'elle était déjà en cours.");
@@ -994,18 +1260,42 @@ public class GameManager {
             }
             case ENDED -> {
                 player.setExitedGame(true);
-                this.savePlayer(player);
+                this.activePlayers.remove(player.getUser().getId(), player);
+                this.persistence.savePlayer(player);
+                if (serverGame.getPlayers().stream().allMatch(ServerPlayer::hasExitedGame)) {
+                    this.archiveGame(serverGame);
+                }
             }
         }
 
-        for (SocketWrapper connection : this.server.getAuthManager().getConnectionsFor(player.getUser())) {
-            try {
-                connection.sendPacket(new PacketGameAction(PacketGameAction.Action.QUIT_GAME));
-            } catch (IOException e) {
-                LogManager.logError("Erreur lors de l'envoi du paquet de déconnexion au client " + sender.getName(), e);
-            }
-            this.sendWaitingGames(connection);
+        List<SocketWrapper> connections = this.server.getAuthManager().getConnectionsFor(player.getUser());
+        this.broadcastPacket(new PacketGameAction(PacketGameAction.Action.QUIT_GAME), connections,
+                connection -> "Erreur lors de l'envoi du paquet de déconnexion au client " + connection.getName());
+        this.sendWaitingGames(connections);
+    }
+
+    /**
+     * Archive une partie terminée dont tous les joueurs sont sortis : elle est retirée de la mémoire, ainsi que ses joueurs,
+     * et ne sera plus chargée au démarrage du serveur. Son historique reste consultable avec {@link #onRequestGameHistory}.
+     *
+     * @param game La partie à archiver.
+     */
+    private void archiveGame(ServerGame game) {
+        this.games.remove(game);
+        for (ServerPlayer player : game.getPlayers()) {
+            this.server.getUserManager().removePlayer(player);
         }
+        long sequence = this.journal.appendGameArchived(game);
+        this.persistence.submit(game, "l'archivage de la partie " + game.getName(),
+                repository -> repository.archiveGame(game.getId()), () -> {
+                    this.journal.committed(sequence);
+                    // Une demande d'historique reçue avant l'écriture a pu garder la partie comme absente
+                    this.archivedGames.invalidate(game.getId());
+                });
+        this.persistence.release(game);
+        this.turnResults.remove(game);
+        this.chatHistory.remove(game);
+        LogManager.logMessage("Partie %s archivée.".formatted(game.getName()));
     }
 
     /**
@@ -1021,35 +1311,110 @@ public class GameManager {
             LogManager.logError("La connexion %s n'est pas dans une partie en cours.".formatted(sender.getName()));
             return;
         }
+        senderPlayer.getGame().getMailbox().execute(() -> this.sendChatMessage(senderPlayer, packet));
+    }
+
+    /**
+     * Vérifie un message de chat et demande son enregistrement, depuis la file de la partie de l'expéditeur.
+     * L'enregistrement est exécuté par la file d'écriture de la partie : le message est envoyé aux deux joueurs de la
+     * conversation une fois enregistré, depuis la file de la partie. Les messages d'une partie restent dans l'ordre.
+     *
+     * @param senderPlayer Le joueur qui envoie le message.
+     * @param packet       Le paquet de message de chat reçu.
+     */
+    private void sendChatMessage(ServerPlayer senderPlayer, PacketMessage packet) {
         ServerPlayer receiverPlayer = this.server.getUserManager().getPlayer(packet.getReceiverId());
+        if (receiverPlayer == null) {
+            LogManager.logError("Le joueur %s a tenté d'envoyer un message à un joueur inconnu (ID %d).".formatted(senderPlayer.getUser().getUsername(), packet.getReceiverId()));
+            return;
+        }
         if (receiverPlayer.getGame() != senderPlayer.getGame()) {
             LogManager.logError("Le joueur %s a tenté d'envoyer un message à %s, mais il n'est pas dans la même partie.".formatted(senderPlayer.getUser().getUsername(), receiverPlayer.getUser().getUsername()));
+            return;
         }
-        long sentAtTimestamp;
-        try (PreparedStatement statement = this.server.getDb().prepareStatement("INSERT INTO chat_message (sender_player_id, receiver_player_id, message) VALUES (?, ?, ?) RETURNING sent_at")) {
-            statement.setInt(1, senderPlayer.getId());
-            statement.setInt(2, receiverPlayer.getId());
-            statement.setString(3, packet.getMessage());
-            statement.execute();
-            ResultSet resultSet = statement.getResultSet();
-            if (resultSet.next()) {
-                sentAtTimestamp = resultSet.getTimestamp("sent_at").getTime();
-            } else {
-                LogManager.logError("Erreur lors de l'enregistrement du message en base de données : aucune ligne retournée.");
-                return;
-            }
-        } catch (Exception e) {
-            LogManager.logError("Erreur lors de l'enregistrement du message en base de données", e);
+        ServerGame game = senderPlayer.getGame();
+        this.persistence.submitQuery(game, "un message de " + senderPlayer.getUser().getUsername(),
+                        repository -> repository.saveChatMessage(senderPlayer.getId(), receiverPlayer.getId(), packet.getMessage()))
+                .thenAccept(message -> game.getMailbox().execute(() -> this.onChatMessageSaved(senderPlayer, receiverPlayer, packet, message)));
+    }
+
+    /**
+     * Ajoute un message de chat enregistré à l'historique de la conversation et l'envoie aux deux joueurs, depuis la
+     * file de leur partie.
+     *
+     * @param senderPlayer   Le joueur qui a envoyé le message.
+     * @param receiverPlayer Le joueur qui reçoit le message.
+     * @param packet         Le paquet de message de chat reçu.
+     * @param message        Le message enregistré dans le stockage.
+     */
+    private void onChatMessageSaved(ServerPlayer senderPlayer, ServerPlayer receiverPlayer, PacketMessage packet, StoredChatMessage message) {
+        this.chatHistory.append(senderPlayer.getGame(), message);
+        this.journal.appendChatMessage(senderPlayer.getGame(), message);
+
+        PacketMessage packetMessage = new PacketMessage(senderPlayer.getId(), receiverPlayer.getId(), packet.getMessage(), packet.getNonce(), message.timestamp());
+        this.broadcastPacket(packetMessage, Iterables.concat(this.getConnectionsFor(senderPlayer), this.getConnectionsFor(receiverPlayer)),
+                connection -> "Erreur lors de l'envoi du message au joueur " + senderPlayer.getUser().getUsername() + " à la connexion " + connection.getName());
+    }
+
+    /**
+     * Appelée lorsqu'un client demande une page plus ancienne de l'historique d'une conversation.
+     *
+     * @param sender La connexion du joueur qui demande l'historique.
+     * @param packet Le paquet de demande, contenant l'ID de l'autre joueur de la conversation et le curseur de la page.
+     */
+    public void onRequestChatHistory(SocketWrapper sender, PacketRequestChatHistory packet) {
+        ServerPlayer player = this.getPlayerInRunningGame(sender);
+        if (player == null) {
+            LogManager.logError("La connexion %s n'est pas dans une partie en cours.".formatted(sender.getName()));
+            return;
+        }
+        ServerPlayer otherPlayer = this.server.getUserManager().getPlayer(packet.getOtherPlayerId());
+        if (otherPlayer == null || otherPlayer.getGame() != player.getGame()) {
+            LogManager.logError("Le joueur %s a demandé l'historique d'une conversation avec un joueur qui n'est pas dans sa partie.".formatted(player.getUser().getUsername()));
             return;
         }
+        player.getGame().getMailbox().execute(() -> {
+            try {
+                sender.sendPacket(this.chatHistory.getPage(player, otherPlayer, packet.getCursor(), -1));
+            } catch (IOException e) {
+                LogManager.logError("Erreur lors de l'envoi de l'historique de chat à la connexion " + sender.getName(), e);
+            }
+        });
+    }
 
-        PacketMessage packetMessage = new PacketMessage(senderPlayer.getId(), receiverPlayer.getId(), packet.getMessage(), packet.getNonce(), sentAtTimestamp);
-        for (SocketWrapper connection : Iterables.concat(this.getConnectionsFor(senderPlayer), this.getConnectionsFor(receiverPlayer))) {
+    /**
+     * Appelée lorsqu'un client demande l'historique d'une partie archivée à laquelle il a participé.
+     * La partie est chargée depuis le stockage si elle n'est pas dans le cache des parties archivées : comme tous les
+     * paquets décodés, cette demande est traitée hors de la boucle d'entrées/sorties, et elle ne passe par aucune file
+     * de partie. Le client reçoit la partie dans son état final, les autres joueurs et les résultats de tous les tours.
+     *
+     * @param sender La connexion du client qui demande l'historique.
+     * @param packet Le paquet de demande, contenant l'identifiant de la partie archivée.
+     */
+    public void onRequestGameHistory(SocketWrapper sender, PacketRequestGameHistory packet) {
+        User user = this.server.getAuthManager().getUser(sender);
+        if (user == null) {
+            LogManager.logError("La connexion " + sender.getName() + " n'est pas authentifiée. Impossible d'envoyer l'historique d'une partie.");
+            return;
+        }
+        if (this.getPlayerInRunningGame(user) != null) {
+            LogManager.logError("L'utilisateur " + user.getUsername() + " a demandé l'historique d'une partie alors qu'il est dans une partie.");
+            return;
+        }
+        ArchivedGameCache.ArchivedGame archivedGame = this.archivedGames.get(packet.getGameId());
+        ServerPlayer player = archivedGame == null ? null : archivedGame.getPlayer(user);
+        if (player == null) {
+            LogManager.logError("L'utilisateur " + user.getUsername() + " a demandé l'historique de la partie " + packet.getGameId() + ", qui n'est pas une de ses parties archivées.");
             try {
-                connection.sendPacket(packetMessage);
+                sender.sendPacket(new PacketError(ErrorType.HISTORY_GAME_NOT_FOUND));
             } catch (IOException e) {
-                LogManager.logError("Erreur lors de l'envoi du message au joueur " + senderPlayer.getUser().getUsername() + " à la connexion " + connection.getName(), e);
+                LogManager.logError("Erreur lors de l'envoi du paquet d'erreur au client " + sender.getName(), e);
             }
+            return;
         }
+        ServerGame game = archivedGame.game();
+        this.sendJoinGamePacket(game, player, sender);
+        this.sendDiscoverPlayerPackets(sender, player, game);
+        this.sendTurnsResults(sender, game, 1, TurnResultCache.filterInvolving(archivedGame.attackResults(), player, 1));
     }
 }
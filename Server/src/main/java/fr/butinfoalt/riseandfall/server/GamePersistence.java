@@ -0,0 +1,713 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.journal.TurnJournal;
+import fr.butinfoalt.riseandfall.server.repository.GameRepository;
+import fr.butinfoalt.riseandfall.server.repository.StateChanges;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Enregistre l'état des parties et de leurs joueurs dans le stockage des données, en arrière-plan.
+ * <p>
+ * Les écritures sont placées dans une file propre à chaque partie, vidée dans l'ordre par des threads d'écriture dédiés :
+ * la logique du jeu n'attend pas le stockage, et les écritures d'une même partie ne se doublent jamais.
+ * L'état des joueurs est copié au moment de la demande de sauvegarde, puis écrit plus tard.
+ * </p>
+ * <p>
+ * Chaque écriture s'exécute dans une seule transaction. Une sauvegarde d'état n'écrit que les lignes dont la valeur a
+ * changé depuis la dernière sauvegarde réussie de chaque joueur, que le stockage écrit en bloc (voir
+ * {@link GameRepository#saveChanges(StateChanges)}). Si la transaction échoue, les
+ * données de référence des joueurs restent inchangées et les modifications seront réécrites à la sauvegarde suivante.
+ * </p>
+ * <p>
+ * L'état copié est aussi ajouté au {@link TurnJournal journal des tours} dès la demande : les sauvegardes encore dans
+ * les files lors d'un arrêt brutal sont rattrapées au démarrage suivant.
+ * </p>
+ * <p>
+ * La file d'une partie ne bloque jamais la {@link GameMailbox file des tâches} de la partie : les écritures dont le
+ * résultat est nécessaire sont demandées avec {@link #submitQuery(ServerGame, String, WriteQuery)}, et l'attente des
+ * écritures en cours avec {@link #flushAsync(ServerGame)}, qui renvoient un futur. Les files sont protégées par des
+ * {@link ReentrantLock} : un thread virtuel qui attend une file libère son thread porteur.
+ * </p>
+ */
+public class GamePersistence implements AutoCloseable {
+    /**
+     * Interface pour une écriture dans le stockage, exécutée dans la file d'une partie.
+     */
+    @FunctionalInterface
+    public interface WriteTask {
+        /**
+         * Exécute l'écriture. La transaction est validée par la file après le retour de la méthode.
+         *
+         * @param repository Le stockage, dont la transaction est déjà ouverte par le thread d'écriture.
+         * @throws SQLException Si une erreur se produit lors de l'écriture, ce qui annule la transaction.
+         */
+        void write(GameRepository repository) throws SQLException;
+    }
+
+    /**
+     * Interface pour une écriture dans le stockage qui renvoie un résultat, comme l'identifiant d'une ligne insérée.
+     *
+     * @param <T> Le type du résultat.
+     */
+    @FunctionalInterface
+    public interface WriteQuery<T> {
+        /**
+         * Exécute l'écriture. La transaction est validée par la file après le retour de la méthode.
+         *
+         * @param repository Le stockage, dont la transaction est déjà ouverte par le thread d'écriture.
+         * @return Le résultat de l'écriture.
+         * @throws SQLException Si une erreur se produit lors de l'écriture, ce qui annule la transaction.
+         */
+        T write(GameRepository repository) throws SQLException;
+    }
+
+    /**
+     * Métriques des écritures depuis le démarrage du serveur.
+     *
+     * @param writes             Nombre d'écritures validées.
+     * @param failures           Nombre d'écritures annulées suite à une erreur.
+     * @param backlog            Nombre d'écritures en attente ou en cours.
+     * @param peakBacklog        Nombre maximal d'écritures en attente ou en cours.
+     * @param averageQueueNanos  Temps d'attente moyen d'une écriture dans sa file, en nanosecondes.
+     * @param maxQueueNanos      Temps d'attente maximal d'une écriture dans sa file, en nanosecondes.
+     * @param averageTransactionNanos Durée moyenne d'une transaction validée, écriture et validation comprises, en nanosecondes.
+     * @param maxTransactionNanos     Durée maximale d'une transaction validée, en nanosecondes.
+     * @param stateSaves              Nombre de sauvegardes d'état validées.
+     * @param statements              Nombre total de requêtes exécutées par les sauvegardes d'état validées.
+     * @param rows                    Nombre total de lignes écrites ou supprimées par les sauvegardes d'état validées.
+     */
+    public record Metrics(long writes, long failures, int backlog, int peakBacklog, long averageQueueNanos, long maxQueueNanos,
+                          long averageTransactionNanos, long maxTransactionNanos, long stateSaves, long statements, long rows) {
+        @Override
+        public String toString() {
+            return "%d écritures (%d échecs), %d en attente (pic %d), attente moyenne %.2f ms, max %.2f ms, transaction moyenne %.2f ms, max %.2f ms, %.1f requêtes et %.1f lignes par sauvegarde d'état".formatted(
+                    this.writes, this.failures, this.backlog, this.peakBacklog, this.averageQueueNanos / 1e6, this.maxQueueNanos / 1e6,
+                    this.averageTransactionNanos / 1e6, this.maxTransactionNanos / 1e6,
+                    this.stateSaves == 0 ? 0 : (double) this.statements / this.stateSaves,
+                    this.stateSaves == 0 ? 0 : (double) this.rows / this.stateSaves);
+        }
+    }
+
+    /**
+     * Le stockage dans lequel les écritures sont exécutées.
+     */
+    private final GameRepository repository;
+
+    /**
+     * Le journal des tours, dans lequel l'état copié est ajouté avant d'être écrit.
+     */
+    private final TurnJournal journal;
+
+    /**
+     * Threads d'écriture, partagés entre les files des parties.
+     */
+    private final ExecutorService writers;
+
+    /**
+     * File d'écriture de chaque partie, associée à l'identifiant de la partie.
+     */
+    private final ConcurrentHashMap<Integer, GameQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Temps d'attente maximal d'un vidage de file, en nanosecondes.
+     */
+    private final long flushTimeoutNanos;
+
+    /**
+     * Nombre d'écritures demandées qui ne sont pas encore terminées, toutes parties confondues.
+     */
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    /**
+     * Indique que les threads d'écriture sont arrêtés : les écritures sont alors exécutées par le thread qui les demande.
+     */
+    private volatile boolean closed = false;
+
+    // Métriques des écritures, protégées par le moniteur du gestionnaire
+    /**
+     * Nombre maximal d'écritures en attente ou en cours atteint depuis le démarrage.
+     */
+    private int peakBacklog = 0;
+    /**
+     * Nombre d'écritures validées.
+     */
+    private long writes = 0;
+    /**
+     * Nombre d'écritures annulées suite à une erreur.
+     */
+    private long failures = 0;
+    /**
+     * Somme des temps d'attente des écritures terminées dans leur file, en nanosecondes.
+     */
+    private long totalQueueNanos = 0;
+    /**
+     * Temps d'attente maximal d'une écriture dans sa file, en nanosecondes.
+     */
+    private long maxQueueNanos = 0;
+    /**
+     * Somme des durées des transactions validées, en nanosecondes.
+     */
+    private long totalTransactionNanos = 0;
+    /**
+     * Durée maximale d'une transaction validée, en nanosecondes.
+     */
+    private long maxTransactionNanos = 0;
+    /**
+     * Nombre de sauvegardes d'état validées.
+     */
+    private long stateSaves = 0;
+    /**
+     * Nombre total de requêtes exécutées par les sauvegardes d'état validées.
+     */
+    private long statements = 0;
+    /**
+     * Nombre total de lignes écrites ou supprimées par les sauvegardes d'état validées.
+     */
+    private long rows = 0;
+
+    /**
+     * Constructeur du gestionnaire de sauvegarde.
+     *
+     * @param repository         Le stockage dans lequel les écritures sont exécutées.
+     * @param journal            Le journal des tours, dans lequel l'état copié est ajouté avant d'être écrit.
+     * @param writerThreads      Le nombre de threads d'écriture.
+     * @param flushTimeoutMillis Le temps d'attente maximal d'un vidage de file, en millisecondes.
+     */
+    public GamePersistence(GameRepository repository, TurnJournal journal, int writerThreads, long flushTimeoutMillis) {
+        this.repository = repository;
+        this.journal = journal;
+        this.flushTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(flushTimeoutMillis);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "Database Writer Thread " + threadCount.incrementAndGet());
+            // Les écritures en attente sont vidées par close() à l'arrêt du serveur
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Demande la sauvegarde de l'état d'une partie et des données modifiées de tous ses joueurs.
+     * L'état est copié immédiatement, puis écrit dans une seule transaction par la file de la partie.
+     *
+     * @param game La partie à sauvegarder.
+     */
+    public void saveGame(ServerGame game) {
+        StateChanges.GameRow gameRow = new StateChanges.GameRow(game.getId(), game.getState(), game.getNextActionAt(), game.getCurrentTurn());
+        StateSave save = new StateSave("la partie " + game.getName(), gameRow, game.getPlayers());
+        this.journal.appendGameState(game);
+        this.journal(save);
+        this.enqueue(game, save);
+    }
+
+    /**
+     * Demande la sauvegarde des données modifiées d'un joueur.
+     * Les données sont copiées immédiatement, puis écrites dans une seule transaction par la file de sa partie.
+     *
+     * @param player Le joueur à sauvegarder.
+     */
+    public void savePlayer(ServerPlayer player) {
+        StateSave save = new StateSave("le joueur " + player.getUser().getUsername(), null, List.of(player));
+        this.journal(save);
+        this.enqueue(player.getGame(), save);
+    }
+
+    /**
+     * Ajoute une écriture à la file d'une partie. Elle sera exécutée après toutes les écritures déjà demandées pour
+     * cette partie, dans sa propre transaction. En cas d'erreur, la transaction est annulée et l'erreur est journalisée.
+     *
+     * @param game        La partie concernée par l'écriture.
+     * @param description La description de l'écriture, pour les messages de log.
+     * @param task        L'écriture à exécuter.
+     */
+    public void submit(ServerGame game, String description, WriteTask task) {
+        this.submit(game, description, task, null);
+    }
+
+    /**
+     * Ajoute une écriture à la file d'une partie, comme {@link #submit(ServerGame, String, WriteTask)}, et exécute une
+     * action une fois sa transaction validée.
+     *
+     * @param game        La partie concernée par l'écriture.
+     * @param description La description de l'écriture, pour les messages de log.
+     * @param task        L'écriture à exécuter.
+     * @param onCommitted L'action exécutée par le thread d'écriture une fois la transaction validée, ou null.
+     */
+    public void submit(ServerGame game, String description, WriteTask task, Runnable onCommitted) {
+        this.enqueue(game, new Write(description) {
+            @Override
+            void write(GameRepository repository) throws SQLException {
+                task.write(repository);
+            }
+
+            @Override
+            void committed() {
+                if (onCommitted != null) {
+                    onCommitted.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Ajoute une écriture qui renvoie un résultat à la file d'une partie. Elle sera exécutée après toutes les écritures
+     * déjà demandées pour cette partie, dans sa propre transaction. En cas d'erreur, la transaction est annulée et
+     * l'erreur est journalisée.
+     * Le futur est complété par le thread d'écriture : les traitements qui modifient la partie doivent être confiés à sa
+     * file.
+     *
+     * @param game        La partie concernée par l'écriture.
+     * @param description La description de l'écriture, pour les messages de log.
+     * @param query       L'écriture à exécuter.
+     * @param <T>         Le type du résultat.
+     * @return Un futur complété par le résultat une fois la transaction validée, ou par l'erreur si elle a été annulée.
+     */
+    public <T> CompletableFuture<T> submitQuery(ServerGame game, String description, WriteQuery<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        this.enqueue(game, new Write(description) {
+            /**
+             * Résultat de l'écriture, gardé jusqu'à la validation de la transaction.
+             */
+            private T result;
+
+            @Override
+            void write(GameRepository repository) throws SQLException {
+                this.result = query.write(repository);
+            }
+
+            @Override
+            void committed() {
+                future.complete(this.result);
+            }
+
+            @Override
+            void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Renvoie un futur complété lorsque toutes les écritures déjà demandées pour une partie sont terminées, sans bloquer
+     * le thread appelant. Le futur est complété avec false si les écritures ne sont pas terminées avant le délai
+     * d'attente d'un vidage de file.
+     * Le futur est complété par le thread d'écriture : les traitements qui modifient la partie doivent être confiés à sa
+     * file.
+     *
+     * @param game La partie dont on attend les écritures.
+     * @return Un futur complété avec true si les écritures sont terminées, false si le délai d'attente a expiré.
+     */
+    public CompletableFuture<Boolean> flushAsync(ServerGame game) {
+        if (this.closed) {
+            return CompletableFuture.completedFuture(true);
+        }
+        Barrier barrier = new Barrier();
+        this.queues.computeIfAbsent(game.getId(), GameQueue::new).add(barrier);
+        return barrier.future
+                .completeOnTimeout(false, this.flushTimeoutNanos, TimeUnit.NANOSECONDS)
+                .thenApply(flushed -> {
+                    if (!flushed) {
+                        LogManager.logError("Les écritures de la partie %s ne sont pas terminées après %d ms.".formatted(game.getName(), TimeUnit.NANOSECONDS.toMillis(this.flushTimeoutNanos)));
+                    }
+                    return flushed;
+                });
+    }
+
+    /**
+     * Attend que toutes les écritures déjà demandées pour une partie soient terminées.
+     * À appeler avant de relire dans le stockage des données que la partie vient d'écrire, jamais depuis la file des
+     * tâches de la partie : utiliser {@link #flushAsync(ServerGame)} dans ce cas.
+     *
+     * @param game La partie dont on attend les écritures.
+     * @return true si les écritures sont terminées, false si le délai d'attente a expiré.
+     */
+    public boolean flush(ServerGame game) {
+        GameQueue queue = this.queues.get(game.getId());
+        if (queue == null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean flushed = queue.awaitEmpty(start + this.flushTimeoutNanos);
+        if (!flushed) {
+            LogManager.logError("Les écritures de la partie %s ne sont pas terminées après %d ms.".formatted(game.getName(), TimeUnit.NANOSECONDS.toMillis(this.flushTimeoutNanos)));
+        } else if (Environment.DEBUG_MODE && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(1)) {
+            LogManager.logMessage("Attente de %.2f ms des écritures de la partie %s.".formatted((System.nanoTime() - start) / 1e6, game.getName()));
+        }
+        return flushed;
+    }
+
+    /**
+     * Libère la file d'écriture d'une partie qui ne sera plus modifiée, dès que ses écritures en attente sont terminées.
+     *
+     * @param game La partie dont la file doit être libérée.
+     */
+    public void release(ServerGame game) {
+        GameQueue queue = this.queues.get(game.getId());
+        if (queue != null) {
+            queue.release();
+        }
+    }
+
+    /**
+     * Récupère les métriques des écritures.
+     *
+     * @return Les métriques actuelles.
+     */
+    public synchronized Metrics getMetrics() {
+        long finished = this.writes + this.failures;
+        return new Metrics(this.writes, this.failures, this.backlog.get(), this.peakBacklog,
+                finished == 0 ? 0 : this.totalQueueNanos / finished, this.maxQueueNanos,
+                this.writes == 0 ? 0 : this.totalTransactionNanos / this.writes, this.maxTransactionNanos,
+                this.stateSaves, this.statements, this.rows);
+    }
+
+    /**
+     * Vide toutes les files d'écriture puis arrête les threads d'écriture.
+     * Les écritures demandées ensuite sont exécutées directement par le thread appelant.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        long deadline = System.nanoTime() + this.flushTimeoutNanos;
+        for (GameQueue queue : this.queues.values()) {
+            if (!queue.awaitEmpty(deadline)) {
+                LogManager.logError("Des écritures dans le stockage n'ont pas pu être terminées avant l'arrêt du serveur.");
+                break;
+            }
+        }
+        this.writers.shutdown();
+        try {
+            if (!this.writers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                this.writers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.writers.shutdownNow();
+        }
+    }
+
+    /**
+     * Ajoute au journal des tours les données copiées des joueurs d'une sauvegarde.
+     *
+     * @param save La sauvegarde.
+     */
+    private void journal(StateSave save) {
+        for (SavedPlayer saved : save.players) {
+            this.journal.appendPlayerState(saved.player, saved.data, saved.exitedGame);
+        }
+    }
+
+    /**
+     * Ajoute une écriture à la file d'une partie.
+     *
+     * @param game  La partie concernée par l'écriture.
+     * @param write L'écriture à exécuter.
+     */
+    private void enqueue(ServerGame game, Write write) {
+        int size = this.backlog.incrementAndGet();
+        synchronized (this) {
+            this.peakBacklog = Math.max(this.peakBacklog, size);
+        }
+        if (this.closed) {
+            this.execute(write);
+            return;
+        }
+        this.queues.computeIfAbsent(game.getId(), GameQueue::new).add(write);
+    }
+
+    /**
+     * Exécute une écriture dans sa propre transaction.
+     *
+     * @param write L'écriture à exécuter.
+     */
+    private void execute(Write write) {
+        long start = System.nanoTime();
+        long queueNanos = start - write.enqueuedAt;
+        try {
+            this.repository.inTransaction(() -> write.write(this.repository));
+        } catch (SQLException | RuntimeException e) {
+            this.backlog.decrementAndGet();
+            synchronized (this) {
+                this.failures++;
+                this.totalQueueNanos += queueNanos;
+                this.maxQueueNanos = Math.max(this.maxQueueNanos, queueNanos);
+            }
+            LogManager.logError("Erreur lors de l'enregistrement de " + write.description + " dans le stockage.", e);
+            write.failed(e);
+            return;
+        }
+        long transactionNanos = System.nanoTime() - start;
+
+        write.committed();
+        this.backlog.decrementAndGet();
+        synchronized (this) {
+            this.writes++;
+            this.totalQueueNanos += queueNanos;
+            this.maxQueueNanos = Math.max(this.maxQueueNanos, queueNanos);
+            this.totalTransactionNanos += transactionNanos;
+            this.maxTransactionNanos = Math.max(this.maxTransactionNanos, transactionNanos);
+            if (write instanceof StateSave save) {
+                this.stateSaves++;
+                this.statements += save.changes.getStatementCount();
+                this.rows += save.changes.getRowCount();
+            }
+        }
+        if (Environment.DEBUG_MODE && write instanceof StateSave save) {
+            LogManager.logMessage("Sauvegarde de %s : %d requêtes, %d lignes, %.2f ms d'attente, %.2f ms de transaction".formatted(
+                    write.description, save.changes.getStatementCount(), save.changes.getRowCount(),
+                    queueNanos / 1e6, transactionNanos / 1e6));
+        }
+    }
+
+    /**
+     * File des écritures d'une partie, vidée dans l'ordre par un seul thread d'écriture à la fois.
+     */
+    private final class GameQueue implements Runnable {
+        /**
+         * Identifiant de la partie de la file.
+         */
+        private final int gameId;
+        /**
+         * Écritures en attente, dans l'ordre de leur demande, avec les barrières de {@link #flushAsync(ServerGame)}.
+         * Protégées par {@link #lock}.
+         */
+        private final ArrayDeque<Write> writes = new ArrayDeque<>();
+        /**
+         * Verrou protégeant les écritures en attente et les indicateurs de la file.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * Condition signalée lorsque la file devient vide et que sa dernière écriture est terminée.
+         */
+        private final Condition empty = this.lock.newCondition();
+        /**
+         * Indique qu'un thread d'écriture est chargé de vider la file.
+         * Protégé par {@link #lock}.
+         */
+        private boolean scheduled = false;
+        /**
+         * Indique que la file doit être retirée dès qu'elle est vide.
+         * Protégé par {@link #lock}.
+         */
+        private boolean released = false;
+
+        private GameQueue(int gameId) {
+            this.gameId = gameId;
+        }
+
+        /**
+         * Demande le retrait de la file dès qu'elle est vide.
+         */
+        private void release() {
+            this.lock.lock();
+            try {
+                this.released = true;
+                if (!this.scheduled) {
+                    GamePersistence.this.queues.remove(this.gameId, this);
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Ajoute une écriture à la file, et confie la file à un thread d'écriture si aucun ne s'en occupe.
+         *
+         * @param write L'écriture à ajouter.
+         */
+        private void add(Write write) {
+            this.lock.lock();
+            try {
+                this.writes.addLast(write);
+                if (this.scheduled) {
+                    return;
+                }
+                this.scheduled = true;
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                GamePersistence.this.writers.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Les threads d'écriture sont arrêtés, on vide la file directement
+                this.run();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Write write;
+                this.lock.lock();
+                try {
+                    write = this.writes.pollFirst();
+                    if (write == null) {
+                        this.scheduled = false;
+                        if (this.released) {
+                            GamePersistence.this.queues.remove(this.gameId, this);
+                        }
+                        this.empty.signalAll();
+                        return;
+                    }
+                } finally {
+                    this.lock.unlock();
+                }
+                if (write instanceof Barrier barrier) {
+                    barrier.future.complete(true);
+                } else {
+                    GamePersistence.this.execute(write);
+                }
+            }
+        }
+
+        /**
+         * Attend que la file soit vide et que sa dernière écriture soit terminée.
+         *
+         * @param deadline La date limite d'attente, en nanosecondes.
+         * @return true si la file est vide, false si la date limite est dépassée.
+         */
+        private boolean awaitEmpty(long deadline) {
+            this.lock.lock();
+            try {
+                while (this.scheduled) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    this.empty.awaitNanos(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Écriture en attente dans la file d'une partie.
+     */
+    private abstract static class Write {
+        /**
+         * Description de l'écriture, pour les messages de log.
+         */
+        private final String description;
+        /**
+         * Date à laquelle l'écriture a été demandée, en nanosecondes.
+         */
+        private final long enqueuedAt = System.nanoTime();
+
+        private Write(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Exécute l'écriture dans la transaction ouverte.
+         *
+         * @param repository Le stockage.
+         * @throws SQLException Si une erreur se produit lors de l'écriture.
+         */
+        abstract void write(GameRepository repository) throws SQLException;
+
+        /**
+         * Appelée une fois la transaction validée.
+         */
+        void committed() {
+        }
+
+        /**
+         * Appelée lorsque la transaction a été annulée suite à une erreur, déjà journalisée.
+         *
+         * @param e L'erreur qui a annulé la transaction.
+         */
+        void failed(Exception e) {
+        }
+    }
+
+    /**
+     * Marque placée dans la file d'une partie par {@link #flushAsync(ServerGame)}, sans écriture ni transaction :
+     * son futur est complété lorsque toutes les écritures qui la précèdent sont terminées.
+     */
+    private static final class Barrier extends Write {
+        /**
+         * Futur complété lorsque la marque est atteinte.
+         */
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private Barrier() {
+            super("la fin des écritures en attente");
+        }
+
+        @Override
+        void write(GameRepository repository) {
+        }
+    }
+
+    /**
+     * Sauvegarde de l'état d'une partie et de ses joueurs, copié au moment de la demande.
+     * Les modifications sont calculées par le thread d'écriture, par rapport aux données de la dernière sauvegarde
+     * réussie de chaque joueur, qui ne sont modifiées que par la file de sa partie.
+     */
+    private static final class StateSave extends Write {
+        private final StateChanges.GameRow gameRow;
+        private final List<SavedPlayer> players = new ArrayList<>();
+        private StateChanges changes;
+
+        private StateSave(String description, StateChanges.GameRow gameRow, Collection<ServerPlayer> players) {
+            super(description);
+            this.gameRow = gameRow;
+            for (ServerPlayer player : players) {
+                this.players.add(new SavedPlayer(player, new PlayerDataSnapshot(player), player.hasExitedGame()));
+            }
+        }
+
+        @Override
+        void write(GameRepository repository) throws SQLException {
+            this.changes = new StateChanges();
+            for (SavedPlayer saved : this.players) {
+                this.changes.addPlayer(saved.player.getId(), saved.player.getPersistedData(), saved.data, saved.exitedGame, saved.player.hasPersistedExitedGame());
+            }
+            if (this.gameRow != null) {
+                this.changes.updateGame(this.gameRow);
+            }
+            repository.saveChanges(this.changes);
+        }
+
+        @Override
+        void committed() {
+            for (SavedPlayer saved : this.players) {
+                saved.player.setPersistedData(saved.data, saved.exitedGame);
+            }
+        }
+    }
+
+    /**
+     * Joueur sauvegardé, avec les données copiées qui deviendront sa référence si la transaction réussit.
+     *
+     * @param player     Le joueur.
+     * @param data       Les données modifiables copiées.
+     * @param exitedGame Indique si le joueur avait quitté la partie.
+     */
+    private record SavedPlayer(ServerPlayer player, PlayerDataSnapshot data, boolean exitedGame) {
+    }
+}
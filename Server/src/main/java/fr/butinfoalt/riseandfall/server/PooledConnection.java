@@ -0,0 +1,280 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connexion à la base de données empruntée à un {@link ConnectionPool}.
+ * <p>
+ * La connexion est rendue au pool lorsqu'elle est fermée, ce qui permet de l'utiliser dans un bloc try-with-resources.
+ * Elle garde en cache ses requêtes préparées : une requête fermée par l'appelant est seulement réinitialisée,
+ * et sera réutilisée la prochaine fois que la même requête SQL sera préparée sur cette connexion.
+ * Une connexion n'est utilisée que par un seul thread à la fois.
+ * </p>
+ */
+public class PooledConnection implements AutoCloseable {
+    /**
+     * Le pool auquel appartient la connexion.
+     */
+    private final ConnectionPool pool;
+
+    /**
+     * La connexion JDBC sous-jacente.
+     */
+    private final Connection connection;
+
+    /**
+     * Requêtes préparées en cache, associées à leur clé, de la moins récemment utilisée à la plus récemment utilisée.
+     */
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    /**
+     * Nombre d'emprunts en cours de la connexion par le thread qui la détient.
+     */
+    int holdCount = 0;
+
+    /**
+     * Date à laquelle la connexion a été rendue au pool pour la dernière fois, en nanosecondes.
+     */
+    long lastReleasedAt;
+
+    /**
+     * Date à laquelle la connexion a été empruntée au pool, en nanosecondes.
+     */
+    long borrowedAt;
+
+    /**
+     * Indique qu'une erreur de communication s'est produite et que la connexion ne doit plus être utilisée.
+     */
+    private volatile boolean broken = false;
+
+    /**
+     * Constructeur de la connexion empruntable.
+     *
+     * @param pool               Le pool auquel appartient la connexion.
+     * @param connection         La connexion JDBC sous-jacente.
+     * @param statementCacheSize Le nombre maximal de requêtes préparées gardées en cache.
+     */
+    PooledConnection(ConnectionPool pool, Connection connection, int statementCacheSize) {
+        this.pool = pool;
+        this.connection = connection;
+        this.lastReleasedAt = System.nanoTime();
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (this.size() <= statementCacheSize || eldest.getValue().inUse) {
+                    return false;
+                }
+                eldest.getValue().closeQuietly();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Prépare une requête SQL, en réutilisant la requête en cache si elle existe.
+     *
+     * @param sql La requête SQL à préparer.
+     * @return La requête préparée, qui doit être fermée par l'appelant.
+     * @throws SQLException Si une erreur se produit lors de la préparation de la requête.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return this.prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Prépare une requête SQL pouvant renvoyer les clés générées, en réutilisant la requête en cache si elle existe.
+     *
+     * @param sql               La requête SQL à préparer.
+     * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} ou {@link Statement#NO_GENERATED_KEYS}.
+     * @return La requête préparée, qui doit être fermée par l'appelant.
+     * @throws SQLException Si une erreur se produit lors de la préparation de la requête.
+     */
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = this.statements.get(key);
+        if (cached != null && cached.inUse) {
+            // La même requête est déjà utilisée plus haut dans la pile d'appels, on en prépare une autre hors du cache
+            return this.connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        if (cached == null) {
+            cached = new CachedStatement(key, this.connection.prepareStatement(sql, autoGeneratedKeys));
+            this.statements.put(key, cached);
+        }
+        cached.inUse = true;
+        return cached.proxy;
+    }
+
+    /**
+     * Récupère la connexion JDBC sous-jacente, pour les opérations non couvertes par cette classe.
+     * La connexion JDBC ne doit pas être fermée par l'appelant.
+     *
+     * @return La connexion JDBC.
+     */
+    public Connection getConnection() {
+        return this.connection;
+    }
+
+    /**
+     * Rend la connexion au pool si c'est le dernier emprunt en cours du thread.
+     */
+    @Override
+    public void close() {
+        this.pool.release(this);
+    }
+
+    /**
+     * Indique si la connexion peut encore être utilisée, sans interroger le serveur.
+     *
+     * @return true si aucune erreur de communication ne s'est produite et que la connexion n'est pas fermée.
+     */
+    boolean isUsable() {
+        try {
+            return !this.broken && !this.connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Vérifie auprès du serveur que la connexion est toujours valide.
+     *
+     * @return true si la connexion est valide.
+     */
+    boolean validate() {
+        try {
+            return this.connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Remet la connexion dans son état par défaut avant de la rendre au pool.
+     * Une transaction laissée ouverte par l'appelant est annulée.
+     *
+     * @return true si la connexion peut être réutilisée.
+     */
+    boolean reset() {
+        try {
+            if (!this.connection.getAutoCommit()) {
+                LogManager.logError("Connexion à la base de données rendue au pool avec une transaction en cours, annulation de la transaction.");
+                this.connection.rollback();
+                this.connection.setAutoCommit(true);
+            }
+            return this.isUsable();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Ferme la connexion JDBC et toutes les requêtes préparées en cache.
+     */
+    void closePhysically() {
+        for (Iterator<CachedStatement> iterator = this.statements.values().iterator(); iterator.hasNext(); ) {
+            iterator.next().closeQuietly();
+            iterator.remove();
+        }
+        try {
+            this.connection.close();
+        } catch (SQLException e) {
+            LogManager.logError("Erreur lors de la fermeture d'une connexion à la base de données.", e);
+        }
+    }
+
+    /**
+     * Requête préparée gardée en cache, exposée à l'appelant à travers un proxy qui intercepte sa fermeture.
+     */
+    private final class CachedStatement implements InvocationHandler {
+        /**
+         * Clé de la requête dans le cache.
+         */
+        private final String key;
+        /**
+         * Requête préparée réelle.
+         */
+        private final PreparedStatement statement;
+        /**
+         * Proxy remis à l'appelant.
+         */
+        private final PreparedStatement proxy;
+        /**
+         * Indique si la requête est actuellement utilisée par un appelant.
+         */
+        private boolean inUse = false;
+
+        private CachedStatement(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    this.release();
+                    return null;
+                }
+                case "isClosed" -> {
+                    return !this.inUse || this.statement.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+            }
+            try {
+                return method.invoke(this.statement, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null && sqlException.getSQLState().startsWith("08")) {
+                    // Les états SQL de la classe 08 correspondent à des erreurs de connexion
+                    PooledConnection.this.broken = true;
+                }
+                throw cause;
+            }
+        }
+
+        /**
+         * Réinitialise la requête lorsque l'appelant la ferme, pour qu'elle puisse être réutilisée.
+         */
+        private void release() {
+            if (!this.inUse) {
+                return;
+            }
+            this.inUse = false;
+            try {
+                this.statement.clearParameters();
+                this.statement.clearBatch();
+            } catch (SQLException e) {
+                this.closeQuietly();
+                PooledConnection.this.statements.remove(this.key);
+            }
+        }
+
+        /**
+         * Ferme la requête réelle en ignorant les erreurs.
+         */
+        private void closeQuietly() {
+            try {
+                this.statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
@@ -1,33 +1,33 @@
 package fr.butinfoalt.riseandfall.server;
 
-import fr.butinfoalt.riseandfall.gamelogic.GameState;
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
 import fr.butinfoalt.riseandfall.gamelogic.data.*;
+import fr.butinfoalt.riseandfall.network.common.EncodedPacket;
 import fr.butinfoalt.riseandfall.network.common.SocketWrapper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
 import fr.butinfoalt.riseandfall.network.packets.*;
 import fr.butinfoalt.riseandfall.network.server.BaseSocketServer;
 import fr.butinfoalt.riseandfall.server.data.ServerGame;
-import fr.butinfoalt.riseandfall.server.data.User;
-import fr.butinfoalt.riseandfall.util.ObjectIntMap;
+import fr.butinfoalt.riseandfall.server.repository.GameRepository;
+import fr.butinfoalt.riseandfall.util.Version;
 import fr.butinfoalt.riseandfall.util.logging.LogManager;
 
 import java.io.IOException;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Timer;
 
-import static fr.butinfoalt.riseandfall.server.Environment.SERVER_PORT;
+import static fr.butinfoalt.riseandfall.server.Environment.*;
 
 /**
  * Classe principale du serveur de jeu Rise and Fall.
  * Elle étend la classe BaseSocketServer pour gérer les connexions des clients.
- * Elle initialise également la base de données et charge les données du serveur.
+ * Elle charge également les données du serveur depuis le stockage.
  */
-public class RiseAndFallServer extends BaseSocketServer {
+public final class RiseAndFallServer extends BaseSocketServer {
     /**
-     * Le gestionnaire de base de données pour interagir avec la base de données du serveur.
+     * Le stockage des données du serveur, en base de données ou en mémoire.
      */
-    private final DatabaseManager databaseManager;
+    private final GameRepository repository;
 
     /**
      * Le gestionnaire d'authentification pour gérer les connexions des clients.
@@ -45,10 +45,9 @@ public class RiseAndFallServer extends BaseSocketServer {
     private UserManager userManager;
 
     /**
-     * Timer pour gérer les tâches périodiques du serveur.
-     * Il peut être utilisé pour gérer les tours de jeu, le démarrage de parties, etc.
+     * Planificateur des actions différées des parties, comme les tours de jeu ou le démarrage de parties.
      */
-    private final Timer timer = new Timer();
+    private final TurnScheduler turnScheduler = new TurnScheduler(TURN_TIMER_TICK_MS, TURN_MAX_CONCURRENT_ACTIONS);
 
     /**
      * Désérialiseur de données spécifique au serveur.
@@ -56,18 +55,33 @@ public class RiseAndFallServer extends BaseSocketServer {
      */
     private final ServerDataDeserializer dataDeserializer = new ServerDataDeserializer(this);
 
+    /**
+     * Instantané binaire des données du serveur, relu au démarrage à la place du stockage s'il est à jour.
+     */
+    private final ServerSnapshot snapshot;
+
+    /**
+     * Paquet des données statiques du serveur, sérialisé une seule fois et partagé par toutes les connexions.
+     * Null tant qu'il n'a pas encore été envoyé, ou après une modification des données du serveur.
+     */
+    private EncodedPacket serverDataPacket;
+
     /**
      * Constructeur de la classe BaseSocketServer.
-     * Initialise le serveur socket sur le port spécifié.
+     * Initialise le serveur socket sur le port spécifié, avec le mode de transport défini dans l'environnement.
      *
-     * @param port            Le port sur lequel le serveur écoute les connexions des clients.
-     * @param databaseManager Le gestionnaire de base de données pour interagir avec la base de données du serveur.
+     * @param port       Le port sur lequel le serveur écoute les connexions des clients.
+     * @param repository Le stockage des données du serveur.
      * @throws IOException Si une erreur se produit lors de la création du serveur socket.
      */
-    public RiseAndFallServer(int port, DatabaseManager databaseManager) throws IOException {
-        super(port);
-        this.databaseManager = databaseManager;
+    public RiseAndFallServer(int port, GameRepository repository) throws IOException {
+        super(port, NETWORK_TRANSPORT, NETWORK_IO_THREADS);
+        this.setMaxFrameSize(NETWORK_MAX_FRAME_SIZE);
+        this.setOutboundHighWaterMark(NETWORK_OUTBOUND_HIGH_WATER_MARK);
+        this.repository = repository;
         this.authManager = new AuthenticationManager(this);
+        // Créé une fois le stockage initialisé, juste avant d'être relu
+        this.snapshot = new ServerSnapshot(this, SERVER_SNAPSHOT_FILE);
         this.loadServerData();
 
         this.registerReceivePacket((byte) 0, PacketAuthentification.class, this.authManager::onAuthentification, PacketAuthentification::new);
@@ -84,185 +98,43 @@ public class RiseAndFallServer extends BaseSocketServer {
         this.registerSendPacket((byte) 11, PacketDiscoverPlayer.class);
         this.registerSendAndReceivePacket((byte) 12, PacketMessage.class, this.gameManager::onChatMessage, PacketMessage::new);
         this.registerSendPacket((byte) 13, PacketTurnResults.class);
+        this.registerSendAndReceivePacket((byte) 14, PacketInitInfo.class, this::onInitInfo, PacketInitInfo::new);
+        this.registerSendPacket((byte) 15, PacketUpdateGameDataDelta.class);
+        this.registerReceivePacket((byte) 16, PacketResumeSession.class, this.authManager::onResumeSession, PacketResumeSession::new);
+        this.registerSendPacket((byte) 17, PacketChatHistory.class);
+        this.registerReceivePacket((byte) 18, PacketRequestChatHistory.class, this.gameManager::onRequestChatHistory, PacketRequestChatHistory::new);
+        this.registerReceivePacket((byte) 19, PacketRequestGameHistory.class, this.gameManager::onRequestGameHistory, PacketRequestGameHistory::new);
     }
 
     /**
-     * Méthode pour charger les données du serveur depuis la base de données.
-     * Elle récupère les races, les types de bâtiments et les types d'unités.
+     * Méthode pour charger les données du serveur depuis l'instantané du serveur s'il correspond encore au stockage,
+     * ou sinon depuis le stockage.
+     * Seules les parties non archivées et leurs joueurs sont chargés, les parties archivées sont chargées à la demande.
      */
     private void loadServerData() {
-        try {
-            List<Race> races = new ArrayList<>();
-            List<User> users = new ArrayList<>();
-            List<ServerPlayer> players = new ArrayList<>();
-            List<ServerGame> games = new ArrayList<>();
-
-            List<BuildingType> buildingTypes = new ArrayList<>();
-            List<UnitType> unitTypes = new ArrayList<>();
-
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM race ORDER BY id")) {
-
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int id = set.getInt("id");
-                    String name = set.getString("name");
-                    String description = set.getString("description");
-                    float goldMultiplier = set.getFloat("gold_multiplier");
-                    float intelligenceMultiplier = set.getFloat("intelligence_multiplier");
-                    float damageMultiplier = set.getFloat("damage_multiplier");
-                    float healthMultiplier = set.getFloat("health_multiplier");
-                    races.add(new Race(id, name, description, goldMultiplier, intelligenceMultiplier, damageMultiplier, healthMultiplier));
-                }
-            }
-
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM building_type ORDER BY id")) {
-                ResultSet set = statement.executeQuery();
-
-                while (set.next()) {
-                    int id = set.getInt("id");
-                    String name = set.getString("name");
-                    String description = set.getString("description");
-                    float price = set.getFloat("price");
-                    float requiredIntelligence = set.getFloat("required_intelligence");
-                    float goldProduction = set.getFloat("gold_production");
-                    float intelligenceProduction = set.getFloat("intelligence_production");
-                    float resistance = set.getFloat("resistance");
-                    int maxUnits = set.getInt("max_units");
-                    int initialAmount = set.getInt("initial_amount");
-                    int accessibleRaceId = set.getInt("accessible_race_id");
-                    Race accessibleRace = set.wasNull() ? null : Identifiable.getById(races, accessibleRaceId);
-                    boolean defensive = set.getBoolean("defensive");
-                    buildingTypes.add(new BuildingType(id, name, description, price, requiredIntelligence, goldProduction, intelligenceProduction, resistance, maxUnits, initialAmount, accessibleRace, defensive));
-                }
+        GameRepository.LoadedData data = this.snapshot.load();
+        if (data == null) {
+            try {
+                data = this.repository.load(this);
+            } catch (SQLException e) {
+                throw new RuntimeException("Erreur lors du chargement des données initiales", e);
             }
+        }
+        this.invalidateServerDataPacket();
 
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM unit_type ORDER BY id")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int id = set.getInt("id");
-                    String name = set.getString("name");
-                    String description = set.getString("description");
-                    float price = set.getFloat("price");
-                    float requiredIntelligence = set.getFloat("required_intelligence");
-                    float health = set.getFloat("health");
-                    float damage = set.getFloat("damage");
-                    int accessibleRaceId = set.getInt("accessible_race_id");
-                    Race accessibleRace = set.wasNull() ? null : Identifiable.getById(races, accessibleRaceId);
-                    unitTypes.add(new UnitType(id, name, description, price, requiredIntelligence, health, damage, accessibleRace));
-                }
-            }
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM game")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int id = set.getInt("id");
-                    String name = set.getString("name");
-                    int turnInterval = set.getInt("turn_interval");
-                    int currentTurn = set.getInt("current_turn");
-                    int minPlayers = set.getInt("min_players");
-                    int maxPlayers = set.getInt("max_players");
-                    boolean isPrivate = set.getString("password_hash") != null;
-                    GameState state = GameState.valueOf(set.getString("state"));
-                    Timestamp nextActionAt = set.getTimestamp("next_action_at");
-                    games.add(new ServerGame(this, id, name, turnInterval, minPlayers, maxPlayers, isPrivate, state, nextActionAt, currentTurn));
-                }
-            }
-            // Nécessaire pour charger les joueurs juste après
-            ServerData.init(races, buildingTypes, unitTypes);
-            this.gameManager = new GameManager(this, games);
-
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM `user`")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int id = set.getInt("id");
-                    String username = set.getString("username");
-                    users.add(new User(id, username));
-                }
-            }
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM `player`")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int id = set.getInt("id");
-                    User user = Identifiable.getById(users, set.getInt("user_id"));
-                    ServerGame game = Identifiable.getById(games, set.getInt("game_id"));
-                    Race race = Identifiable.getById(races, set.getInt("race_id"));
-                    float gold = set.getFloat("gold");
-                    float intelligence = set.getFloat("intelligence");
-                    int eliminationTurn = set.getInt("elimination_turn");
-                    if (set.wasNull()) {
-                        eliminationTurn = -1; // -1 signifie que le joueur n'est pas éliminé
-                    }
-                    boolean exitedGame = set.getBoolean("exited_game");
-                    ServerPlayer player = new ServerPlayer(id, user, game, race, gold, intelligence, eliminationTurn, exitedGame);
-                    players.add(player);
-                    // Ajout forcé car la partie peut avoir déjà démarré, mais on est dans un cas particulier car les données ne sont pas encore chargées
-                    game.forceAddPlayer(player);
-                }
-            }
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM player_building")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int playerId = set.getInt("player_id");
-                    BuildingType buildingType = Identifiable.getById(buildingTypes, set.getInt("building_id"));
-                    int amount = set.getInt("quantity");
-                    ServerPlayer player = Identifiable.getById(players, playerId);
-                    player.getBuildingMap().set(buildingType, amount);
-                }
-            }
+        // Les données chargées servent de référence pour ne sauvegarder ensuite que les modifications
+        for (ServerPlayer player : data.players()) {
+            player.setPersistedData(new PlayerDataSnapshot(player), player.hasExitedGame());
+        }
 
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM player_unit")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int playerId = set.getInt("player_id");
-                    UnitType unitType = Identifiable.getById(unitTypes, set.getInt("unit_id"));
-                    int amount = set.getInt("quantity");
-                    ServerPlayer player = Identifiable.getById(players, playerId);
-                    player.getUnitMap().set(unitType, amount);
-                }
-            }
+        this.userManager = new UserManager(this, data.users(), data.players());
+        this.gameManager = new GameManager(this, data.games(), data.players());
+        // Les modifications que le stockage n'avait pas reçues sont rattrapées avant la reprise des parties
+        this.gameManager.recoverFromJournal();
 
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM building_creation_order")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int playerId = set.getInt("player_id");
-                    BuildingType buildingType = Identifiable.getById(buildingTypes, set.getInt("building_type_id"));
-                    int amount = set.getInt("amount");
-                    ServerPlayer player = Identifiable.getById(players, playerId);
-                    player.getPendingBuildingsCreation().set(buildingType, amount);
-                }
-            }
-            try (PreparedStatement statement = this.getDb().prepareStatement("SELECT * FROM unit_creation_order")) {
-                ResultSet set = statement.executeQuery();
-                while (set.next()) {
-                    int playerId = set.getInt("player_id");
-                    UnitType unitType = Identifiable.getById(unitTypes, set.getInt("unit_type_id"));
-                    int amount = set.getInt("amount");
-                    ServerPlayer player = Identifiable.getById(players, playerId);
-                    player.getPendingUnitsCreation().set(unitType, amount);
-                }
-            }
-            try (PreparedStatement attackStatement = this.getDb().prepareStatement("SELECT * FROM attack_player_order")) {
-                ResultSet set = attackStatement.executeQuery();
-                while (set.next()) {
-                    int playerId = set.getInt("player_id");
-                    int targetPlayerId = set.getInt("target_player_id");
-                    int orderId = set.getInt("id");
-                    ServerPlayer player = Identifiable.getById(players, playerId);
-                    ServerPlayer targetPlayer = Identifiable.getById(players, targetPlayerId);
-                    ObjectIntMap<UnitType> usingUnits = player.getUnitMap().createEmptyClone();
-                    try (PreparedStatement unitStatement = this.getDb().prepareStatement("SELECT * FROM attack_player_order_unit WHERE order_id = ?")) {
-                        unitStatement.setInt(1, orderId);
-                        ResultSet unitSet = unitStatement.executeQuery();
-                        while (unitSet.next()) {
-                            UnitType unitType = Identifiable.getById(unitTypes, unitSet.getInt("unit_type_id"));
-                            usingUnits.set(unitType, unitSet.getInt("amount"));
-                        }
-                    }
-                    player.getPendingAttacks().add(new AttackPlayerOrderData(targetPlayer, usingUnits));
-                }
-            }
-
-            // Redémarrage des actions en attente
-            for (ServerGame game : games) {
+        // Redémarrage des actions en attente, depuis la file de chaque partie qui en est propriétaire
+        for (ServerGame game : data.games()) {
+            game.getMailbox().execute(() -> {
                 switch (game.getState()) {
                     case WAITING -> {
                         if (game.hasSufficientPlayers()) {
@@ -271,11 +143,9 @@ public class RiseAndFallServer extends BaseSocketServer {
                     }
                     case RUNNING -> game.scheduleNextTurn();
                 }
-            }
-            this.userManager = new UserManager(this, users, players);
-        } catch (SQLException e) {
-            throw new RuntimeException("Erreur lors du chargement des données initiales", e);
+            });
         }
+        this.snapshot.start(SERVER_SNAPSHOT_INTERVAL_MS);
     }
 
     /**
@@ -289,11 +159,7 @@ public class RiseAndFallServer extends BaseSocketServer {
         super.onClientConnected(client);
         LogManager.logMessage("Client connecté : " + client.getName());
         try {
-            client.sendPacket(new PacketServerData(
-                    ServerData.getRaces(),
-                    ServerData.getUnitTypes(),
-                    ServerData.getBuildingTypes()
-            ));
+            this.sendServerData(client);
         } catch (IOException e) {
             LogManager.logError("Erreur lors de l'envoi des données du serveur au client :", e);
             try {
@@ -304,6 +170,35 @@ public class RiseAndFallServer extends BaseSocketServer {
         }
     }
 
+    /**
+     * Envoie les données statiques du serveur à un client.
+     * Le paquet est sérialisé lors du premier envoi, puis réutilisé tel quel jusqu'à la prochaine modification des données.
+     *
+     * @param client Le wrapper de socket du client qui reçoit les données.
+     * @throws IOException Si une erreur se produit lors de la sérialisation ou de l'envoi du paquet.
+     */
+    private synchronized void sendServerData(SocketWrapper client) throws IOException {
+        if (this.serverDataPacket == null) {
+            this.serverDataPacket = this.encodePacket(new PacketServerData(
+                    ServerData.getRaces(),
+                    ServerData.getUnitTypes(),
+                    ServerData.getBuildingTypes()
+            ));
+        }
+        client.sendPacket(this.serverDataPacket);
+    }
+
+    /**
+     * Invalide le paquet des données statiques mis en cache.
+     * Doit être appelée après toute modification de {@link ServerData}, pour que les clients suivants reçoivent les nouvelles données.
+     */
+    public synchronized void invalidateServerDataPacket() {
+        if (this.serverDataPacket != null) {
+            this.serverDataPacket.release();
+            this.serverDataPacket = null;
+        }
+    }
+
     /**
      * Méthode appelée lorsqu'un client se déconnecte du serveur.
      *
@@ -328,22 +223,52 @@ public class RiseAndFallServer extends BaseSocketServer {
             case QUIT_GAME -> this.gameManager.onClientQuitGame(sender);
             case LOG_OUT -> this.authManager.onClientDisconnected(sender);
             case NEXT_TURN -> this.gameManager.onNextTurn(sender);
+            case RESYNC_GAME_DATA -> this.gameManager.onResyncGameData(sender);
+        }
+    }
+
+    /**
+     * Méthode appelée lorsqu'un client envoie ses informations d'initialisation.
+     * Elle retient le format d'encodage le plus récent compris par le client et le serveur, l'annonce au client,
+     * puis l'utilise pour tous les paquets envoyés ensuite à ce client.
+     *
+     * @param sender Le socket du client qui a envoyé le paquet.
+     * @param packet Le paquet d'initialisation reçu.
+     */
+    private void onInitInfo(SocketWrapper sender, PacketInitInfo packet) {
+        WireFormat wireFormat = packet.getWireFormat().min(NETWORK_WIRE_FORMAT);
+        try {
+            sender.sendPacket(new PacketInitInfo(Version.CURRENT_VERSION, wireFormat));
+        } catch (IOException e) {
+            LogManager.logError("Erreur lors de l'envoi des informations d'initialisation au client " + sender.getName(), e);
+            return;
         }
+        sender.setSendWireFormat(wireFormat);
+        LogManager.logMessage("Client %s (version %s) : format réseau %s".formatted(sender.getName(), packet.getVersion(), wireFormat));
     }
 
     @Override
     public void close() throws IOException {
         super.close();
-        this.timer.cancel();
+        // Plus aucun tour n'est placé dans les files des parties, qui sont vidées avant les sauvegardes
+        this.turnScheduler.close();
+        if (this.gameManager != null) {
+            this.gameManager.closePersistence();
+            // Écrit après les sauvegardes, pour que l'instantané corresponde au stockage
+            this.snapshot.close();
+            LogManager.logMessage("Sauvegardes des parties : " + this.gameManager.getPersistenceMetrics());
+            LogManager.logMessage("Cache des résultats des tours : " + this.gameManager.getTurnResultCacheStats());
+            LogManager.logMessage("Actions des parties : " + this.turnScheduler.getMetrics());
+        }
     }
 
     /**
-     * Méthode pour obtenir la connexion à la base de données.
+     * Méthode pour obtenir le stockage des données du serveur.
      *
-     * @return La connexion à la base de données.
+     * @return Le stockage des données du serveur.
      */
-    public Connection getDb() {
-        return this.databaseManager.getDb();
+    public GameRepository getRepository() {
+        return this.repository;
     }
 
     /**
@@ -374,12 +299,12 @@ public class RiseAndFallServer extends BaseSocketServer {
     }
 
     /**
-     * Méthode pour obtenir le timer du serveur.
+     * Méthode pour obtenir le planificateur des actions différées des parties.
      *
-     * @return Le timer du serveur.
+     * @return Le planificateur des actions des parties.
      */
-    public Timer getTimer() {
-        return this.timer;
+    public TurnScheduler getTurnScheduler() {
+        return this.turnScheduler;
     }
 
     /**
@@ -393,7 +318,7 @@ public class RiseAndFallServer extends BaseSocketServer {
 
     /**
      * Méthode principale pour démarrer le serveur.
-     * Elle charge le driver MySQL, établit la connexion à la base de données,
+     * Elle ouvre le stockage choisi dans l'environnement (base de données ou mémoire),
      * démarre le serveur et gère les tâches de fermeture.
      *
      * @param args Les arguments de la ligne de commande (non utilisés).
@@ -406,12 +331,12 @@ public class RiseAndFallServer extends BaseSocketServer {
             }
         }));
 
-        try (DatabaseManager databaseManager = new DatabaseManager()) {
+        try (GameRepository repository = GameRepository.fromEnvironment()) {
             shutdownTasks.add(() -> {
-                LogManager.logMessage("Fermeture du gestionnaire de base de données...");
-                databaseManager.close();
+                LogManager.logMessage("Fermeture du stockage des données...");
+                repository.close();
             });
-            try (RiseAndFallServer server = new RiseAndFallServer(SERVER_PORT, databaseManager)) {
+            try (RiseAndFallServer server = new RiseAndFallServer(SERVER_PORT, repository)) {
                 server.start();
                 shutdownTasks.addFirst(() -> {
                     LogManager.logMessage("Arrêt du serveur...");
@@ -421,7 +346,7 @@ public class RiseAndFallServer extends BaseSocketServer {
                         LogManager.logError("Erreur lors de l'arrêt du serveur :", e);
                     }
                 });
-                LogManager.logMessage("Serveur démarré sur le port " + SERVER_PORT);
+                LogManager.logMessage("Serveur démarré sur le port %d (transport : %s)".formatted(SERVER_PORT, server.getTransportMode()));
                 try {
                     server.join();
                 } catch (InterruptedException e) {
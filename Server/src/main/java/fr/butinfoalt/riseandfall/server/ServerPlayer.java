@@ -1,16 +1,25 @@
 package fr.butinfoalt.riseandfall.server;
 
 import fr.butinfoalt.riseandfall.gamelogic.Player;
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
 import fr.butinfoalt.riseandfall.gamelogic.data.BuildingType;
 import fr.butinfoalt.riseandfall.gamelogic.data.Race;
+import fr.butinfoalt.riseandfall.gamelogic.data.ServerData;
 import fr.butinfoalt.riseandfall.gamelogic.data.UnitType;
 import fr.butinfoalt.riseandfall.gamelogic.data.AttackPlayerOrderData;
+import fr.butinfoalt.riseandfall.gamelogic.data.DataDeserializer;
+import fr.butinfoalt.riseandfall.gamelogic.data.Identifiable;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.packets.PacketUpdateGameDataDelta;
+import fr.butinfoalt.riseandfall.network.packets.data.OrderDeserializationContext;
 import fr.butinfoalt.riseandfall.server.data.ServerGame;
 import fr.butinfoalt.riseandfall.server.data.User;
 import fr.butinfoalt.riseandfall.server.orders.AttacksExecutionContext;
 import fr.butinfoalt.riseandfall.util.ObjectIntMap;
 import fr.butinfoalt.riseandfall.util.ToStringFormatter;
 
+import java.io.IOException;
+
 /**
  * Représente un joueur dans le serveur.
  * Hérite de la classe Player commune. Il est associé à un utilisateur et à une partie.
@@ -30,6 +39,27 @@ public class ServerPlayer extends Player {
      */
     private boolean exitedGame = false;
 
+    /**
+     * Dernières données modifiables envoyées aux clients du joueur, ou null si aucune n'a encore été envoyée.
+     */
+    private PlayerDataSnapshot sentData = null;
+
+    /**
+     * Version des dernières données envoyées, incrémentée à chaque envoi de données modifiées.
+     */
+    private int sentDataVersion = 0;
+
+    /**
+     * Données modifiables telles qu'enregistrées dans la base de données lors de la dernière sauvegarde réussie,
+     * ou null si elles n'y ont pas encore été entièrement enregistrées.
+     */
+    private PlayerDataSnapshot persistedData = null;
+
+    /**
+     * Indique si le joueur avait quitté la partie lors de la dernière sauvegarde réussie.
+     */
+    private boolean persistedExitedGame = false;
+
     /**
      * Constructeur de la classe Player.
      *
@@ -71,27 +101,149 @@ public class ServerPlayer extends Player {
      */
     public void executeOrders() {
         float addGold = 0, addIntelligence = 0;
-        for (ObjectIntMap.Entry<BuildingType> entry : this.getBuildingMap()) {
-            addGold += entry.getValue() * entry.getKey().getGoldProduction();
-            addIntelligence += entry.getValue() * entry.getKey().getIntelligenceProduction();
+        ObjectIntMap.Cursor<BuildingType> buildings = this.getBuildingMap().cursor();
+        while (buildings.next()) {
+            addGold += buildings.getValue() * buildings.getKey().getGoldProduction();
+            addIntelligence += buildings.getValue() * buildings.getKey().getIntelligenceProduction();
         }
 
         this.addGoldAmount(addGold * this.getRace().getGoldMultiplier());
         this.addIntelligence(addIntelligence * this.getRace().getIntelligenceMultiplier());
 
-        for (ObjectIntMap.Entry<BuildingType> entry : this.getPendingBuildingsCreation()) {
-            this.getBuildingMap().increment(entry.getKey(), entry.getValue());
-            this.removeGoldAmount(entry.getKey().getPrice() * entry.getValue());
+        ObjectIntMap.Cursor<BuildingType> buildingOrders = this.getPendingBuildingsCreation().cursor();
+        while (buildingOrders.next()) {
+            this.removeGoldAmount(buildingOrders.getKey().getPrice() * buildingOrders.getValue());
         }
+        this.getBuildingMap().increment(this.getPendingBuildingsCreation());
         this.getPendingBuildingsCreation().reset();
 
-        for (ObjectIntMap.Entry<UnitType> entry : this.getPendingUnitsCreation()) {
-            this.getUnitMap().increment(entry.getKey(), entry.getValue());
-            this.removeGoldAmount(entry.getKey().getPrice() * entry.getValue());
+        ObjectIntMap.Cursor<UnitType> unitOrders = this.getPendingUnitsCreation().cursor();
+        while (unitOrders.next()) {
+            this.removeGoldAmount(unitOrders.getKey().getPrice() * unitOrders.getValue());
         }
+        this.getUnitMap().increment(this.getPendingUnitsCreation());
         this.getPendingUnitsCreation().reset();
     }
 
+    /**
+     * Crée le paquet de mise à jour des données modifiées depuis le dernier envoi,
+     * puis retient les données actuelles comme référence pour le prochain envoi.
+     * Si aucune donnée n'a encore été envoyée, le paquet contient toutes les données du joueur.
+     *
+     * @return Le paquet de mise à jour partielle des données du joueur.
+     */
+    public synchronized PacketUpdateGameDataDelta createDataDeltaPacket() {
+        PlayerDataSnapshot current = new PlayerDataSnapshot(this);
+        if (this.sentData == null) {
+            this.sentData = current;
+            return new PacketUpdateGameDataDelta(this.game, this.sentDataVersion, current);
+        }
+        if (current.getChangedFields(this.sentData) == 0) {
+            return new PacketUpdateGameDataDelta(this.game, this.sentDataVersion, this.sentDataVersion, this.sentData, this.sentData);
+        }
+        PacketUpdateGameDataDelta packet = new PacketUpdateGameDataDelta(this.game, this.sentDataVersion, this.sentDataVersion + 1, this.sentData, current);
+        this.sentData = current;
+        this.sentDataVersion++;
+        return packet;
+    }
+
+    /**
+     * Crée le paquet contenant toutes les données modifiables du joueur, pour un client qui vient de rejoindre
+     * la partie ou dont la version des données ne correspond plus.
+     * Si les données ont changé depuis le dernier envoi, elles deviennent la nouvelle référence : les autres clients
+     * du joueur redemanderont alors toutes les données à la prochaine mise à jour partielle.
+     *
+     * @return Le paquet contenant toutes les données du joueur.
+     */
+    public synchronized PacketUpdateGameDataDelta createFullDataPacket() {
+        PlayerDataSnapshot current = new PlayerDataSnapshot(this);
+        if (this.sentData != null && current.getChangedFields(this.sentData) != 0) {
+            this.sentDataVersion++;
+        }
+        this.sentData = current;
+        return new PacketUpdateGameDataDelta(this.game, this.sentDataVersion, current);
+    }
+
+    /**
+     * Remplace les données modifiables du joueur, ordres compris, par celles écrites avec
+     * {@link PlayerDataSnapshot#serializeChanges(PlayerDataSnapshot, int, fr.butinfoalt.riseandfall.network.common.WriteHelper)}
+     * pour tous les champs. Utilisé pour rétablir l'état du joueur depuis le journal des tours.
+     *
+     * @param readHelper       L'outil de lecture des données.
+     * @param dataDeserializer Le désérialiseur des données, pour retrouver les cibles des attaques.
+     * @throws IOException Si les données ne peuvent pas être lues.
+     */
+    public void readModifiableData(ReadHelper readHelper, DataDeserializer dataDeserializer) throws IOException {
+        this.applyModifiableDataChanges(readHelper, PlayerDataSnapshot.ALL_FIELDS, true, dataDeserializer);
+    }
+
+    /**
+     * Applique aux données modifiables du joueur, ordres compris, les champs écrits avec
+     * {@link PlayerDataSnapshot#serializeChanges(PlayerDataSnapshot, int, fr.butinfoalt.riseandfall.network.common.WriteHelper)}.
+     * Seuls les champs indiqués sont lus, les autres sont conservés.
+     *
+     * @param readHelper       L'outil de lecture des données.
+     * @param changedFields    Les bits des champs écrits.
+     * @param fullData         Indique si les données sont complètes : les quantités sont alors remises à zéro avant d'être lues.
+     * @param dataDeserializer Le désérialiseur des données, pour retrouver les cibles des attaques.
+     * @throws IOException Si les données ne peuvent pas être lues.
+     */
+    public void applyModifiableDataChanges(ReadHelper readHelper, int changedFields, boolean fullData, DataDeserializer dataDeserializer) throws IOException {
+        if (fullData) {
+            this.getBuildingMap().reset();
+            this.getUnitMap().reset();
+            this.getPendingUnitsCreation().reset();
+            this.getPendingBuildingsCreation().reset();
+        }
+        if ((changedFields & PlayerDataSnapshot.GOLD) != 0) this.setGoldAmount(readHelper.readFloat());
+        if ((changedFields & PlayerDataSnapshot.INTELLIGENCE) != 0) this.setIntelligence(readHelper.readFloat());
+        if ((changedFields & PlayerDataSnapshot.ELIMINATION_TURN) != 0) this.setEliminationTurn(readHelper.readInt());
+        if ((changedFields & PlayerDataSnapshot.BUILDINGS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getBuildingMap(), readHelper, value -> Identifiable.getById(ServerData.getBuildingTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.UNITS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getUnitMap(), readHelper, value -> Identifiable.getById(ServerData.getUnitTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_UNITS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getPendingUnitsCreation(), readHelper, value -> Identifiable.getById(ServerData.getUnitTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_BUILDINGS) != 0) {
+            ObjectIntMap.deserializeChanges(this.getPendingBuildingsCreation(), readHelper, value -> Identifiable.getById(ServerData.getBuildingTypes(), value));
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_ATTACKS) != 0) {
+            this.setPendingAttacks(readHelper.readSerializableList(AttackPlayerOrderData::new, new OrderDeserializationContext(this, dataDeserializer)));
+        }
+    }
+
+    /**
+     * Récupère les données modifiables du joueur telles qu'enregistrées lors de la dernière sauvegarde réussie.
+     *
+     * @return Les données enregistrées, ou null si elles n'ont pas encore été entièrement enregistrées.
+     */
+    public PlayerDataSnapshot getPersistedData() {
+        return this.persistedData;
+    }
+
+    /**
+     * Indique si le joueur avait quitté la partie lors de la dernière sauvegarde réussie.
+     *
+     * @return true si le joueur avait quitté la partie.
+     */
+    public boolean hasPersistedExitedGame() {
+        return this.persistedExitedGame;
+    }
+
+    /**
+     * Retient les données enregistrées dans la base de données, comme référence pour la prochaine sauvegarde.
+     *
+     * @param persistedData       Les données modifiables enregistrées.
+     * @param persistedExitedGame Indique si le joueur avait quitté la partie.
+     */
+    public void setPersistedData(PlayerDataSnapshot persistedData, boolean persistedExitedGame) {
+        this.persistedData = persistedData;
+        this.persistedExitedGame = persistedExitedGame;
+    }
+
     /**
      * Récupère l'utilisateur associé au joueur.
      *
@@ -0,0 +1,410 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.gamelogic.GameState;
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
+import fr.butinfoalt.riseandfall.gamelogic.data.*;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.data.User;
+import fr.butinfoalt.riseandfall.server.repository.GameRepository;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instantané binaire de toutes les données du serveur, pour redémarrer sans relire chaque table du stockage.
+ * <p>
+ * L'instantané contient les données statiques, les utilisateurs, les parties non archivées et leurs joueurs, ordres
+ * et dates de prochaine action compris. Il est écrit périodiquement et à l'arrêt du serveur, puis relu d'une traite
+ * au démarrage suivant. Il est accompagné de l'{@link GameRepository#computeWatermark() empreinte} du stockage au
+ * moment de son écriture : si le stockage a été modifié depuis, l'empreinte ne correspond plus et les données sont
+ * chargées depuis le stockage.
+ * </p>
+ * <p>
+ * Une écriture périodique n'a lieu que si le stockage est à jour : aucune sauvegarde ne doit être en attente, et
+ * l'empreinte ne doit pas changer pendant la copie des données. Chaque partie est copiée par sa {@link GameMailbox file},
+ * entre deux de ses tâches, pour ne jamais enregistrer un tour ou un ordre à moitié appliqué.
+ * </p>
+ */
+public class ServerSnapshot implements AutoCloseable {
+    /**
+     * Nombre écrit au début du fichier, pour reconnaître un instantané du serveur ("RFSS").
+     */
+    private static final int MAGIC = 0x52465353;
+    /**
+     * Version du format de l'instantané, à incrémenter à chaque modification de son contenu.
+     * Un instantané d'une autre version est ignoré, et les données sont chargées depuis le stockage.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Instance du serveur.
+     */
+    private final RiseAndFallServer server;
+
+    /**
+     * Fichier de l'instantané, ou null si les instantanés sont désactivés.
+     */
+    private final Path file;
+
+    /**
+     * Thread des écritures périodiques, ou null s'il n'y en a pas.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Verrou des écritures de l'instantané.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Partie copiée, avec les données de ses joueurs.
+     */
+    private record SavedGame(ServerGame game, GameState state, Timestamp nextActionAt, int currentTurn, List<SavedPlayer> players) {
+    }
+
+    /**
+     * Joueur copié.
+     */
+    private record SavedPlayer(ServerPlayer player, PlayerDataSnapshot data, boolean exitedGame) {
+    }
+
+    /**
+     * Constructeur de l'instantané du serveur.
+     *
+     * @param server Instance du serveur.
+     * @param file   Le chemin du fichier de l'instantané, ou null pour désactiver les instantanés.
+     */
+    public ServerSnapshot(RiseAndFallServer server, String file) {
+        this.server = server;
+        this.file = file == null || file.isBlank() ? null : Path.of(file);
+    }
+
+    /**
+     * Charge les données du serveur depuis l'instantané, s'il existe et correspond encore au stockage.
+     * Les données statiques sont chargées dans {@link ServerData}.
+     *
+     * @return Les données chargées, ou null si elles doivent être chargées depuis le stockage.
+     */
+    public GameRepository.LoadedData load() {
+        if (this.file == null || !Files.exists(this.file)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        long watermark;
+        try {
+            watermark = this.server.getRepository().computeWatermark();
+        } catch (SQLException e) {
+            LogManager.logError("Erreur lors du calcul de l'empreinte du stockage, l'instantané du serveur est ignoré.", e);
+            return null;
+        }
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(this.file), 1 << 16)) {
+            ReadHelper readHelper = new ReadHelper(input);
+            readHelper.setWireFormat(WireFormat.V2);
+            if (readHelper.readInt() != MAGIC || readHelper.readInt() != VERSION) {
+                LogManager.logError("Format de l'instantané du serveur " + this.file + " inconnu, il est ignoré.");
+                return null;
+            }
+            long snapshotWatermark = readHelper.readLong();
+            long writtenAt = readHelper.readLong();
+            if (snapshotWatermark != watermark) {
+                LogManager.logMessage("L'instantané du serveur du %s ne correspond plus au stockage, chargement depuis le stockage.".formatted(new Timestamp(writtenAt)));
+                return null;
+            }
+            GameRepository.LoadedData data = this.read(readHelper);
+            LogManager.logMessage("Données du serveur chargées depuis l'instantané du %s en %.1f ms : %d utilisateurs, %d parties, %d joueurs".formatted(
+                    new Timestamp(writtenAt), (System.nanoTime() - start) / 1e6, data.users().size(), data.games().size(), data.players().size()));
+            return data;
+        } catch (IOException | RuntimeException e) {
+            LogManager.logError("Erreur lors de la lecture de l'instantané du serveur " + this.file + ", chargement depuis le stockage.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Lit les données de l'instantané qui suivent son en-tête.
+     *
+     * @param readHelper L'outil de lecture de l'instantané.
+     * @return Les données lues.
+     * @throws IOException Si l'instantané ne peut pas être lu.
+     */
+    private GameRepository.LoadedData read(ReadHelper readHelper) throws IOException {
+        int count = readHelper.readInt();
+        List<Race> races = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            races.add(new Race(readHelper));
+        }
+        count = readHelper.readInt();
+        List<BuildingType> buildingTypes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            buildingTypes.add(new BuildingType(readHelper, races));
+        }
+        count = readHelper.readInt();
+        List<UnitType> unitTypes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            unitTypes.add(new UnitType(readHelper, races));
+        }
+        // Nécessaire pour créer les joueurs juste après
+        ServerData.init(races, buildingTypes, unitTypes);
+
+        count = readHelper.readInt();
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User(readHelper.readInt(), readHelper.readString()));
+        }
+        IdRegistry<User> usersById = IdRegistry.of(users);
+
+        count = readHelper.readInt();
+        List<ServerGame> games = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = readHelper.readInt();
+            String name = readHelper.readString();
+            int turnInterval = readHelper.readInt();
+            int minPlayers = readHelper.readInt();
+            int maxPlayers = readHelper.readInt();
+            boolean isPrivate = readHelper.readBoolean();
+            GameState state = GameState.values()[readHelper.readInt()];
+            long nextActionAt = readHelper.readLong();
+            int currentTurn = readHelper.readInt();
+            long randomSeed = readHelper.readLong();
+            games.add(new ServerGame(this.server, id, name, turnInterval, minPlayers, maxPlayers, isPrivate, state,
+                    nextActionAt == -1 ? null : new Timestamp(nextActionAt), currentTurn, randomSeed));
+        }
+        IdRegistry<ServerGame> gamesById = IdRegistry.of(games);
+        IdRegistry<Race> racesById = IdRegistry.of(races);
+
+        // Tous les joueurs sont créés avant la lecture de leurs données, qui font référence aux cibles de leurs attaques
+        count = readHelper.readInt();
+        List<ServerPlayer> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = readHelper.readInt();
+            User user = usersById.getById(readHelper.readInt());
+            ServerGame game = gamesById.getById(readHelper.readInt());
+            Race race = racesById.getById(readHelper.readInt());
+            ServerPlayer player = new ServerPlayer(id, user, game, race);
+            player.setExitedGame(readHelper.readBoolean());
+            players.add(player);
+            // Ajout forcé car la partie peut avoir déjà démarré, mais on est dans un cas particulier car les données ne sont pas encore chargées
+            game.forceAddPlayer(player);
+        }
+        IdRegistry<ServerPlayer> playersById = IdRegistry.of(players);
+        for (ServerPlayer player : players) {
+            player.readModifiableData(readHelper, playersById::getByIdOrNull);
+        }
+        return new GameRepository.LoadedData(users, games, players);
+    }
+
+    /**
+     * Démarre l'écriture périodique de l'instantané.
+     *
+     * @param intervalMillis L'intervalle entre deux écritures, en millisecondes, ou 0 pour n'écrire qu'à l'arrêt du serveur.
+     */
+    public void start(long intervalMillis) {
+        if (this.file == null || intervalMillis <= 0) {
+            return;
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Server Snapshot Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::write, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Écrit l'instantané si le stockage est à jour, dans un fichier temporaire qui remplace l'instantané une fois
+     * forcé sur le disque.
+     *
+     * @return true si l'instantané a été écrit.
+     */
+    public boolean write() {
+        if (this.file == null) {
+            return false;
+        }
+        synchronized (this.writeLock) {
+            long start = System.nanoTime();
+            GameManager gameManager = this.server.getGameManager();
+            GameRepository repository = this.server.getRepository();
+            byte[] data;
+            long watermark;
+            try {
+                GamePersistence.Metrics before = gameManager.getPersistenceMetrics();
+                if (before.backlog() != 0) {
+                    this.logSkipped("des sauvegardes sont en attente");
+                    return false;
+                }
+                watermark = repository.computeWatermark();
+                int userCount = this.server.getUserManager().getUsers().size();
+                data = this.serialize(watermark);
+                GamePersistence.Metrics after = gameManager.getPersistenceMetrics();
+                if (after.backlog() != 0 || after.writes() + after.failures() != before.writes() + before.failures()
+                        || this.server.getUserManager().getUsers().size() != userCount || repository.computeWatermark() != watermark) {
+                    this.logSkipped("le stockage a été modifié pendant la copie");
+                    return false;
+                }
+            } catch (IOException | SQLException e) {
+                LogManager.logError("Erreur lors de la copie des données pour l'instantané du serveur.", e);
+                return false;
+            }
+
+            Path temporaryFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    OutputStream output = Channels.newOutputStream(channel);
+                    output.write(data);
+                    output.flush();
+                    channel.force(true);
+                }
+                Files.move(temporaryFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LogManager.logError("Erreur lors de l'écriture de l'instantané du serveur " + this.file, e);
+                return false;
+            }
+            if (Environment.DEBUG_MODE) {
+                LogManager.logMessage("Instantané du serveur écrit en %.1f ms (%.1f Kio).".formatted((System.nanoTime() - start) / 1e6, data.length / 1024.0));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Copie les données du serveur et les sérialise.
+     *
+     * @param watermark L'empreinte du stockage, écrite dans l'en-tête.
+     * @return Le contenu de l'instantané.
+     * @throws IOException Si une erreur se produit lors de la sérialisation.
+     */
+    private byte[] serialize(long watermark) throws IOException {
+        List<User> users = new ArrayList<>(this.server.getUserManager().getUsers());
+        // Les parties sont copiées en parallèle, chacune par sa file
+        List<CompletableFuture<SavedGame>> copies = new ArrayList<>();
+        for (ServerGame game : this.server.getGameManager().getGames()) {
+            copies.add(CompletableFuture.supplyAsync(() -> copy(game), game.getMailbox()));
+        }
+        List<SavedGame> games = new ArrayList<>(copies.size());
+        for (CompletableFuture<SavedGame> copy : copies) {
+            try {
+                games.add(copy.join());
+            } catch (CompletionException e) {
+                throw new IOException("Erreur lors de la copie d'une partie", e.getCause());
+            }
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 16);
+        WriteHelper writeHelper = new WriteHelper(output);
+        writeHelper.setWireFormat(WireFormat.V2);
+        writeHelper.writeInt(MAGIC);
+        writeHelper.writeInt(VERSION);
+        writeHelper.writeLong(watermark);
+        writeHelper.writeLong(System.currentTimeMillis());
+
+        writeHelper.writeInt(ServerData.getRaces().size());
+        for (Race race : ServerData.getRaces()) {
+            race.toBytes(writeHelper);
+        }
+        writeHelper.writeInt(ServerData.getBuildingTypes().size());
+        for (BuildingType buildingType : ServerData.getBuildingTypes()) {
+            buildingType.toBytes(writeHelper);
+        }
+        writeHelper.writeInt(ServerData.getUnitTypes().size());
+        for (UnitType unitType : ServerData.getUnitTypes()) {
+            unitType.toBytes(writeHelper);
+        }
+
+        writeHelper.writeInt(users.size());
+        for (User user : users) {
+            writeHelper.writeInt(user.getId());
+            writeHelper.writeString(user.getUsername());
+        }
+
+        int playerCount = 0;
+        writeHelper.writeInt(games.size());
+        for (SavedGame saved : games) {
+            ServerGame game = saved.game();
+            writeHelper.writeInt(game.getId());
+            writeHelper.writeString(game.getName());
+            writeHelper.writeInt(game.getTurnInterval());
+            writeHelper.writeInt(game.getMinPlayers());
+            writeHelper.writeInt(game.getMaxPlayers());
+            writeHelper.writeBoolean(game.isPrivate());
+            writeHelper.writeInt(saved.state().ordinal());
+            writeHelper.writeLong(saved.nextActionAt() == null ? -1 : saved.nextActionAt().getTime());
+            writeHelper.writeInt(saved.currentTurn());
+            writeHelper.writeLong(game.getRandomSeed());
+            playerCount += saved.players().size();
+        }
+
+        writeHelper.writeInt(playerCount);
+        for (SavedGame saved : games) {
+            for (SavedPlayer player : saved.players()) {
+                writeHelper.writeInt(player.player().getId());
+                writeHelper.writeInt(player.player().getUser().getId());
+                writeHelper.writeInt(saved.game().getId());
+                writeHelper.writeInt(player.player().getRace().getId());
+                writeHelper.writeBoolean(player.exitedGame());
+            }
+        }
+        for (SavedGame saved : games) {
+            for (SavedPlayer player : saved.players()) {
+                player.data().serializeChanges(null, PlayerDataSnapshot.ALL_FIELDS, writeHelper);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Copie l'état d'une partie et les données de ses joueurs. À appeler depuis la file de la partie.
+     *
+     * @param game La partie à copier.
+     * @return La copie de la partie.
+     */
+    private static SavedGame copy(ServerGame game) {
+        List<SavedPlayer> players = new ArrayList<>();
+        for (ServerPlayer player : game.getPlayers()) {
+            players.add(new SavedPlayer(player, new PlayerDataSnapshot(player), player.hasExitedGame()));
+        }
+        return new SavedGame(game, game.getState(), game.getNextActionAt(), game.getCurrentTurn(), players);
+    }
+
+    /**
+     * Journalise une écriture périodique reportée, en mode débogage.
+     *
+     * @param reason La raison du report.
+     */
+    private void logSkipped(String reason) {
+        if (Environment.DEBUG_MODE) {
+            LogManager.logMessage("Instantané du serveur reporté : " + reason + ".");
+        }
+    }
+
+    /**
+     * Arrête les écritures périodiques puis écrit un dernier instantané.
+     * À appeler à l'arrêt du serveur, une fois les sauvegardes terminées.
+     */
+    @Override
+    public void close() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+        if (this.write()) {
+            LogManager.logMessage("Instantané du serveur écrit dans " + this.file);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roue temporelle hiérarchique, qui déclenche des tâches à une date donnée.
+ * <p>
+ * Le temps est découpé en intervalles de durée fixe. Chaque niveau de la roue compte {@link #SLOTS} cases : une case
+ * du premier niveau couvre un intervalle, une case du niveau suivant couvre toutes les cases du niveau précédent, et
+ * ainsi de suite. Une tâche est placée dans la case du plus petit niveau qui contient sa date d'échéance, puis
+ * redescend d'un niveau à chaque fois que le niveau inférieur fait un tour complet, jusqu'à être déclenchée par le
+ * premier niveau. La planification et l'annulation se font en temps constant : une case est une liste doublement
+ * chaînée dont une tâche annulée est retirée immédiatement, sans laisser de trace dans la roue.
+ * </p>
+ * <p>
+ * Les tâches sont déclenchées par un thread dédié, qui doit seulement les confier à d'autres threads. La date
+ * d'échéance est arrondie à l'intervalle suivant : une tâche est déclenchée au plus une durée d'intervalle après son
+ * échéance, sans dérive, car la position de la roue est recalculée à partir de l'horloge à chaque intervalle.
+ * </p>
+ */
+public final class TimingWheel implements AutoCloseable {
+    /**
+     * Nombre de bits de l'indice d'une case dans un niveau.
+     */
+    private static final int SLOT_BITS = 6;
+    /**
+     * Nombre de cases de chaque niveau.
+     */
+    private static final int SLOTS = 1 << SLOT_BITS;
+    /**
+     * Nombre de niveaux de la roue. Avec des intervalles de 100 ms, le dernier niveau couvre plus de trois ans :
+     * une échéance plus lointaine est placée dans le dernier niveau, et replacée lorsqu'elle en redescend.
+     */
+    private static final int LEVELS = 5;
+
+    /**
+     * Durée d'un intervalle, en millisecondes.
+     */
+    private final long tickMillis;
+    /**
+     * Sentinelles des listes de tâches de chaque case, par niveau puis par case.
+     */
+    private final Timeout[][] slots = new Timeout[LEVELS][SLOTS];
+    /**
+     * Thread de déclenchement, qui avance la roue et déclenche les tâches échues.
+     */
+    private final Thread thread;
+
+    /**
+     * Dernier intervalle traité, compté depuis l'époque.
+     */
+    private long currentTick;
+    /**
+     * Nombre de tâches en attente dans la roue.
+     */
+    private int size = 0;
+    /**
+     * Indique que la roue est arrêtée : les tâches planifiées ensuite ne sont pas déclenchées.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructeur de la roue temporelle. Le thread de déclenchement est démarré immédiatement.
+     *
+     * @param name       Le nom du thread de déclenchement.
+     * @param tickMillis La durée d'un intervalle, en millisecondes.
+     */
+    public TimingWheel(String name, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive.");
+        }
+        this.tickMillis = tickMillis;
+        for (Timeout[] level : this.slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                Timeout sentinel = new Timeout(this, 0, null);
+                sentinel.previous = sentinel.next = sentinel;
+                level[i] = sentinel;
+            }
+        }
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Planifie une tâche à une date donnée. Si la date est déjà passée, la tâche est déclenchée au prochain intervalle.
+     *
+     * @param dueAt La date d'échéance de la tâche, en millisecondes depuis l'époque.
+     * @param task  La tâche à déclencher, exécutée par le thread de la roue.
+     * @return La tâche planifiée, qui peut être annulée tant qu'elle n'a pas été déclenchée.
+     */
+    public Timeout schedule(long dueAt, Runnable task) {
+        // Arrondi à l'intervalle suivant, pour ne jamais déclencher une tâche avant son échéance
+        Timeout timeout = new Timeout(this, Math.ceilDiv(dueAt, this.tickMillis), task);
+        synchronized (this) {
+            if (this.closed) {
+                return timeout;
+            }
+            if (this.size == 0) {
+                // La roue était vide : elle est recalée sur l'horloge, et son thread, qui attend sans délai, est réveillé
+                this.currentTick = System.currentTimeMillis() / this.tickMillis;
+                this.notifyAll();
+            }
+            this.insert(timeout);
+            this.size++;
+        }
+        return timeout;
+    }
+
+    /**
+     * Récupère le nombre de tâches en attente dans la roue.
+     *
+     * @return Le nombre de tâches planifiées et pas encore déclenchées ni annulées.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Arrête le thread de déclenchement. Les tâches en attente ne seront pas déclenchées.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Place une tâche dans la case correspondant à son échéance, dans le plus petit niveau qui la contient.
+     * Une tâche déjà échue est placée dans la case du prochain intervalle.
+     *
+     * @param timeout La tâche à placer.
+     */
+    private void insert(Timeout timeout) {
+        long delta = Math.max(1, timeout.deadlineTick - this.currentTick);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long tick = delta == 1 ? this.currentTick + 1 : timeout.deadlineTick;
+        if (delta >= 1L << (SLOT_BITS * LEVELS)) {
+            // Échéance au-delà du dernier niveau : la tâche sera replacée quand elle en redescendra
+            tick = this.currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+        Timeout sentinel = this.slots[level][(int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1))];
+        timeout.previous = sentinel.previous;
+        timeout.next = sentinel;
+        sentinel.previous.next = timeout;
+        sentinel.previous = timeout;
+    }
+
+    /**
+     * Avance la roue d'un intervalle : les cases des niveaux supérieurs qui arrivent à échéance redescendent, puis les
+     * tâches de la case du premier niveau sont retirées.
+     *
+     * @param due La liste à laquelle ajouter les tâches échues.
+     */
+    private void advance(List<Timeout> due) {
+        this.currentTick++;
+        // Les niveaux supérieurs redescendent lorsque le niveau inférieur commence un nouveau tour
+        for (int level = 1; level < LEVELS && (this.currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+            Timeout sentinel = this.slots[level][(int) ((this.currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1))];
+            Timeout timeout = sentinel.next;
+            sentinel.previous = sentinel.next = sentinel;
+            while (timeout != sentinel) {
+                Timeout next = timeout.next;
+                if (timeout.deadlineTick <= this.currentTick) {
+                    this.remove(timeout);
+                    due.add(timeout);
+                } else {
+                    this.insert(timeout);
+                }
+                timeout = next;
+            }
+        }
+        Timeout sentinel = this.slots[0][(int) (this.currentTick & (SLOTS - 1))];
+        Timeout timeout = sentinel.next;
+        sentinel.previous = sentinel.next = sentinel;
+        while (timeout != sentinel) {
+            Timeout next = timeout.next;
+            this.remove(timeout);
+            due.add(timeout);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Marque une tâche comme retirée de la roue.
+     *
+     * @param timeout La tâche retirée de sa case.
+     */
+    private void remove(Timeout timeout) {
+        timeout.previous = timeout.next = null;
+        this.size--;
+    }
+
+    /**
+     * Boucle du thread de déclenchement : attend le prochain intervalle, avance la roue jusqu'à l'heure actuelle et
+     * déclenche les tâches échues, en dehors du verrou de la roue.
+     */
+    private void run() {
+        List<Timeout> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                while (!this.closed) {
+                    long now = System.currentTimeMillis();
+                    long nowTick = now / this.tickMillis;
+                    if (this.size == 0) {
+                        // Rien à déclencher : la roue est recalée sur l'horloge sans parcourir les intervalles
+                        this.currentTick = nowTick;
+                    } else if (this.currentTick < nowTick) {
+                        break;
+                    }
+                    try {
+                        if (this.size == 0) {
+                            this.wait();
+                        } else {
+                            this.wait(Math.max(1, (nowTick + 1) * this.tickMillis - now));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (this.closed) {
+                    return;
+                }
+                long nowTick = System.currentTimeMillis() / this.tickMillis;
+                while (this.currentTick < nowTick) {
+                    this.advance(due);
+                }
+            }
+            for (Timeout timeout : due) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    LogManager.logError("Erreur lors du déclenchement d'une tâche planifiée.", e);
+                }
+            }
+            due.clear();
+        }
+    }
+
+    /**
+     * Tâche planifiée dans la roue.
+     */
+    public static final class Timeout {
+        /**
+         * Roue dans laquelle la tâche est planifiée, dont le verrou protège sa place dans une case.
+         */
+        private final TimingWheel wheel;
+        /**
+         * Intervalle d'échéance de la tâche, compté depuis l'époque.
+         */
+        private final long deadlineTick;
+        /**
+         * Traitement de la tâche, exécuté par le thread de la roue à son échéance.
+         */
+        private final Runnable task;
+        /**
+         * Tâches voisines dans la case de la tâche, ou null si la tâche n'est pas dans la roue.
+         */
+        private Timeout previous, next;
+
+        /**
+         * Constructeur d'une tâche, sans la placer dans la roue.
+         *
+         * @param wheel        La roue de la tâche.
+         * @param deadlineTick L'intervalle d'échéance de la tâche, compté depuis l'époque.
+         * @param task         Le traitement de la tâche.
+         */
+        private Timeout(TimingWheel wheel, long deadlineTick, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        /**
+         * Retire la tâche de la roue si elle n'a pas encore été déclenchée.
+         *
+         * @return true si la tâche a été retirée, false si elle a déjà été déclenchée ou annulée.
+         */
+        public boolean cancel() {
+            synchronized (this.wheel) {
+                if (this.next == null) {
+                    return false;
+                }
+                this.previous.next = this.next;
+                this.next.previous = this.previous;
+                this.wheel.remove(this);
+                return true;
+            }
+        }
+    }
+}
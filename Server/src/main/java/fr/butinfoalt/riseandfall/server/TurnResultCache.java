@@ -0,0 +1,248 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.gamelogic.data.AttackResult;
+import fr.butinfoalt.riseandfall.gamelogic.data.IdRegistry;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache borné des résultats des attaques de chaque partie, utilisé pour renvoyer l'historique des tours aux clients
+ * qui se connectent.
+ * <p>
+ * L'historique d'une partie est alimenté directement par les résultats des tours exécutés. Si une partie n'est pas en
+ * cache, par exemple après un redémarrage du serveur, tout son historique est chargé avec une seule requête, une seule
+ * fois même si plusieurs joueurs de la partie se connectent en même temps. Le nombre total de résultats gardés en
+ * mémoire est borné : les parties les moins récemment consultées sont retirées du cache en premier.
+ * </p>
+ */
+public class TurnResultCache {
+    /**
+     * Historique des attaques d'une partie.
+     */
+    private static final class GameHistory {
+        /**
+         * Résultats des attaques associés au tour durant lequel elles ont été effectuées.
+         * Protégé par le verrou de l'historique.
+         */
+        private final Map<Integer, List<AttackResult>> resultsByTurn = new HashMap<>();
+
+        /**
+         * Indique si l'historique contient tous les tours déjà exécutés de la partie.
+         * Protégé par le verrou de l'historique.
+         */
+        private boolean complete = false;
+
+        /**
+         * Nombre de résultats de l'historique pris en compte dans la taille du cache.
+         * Protégé par le verrou du cache.
+         */
+        private int size = 0;
+    }
+
+    private final RiseAndFallServer server;
+    private final GamePersistence persistence;
+    private final int maxResults;
+
+    /**
+     * Historique des parties, associé à leur identifiant, de la moins récemment consultée à la plus récemment consultée.
+     */
+    private final LinkedHashMap<Integer, GameHistory> histories = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int cachedResults = 0;
+    private long hits = 0;
+    private long loads = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructeur du cache.
+     *
+     * @param server      Instance du serveur, pour accéder au stockage des résultats d'attaques.
+     * @param persistence Le gestionnaire de sauvegarde, dont les écritures en attente doivent être terminées avant un chargement.
+     * @param maxResults  Le nombre maximal de résultats d'attaques gardés en mémoire, toutes parties confondues.
+     */
+    public TurnResultCache(RiseAndFallServer server, GamePersistence persistence, int maxResults) {
+        this.server = server;
+        this.persistence = persistence;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Crée l'historique vide d'une partie qui démarre, pour qu'il n'ait jamais besoin d'être chargé.
+     *
+     * @param game La partie qui démarre.
+     */
+    public void startGame(ServerGame game) {
+        GameHistory history = new GameHistory();
+        history.complete = true;
+        synchronized (this) {
+            this.histories.put(game.getId(), history);
+        }
+    }
+
+    /**
+     * Ajoute les résultats des attaques d'un tour à l'historique de la partie, si celui-ci est en cache.
+     * Sinon, les résultats seront lus dans le stockage lors du prochain chargement de l'historique.
+     *
+     * @param game    La partie dans laquelle les attaques ont été effectuées.
+     * @param turn    Le tour durant lequel les attaques ont été effectuées.
+     * @param results Les résultats des attaques.
+     */
+    public void record(ServerGame game, int turn, List<AttackResult> results) {
+        GameHistory history;
+        synchronized (this) {
+            history = this.histories.get(game.getId());
+        }
+        if (history == null) {
+            return;
+        }
+        synchronized (history) {
+            // Un chargement concurrent peut avoir déjà lu ce tour dans le stockage
+            if (!history.complete || history.resultsByTurn.containsKey(turn)) {
+                return;
+            }
+            history.resultsByTurn.put(turn, List.copyOf(results));
+        }
+        this.account(game.getId(), history, results.size());
+    }
+
+    /**
+     * Récupère les résultats des attaques impliquant un joueur, en chargeant l'historique de sa partie s'il n'est pas en cache.
+     * Les unités perdues par l'attaquant ne sont renvoyées qu'à l'attaquant.
+     * À appeler depuis la file de la partie du joueur, qui est la seule à pouvoir lire la liste de ses joueurs.
+     *
+     * @param player    Le joueur pour lequel on veut récupérer les résultats des attaques.
+     * @param firstTurn Le premier tour dont on veut récupérer les résultats.
+     * @return Une map où la clé est le numéro du tour et la valeur est une liste des résultats d'attaques pour ce tour.
+     */
+    public Map<Integer, List<AttackResult>> getResultsInvolving(ServerPlayer player, int firstTurn) {
+        ServerGame game = player.getGame();
+        IdRegistry<ServerPlayer> playersById = IdRegistry.of(game.getPlayers());
+        GameHistory history;
+        synchronized (this) {
+            history = this.histories.computeIfAbsent(game.getId(), id -> new GameHistory());
+        }
+        synchronized (history) {
+            if (history.complete) {
+                synchronized (this) {
+                    this.hits++;
+                }
+            } else {
+                this.load(game, playersById, history);
+            }
+            return filterInvolving(history.resultsByTurn, player, firstTurn);
+        }
+    }
+
+    /**
+     * Sélectionne les résultats des attaques impliquant un joueur.
+     * Les unités perdues par l'attaquant ne sont renvoyées qu'à l'attaquant.
+     *
+     * @param resultsByTurn Les résultats des attaques d'une partie, associés au tour durant lequel elles ont été effectuées.
+     * @param player        Le joueur pour lequel on veut récupérer les résultats des attaques.
+     * @param firstTurn     Le premier tour dont on veut récupérer les résultats.
+     * @return Une map où la clé est le numéro du tour et la valeur est une liste des résultats d'attaques pour ce tour.
+     */
+    static Map<Integer, List<AttackResult>> filterInvolving(Map<Integer, List<AttackResult>> resultsByTurn, ServerPlayer player, int firstTurn) {
+        Map<Integer, List<AttackResult>> results = new HashMap<>();
+        for (Map.Entry<Integer, List<AttackResult>> entry : resultsByTurn.entrySet()) {
+            if (entry.getKey() < firstTurn) {
+                continue;
+            }
+            for (AttackResult result : entry.getValue()) {
+                if (result.getAttacker().equals(player)) {
+                    results.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(result);
+                } else if (result.getTarget().equals(player)) {
+                    AttackResult filteredResult = result.getLostUnits().isEmpty() ? result : new AttackResult(result.getAttacker(), result.getTarget(), result.getDestroyedBuildings(), result.getDestroyedUnits(), result.getLostUnits().createEmptyClone());
+                    results.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(filteredResult);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Retire l'historique d'une partie du cache, par exemple lorsqu'elle est archivée.
+     *
+     * @param game La partie à retirer.
+     */
+    public synchronized void remove(ServerGame game) {
+        GameHistory history = this.histories.remove(game.getId());
+        if (history != null) {
+            this.cachedResults -= history.size;
+        }
+    }
+
+    /**
+     * Récupère l'état du cache, pour le suivi de son dimensionnement.
+     *
+     * @return La description du nombre de parties et de résultats en cache, de succès, de chargements et de retraits.
+     */
+    public synchronized String getStats() {
+        return "%d parties en cache (%d/%d résultats), %d succès, %d chargements, %d retraits".formatted(
+                this.histories.size(), this.cachedResults, this.maxResults, this.hits, this.loads, this.evictions);
+    }
+
+    /**
+     * Charge l'historique complet d'une partie depuis le stockage.
+     * Doit être appelée avec le verrou de l'historique. En cas d'erreur, l'historique reste incomplet et sera
+     * chargé de nouveau à la prochaine demande.
+     *
+     * @param game        La partie dont on charge l'historique.
+     * @param playersById Les joueurs de la partie, indexés par leur identifiant.
+     * @param history     L'historique à compléter.
+     */
+    private void load(ServerGame game, IdRegistry<ServerPlayer> playersById, GameHistory history) {
+        synchronized (this) {
+            this.loads++;
+        }
+        // Les résultats des derniers tours peuvent être encore en cours d'écriture
+        this.persistence.flush(game);
+        int loaded = 0;
+        try {
+            Map<Integer, List<AttackResult>> results = this.server.getRepository().loadAttackResults(game.getId(), playersById);
+            for (Map.Entry<Integer, List<AttackResult>> entry : results.entrySet()) {
+                history.resultsByTurn.put(entry.getKey(), entry.getValue());
+                loaded += entry.getValue().size();
+            }
+            history.complete = true;
+        } catch (SQLException e) {
+            history.resultsByTurn.clear();
+            LogManager.logError("Erreur lors du chargement des résultats d'attaques de la partie " + game.getName() + ".", e);
+            return;
+        }
+        this.account(game.getId(), history, loaded);
+    }
+
+    /**
+     * Ajoute des résultats à la taille du cache, puis retire les historiques les moins récemment consultés tant que
+     * la taille maximale est dépassée. L'historique qui vient d'être modifié est toujours gardé.
+     *
+     * @param gameId  L'identifiant de la partie de l'historique modifié.
+     * @param history L'historique modifié.
+     * @param added   Le nombre de résultats ajoutés à l'historique.
+     */
+    private synchronized void account(int gameId, GameHistory history, int added) {
+        if (this.histories.get(gameId) != history) {
+            return; // L'historique a été retiré du cache entre-temps
+        }
+        history.size += added;
+        this.cachedResults += added;
+        for (Iterator<Map.Entry<Integer, GameHistory>> iterator = this.histories.entrySet().iterator(); this.cachedResults > this.maxResults && iterator.hasNext(); ) {
+            Map.Entry<Integer, GameHistory> eldest = iterator.next();
+            if (eldest.getValue() == history) {
+                continue;
+            }
+            iterator.remove();
+            this.cachedResults -= eldest.getValue().size;
+            this.evictions++;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package fr.butinfoalt.riseandfall.server;
+
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Planifie les actions différées des parties, comme le démarrage d'une partie ou le passage au tour suivant.
+ * <p>
+ * Une {@link TimingWheel roue temporelle} détecte l'échéance des actions : une action échue est placée dans la {@link GameMailbox file}
+ * de sa partie, avec les paquets de ses joueurs. Les tours de parties différentes qui tombent en même temps sont donc
+ * résolus en parallèle, tandis que les actions d'une même partie s'exécutent une par une, dans l'ordre de leur échéance.
+ * Le nombre d'actions exécutées en même temps est borné, pour que les tours d'un grand nombre de parties ne se
+ * disputent pas les processeurs et les connexions au stockage. Une action échue reçoit une autorisation d'exécution
+ * avant d'être placée dans la file de sa partie, et la rend à la fin de son exécution : une action qui attend une
+ * autorisation n'occupe pas la file, et les paquets des joueurs de la partie continuent d'être traités.
+ * </p>
+ * <p>
+ * Le retard de chaque action par rapport à son échéance est mesuré au moment où elle commence. Il comprend l'arrondi
+ * de l'échéance à l'intervalle de la roue, l'attente d'une autorisation d'exécution et l'attente dans la file de la partie.
+ * </p>
+ */
+public class TurnScheduler implements AutoCloseable {
+    /**
+     * Métriques des actions exécutées depuis le démarrage du serveur.
+     *
+     * @param scheduled          Nombre d'actions planifiées dont l'échéance n'est pas encore atteinte.
+     * @param executed           Nombre d'actions exécutées.
+     * @param failures           Nombre d'actions interrompues par une erreur.
+     * @param pending            Nombre d'actions échues, en attente d'une autorisation ou dans la file de leur partie, ou en cours d'exécution.
+     * @param peakPending        Nombre maximal d'actions échues, en attente ou en cours d'exécution.
+     * @param averageLatenessMs  Retard moyen d'une action par rapport à son échéance, en millisecondes.
+     * @param maxLatenessMs      Retard maximal d'une action par rapport à son échéance, en millisecondes.
+     * @param averageDurationNanos Durée moyenne d'exécution d'une action, en nanosecondes.
+     * @param maxDurationNanos     Durée maximale d'exécution d'une action, en nanosecondes.
+     */
+    public record Metrics(int scheduled, long executed, long failures, int pending, int peakPending, long averageLatenessMs, long maxLatenessMs,
+                          long averageDurationNanos, long maxDurationNanos) {
+        @Override
+        public String toString() {
+            return "%d planifiées, %d actions (%d échecs), %d en attente (pic %d), retard moyen %d ms, max %d ms, durée moyenne %.2f ms, max %.2f ms".formatted(
+                    this.scheduled, this.executed, this.failures, this.pending, this.peakPending, this.averageLatenessMs, this.maxLatenessMs,
+                    this.averageDurationNanos / 1e6, this.maxDurationNanos / 1e6);
+        }
+    }
+
+    /**
+     * Roue temporelle qui détecte l'échéance des actions et les place dans la file de leur partie.
+     */
+    private final TimingWheel wheel;
+
+    /**
+     * Nombre d'autorisations d'exécution disponibles, qui bornent le nombre d'actions placées dans la file de leur
+     * partie ou en cours d'exécution.
+     */
+    private int availablePermits;
+    /**
+     * Actions échues en attente d'une autorisation d'exécution, dans l'ordre de leur échéance.
+     */
+    private final Queue<ScheduledAction> waitingForPermit = new ArrayDeque<>();
+
+    /**
+     * Nombre d'actions échues, en attente d'une autorisation ou dans la file de leur partie, ou en cours d'exécution.
+     * Compté hors du verrou de l'ordonnanceur.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Métriques des actions, protégées par le verrou de l'ordonnanceur
+    /**
+     * Nombre maximal d'actions échues, en attente ou en cours d'exécution, depuis le démarrage.
+     */
+    private int peakPending = 0;
+    /**
+     * Nombre d'actions exécutées sans erreur.
+     */
+    private long executed = 0;
+    /**
+     * Nombre d'actions interrompues par une erreur.
+     */
+    private long failures = 0;
+    /**
+     * Somme des retards des actions terminées par rapport à leur échéance, en millisecondes.
+     */
+    private long totalLatenessMs = 0;
+    /**
+     * Retard maximal d'une action par rapport à son échéance, en millisecondes.
+     */
+    private long maxLatenessMs = 0;
+    /**
+     * Somme des durées d'exécution des actions terminées, en nanosecondes.
+     */
+    private long totalDurationNanos = 0;
+    /**
+     * Durée maximale d'exécution d'une action, en nanosecondes.
+     */
+    private long maxDurationNanos = 0;
+
+    /**
+     * Constructeur du planificateur.
+     *
+     * @param tickMillis           La durée d'un intervalle de la roue temporelle, en millisecondes.
+     * @param maxConcurrentActions Le nombre maximal d'actions exécutées en même temps.
+     */
+    public TurnScheduler(long tickMillis, int maxConcurrentActions) {
+        this.wheel = new TimingWheel("Turn Timer", tickMillis);
+        this.availablePermits = maxConcurrentActions;
+    }
+
+    /**
+     * Planifie une action d'une partie à une date donnée. Si la date est déjà passée, l'action est placée
+     * immédiatement dans la file de la partie.
+     *
+     * @param game   La partie concernée par l'action.
+     * @param dueAt  La date d'échéance de l'action, en millisecondes depuis l'époque.
+     * @param action L'action à exécuter, dans la file de la partie.
+     * @return L'action planifiée, qui peut être annulée tant qu'elle n'a pas commencé.
+     */
+    public ScheduledAction schedule(ServerGame game, long dueAt, Runnable action) {
+        ScheduledAction scheduled = new ScheduledAction(game, dueAt, action);
+        long delay = dueAt - System.currentTimeMillis();
+        if (delay <= 0) {
+            this.dispatch(scheduled);
+        } else {
+            scheduled.timeout = this.wheel.schedule(dueAt, () -> this.dispatch(scheduled));
+        }
+        return scheduled;
+    }
+
+    /**
+     * Récupère les métriques des actions exécutées.
+     *
+     * @return Les métriques actuelles.
+     */
+    public synchronized Metrics getMetrics() {
+        long finished = this.executed + this.failures;
+        return new Metrics(this.wheel.size(), this.executed, this.failures, this.pending.get(), this.peakPending,
+                finished == 0 ? 0 : this.totalLatenessMs / finished, this.maxLatenessMs,
+                finished == 0 ? 0 : this.totalDurationNanos / finished, this.maxDurationNanos);
+    }
+
+    /**
+     * Arrête la roue temporelle : les actions qui ne sont pas encore échues ne seront pas exécutées.
+     * Les actions déjà placées dans la file de leur partie sont terminées par celle-ci.
+     */
+    @Override
+    public void close() {
+        this.wheel.close();
+    }
+
+    /**
+     * Place une action échue dans la file de sa partie si une autorisation d'exécution est disponible,
+     * ou la met en attente d'une autorisation sinon. Ne bloque jamais le thread appelant.
+     *
+     * @param scheduled L'action échue.
+     */
+    private void dispatch(ScheduledAction scheduled) {
+        int size = this.pending.incrementAndGet();
+        boolean granted;
+        synchronized (this) {
+            this.peakPending = Math.max(this.peakPending, size);
+            granted = this.availablePermits > 0;
+            if (granted) {
+                this.availablePermits--;
+            } else {
+                this.waitingForPermit.add(scheduled);
+            }
+        }
+        if (granted) {
+            scheduled.game.getMailbox().execute(() -> this.execute(scheduled));
+        }
+    }
+
+    /**
+     * Rend l'autorisation d'exécution d'une action terminée. L'autorisation est transmise directement à la première
+     * action en attente, qui est placée dans la file de sa partie. Les actions annulées pendant leur attente sont
+     * abandonnées.
+     */
+    private void releasePermit() {
+        ScheduledAction next;
+        synchronized (this) {
+            next = this.waitingForPermit.poll();
+            while (next != null && next.cancelled) {
+                this.pending.decrementAndGet();
+                next = this.waitingForPermit.poll();
+            }
+            if (next == null) {
+                this.availablePermits++;
+            }
+        }
+        if (next != null) {
+            ScheduledAction granted = next;
+            granted.game.getMailbox().execute(() -> this.execute(granted));
+        }
+    }
+
+    /**
+     * Exécute une action échue dans la file de sa partie, sauf si elle a été annulée entre-temps,
+     * puis rend son autorisation d'exécution.
+     *
+     * @param scheduled L'action à exécuter.
+     */
+    private void execute(ScheduledAction scheduled) {
+        if (scheduled.cancelled) {
+            this.pending.decrementAndGet();
+            this.releasePermit();
+            return;
+        }
+        scheduled.started = true;
+        long start = System.nanoTime();
+        long latenessMs = Math.max(0, System.currentTimeMillis() - scheduled.dueAt);
+        boolean failed = false;
+        try {
+            scheduled.action.run();
+        } catch (RuntimeException e) {
+            failed = true;
+            LogManager.logError("Erreur lors de l'exécution d'une action de la partie " + scheduled.game.getName(), e);
+        } finally {
+            this.releasePermit();
+        }
+        long durationNanos = System.nanoTime() - start;
+
+        this.pending.decrementAndGet();
+        synchronized (this) {
+            if (failed) {
+                this.failures++;
+            } else {
+                this.executed++;
+            }
+            this.totalLatenessMs += latenessMs;
+            this.maxLatenessMs = Math.max(this.maxLatenessMs, latenessMs);
+            this.totalDurationNanos += durationNanos;
+            this.maxDurationNanos = Math.max(this.maxDurationNanos, durationNanos);
+        }
+        if (Environment.DEBUG_MODE) {
+            LogManager.logMessage("Action de la partie %s exécutée avec %d ms de retard en %.2f ms.".formatted(
+                    scheduled.game.getName(), latenessMs, durationNanos / 1e6));
+        }
+    }
+
+    /**
+     * Action différée d'une partie.
+     */
+    public final class ScheduledAction {
+        /**
+         * Partie de l'action, dans la file de laquelle l'action est exécutée.
+         */
+        private final ServerGame game;
+        /**
+         * Date d'échéance de l'action, en millisecondes depuis l'époque.
+         */
+        private final long dueAt;
+        /**
+         * Traitement de l'action, exécuté dans la file de la partie.
+         */
+        private final Runnable action;
+        /**
+         * Tâche de la roue temporelle qui place l'action dans la file de sa partie à son échéance,
+         * ou null si l'action était déjà échue lors de sa planification.
+         */
+        private TimingWheel.Timeout timeout;
+        /**
+         * Indique que l'action a été annulée.
+         */
+        private volatile boolean cancelled = false;
+        /**
+         * Indique que l'exécution de l'action a commencé.
+         */
+        private volatile boolean started = false;
+
+        /**
+         * Constructeur d'une action différée, sans la planifier.
+         *
+         * @param game   La partie de l'action.
+         * @param dueAt  La date d'échéance de l'action, en millisecondes depuis l'époque.
+         * @param action Le traitement de l'action.
+         */
+        private ScheduledAction(ServerGame game, long dueAt, Runnable action) {
+            this.game = game;
+            this.dueAt = dueAt;
+            this.action = action;
+        }
+
+        /**
+         * Annule l'action si son exécution n'a pas encore commencé. À appeler depuis la file de la partie, pour que
+         * l'action ne puisse pas commencer pendant l'annulation.
+         *
+         * @return true si l'action a été annulée, false si elle a déjà commencé.
+         */
+        public boolean cancel() {
+            if (this.started) {
+                return false;
+            }
+            this.cancelled = true;
+            if (this.timeout != null) {
+                this.timeout.cancel();
+            }
+            return true;
+        }
+    }
+}
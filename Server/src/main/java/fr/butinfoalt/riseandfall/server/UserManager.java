@@ -5,6 +5,7 @@ import fr.butinfoalt.riseandfall.server.data.User;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class UserManager {
@@ -31,8 +32,8 @@ public class UserManager {
      */
     public UserManager(RiseAndFallServer server, List<User> users, List<ServerPlayer> players) {
         this.server = server;
-        this.users = users.stream().collect(Collectors.toMap(User::getId, user -> user));
-        this.players = players.stream().collect(Collectors.toMap(ServerPlayer::getId, p -> p));
+        this.users = users.stream().collect(Collectors.toMap(User::getId, user -> user, (first, second) -> first, ConcurrentHashMap::new));
+        this.players = players.stream().collect(Collectors.toMap(ServerPlayer::getId, p -> p, (first, second) -> first, ConcurrentHashMap::new));
     }
 
     /**
@@ -4,15 +4,19 @@ import fr.butinfoalt.riseandfall.gamelogic.Game;
 import fr.butinfoalt.riseandfall.gamelogic.GameState;
 import fr.butinfoalt.riseandfall.gamelogic.Player;
 import fr.butinfoalt.riseandfall.server.Environment;
+import fr.butinfoalt.riseandfall.server.GameMailbox;
 import fr.butinfoalt.riseandfall.server.GameManager;
 import fr.butinfoalt.riseandfall.server.RiseAndFallServer;
 import fr.butinfoalt.riseandfall.server.ServerPlayer;
+import fr.butinfoalt.riseandfall.server.TurnScheduler;
 import fr.butinfoalt.riseandfall.server.orders.AttacksExecutionContext;
+import fr.butinfoalt.riseandfall.server.orders.TurnRandom;
 import fr.butinfoalt.riseandfall.util.ToStringFormatter;
 import fr.butinfoalt.riseandfall.util.logging.LogManager;
 
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Représente une partie de jeu.
@@ -24,7 +28,13 @@ import java.util.*;
  * - indication de partie privée
  * - un état (en attente, en cours, terminée)
  * - un tour actuel
+ * - une graine, dont sont dérivés les tirages aléatoires de chaque tour
  * - une liste de joueurs
+ * <p>
+ * La partie n'a pas de verrou : son état, ses joueurs et son action différée appartiennent à sa {@link GameMailbox file},
+ * qui exécute une par une toutes les tâches qui les lisent ou les modifient. Seules les données immuables, l'état et le
+ * tour actuel peuvent être lus depuis un autre thread.
+ * </p>
  */
 public class ServerGame extends Game {
     /**
@@ -44,17 +54,41 @@ public class ServerGame extends Game {
      * Indique si la partie est privée ou publique.
      */
     private final boolean isPrivate;
+    /**
+     * Graine de la partie, enregistrée avec elle, dont sont dérivés les tirages aléatoires de chaque tour.
+     */
+    private final long randomSeed;
 
     /**
      * Map des joueurs dans la partie.
      * Associe l'identifiant de l'utilisateur à l'objet ServerPlayer.
+     * Lue et modifiée uniquement depuis la file de la partie, ou avant sa reprise lors du chargement des données.
      */
     private final Map<Integer, ServerPlayer> players = new HashMap<>();
 
     /**
-     * Tâche de minuterie pour contenir une action différée, comme le démarrage de la partie ou le passage au tour suivant.
+     * File des tâches de la partie, par laquelle passent toutes ses modifications.
+     * Créée à sa première utilisation, une fois la partie construite.
+     */
+    private volatile GameMailbox mailbox;
+
+    /**
+     * Action différée de la partie, comme le démarrage de la partie ou le passage au tour suivant.
+     * Planifiée et annulée uniquement depuis la file de la partie.
+     */
+    public TurnScheduler.ScheduledAction delayedTask;
+
+    /**
+     * Futur complété lorsque les écritures demandées jusqu'à la fin du dernier tour sont terminées.
+     * Lu et modifié uniquement depuis la file de la partie.
      */
-    public TimerTask delayedTask;
+    private CompletableFuture<Boolean> lastTurnWrites = CompletableFuture.completedFuture(true);
+
+    /**
+     * Indique qu'un passage au tour suivant attend la fin des écritures du dernier tour.
+     * Lu et modifié uniquement depuis la file de la partie.
+     */
+    private boolean waitingForTurnWrites = false;
 
     /**
      * Constructeur de la classe Game.
@@ -68,13 +102,15 @@ public class ServerGame extends Game {
      * @param isPrivate    Indique si la partie est privée ou publique.
      * @param state        État de la partie (en attente, en cours, terminée).
      * @param currentTurn  Tour actuel de la partie.
+     * @param randomSeed   Graine de la partie, dont sont dérivés les tirages aléatoires de chaque tour.
      */
-    public ServerGame(RiseAndFallServer server, int id, String name, int turnInterval, int minPlayers, int maxPlayers, boolean isPrivate, GameState state, Timestamp nextActionAt, int currentTurn) {
+    public ServerGame(RiseAndFallServer server, int id, String name, int turnInterval, int minPlayers, int maxPlayers, boolean isPrivate, GameState state, Timestamp nextActionAt, int currentTurn, long randomSeed) {
         super(id, name, turnInterval, state, nextActionAt, currentTurn);
         this.server = server;
         this.minPlayers = minPlayers;
         this.maxPlayers = maxPlayers;
         this.isPrivate = isPrivate;
+        this.randomSeed = randomSeed;
     }
 
     /**
@@ -82,7 +118,7 @@ public class ServerGame extends Game {
      *
      * @return Le nombre minimum de joueurs pour commencer la partie.
      */
-    public synchronized int getMinPlayers() {
+    public int getMinPlayers() {
         return this.minPlayers;
     }
 
@@ -91,26 +127,56 @@ public class ServerGame extends Game {
      *
      * @return Le nombre maximum de joueurs dans la partie.
      */
-    public synchronized int getMaxPlayers() {
+    public int getMaxPlayers() {
         return this.maxPlayers;
     }
 
+    /**
+     * Méthode pour obtenir la graine de la partie.
+     *
+     * @return La graine dont sont dérivés les tirages aléatoires de chaque tour.
+     */
+    public long getRandomSeed() {
+        return this.randomSeed;
+    }
+
+    /**
+     * Méthode pour obtenir la file des tâches de la partie.
+     * Les modifications de la partie et de ses joueurs doivent être exécutées par cette file.
+     *
+     * @return La file des tâches de la partie.
+     */
+    public GameMailbox getMailbox() {
+        GameMailbox mailbox = this.mailbox;
+        if (mailbox == null) {
+            synchronized (this) {
+                mailbox = this.mailbox;
+                if (mailbox == null) {
+                    mailbox = new GameMailbox(this);
+                    this.mailbox = mailbox;
+                }
+            }
+        }
+        return mailbox;
+    }
+
     /**
      * Méthode pour savoir si la partie est privée ou publique.
      *
      * @return true si la partie est privée, false sinon.
      */
-    public synchronized boolean isPrivate() {
+    public boolean isPrivate() {
         return this.isPrivate;
     }
 
     /**
      * Méthode pour démarrer la partie.
      * La partie ne peut être démarrée que si elle est en attente et qu'il y a suffisamment de joueurs.
+     * À appeler depuis la file de la partie.
      *
      * @throws IllegalStateException Si la partie n'est pas en attente ou s'il n'y a pas assez de joueurs.
      */
-    public synchronized void start() throws IllegalStateException {
+    public void start() throws IllegalStateException {
         if (this.state != GameState.WAITING) {
             throw new IllegalStateException("Cannot start a game that is not in waiting state.");
         }
@@ -127,7 +193,7 @@ public class ServerGame extends Game {
         GameManager gameManager = this.server.getGameManager();
         gameManager.handleGameUpdate(this);
         gameManager.handleGameStart(this);
-        gameManager.newRandomGame();
+        gameManager.requestNewRandomGame();
     }
 
     /**
@@ -136,7 +202,7 @@ public class ServerGame extends Game {
      *
      * @throws IllegalStateException Si la partie n'est pas en cours.
      */
-    public synchronized void end() throws IllegalStateException {
+    public void end() throws IllegalStateException {
         if (this.state != GameState.RUNNING) {
             throw new IllegalStateException("Cannot end a game that is not running.");
         }
@@ -147,29 +213,23 @@ public class ServerGame extends Game {
 
     /**
      * Méthode pour planifier une action différée, comme le démarrage de la partie ou le passage au tour suivant.
-     * Annule l'action précédente si elle existe et planifie la nouvelle action avec un délai calculé.
+     * Annule l'action précédente si elle existe et planifie la nouvelle action à la date de la prochaine action.
+     * L'action est placée par le {@link TurnScheduler} dans la file de la partie à cette date, ou immédiatement si
+     * elle est déjà passée.
      *
      * @param logMessage Le message de log à afficher lors de la planification de l'action.
      * @param action     L'action à exécuter après le délai.
      */
-    private synchronized void scheduleNextAction(String logMessage, Runnable action) {
+    private void scheduleNextAction(String logMessage, Runnable action) {
         if (this.delayedTask != null) {
             this.delayedTask.cancel();
         }
         long delay = this.nextActionAt.getTime() - System.currentTimeMillis();
         LogManager.logMessage(logMessage.formatted(this.name, delay / 1000));
-        if (delay <= 0) {
+        this.delayedTask = this.server.getTurnScheduler().schedule(this, this.nextActionAt.getTime(), () -> {
             this.delayedTask = null;
             action.run();
-        } else {
-            this.server.getTimer().schedule(this.delayedTask = new TimerTask() {
-                @Override
-                public void run() {
-                    ServerGame.this.delayedTask = null;
-                    action.run();
-                }
-            }, delay);
-        }
+        });
     }
 
     /**
@@ -191,15 +251,36 @@ public class ServerGame extends Game {
     /**
      * Méthode pour passer au tour suivant. La partie ne peut passer au tour suivant que si elle est en cours.
      * On commence par exécuter les attaques des joueurs, puis on exécute le reste des ordres de chaque joueur.
+     * Les tirages des attaques sont dérivés de la graine de la partie et du numéro du tour : un tour rejoué à partir
+     * des mêmes données donne le même résultat.
      * Enfin, on incrémente le tour actuel et on planifie le prochain tour.
+     * À appeler depuis la file de la partie.
+     * <p>
+     * La fin d'un tour est un point de synchronisation : le tour suivant n'est exécuté qu'une fois les écritures du tour
+     * terminées, pour que le stockage n'ait jamais plus d'un tour de retard. Si elles ne le sont pas encore, le tour est
+     * reporté sans bloquer la file, puis replacé dans la file lorsqu'elles se terminent.
+     * </p>
      *
      * @throws IllegalStateException Si la partie n'est pas en cours.
      */
-    public synchronized void nextTurn() throws IllegalStateException {
+    public void nextTurn() throws IllegalStateException {
         if (this.state != GameState.RUNNING) {
             throw new IllegalStateException("Cannot proceed to the next turn when the game is not running.");
         }
-        AttacksExecutionContext context = new AttacksExecutionContext(this);
+        if (!this.lastTurnWrites.isDone()) {
+            if (!this.waitingForTurnWrites) {
+                this.waitingForTurnWrites = true;
+                LogManager.logMessage("Le tour de la partie %s attend la fin des écritures du tour précédent.".formatted(this.name));
+                this.lastTurnWrites.whenComplete((flushed, error) -> this.getMailbox().execute(() -> {
+                    this.waitingForTurnWrites = false;
+                    if (this.state == GameState.RUNNING) {
+                        this.nextTurn();
+                    }
+                }));
+            }
+            return;
+        }
+        AttacksExecutionContext context = new AttacksExecutionContext(this, TurnRandom.turnSeed(this.randomSeed, this.currentTurn));
         List<ServerPlayer> remainingPlayers = this.players.values().stream().filter(player -> !player.isEliminated()).toList();
         List<Player> eliminatedPlayers = new ArrayList<>();
 
@@ -231,14 +312,16 @@ public class ServerGame extends Game {
         }
 
         gameManager.handleGameUpdate(this);
+        this.lastTurnWrites = gameManager.flushAsync(this);
     }
 
     /**
      * Méthode pour obtenir la liste des joueurs dans la partie.
+     * À appeler depuis la file de la partie : la liste n'est pas protégée contre les modifications concurrentes.
      *
      * @return La liste des joueurs dans la partie.
      */
-    public synchronized Collection<ServerPlayer> getPlayers() {
+    public Collection<ServerPlayer> getPlayers() {
         return Collections.unmodifiableCollection(this.players.values());
     }
 
@@ -248,18 +331,19 @@ public class ServerGame extends Game {
      * @param user L'utilisateur dont on veut obtenir le joueur.
      * @return Le joueur correspondant à l'utilisateur, ou null si l'utilisateur ne joue pas dans cette partie.
      */
-    public synchronized ServerPlayer getPlayerFor(User user) {
+    public ServerPlayer getPlayerFor(User user) {
         return this.players.get(user.getId());
     }
 
     /**
      * Méthode pour ajouter un joueur à la partie.
      * Un joueur ne peut être ajouté que si la partie est en attente et qu'il y a de la place.
+     * À appeler depuis la file de la partie.
      *
      * @param player Le joueur à ajouter.
      * @throws IllegalStateException Si la partie n'est pas en attente ou si elle est pleine.
      */
-    public synchronized void addPlayer(ServerPlayer player) {
+    public void addPlayer(ServerPlayer player) {
         if (this.state != GameState.WAITING) {
             throw new IllegalStateException("Cannot add player to a game that has already started.");
         }
@@ -285,18 +369,19 @@ public class ServerGame extends Game {
      *
      * @param player Le joueur à ajouter.
      */
-    public synchronized void forceAddPlayer(ServerPlayer player) {
+    public void forceAddPlayer(ServerPlayer player) {
         this.players.put(player.getUser().getId(), player);
     }
 
     /**
      * Méthode pour retirer un joueur de la partie.
      * Un joueur ne peut être retiré que si la partie est en attente.
+     * À appeler depuis la file de la partie.
      *
      * @param user L'utilisateur dont on veut retirer le joueur.
      * @return Le joueur retiré, ou null si l'utilisateur ne joue pas dans cette partie.
      */
-    public synchronized ServerPlayer removePlayer(User user) {
+    public ServerPlayer removePlayer(User user) {
         if (this.state != GameState.WAITING) {
             throw new IllegalStateException("Cannot remove player from a game that has already started.");
         }
@@ -318,11 +403,11 @@ public class ServerGame extends Game {
      *
      * @return true si la partie a suffisamment de joueurs, false sinon.
      */
-    public synchronized boolean hasSufficientPlayers() {
+    public boolean hasSufficientPlayers() {
         return this.players.size() >= this.minPlayers;
     }
 
-    public synchronized boolean canGameEnd() {
+    public boolean canGameEnd() {
         int alivePlayers = 0;
         for (ServerPlayer player : this.players.values()) {
             if (!player.isEliminated()) {
@@ -334,11 +419,12 @@ public class ServerGame extends Game {
     }
 
     @Override
-    public synchronized ToStringFormatter toStringFormatter() {
+    public ToStringFormatter toStringFormatter() {
         return super.toStringFormatter()
                 .add("minPlayers", this.minPlayers)
                 .add("maxPlayers", this.maxPlayers)
                 .add("isPrivate", this.isPrivate)
+                .add("randomSeed", this.randomSeed)
                 .add("playersCount", this.players.size());
     }
 }
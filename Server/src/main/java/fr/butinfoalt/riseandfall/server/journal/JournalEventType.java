@@ -0,0 +1,80 @@
+package fr.butinfoalt.riseandfall.server.journal;
+
+/**
+ * Types des événements enregistrés dans le journal des tours.
+ * Chaque événement porte l'identifiant de sa partie et une clé dont le sens dépend du type.
+ */
+public enum JournalEventType {
+    /**
+     * État d'une partie : état, date de la prochaine action et tour actuel. Pas de clé.
+     */
+    GAME_STATE(1),
+    /**
+     * Données modifiables complètes d'un joueur, ordres compris. La clé est l'identifiant du joueur.
+     */
+    PLAYER_STATE(2),
+    /**
+     * Résultats des attaques d'un tour. La clé est le numéro du tour.
+     */
+    TURN_RESULTS(3),
+    /**
+     * Arrivée d'un joueur dans une partie. La clé est l'identifiant du joueur.
+     */
+    PLAYER_JOINED(4),
+    /**
+     * Départ d'un joueur d'une partie en attente. La clé est l'identifiant du joueur.
+     */
+    PLAYER_REMOVED(5),
+    /**
+     * Archivage d'une partie terminée. Pas de clé.
+     */
+    GAME_ARCHIVED(6),
+    /**
+     * Message de chat entre deux joueurs. La clé est l'identifiant du joueur qui envoie le message.
+     */
+    CHAT_MESSAGE(7),
+    /**
+     * Champs modifiés des données d'un joueur depuis son événement précédent, à appliquer à la suite de ses dernières
+     * données complètes. La clé est l'identifiant du joueur.
+     */
+    PLAYER_STATE_CHANGES(8);
+
+    /**
+     * Types associés à leur identifiant.
+     */
+    private static final JournalEventType[] BY_ID = new JournalEventType[9];
+
+    static {
+        for (JournalEventType type : values()) {
+            BY_ID[type.id] = type;
+        }
+    }
+
+    /**
+     * Identifiant du type, écrit dans le journal. Il ne doit jamais changer.
+     */
+    private final byte id;
+
+    JournalEventType(int id) {
+        this.id = (byte) id;
+    }
+
+    /**
+     * Récupère l'identifiant du type, écrit dans le journal.
+     *
+     * @return L'identifiant du type.
+     */
+    public byte getId() {
+        return this.id;
+    }
+
+    /**
+     * Récupère un type à partir de son identifiant.
+     *
+     * @param id L'identifiant lu dans le journal.
+     * @return Le type, ou null si l'identifiant est inconnu.
+     */
+    public static JournalEventType fromId(byte id) {
+        return id > 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+}
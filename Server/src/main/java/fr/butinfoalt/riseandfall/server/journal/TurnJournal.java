@@ -0,0 +1,874 @@
+package fr.butinfoalt.riseandfall.server.journal;
+
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
+import fr.butinfoalt.riseandfall.gamelogic.data.AttackResult;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+import fr.butinfoalt.riseandfall.server.ServerPlayer;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.repository.StoredChatMessage;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal des tours : chaque modification de l'état des parties y est ajoutée sous forme d'événement binaire compact,
+ * avant d'être écrite en arrière-plan dans le stockage.
+ * <p>
+ * Le journal est découpé en segments de taille fixe, projetés en mémoire : un ajout n'est qu'une copie d'octets à la
+ * suite du segment courant, sans appel système. Les octets projetés survivent à un arrêt brutal du serveur ; ils sont
+ * forcés sur le disque périodiquement et à chaque changement de segment, pour survivre aussi à un arrêt du système.
+ * Chaque événement est précédé de sa taille, d'une somme de contrôle et de son numéro, qui se suivent : la relecture
+ * s'arrête au premier événement incomplet. Les données d'un événement sont sérialisées hors du verrou du journal, qui
+ * n'est gardé que pour attribuer le numéro et copier les octets : les parties n'attendent pas la sérialisation des
+ * événements des autres parties.
+ * </p>
+ * <p>
+ * Les données d'un joueur ne sont ajoutées en entier que de temps en temps : les autres événements du joueur ne
+ * contiennent que les champs modifiés depuis son événement précédent.
+ * </p>
+ * <p>
+ * Le journal garde en mémoire l'état courant qu'il décrit : le dernier état de chaque partie et de chaque joueur, et
+ * les écritures dans le stockage qui ne sont pas encore validées. Un instantané de cet état est écrit périodiquement ;
+ * les segments qu'il couvre sont alors supprimés, ce qui borne le temps de relecture au démarrage.
+ * </p>
+ * <p>
+ * Au démarrage, l'instantané puis les événements qui le suivent sont relus par {@link #replay(RecordHandler)}, pour
+ * rattraper les écritures que le stockage n'avait pas encore reçues lors de l'arrêt. Le journal peut aussi être relu
+ * pour déboguer le déroulement d'une partie. Sans répertoire configuré, le journal est désactivé et les ajouts ne font rien.
+ * </p>
+ */
+public class TurnJournal implements AutoCloseable {
+    /**
+     * Interface pour le traitement des événements relus.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * Traite un événement relu.
+         *
+         * @param type   Le type de l'événement.
+         * @param gameId L'identifiant de la partie de l'événement.
+         * @param key    La clé de l'événement, dont le sens dépend du type.
+         * @param data   L'outil de lecture des données de l'événement.
+         * @throws IOException Si les données de l'événement ne peuvent pas être lues.
+         */
+        void handle(JournalEventType type, int gameId, int key, ReadHelper data) throws IOException;
+    }
+
+    /**
+     * Interface pour l'écriture des données propres à un type d'événement.
+     */
+    @FunctionalInterface
+    private interface Body {
+        /**
+         * Écrit les données propres au type d'événement, à la suite du début commun à tous les événements.
+         *
+         * @param writeHelper L'outil d'écriture des données de l'événement.
+         * @throws IOException Si les données ne peuvent pas être sérialisées.
+         */
+        void write(WriteHelper writeHelper) throws IOException;
+    }
+
+    /**
+     * Taille de l'en-tête d'un événement : taille des données, somme de contrôle et numéro.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+
+    /**
+     * Taille du début des données de chaque événement : type, identifiant de la partie et clé.
+     */
+    private static final int PREFIX_SIZE = 1 + Integer.BYTES * 2;
+
+    /**
+     * Nombre écrit au début de l'instantané, pour reconnaître un instantané du journal ("RFJS").
+     */
+    private static final int SNAPSHOT_MAGIC = 0x52464a53;
+    /**
+     * Version du format de l'instantané, à incrémenter à chaque modification de son contenu.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+    /**
+     * Nom du fichier de l'instantané, dans le répertoire du journal.
+     */
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    /**
+     * Extension des fichiers des segments, nommés d'après le numéro de leur premier événement.
+     */
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * Nombre maximal d'événements de modifications d'un joueur à la suite de ses dernières données complètes.
+     * Au-delà, les données complètes du joueur sont de nouveau ajoutées, ce qui borne l'état courant et sa relecture.
+     */
+    private static final int MAX_PLAYER_CHANGES = 16;
+
+    /**
+     * Événement du journal.
+     *
+     * @param sequence Le numéro de l'événement.
+     * @param type     Le type de l'événement.
+     * @param gameId   L'identifiant de la partie de l'événement.
+     * @param key      La clé de l'événement.
+     * @param payload  Les données de l'événement, début compris, ou null si elles ne sont pas gardées en mémoire.
+     */
+    private record Record(long sequence, JournalEventType type, int gameId, int key, byte[] payload) {
+    }
+
+    /**
+     * Dernières données ajoutées au journal pour un joueur, référence de son prochain événement de modifications.
+     *
+     * @param data       Les données copiées du joueur.
+     * @param exitedGame Indique si le joueur avait quitté la partie.
+     * @param changes    Le nombre d'événements de modifications ajoutés depuis les dernières données complètes du joueur.
+     */
+    private record JournaledPlayer(PlayerDataSnapshot data, boolean exitedGame, int changes) {
+    }
+
+    /**
+     * Segment du journal, nommé d'après le numéro de son premier événement.
+     */
+    private static final class Segment {
+        /**
+         * Numéro du premier événement du segment.
+         */
+        private final long firstSequence;
+        /**
+         * Chemin du fichier du segment.
+         */
+        private final Path path;
+        /**
+         * Fichier du segment ouvert en lecture et écriture, ou null s'il est fermé.
+         */
+        private FileChannel channel;
+        /**
+         * Projection du fichier du segment, ou null si elle n'a pas été créée.
+         */
+        private MappedByteBuffer buffer;
+
+        /**
+         * Constructeur d'un segment, sans ouvrir son fichier.
+         *
+         * @param firstSequence Le numéro du premier événement du segment.
+         * @param path          Le chemin du fichier du segment.
+         */
+        private Segment(long firstSequence, Path path) {
+            this.firstSequence = firstSequence;
+            this.path = path;
+        }
+
+        /**
+         * Projette le segment en mémoire en lecture et écriture, en agrandissant le fichier si nécessaire.
+         *
+         * @param size La taille projetée.
+         * @throws IOException Si le fichier ne peut pas être ouvert ou projeté.
+         */
+        private void map(long size) throws IOException {
+            this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        /**
+         * Ferme le fichier du segment. La projection reste valide jusqu'à ce qu'elle ne soit plus référencée.
+         *
+         * @throws IOException Si le fichier ne peut pas être fermé.
+         */
+        private void close() throws IOException {
+            if (this.channel != null) {
+                this.channel.close();
+                this.channel = null;
+            }
+        }
+    }
+
+    /**
+     * Tampon des données d'un événement, dont le tableau est lu sans copie.
+     */
+    private static final class PayloadBuffer extends ByteArrayOutputStream {
+        /**
+         * Récupère le tableau interne du tampon, dont seuls les {@link #size()} premiers octets sont écrits.
+         *
+         * @return Le tableau interne du tampon.
+         */
+        private byte[] array() {
+            return this.buf;
+        }
+    }
+
+    /**
+     * Répertoire du journal, ou null si le journal est désactivé.
+     */
+    private final Path directory;
+
+    /**
+     * Taille d'un segment, en octets.
+     */
+    private final int segmentSize;
+
+    /**
+     * Segments du journal, du plus ancien au plus récent. Le dernier est le segment courant.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Thread des instantanés et des écritures forcées sur le disque, ou null s'il n'y en a pas.
+     */
+    private final ScheduledExecutorService maintenance;
+
+    /**
+     * Verrou des écritures de l'instantané.
+     */
+    private final Object snapshotLock = new Object();
+
+    /**
+     * Dernier état de chaque partie, associé à son identifiant.
+     */
+    private final Map<Integer, Record> gameStates = new HashMap<>();
+
+    /**
+     * Dernières données complètes de chaque joueur, suivies des modifications ajoutées depuis, associées à son identifiant.
+     */
+    private final Map<Integer, List<Record>> playerStates = new HashMap<>();
+
+    /**
+     * Dernières données ajoutées pour chaque joueur depuis l'ouverture du journal, associées à son identifiant.
+     * Les données d'un joueur ne sont ajoutées que par la file de sa partie, qui lit et remplace donc seule son entrée.
+     */
+    private final Map<Integer, JournaledPlayer> journaledPlayers = new ConcurrentHashMap<>();
+
+    /**
+     * Événements dont l'écriture dans le stockage n'est pas encore validée, associés à leur numéro.
+     */
+    private final TreeMap<Long, Record> pendingWrites = new TreeMap<>();
+
+    /**
+     * Événements relus à l'ouverture du journal, en attente de {@link #replay(RecordHandler)}.
+     */
+    private List<Record> recovered = new ArrayList<>();
+
+    /**
+     * Position d'écriture dans le segment courant.
+     */
+    private int writePosition = 0;
+
+    /**
+     * Numéro du dernier événement ajouté.
+     */
+    private long lastSequence = 0;
+
+    /**
+     * Numéro du dernier événement couvert par l'instantané.
+     */
+    private long snapshotSequence = 0;
+
+    /**
+     * Indique que le journal est fermé : les ajouts suivants ne font rien.
+     */
+    private boolean closed = false;
+
+    // Métriques du journal, protégées par son verrou
+    /**
+     * Nombre d'événements ajoutés depuis l'ouverture du journal.
+     */
+    private long appendedRecords = 0;
+    /**
+     * Nombre d'octets ajoutés aux segments depuis l'ouverture du journal, en-têtes compris.
+     */
+    private long appendedBytes = 0;
+    /**
+     * Nombre d'instantanés écrits depuis l'ouverture du journal.
+     */
+    private long snapshots = 0;
+
+    /**
+     * Constructeur du journal. Ouvre les segments existants et relit l'instantané et les événements qui le suivent,
+     * qui seront traités par {@link #replay(RecordHandler)}.
+     *
+     * @param directory              Le répertoire du journal, ou null pour désactiver le journal.
+     * @param segmentSize            La taille d'un segment, en octets.
+     * @param snapshotIntervalMillis L'intervalle entre deux instantanés, en millisecondes, ou 0 pour n'en écrire qu'à la fermeture.
+     * @param forceIntervalMillis    L'intervalle entre deux écritures forcées du segment courant sur le disque, en
+     *                               millisecondes, ou 0 pour ne les forcer qu'aux changements de segment.
+     */
+    public TurnJournal(String directory, int segmentSize, long snapshotIntervalMillis, long forceIntervalMillis) {
+        this.directory = directory == null || directory.isBlank() ? null : Path.of(directory);
+        this.segmentSize = segmentSize;
+        if (this.directory == null) {
+            this.maintenance = null;
+            return;
+        }
+        try {
+            Files.createDirectories(this.directory);
+            this.readSnapshot();
+            this.openSegments();
+        } catch (IOException e) {
+            throw new RuntimeException("Erreur lors de l'ouverture du journal des tours " + this.directory, e);
+        }
+        LogManager.logMessage("Journal des tours ouvert dans %s : %d événements à relire depuis le numéro %d.".formatted(
+                this.directory, this.recovered.size(), this.snapshotSequence));
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Turn Journal Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotIntervalMillis > 0) {
+            this.maintenance.scheduleWithFixedDelay(this::writeSnapshot, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (forceIntervalMillis > 0) {
+            this.maintenance.scheduleWithFixedDelay(this::force, forceIntervalMillis, forceIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Indique si le journal est activé.
+     *
+     * @return true si les événements sont enregistrés.
+     */
+    public boolean isEnabled() {
+        return this.directory != null;
+    }
+
+    /**
+     * Ajoute l'état d'une partie : état, date de la prochaine action et tour actuel.
+     *
+     * @param game La partie.
+     */
+    public void appendGameState(ServerGame game) {
+        this.append(JournalEventType.GAME_STATE, game.getId(), 0, game::serializeModifiableData);
+    }
+
+    /**
+     * Ajoute les données modifiables d'un joueur, ordres compris. Seuls les champs modifiés depuis les dernières
+     * données ajoutées pour le joueur sont écrits, et rien n'est ajouté si aucun n'a changé. Les données complètes
+     * sont écrites pour le premier ajout depuis l'ouverture du journal, puis après {@link #MAX_PLAYER_CHANGES}
+     * événements de modifications. À appeler depuis la file de la partie du joueur.
+     *
+     * @param player     Le joueur.
+     * @param data       Les données copiées du joueur.
+     * @param exitedGame Indique si le joueur a quitté la partie.
+     */
+    public void appendPlayerState(ServerPlayer player, PlayerDataSnapshot data, boolean exitedGame) {
+        if (this.directory == null) {
+            return;
+        }
+        JournaledPlayer previous = this.journaledPlayers.get(player.getId());
+        long sequence;
+        int changes;
+        if (previous == null || previous.changes() >= MAX_PLAYER_CHANGES) {
+            sequence = this.append(JournalEventType.PLAYER_STATE, player.getGame().getId(), player.getId(), writeHelper -> {
+                writeHelper.writeBoolean(exitedGame);
+                data.serializeChanges(null, PlayerDataSnapshot.ALL_FIELDS, writeHelper);
+            });
+            changes = 0;
+        } else {
+            int changedFields = data.getChangedFields(previous.data());
+            if (changedFields == 0 && exitedGame == previous.exitedGame()) {
+                return;
+            }
+            sequence = this.append(JournalEventType.PLAYER_STATE_CHANGES, player.getGame().getId(), player.getId(), writeHelper -> {
+                writeHelper.writeBoolean(exitedGame);
+                writeHelper.writeByte((byte) changedFields);
+                data.serializeChanges(previous.data(), changedFields, writeHelper);
+            });
+            changes = previous.changes() + 1;
+        }
+        if (sequence != -1) {
+            this.journaledPlayers.put(player.getId(), new JournaledPlayer(data, exitedGame, changes));
+        }
+    }
+
+    /**
+     * Ajoute les résultats des attaques d'un tour. L'événement est gardé dans l'état courant du journal jusqu'à ce que
+     * son écriture dans le stockage soit validée avec {@link #committed(long)}.
+     *
+     * @param game    La partie dans laquelle les attaques ont été effectuées.
+     * @param turn    Le tour durant lequel les attaques ont été effectuées.
+     * @param results Les résultats des attaques.
+     * @return Le numéro de l'événement, ou -1 s'il n'a pas été enregistré.
+     */
+    public long appendTurnResults(ServerGame game, int turn, List<AttackResult> results) {
+        return this.append(JournalEventType.TURN_RESULTS, game.getId(), turn, writeHelper -> writeHelper.writeSerializableList(results));
+    }
+
+    /**
+     * Ajoute l'arrivée d'un joueur dans une partie.
+     *
+     * @param player Le joueur.
+     */
+    public void appendPlayerJoined(ServerPlayer player) {
+        this.append(JournalEventType.PLAYER_JOINED, player.getGame().getId(), player.getId(), writeHelper -> {
+            writeHelper.writeInt(player.getUser().getId());
+            writeHelper.writeInt(player.getRace().getId());
+        });
+    }
+
+    /**
+     * Ajoute le départ d'un joueur d'une partie en attente. L'événement est gardé dans l'état courant du journal jusqu'à
+     * ce que la suppression du joueur dans le stockage soit validée avec {@link #committed(long)}.
+     *
+     * @param player Le joueur.
+     * @return Le numéro de l'événement, ou -1 s'il n'a pas été enregistré.
+     */
+    public long appendPlayerRemoved(ServerPlayer player) {
+        return this.append(JournalEventType.PLAYER_REMOVED, player.getGame().getId(), player.getId(), writeHelper -> {
+        });
+    }
+
+    /**
+     * Ajoute l'archivage d'une partie. L'événement est gardé dans l'état courant du journal jusqu'à ce que son écriture
+     * dans le stockage soit validée avec {@link #committed(long)}.
+     *
+     * @param game La partie archivée.
+     * @return Le numéro de l'événement, ou -1 s'il n'a pas été enregistré.
+     */
+    public long appendGameArchived(ServerGame game) {
+        return this.append(JournalEventType.GAME_ARCHIVED, game.getId(), 0, writeHelper -> {
+        });
+    }
+
+    /**
+     * Ajoute un message de chat enregistré.
+     *
+     * @param game    La partie des deux joueurs.
+     * @param message Le message enregistré.
+     */
+    public void appendChatMessage(ServerGame game, StoredChatMessage message) {
+        this.append(JournalEventType.CHAT_MESSAGE, game.getId(), message.senderId(), writeHelper -> {
+            writeHelper.writeLong(message.id());
+            writeHelper.writeInt(message.receiverId());
+            writeHelper.writeString(message.message());
+            writeHelper.writeLong(message.timestamp());
+        });
+    }
+
+    /**
+     * Indique que l'écriture d'un événement dans le stockage a été validée : il n'a plus besoin d'être gardé.
+     *
+     * @param sequence Le numéro de l'événement, ou -1 s'il n'avait pas été enregistré.
+     */
+    public synchronized void committed(long sequence) {
+        if (sequence >= 0) {
+            this.pendingWrites.remove(sequence);
+        }
+    }
+
+    /**
+     * Relit les événements de l'instantané puis ceux qui le suivent, dans l'ordre où ils ont été ajoutés.
+     * À appeler une seule fois, au démarrage du serveur. Les écritures qui n'étaient pas validées lors de l'arrêt sont
+     * retirées de l'état courant du journal : le traitement doit les redemander si le stockage ne les a pas reçues.
+     * Un événement dont le traitement échoue est ignoré.
+     *
+     * @param handler Le traitement des événements.
+     */
+    public void replay(RecordHandler handler) {
+        List<Record> records;
+        synchronized (this) {
+            records = this.recovered;
+            this.recovered = new ArrayList<>();
+            this.pendingWrites.clear();
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        ReadHelper readHelper = new ReadHelper();
+        readHelper.setWireFormat(WireFormat.V2);
+        int failures = 0;
+        for (Record record : records) {
+            readHelper.reset(record.payload(), PREFIX_SIZE, record.payload().length - PREFIX_SIZE);
+            try {
+                handler.handle(record.type(), record.gameId(), record.key(), readHelper);
+            } catch (IOException | RuntimeException e) {
+                failures++;
+                LogManager.logError("Erreur lors de la relecture de l'événement %d (%s) du journal des tours.".formatted(record.sequence(), record.type()), e);
+            }
+        }
+        LogManager.logMessage("Journal des tours relu : %d événements, %d ignorés.".formatted(records.size(), failures));
+    }
+
+    /**
+     * Récupère l'état du journal, pour le suivi de sa taille.
+     *
+     * @return La description du nombre d'événements ajoutés, des segments et de l'état courant.
+     */
+    public synchronized String getStats() {
+        return "%d événements ajoutés (%.1f Kio), dernier numéro %d, instantané au numéro %d (%d écrits), %d segments, %d parties, %d joueurs et %d écritures en attente dans l'état courant".formatted(
+                this.appendedRecords, this.appendedBytes / 1024.0, this.lastSequence, this.snapshotSequence, this.snapshots,
+                this.segments.size(), this.gameStates.size(), this.playerStates.size(), this.pendingWrites.size());
+    }
+
+    /**
+     * Arrête les tâches périodiques, écrit un dernier instantané puis force le segment courant sur le disque.
+     */
+    @Override
+    public void close() {
+        if (this.directory == null) {
+            return;
+        }
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        this.maintenance.shutdown();
+        this.writeSnapshot();
+        synchronized (this) {
+            Segment current = this.segments.getLast();
+            current.buffer.force();
+            try {
+                current.close();
+            } catch (IOException e) {
+                LogManager.logError("Erreur lors de la fermeture du segment " + current.path, e);
+            }
+            LogManager.logMessage("Journal des tours : " + this.getStats());
+        }
+    }
+
+    /**
+     * Ajoute un événement à la fin du segment courant, puis met à jour l'état courant du journal.
+     * Les données et leur somme de contrôle sont calculées avant de prendre le verrou du journal.
+     *
+     * @param type   Le type de l'événement.
+     * @param gameId L'identifiant de la partie de l'événement.
+     * @param key    La clé de l'événement.
+     * @param body   L'écriture des données propres au type d'événement.
+     * @return Le numéro de l'événement, ou -1 s'il n'a pas été enregistré.
+     */
+    private long append(JournalEventType type, int gameId, int key, Body body) {
+        if (this.directory == null) {
+            return -1;
+        }
+        PayloadBuffer payload = new PayloadBuffer();
+        WriteHelper writeHelper = new WriteHelper(payload);
+        writeHelper.setWireFormat(WireFormat.V2);
+        try {
+            writeHelper.writeByte(type.getId());
+            writeHelper.writeInt(gameId);
+            writeHelper.writeInt(key);
+            body.write(writeHelper);
+        } catch (IOException e) {
+            LogManager.logError("Erreur lors de la sérialisation d'un événement %s du journal des tours.".formatted(type), e);
+            return -1;
+        }
+        int length = payload.size();
+        byte[] array = payload.array();
+        CRC32C checksum = new CRC32C();
+        checksum.update(array, 0, length);
+        byte[] folded = isFolded(type) ? Arrays.copyOf(array, length) : null;
+
+        synchronized (this) {
+            if (this.closed) {
+                return -1;
+            }
+            long sequence = this.lastSequence + 1;
+            if (this.writePosition + HEADER_SIZE + length > this.segments.getLast().buffer.capacity()) {
+                try {
+                    this.roll(sequence, HEADER_SIZE + length);
+                } catch (IOException e) {
+                    LogManager.logError("Erreur lors de l'ajout d'un événement %s au journal des tours.".formatted(type), e);
+                    return -1;
+                }
+            }
+            MappedByteBuffer buffer = this.segments.getLast().buffer;
+            buffer.putInt(this.writePosition + Integer.BYTES, (int) checksum.getValue());
+            buffer.putLong(this.writePosition + Integer.BYTES * 2, sequence);
+            buffer.put(this.writePosition + HEADER_SIZE, array, 0, length);
+            // La taille est écrite en dernier, pour qu'un événement interrompu ne soit jamais relu
+            buffer.putInt(this.writePosition, length);
+
+            this.writePosition += HEADER_SIZE + length;
+            this.lastSequence = sequence;
+            this.appendedRecords++;
+            this.appendedBytes += HEADER_SIZE + length;
+            this.fold(new Record(sequence, type, gameId, key, folded));
+            return sequence;
+        }
+    }
+
+    /**
+     * Indique si les événements d'un type font partie de l'état courant du journal, et sont donc écrits dans l'instantané.
+     * Les arrivées de joueurs et les messages de chat sont enregistrés immédiatement dans le stockage : ils ne sont
+     * gardés que dans les segments.
+     *
+     * @param type Le type d'événement.
+     * @return true si les événements de ce type sont gardés dans l'état courant.
+     */
+    private static boolean isFolded(JournalEventType type) {
+        return switch (type) {
+            case GAME_STATE, PLAYER_STATE, PLAYER_STATE_CHANGES, TURN_RESULTS, GAME_ARCHIVED, PLAYER_REMOVED -> true;
+            case PLAYER_JOINED, CHAT_MESSAGE -> false;
+        };
+    }
+
+    /**
+     * Met à jour l'état courant du journal avec un événement.
+     *
+     * @param record L'événement.
+     */
+    private void fold(Record record) {
+        switch (record.type()) {
+            case GAME_STATE -> this.gameStates.put(record.gameId(), record);
+            case PLAYER_STATE -> {
+                List<Record> states = new ArrayList<>();
+                states.add(record);
+                this.playerStates.put(record.key(), states);
+            }
+            case PLAYER_STATE_CHANGES -> {
+                // Sans données complètes, le joueur a été supprimé ou sa partie archivée entre-temps
+                List<Record> states = this.playerStates.get(record.key());
+                if (states != null) {
+                    states.add(record);
+                }
+            }
+            case PLAYER_REMOVED -> {
+                this.playerStates.remove(record.key());
+                this.journaledPlayers.remove(record.key());
+                this.pendingWrites.put(record.sequence(), record);
+            }
+            case TURN_RESULTS -> this.pendingWrites.put(record.sequence(), record);
+            case GAME_ARCHIVED -> {
+                this.gameStates.remove(record.gameId());
+                this.playerStates.values().removeIf(states -> states.getFirst().gameId() == record.gameId());
+                this.journaledPlayers.keySet().retainAll(this.playerStates.keySet());
+                this.pendingWrites.put(record.sequence(), record);
+            }
+            case PLAYER_JOINED, CHAT_MESSAGE -> {
+            }
+        }
+    }
+
+    /**
+     * Ferme le segment courant après l'avoir forcé sur le disque, puis crée un nouveau segment.
+     *
+     * @param firstSequence Le numéro du premier événement du nouveau segment.
+     * @param minimumSize   La taille minimale du segment, pour un événement plus grand qu'un segment.
+     * @throws IOException Si le nouveau segment ne peut pas être créé.
+     */
+    private void roll(long firstSequence, int minimumSize) throws IOException {
+        if (!this.segments.isEmpty()) {
+            Segment current = this.segments.getLast();
+            current.buffer.force();
+            current.close();
+        }
+        Segment segment = new Segment(firstSequence, this.directory.resolve("%020d%s".formatted(firstSequence, SEGMENT_SUFFIX)));
+        segment.map(Math.max(this.segmentSize, minimumSize));
+        this.segments.add(segment);
+        this.writePosition = 0;
+    }
+
+    /**
+     * Lit l'instantané du journal s'il existe : ses événements forment l'état courant du journal et sont relus en premier.
+     *
+     * @throws IOException Si l'instantané ne peut pas être lu.
+     */
+    private void readSnapshot() throws IOException {
+        Path file = this.directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            ReadHelper readHelper = new ReadHelper(input);
+            readHelper.setWireFormat(WireFormat.V2);
+            if (readHelper.readInt() != SNAPSHOT_MAGIC || readHelper.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported journal snapshot " + file);
+            }
+            long sequence = readHelper.readLong();
+            int count = readHelper.readInt();
+            for (int i = 0; i < count; i++) {
+                this.recover(readHelper.readLong(), readHelper.readSizedByteArray());
+            }
+            this.snapshotSequence = this.lastSequence = sequence;
+        }
+    }
+
+    /**
+     * Ouvre les segments existants et relit les événements qui suivent l'instantané, puis projette le dernier segment
+     * pour continuer à y ajouter des événements. Un segment est créé si le journal est vide.
+     *
+     * @throws IOException Si un segment ne peut pas être lu.
+     */
+    private void openSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(this.directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        int endPosition = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Segment segment = new Segment(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+            this.segments.add(segment);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                endPosition = this.scan(segment, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        if (this.segments.isEmpty()) {
+            this.roll(this.lastSequence + 1, 0);
+            return;
+        }
+        Segment current = this.segments.getLast();
+        current.map(Math.max(this.segmentSize, Files.size(current.path)));
+        this.writePosition = endPosition;
+        if (this.writePosition + Integer.BYTES <= current.buffer.capacity() && current.buffer.getInt(this.writePosition) != 0) {
+            // Efface la fin d'un événement interrompu, pour qu'aucun reste ne soit relu après les prochains événements
+            LogManager.logError("Événement incomplet à la fin du segment %s, ignoré.".formatted(current.path));
+            for (int position = this.writePosition; position < current.buffer.capacity(); position++) {
+                current.buffer.put(position, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Relit les événements valides d'un segment, jusqu'au premier événement incomplet ou hors séquence.
+     * Les événements déjà couverts par l'instantané sont ignorés.
+     *
+     * @param segment Le segment.
+     * @param buffer  La projection du fichier du segment.
+     * @return La position de la fin du dernier événement valide.
+     */
+    private int scan(Segment segment, ByteBuffer buffer) {
+        long expected = segment.firstSequence;
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length < PREFIX_SIZE || length > buffer.limit() - position - HEADER_SIZE) {
+                break;
+            }
+            int checksum = buffer.getInt(position + Integer.BYTES);
+            long sequence = buffer.getLong(position + Integer.BYTES * 2);
+            if (sequence != expected) {
+                break;
+            }
+            byte[] data = new byte[length];
+            buffer.get(position + HEADER_SIZE, data);
+            CRC32C computed = new CRC32C();
+            computed.update(data);
+            if ((int) computed.getValue() != checksum) {
+                break;
+            }
+            if (sequence > this.lastSequence) {
+                if (sequence != this.lastSequence + 1) {
+                    LogManager.logError("Événements %d à %d absents du journal des tours.".formatted(this.lastSequence + 1, sequence - 1));
+                }
+                this.recover(sequence, data);
+                this.lastSequence = sequence;
+            }
+            expected++;
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Ajoute un événement relu à l'état courant du journal et aux événements à relire.
+     *
+     * @param sequence Le numéro de l'événement.
+     * @param data     Les données de l'événement.
+     */
+    private void recover(long sequence, byte[] data) {
+        JournalEventType type = JournalEventType.fromId(data[0]);
+        if (type == null) {
+            LogManager.logError("Type d'événement %d inconnu dans le journal des tours, ignoré.".formatted(data[0]));
+            return;
+        }
+        ByteBuffer prefix = ByteBuffer.wrap(data);
+        Record record = new Record(sequence, type, prefix.getInt(1), prefix.getInt(1 + Integer.BYTES), data);
+        this.fold(record);
+        this.recovered.add(record);
+    }
+
+    /**
+     * Écrit l'instantané de l'état courant du journal s'il a changé depuis le dernier, puis supprime les segments dont
+     * tous les événements sont couverts. L'état est copié sous le verrou du journal, puis écrit dans un fichier
+     * temporaire qui remplace l'instantané une fois forcé sur le disque.
+     */
+    private void writeSnapshot() {
+        synchronized (this.snapshotLock) {
+            long sequence;
+            List<Record> records;
+            synchronized (this) {
+                if (this.lastSequence == this.snapshotSequence) {
+                    return;
+                }
+                sequence = this.lastSequence;
+                records = new ArrayList<>(this.gameStates.size() + this.playerStates.size() + this.pendingWrites.size());
+                records.addAll(this.gameStates.values());
+                for (List<Record> states : this.playerStates.values()) {
+                    records.addAll(states);
+                }
+                records.addAll(this.pendingWrites.values());
+            }
+            records.sort(Comparator.comparingLong(Record::sequence));
+
+            Path file = this.directory.resolve(SNAPSHOT_FILE);
+            Path temporaryFile = this.directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel));
+                    WriteHelper writeHelper = new WriteHelper(output);
+                    writeHelper.setWireFormat(WireFormat.V2);
+                    writeHelper.writeInt(SNAPSHOT_MAGIC);
+                    writeHelper.writeInt(SNAPSHOT_VERSION);
+                    writeHelper.writeLong(sequence);
+                    writeHelper.writeInt(records.size());
+                    for (Record record : records) {
+                        writeHelper.writeLong(record.sequence());
+                        writeHelper.writeSizedByteArray(record.payload());
+                    }
+                    output.flush();
+                    channel.force(true);
+                }
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LogManager.logError("Erreur lors de l'écriture de l'instantané du journal des tours.", e);
+                return;
+            }
+
+            List<Segment> obsolete = new ArrayList<>();
+            synchronized (this) {
+                this.snapshotSequence = sequence;
+                this.snapshots++;
+                while (this.segments.size() > 1 && this.segments.get(1).firstSequence <= sequence + 1) {
+                    obsolete.add(this.segments.removeFirst());
+                }
+            }
+            for (Segment segment : obsolete) {
+                try {
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    LogManager.logError("Erreur lors de la suppression du segment " + segment.path, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Force le segment courant sur le disque. Le verrou du journal n'est gardé que pour récupérer la projection.
+     */
+    private void force() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            buffer = this.segments.getLast().buffer;
+        }
+        buffer.force();
+    }
+}
@@ -7,40 +7,85 @@ import fr.butinfoalt.riseandfall.gamelogic.data.Race;
 import fr.butinfoalt.riseandfall.gamelogic.data.UnitType;
 import fr.butinfoalt.riseandfall.server.ServerPlayer;
 import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.util.IdIntMap;
+import fr.butinfoalt.riseandfall.util.KeyUniverse;
 import fr.butinfoalt.riseandfall.util.ObjectIntMap;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 /**
  * Le contexte d'exécution des attaques entre les joueurs.
  */
 public class AttacksExecutionContext {
+    /**
+     * Bâtiments d'un univers de bâtiments, séparés en bâtiments défensifs et non défensifs.
+     *
+     * @param defensive    L'univers des bâtiments défensifs.
+     * @param nonDefensive L'univers des bâtiments non défensifs.
+     */
+    private record BuildingUniverses(KeyUniverse<BuildingType> defensive, KeyUniverse<BuildingType> nonDefensive) {
+        /**
+         * Sépare les bâtiments d'un univers selon qu'ils sont défensifs ou non.
+         *
+         * @param buildings L'univers des bâtiments.
+         * @return Les univers des bâtiments défensifs et non défensifs, dans l'ordre de l'univers d'origine.
+         */
+        private static BuildingUniverses split(KeyUniverse<BuildingType> buildings) {
+            ArrayList<BuildingType> defensiveBuildings = new ArrayList<>();
+            ArrayList<BuildingType> nonDefensiveBuildings = new ArrayList<>();
+            for (BuildingType buildingType : buildings.getKeys()) {
+                if (buildingType.isDefensive()) {
+                    defensiveBuildings.add(buildingType);
+                } else {
+                    nonDefensiveBuildings.add(buildingType);
+                }
+            }
+            return new BuildingUniverses(KeyUniverse.of(defensiveBuildings), KeyUniverse.of(nonDefensiveBuildings));
+        }
+    }
+
     /**
      * Unités de défense restantes pour chaque joueur.
      * La clé est le joueur, et la valeur est une association des types d'unités avec leur quantité restante.
      */
-    private final Map<Player, ObjectIntMap<UnitType>> defenseUnits = new HashMap<>();
+    private final Map<Player, IdIntMap<UnitType>> defenseUnits = new HashMap<>();
 
     /**
      * Attaques effectuées par les joueurs vers d'autres joueurs.
      * La clé est le joueur cible, et la valeur est une association des attaquants avec les unités utilisées pour l'attaque.
+     * Les attaques sont gardées dans leur ordre d'ajout, pour être exécutées dans le même ordre lorsqu'un tour est rejoué.
      */
-    private final Map<Player, Map<ServerPlayer, ObjectIntMap<UnitType>>> attacksTowards = new HashMap<>();
+    private final Map<Player, Map<ServerPlayer, IdIntMap<UnitType>>> attacksTowards = new LinkedHashMap<>();
 
     /**
      * Résultats des attaques effectuées par les joueurs.
      */
     private final ArrayList<AttackResult> attackResults = new ArrayList<>();
 
+    /**
+     * Graine du tour, dont sont dérivés les générateurs des attaques envers chaque cible.
+     */
+    private final long turnSeed;
+
+    /**
+     * Séparation des bâtiments de chaque univers de bâtiments des cibles. Les joueurs partagent en général le même
+     * univers : la séparation n'est donc faite qu'une fois par tour, et non pour chaque cible.
+     */
+    private final Map<KeyUniverse<BuildingType>, BuildingUniverses> buildingUniverses = new HashMap<>();
+
     /**
      * Constructeur de l'exécution des ordres.
      * Initialise le contexte d'exécution avec la partie et les unités de défense pour chaque joueur.
      *
-     * @param game La partie sur laquelle les ordres sont exécutés.
+     * @param game     La partie sur laquelle les ordres sont exécutés.
+     * @param turnSeed La graine du tour, voir {@link TurnRandom#turnSeed(long, int)}.
      */
-    public AttacksExecutionContext(ServerGame game) {
+    public AttacksExecutionContext(ServerGame game, long turnSeed) {
+        this.turnSeed = turnSeed;
         for (ServerPlayer player : game.getPlayers()) {
             this.defenseUnits.put(player, player.getUnitMap().clone());
         }
@@ -55,8 +100,8 @@ public class AttacksExecutionContext {
      * @param usingUnits Les unités utilisées pour l'attaque, association de leur type d'unité à leur quantité.
      */
     public void addAttack(ServerPlayer attacker, Player target, ObjectIntMap<UnitType> usingUnits) {
-        ObjectIntMap<UnitType> remaining = this.defenseUnits.get(attacker);
-        ObjectIntMap<UnitType> attackUnits = this.attacksTowards.computeIfAbsent(target, p -> new HashMap<>()).computeIfAbsent(attacker, p -> p.getUnitMap().createEmptyClone());
+        IdIntMap<UnitType> remaining = this.defenseUnits.get(attacker);
+        IdIntMap<UnitType> attackUnits = this.attacksTowards.computeIfAbsent(target, p -> new LinkedHashMap<>()).computeIfAbsent(attacker, p -> p.getUnitMap().createEmptyClone());
         remaining.decrement(usingUnits);
         attackUnits.increment(usingUnits);
     }
@@ -67,40 +112,34 @@ public class AttacksExecutionContext {
      */
     public void executeAttacks() {
         // On parcourt les attaques enregistrées par cible.
-        for (Map.Entry<Player, Map<ServerPlayer, ObjectIntMap<UnitType>>> entry : this.attacksTowards.entrySet()) {
+        for (Map.Entry<Player, Map<ServerPlayer, IdIntMap<UnitType>>> entry : this.attacksTowards.entrySet()) {
             Player target = entry.getKey();
-            ObjectIntMap<UnitType> defenseUnits = this.defenseUnits.get(target);
+            IdIntMap<UnitType> defenseUnits = this.defenseUnits.get(target);
             float targetHealthMultiplier = target.getRace().getHealthMultiplier();
             float totalDefenseDamage = calculateUnitsAttackDamage(defenseUnits, target.getRace());
 
             // On calcule la quantité totale d'unités utilisées pour l'attaque, ainsi que le nombre d'unités utilisées par chaque attaquant.
             int totalUsingUnitsCount = 0;
             HashMap<Player, Integer> usingUnitsCountByPlayer = new HashMap<>();
-            for (Map.Entry<ServerPlayer, ObjectIntMap<UnitType>> attackerEntry : entry.getValue().entrySet()) {
-                int usingUnitsCount = attackerEntry.getValue().getValues().stream().mapToInt(Integer::intValue).sum();
+            for (Map.Entry<ServerPlayer, IdIntMap<UnitType>> attackerEntry : entry.getValue().entrySet()) {
+                int usingUnitsCount = attackerEntry.getValue().sum();
                 totalUsingUnitsCount += usingUnitsCount;
                 usingUnitsCountByPlayer.put(attackerEntry.getKey(), usingUnitsCount);
             }
 
             // On trie les bâtiments de la cible en deux catégories : défensifs et non défensifs.
-            ArrayList<BuildingType> defensiveBuildings = new ArrayList<>();
-            ArrayList<BuildingType> nonDefensiveBuildings = new ArrayList<>();
-            for (BuildingType buildingType : target.getBuildingMap().getKeys()) {
-                if (buildingType.isDefensive()) {
-                    defensiveBuildings.add(buildingType);
-                } else {
-                    nonDefensiveBuildings.add(buildingType);
-                }
-            }
+            BuildingUniverses universes = this.buildingUniverses.computeIfAbsent(target.getBuildingMap().getUniverse(), BuildingUniverses::split);
             // On initialise les DamageAppliers pour les unités et bâtiments de la cible, qui ne changent pas pour toutes les attaques envers elle.
-            DamageApplier<BuildingType> targetDefensiveBuildingsDamageApplier = new DamageApplier<>(target.getBuildingMap().clone(defensiveBuildings), BuildingType::getResistance);
-            DamageApplier<UnitType> targetUnitsDamageApplier = new DamageApplier<>(defenseUnits, unitType -> unitType.getHealth() * targetHealthMultiplier);
-            DamageApplier<BuildingType> targetBuildingsDamageApplier = new DamageApplier<>(target.getBuildingMap().clone(nonDefensiveBuildings), BuildingType::getResistance);
+            // Ils tirent les éléments touchés dans le flux aléatoire propre à cette cible pour ce tour.
+            SplittableRandom random = TurnRandom.forTarget(this.turnSeed, target.getId());
+            DamageApplier<BuildingType> targetDefensiveBuildingsDamageApplier = new DamageApplier<>(target.getBuildingMap().clone(universes.defensive()), BuildingType::getResistance, random);
+            DamageApplier<UnitType> targetUnitsDamageApplier = new DamageApplier<>(defenseUnits, unitType -> unitType.getHealth() * targetHealthMultiplier, random);
+            DamageApplier<BuildingType> targetBuildingsDamageApplier = new DamageApplier<>(target.getBuildingMap().clone(universes.nonDefensive()), BuildingType::getResistance, random);
 
             // On exécute chacune des attaques envers cette cible.
-            for (Map.Entry<ServerPlayer, ObjectIntMap<UnitType>> attackerEntry : entry.getValue().entrySet()) {
+            for (Map.Entry<ServerPlayer, IdIntMap<UnitType>> attackerEntry : entry.getValue().entrySet()) {
                 float defenseDamage = (totalDefenseDamage * usingUnitsCountByPlayer.get(attackerEntry.getKey())) / totalUsingUnitsCount;
-                this.executeAttack(attackerEntry.getKey(), target, targetDefensiveBuildingsDamageApplier, targetUnitsDamageApplier, targetBuildingsDamageApplier, attackerEntry.getValue(), defenseDamage);
+                this.executeAttack(attackerEntry.getKey(), target, targetDefensiveBuildingsDamageApplier, targetUnitsDamageApplier, targetBuildingsDamageApplier, attackerEntry.getValue(), defenseDamage, random);
             }
         }
     }
@@ -116,8 +155,9 @@ public class AttacksExecutionContext {
      * @param targetBuildingsDamageApplier          L'appliqueur de dégâts pour les bâtiments de la cible
      * @param usingUnits                            Les unités utilisées pour l'attaque, association de leur type d'unité à leur quantité.
      * @param defenseDamage                         La quantité de dégâts de défense infligée par les unités attaquantes, proportionnelle à leur nombre.
+     * @param random                                Le générateur des attaques envers la cible pour ce tour.
      */
-    private void executeAttack(ServerPlayer attacker, Player target, DamageApplier<BuildingType> targetDefensiveBuildingsDamageApplier, DamageApplier<UnitType> targetUnitsDamageApplier, DamageApplier<BuildingType> targetBuildingsDamageApplier, ObjectIntMap<UnitType> usingUnits, float defenseDamage) {
+    private void executeAttack(ServerPlayer attacker, Player target, DamageApplier<BuildingType> targetDefensiveBuildingsDamageApplier, DamageApplier<UnitType> targetUnitsDamageApplier, DamageApplier<BuildingType> targetBuildingsDamageApplier, ObjectIntMap<UnitType> usingUnits, float defenseDamage, SplittableRandom random) {
         float attackerHealthMultiplier = attacker.getRace().getHealthMultiplier();
         float damage = calculateUnitsAttackDamage(usingUnits, attacker.getRace());
 
@@ -127,7 +167,7 @@ public class AttacksExecutionContext {
         DamageApplier.DamageApplyResult<BuildingType> buildingsAttackResult = targetBuildingsDamageApplier.applyDamage(unitsAttackResult.getRemainingDamage());
 
         // On applique les dégâts de défense des unités attaquantes.
-        DamageApplier<UnitType> attackingUnitsDamageApplier = new DamageApplier<>(usingUnits, unitType -> unitType.getHealth() * attackerHealthMultiplier);
+        DamageApplier<UnitType> attackingUnitsDamageApplier = new DamageApplier<>(usingUnits, unitType -> unitType.getHealth() * attackerHealthMultiplier, random);
         DamageApplier.DamageApplyResult<UnitType> attackerUnitsAttackResult = attackingUnitsDamageApplier.applyDamage(defenseDamage);
 
         // On récupère les unités et bâtiments détruits
@@ -155,8 +195,9 @@ public class AttacksExecutionContext {
      */
     private static float calculateUnitsAttackDamage(ObjectIntMap<UnitType> units, Race playerRace) {
         float totalDamage = 0;
-        for (ObjectIntMap.Entry<UnitType> entry : units) {
-            totalDamage += entry.getKey().getDamage() * entry.getValue();
+        ObjectIntMap.Cursor<UnitType> cursor = units.cursor();
+        while (cursor.next()) {
+            totalDamage += cursor.getKey().getDamage() * cursor.getValue();
         }
         return totalDamage * playerRace.getDamageMultiplier();
     }
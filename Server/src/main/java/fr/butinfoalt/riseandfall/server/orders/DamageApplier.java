@@ -5,45 +5,79 @@ import fr.butinfoalt.riseandfall.gamelogic.data.UnitType;
 import fr.butinfoalt.riseandfall.util.ObjectIntMap;
 import fr.butinfoalt.riseandfall.util.function.ToFloatFunction;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * Classe utilitaire pour appliquer des dégâts sur des éléments cibles, tels que des unités ou des bâtiments.
  * Elle permet de gérer la destruction d'éléments en fonction de leur résistance et de la quantité de dégâts appliqués.
+ * Les éléments touchés sont tirés au hasard, sans remise, directement parmi les quantités de chaque type :
+ * la mémoire utilisée dépend du nombre de types et non du nombre d'éléments.
+ * Les tirages utilisent le générateur fourni à la construction, pour qu'un tour puisse être rejoué à l'identique.
  *
  * @param <T> Le type des éléments cibles, par exemple {@link UnitType} ou {@link BuildingType}.
  */
 public class DamageApplier<T> {
-    private static final Random PRNG = new Random();
-
-    private final ObjectIntMap<T> remainingTargetElements;
+    private final ObjectIntMap<T> emptyElements;
     private final ToFloatFunction<T> resistanceConverter;
-    private final ArrayList<T> flattenedElements;
+    /**
+     * Générateur utilisé pour tirer les éléments touchés.
+     */
+    private final RandomGenerator random;
+    /**
+     * Types des éléments cibles, dans l'ordre de l'association d'origine.
+     */
+    private final Object[] elementTypes;
+    /**
+     * Quantité d'éléments de chaque type qui n'ont pas encore été touchés, à la même position que leur type.
+     */
+    private final int[] remainingCounts;
+    /**
+     * Nombre total d'éléments qui n'ont pas encore été touchés.
+     */
+    private int remainingTotal;
 
     /**
      * Constructeur de la classe DamageApplier.
      *
      * @param targetElements      Les éléments cibles, association de leur type à leur quantité.
-     *                            Cette association est modifiée pour refléter les éléments restants après les applications de dégâts.
+     *                            Cette association n'est pas modifiée par les applications de dégâts.
      * @param resistanceConverter La fonction de conversion pour obtenir la résistance d'un élément cible.
+     * @param random              Le générateur utilisé pour tirer les éléments touchés.
      */
-    public DamageApplier(ObjectIntMap<T> targetElements, ToFloatFunction<T> resistanceConverter) {
-        this.remainingTargetElements = targetElements.clone();
+    public DamageApplier(ObjectIntMap<T> targetElements, ToFloatFunction<T> resistanceConverter, RandomGenerator random) {
+        this.emptyElements = targetElements.createEmptyClone();
         this.resistanceConverter = resistanceConverter;
+        this.random = random;
+        this.elementTypes = new Object[targetElements.size()];
+        this.remainingCounts = new int[targetElements.size()];
+        int index = 0;
+        ObjectIntMap.Cursor<T> cursor = targetElements.cursor();
+        while (cursor.next()) {
+            this.elementTypes[index] = cursor.getKey();
+            this.remainingCounts[index] = Math.max(0, cursor.getValue());
+            this.remainingTotal += this.remainingCounts[index];
+            index++;
+        }
+    }
 
-        // On aplatit les éléments cibles en une liste dans laquelle chaque élément apparaît autant de fois que sa quantité.
-        this.flattenedElements = new ArrayList<>(targetElements.getValues().stream().mapToInt(Integer::intValue).sum());
-        for (ObjectIntMap.Entry<T> entry : targetElements) {
-            T element = entry.getKey();
-            int quantity = entry.getValue();
-            for (int i = 0; i < quantity; i++) {
-                flattenedElements.add(element);
-            }
+    /**
+     * Tire au hasard l'un des éléments qui n'ont pas encore été touchés et le retire des éléments restants.
+     * Chaque élément restant a la même probabilité d'être tiré : la suite des tirages suit donc la même loi
+     * qu'un parcours de tous les éléments mélangés.
+     *
+     * @return Le type de l'élément tiré.
+     */
+    @SuppressWarnings("unchecked")
+    private T drawElement() {
+        int drawn = this.random.nextInt(this.remainingTotal);
+        int index = 0;
+        while (drawn >= this.remainingCounts[index]) {
+            drawn -= this.remainingCounts[index];
+            index++;
         }
-        // On mélange les éléments pour appliquer les dégâts de manière aléatoire.
-        Collections.shuffle(flattenedElements, PRNG);
+        this.remainingCounts[index]--;
+        this.remainingTotal--;
+        return (T) this.elementTypes[index];
     }
 
     /**
@@ -53,16 +87,11 @@ public class DamageApplier<T> {
      * @return Le résultat de l'attaque, contenant les dégâts restants et les éléments détruits.
      */
     public DamageApplyResult<T> applyDamage(float damage) {
-        ObjectIntMap<T> destroyedElements = remainingTargetElements.createEmptyClone();
-        if (damage <= 0 || remainingTargetElements.isEmpty()) {
-            return new DamageApplyResult<>(damage, destroyedElements);
-        }
-
-        while (damage > 0 && !this.flattenedElements.isEmpty()) {
-            T element = this.flattenedElements.removeLast();
+        ObjectIntMap<T> destroyedElements = this.emptyElements.createEmptyClone();
+        while (damage > 0 && this.remainingTotal > 0) {
+            T element = this.drawElement();
             float resistance = this.resistanceConverter.applyAsFloat(element);
             if (damage > resistance * 0.5) { // Si les dégâts sont supérieurs à la moitié de la résistance, l'élément est détruit.
-                this.remainingTargetElements.decrement(element, 1);
                 destroyedElements.increment(element, 1);
             }
             damage -= resistance;
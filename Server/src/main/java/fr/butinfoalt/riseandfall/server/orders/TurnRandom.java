@@ -0,0 +1,83 @@
+package fr.butinfoalt.riseandfall.server.orders;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Classe utilitaire pour dériver les générateurs aléatoires des tours à partir de la graine d'une partie.
+ * <p>
+ * Chaque partie garde une graine, enregistrée avec elle dans le stockage. La graine d'un tour est dérivée de celle de
+ * la partie et du numéro du tour, et chaque cible des attaques du tour tire ses éléments touchés dans son propre flux,
+ * dérivé de la graine du tour et de l'identifiant de la cible. Un tour peut donc être rejoué à l'identique à partir
+ * des mêmes données, quel que soit l'ordre de traitement des cibles, et les parties n'ont aucun générateur en commun.
+ * </p>
+ */
+public final class TurnRandom {
+    /**
+     * Incrément de Weyl utilisé par {@link SplittableRandom}, pour espacer les clés avant de les mélanger.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private TurnRandom() {
+    }
+
+    /**
+     * Tire la graine d'une nouvelle partie. La graine 0 n'est jamais tirée : elle désigne les parties enregistrées
+     * avant l'ajout des graines, auxquelles la migration SQL/migrations/002_game_random_seed.sql en attribue une.
+     *
+     * @return Une graine aléatoire non nulle.
+     */
+    public static long newGameSeed() {
+        long seed;
+        do {
+            seed = ThreadLocalRandom.current().nextLong();
+        } while (seed == 0);
+        return seed;
+    }
+
+    /**
+     * Dérive la graine d'un tour d'une partie.
+     *
+     * @param gameSeed La graine de la partie.
+     * @param turn     Le numéro du tour.
+     * @return La graine du tour.
+     */
+    public static long turnSeed(long gameSeed, int turn) {
+        return derive(gameSeed, turn);
+    }
+
+    /**
+     * Crée le générateur des attaques d'un tour envers une cible.
+     *
+     * @param turnSeed La graine du tour, voir {@link #turnSeed(long, int)}.
+     * @param targetId L'identifiant du joueur cible.
+     * @return Un générateur propre à la cible pour ce tour.
+     */
+    public static SplittableRandom forTarget(long turnSeed, int targetId) {
+        return new SplittableRandom(derive(turnSeed, targetId));
+    }
+
+    /**
+     * Dérive une graine d'une autre graine et d'une clé. Deux clés voisines donnent des graines sans rapport entre
+     * elles, ce qui n'est pas le cas des graines voisines passées directement à {@link SplittableRandom}.
+     *
+     * @param seed La graine d'origine.
+     * @param key  La clé de la graine dérivée.
+     * @return La graine dérivée.
+     */
+    private static long derive(long seed, long key) {
+        return mix64(seed + mix64((key + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * Fonction de mélange des bits d'un entier 64 bits (variante 13 de Stafford, utilisée par {@link SplittableRandom}).
+     *
+     * @param z La valeur à mélanger.
+     * @return La valeur mélangée.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
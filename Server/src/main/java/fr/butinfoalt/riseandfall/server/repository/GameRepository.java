@@ -0,0 +1,258 @@
+package fr.butinfoalt.riseandfall.server.repository;
+
+import fr.butinfoalt.riseandfall.gamelogic.data.AttackResult;
+import fr.butinfoalt.riseandfall.gamelogic.data.IdRegistry;
+import fr.butinfoalt.riseandfall.server.DatabaseManager;
+import fr.butinfoalt.riseandfall.server.Environment;
+import fr.butinfoalt.riseandfall.server.RiseAndFallServer;
+import fr.butinfoalt.riseandfall.server.ServerPlayer;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.data.User;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stockage des données du serveur : utilisateurs et tokens, parties, joueurs et leurs ordres, journaux d'attaques et
+ * messages de chat.
+ * <p>
+ * Le reste du serveur ne dépend que de cette interface. {@link JdbcGameRepository} enregistre les données dans la base
+ * MariaDB, {@link InMemoryGameRepository} les garde en mémoire, éventuellement sauvegardées dans un fichier, pour faire
+ * tourner le serveur sans base de données. Les erreurs de stockage sont signalées par des {@link SQLException}, quelle
+ * que soit l'implémentation.
+ * </p>
+ */
+public interface GameRepository extends AutoCloseable {
+    /**
+     * Interface pour un ensemble d'opérations exécutées dans une même transaction.
+     */
+    @FunctionalInterface
+    interface Work {
+        /**
+         * Exécute les opérations.
+         *
+         * @throws SQLException Si une erreur se produit, ce qui annule la transaction.
+         */
+        void run() throws SQLException;
+    }
+
+    /**
+     * Données chargées au démarrage du serveur.
+     *
+     * @param users   Tous les utilisateurs.
+     * @param games   Les parties non archivées.
+     * @param players Les joueurs des parties non archivées, avec leurs bâtiments, unités et ordres.
+     */
+    record LoadedData(List<User> users, List<ServerGame> games, List<ServerPlayer> players) {
+    }
+
+    /**
+     * Crée le stockage choisi par la variable d'environnement STORAGE : "mariadb" (par défaut) ou "memory".
+     *
+     * @return Le stockage créé.
+     */
+    static GameRepository fromEnvironment() {
+        String storage = Environment.STORAGE;
+        if (storage == null || storage.isBlank() || storage.equalsIgnoreCase("mariadb")) {
+            return new JdbcGameRepository(new DatabaseManager());
+        }
+        if (storage.equalsIgnoreCase("memory")) {
+            return new InMemoryGameRepository(Environment.MEMORY_SEED_FILE, Environment.MEMORY_STORAGE_FILE, Environment.MEMORY_SNAPSHOT_INTERVAL_MS);
+        }
+        throw new IllegalArgumentException("Unknown storage: " + storage);
+    }
+
+    /**
+     * Exécute des opérations dans une même transaction : elles sont toutes validées, ou toutes annulées si l'une d'elles échoue.
+     * Les opérations du stockage appelées par le même thread pendant la transaction en font partie.
+     *
+     * @param work Les opérations à exécuter.
+     * @throws SQLException Si une opération a échoué ou si la transaction n'a pas pu être validée.
+     */
+    void inTransaction(Work work) throws SQLException;
+
+    /**
+     * Charge les données du serveur au démarrage. Les parties terminées dont tous les joueurs sont sortis sont d'abord
+     * archivées, puis les données statiques sont chargées dans {@link fr.butinfoalt.riseandfall.gamelogic.data.ServerData},
+     * avant les utilisateurs, les parties non archivées et leurs joueurs.
+     *
+     * @param server Instance du serveur, associée aux parties chargées.
+     * @return Les données chargées.
+     * @throws SQLException Si une erreur se produit lors du chargement.
+     */
+    LoadedData load(RiseAndFallServer server) throws SQLException;
+
+    /**
+     * Calcule une empreinte peu coûteuse des données chargées par {@link #load(RiseAndFallServer)} : données statiques,
+     * utilisateurs, parties non archivées, joueurs et ordres. Toute modification de ces données change l'empreinte,
+     * sauf collision improbable. Utilisée pour vérifier qu'un instantané du serveur correspond encore au stockage.
+     * Les écritures qui suivent un calcul de l'empreinte incrémentent une version avant d'être validées, pour que
+     * l'empreinte n'ait pas à parcourir toutes les lignes.
+     *
+     * @return L'empreinte des données.
+     * @throws SQLException Si une erreur se produit lors du calcul.
+     */
+    long computeWatermark() throws SQLException;
+
+    /**
+     * Recherche un utilisateur à partir de ses identifiants.
+     *
+     * @param username     Le nom d'utilisateur.
+     * @param passwordHash Le mot de passe haché.
+     * @return L'identifiant de l'utilisateur, ou -1 si aucun utilisateur ne correspond.
+     * @throws SQLException Si une erreur se produit lors de la recherche.
+     */
+    int findUserId(String username, String passwordHash) throws SQLException;
+
+    /**
+     * Recherche l'utilisateur associé à un token d'authentification.
+     *
+     * @param token Le token d'authentification.
+     * @return L'identifiant de l'utilisateur, ou -1 si aucun utilisateur n'a ce token.
+     * @throws SQLException Si une erreur se produit lors de la recherche.
+     */
+    int findUserIdByToken(String token) throws SQLException;
+
+    /**
+     * Vérifie si un nom d'utilisateur est déjà utilisé.
+     *
+     * @param username Le nom d'utilisateur.
+     * @return true si un utilisateur a déjà ce nom.
+     * @throws SQLException Si une erreur se produit lors de la recherche.
+     */
+    boolean isUsernameTaken(String username) throws SQLException;
+
+    /**
+     * Crée un utilisateur.
+     *
+     * @param username     Le nom d'utilisateur.
+     * @param passwordHash Le mot de passe haché.
+     * @return L'identifiant du nouvel utilisateur.
+     * @throws SQLException Si une erreur se produit lors de la création.
+     */
+    int createUser(String username, String passwordHash) throws SQLException;
+
+    /**
+     * Enregistre un token d'authentification pour un utilisateur.
+     *
+     * @param userId L'identifiant de l'utilisateur.
+     * @param token  Le token.
+     * @throws SQLException Si une erreur se produit lors de l'enregistrement.
+     */
+    void saveToken(int userId, String token) throws SQLException;
+
+    /**
+     * Crée une partie en attente, avec les paramètres par défaut.
+     *
+     * @param server Instance du serveur, associée à la partie.
+     * @param name   Le nom de la partie.
+     * @return La partie créée.
+     * @throws SQLException Si une erreur se produit lors de la création.
+     */
+    ServerGame createGame(RiseAndFallServer server, String name) throws SQLException;
+
+    /**
+     * Crée un joueur dans une partie, avec les ressources par défaut.
+     *
+     * @param userId L'identifiant de l'utilisateur.
+     * @param gameId L'identifiant de la partie.
+     * @param raceId L'identifiant de la race choisie.
+     * @return L'identifiant du nouveau joueur.
+     * @throws SQLException Si une erreur se produit lors de la création.
+     */
+    int createPlayer(int userId, int gameId, int raceId) throws SQLException;
+
+    /**
+     * Supprime un joueur, ainsi que ses bâtiments, unités, ordres, attaques et messages.
+     *
+     * @param playerId L'identifiant du joueur.
+     * @throws SQLException Si une erreur se produit lors de la suppression.
+     */
+    void deletePlayer(int playerId) throws SQLException;
+
+    /**
+     * Écrit les modifications de l'état d'une partie et de ses joueurs, et comptabilise les écritures dans les modifications.
+     *
+     * @param changes Les modifications à écrire.
+     * @throws SQLException Si une erreur se produit lors de l'écriture.
+     */
+    void saveChanges(StateChanges changes) throws SQLException;
+
+    /**
+     * Marque une partie comme archivée : elle ne sera plus chargée au démarrage du serveur.
+     *
+     * @param gameId L'identifiant de la partie.
+     * @throws SQLException Si une erreur se produit lors de l'écriture.
+     */
+    void archiveGame(int gameId) throws SQLException;
+
+    /**
+     * Charge une partie archivée, ses joueurs, leurs bâtiments et leurs unités.
+     * Les joueurs dont l'utilisateur n'existe plus sont ignorés.
+     *
+     * @param server Instance du serveur, associée à la partie et utilisée pour retrouver les utilisateurs.
+     * @param gameId L'identifiant de la partie.
+     * @return La partie chargée, ou null si aucune partie archivée n'a cet identifiant.
+     * @throws SQLException Si une erreur se produit lors du chargement.
+     */
+    ServerGame loadArchivedGame(RiseAndFallServer server, int gameId) throws SQLException;
+
+    /**
+     * Enregistre les résultats des attaques d'un tour.
+     *
+     * @param turn    Le tour durant lequel les attaques ont été effectuées.
+     * @param results Les résultats des attaques.
+     * @throws SQLException Si une erreur se produit lors de l'écriture.
+     */
+    void saveAttackResults(int turn, List<AttackResult> results) throws SQLException;
+
+    /**
+     * Charge les résultats de toutes les attaques d'une partie. Les attaques d'un joueur absent sont ignorées.
+     *
+     * @param gameId      L'identifiant de la partie.
+     * @param playersById Les joueurs de la partie, indexés par leur identifiant.
+     * @return Les résultats associés au tour durant lequel les attaques ont été effectuées, dans l'ordre d'enregistrement.
+     * @throws SQLException Si une erreur se produit lors du chargement.
+     */
+    Map<Integer, List<AttackResult>> loadAttackResults(int gameId, IdRegistry<ServerPlayer> playersById) throws SQLException;
+
+    /**
+     * Enregistre un message de chat, horodaté à l'enregistrement.
+     *
+     * @param senderId   L'identifiant du joueur qui envoie le message.
+     * @param receiverId L'identifiant du joueur qui reçoit le message.
+     * @param message    Le contenu du message.
+     * @return Le message enregistré, avec son identifiant et son horodatage.
+     * @throws SQLException Si une erreur se produit lors de l'enregistrement.
+     */
+    StoredChatMessage saveChatMessage(int senderId, int receiverId, String message) throws SQLException;
+
+    /**
+     * Charge les messages les plus récents de chaque conversation d'une partie.
+     *
+     * @param gameId          L'identifiant de la partie.
+     * @param perConversation Le nombre maximal de messages chargés par conversation.
+     * @return Les messages, du plus ancien au plus récent.
+     * @throws SQLException Si une erreur se produit lors du chargement.
+     */
+    List<StoredChatMessage> loadRecentChatMessages(int gameId, int perConversation) throws SQLException;
+
+    /**
+     * Charge les messages d'une conversation plus anciens qu'un identifiant.
+     *
+     * @param playerId      L'identifiant d'un joueur de la conversation.
+     * @param otherPlayerId L'identifiant de l'autre joueur de la conversation.
+     * @param beforeId      L'identifiant à partir duquel charger les messages plus anciens.
+     * @param limit         Le nombre maximal de messages chargés.
+     * @return Les messages, du plus récent au plus ancien.
+     * @throws SQLException Si une erreur se produit lors du chargement.
+     */
+    List<StoredChatMessage> loadChatMessagesBefore(int playerId, int otherPlayerId, long beforeId, int limit) throws SQLException;
+
+    /**
+     * Ferme le stockage et libère ses ressources.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,976 @@
+package fr.butinfoalt.riseandfall.server.repository;
+
+import fr.butinfoalt.riseandfall.gamelogic.GameState;
+import fr.butinfoalt.riseandfall.gamelogic.data.*;
+import fr.butinfoalt.riseandfall.network.common.ReadHelper;
+import fr.butinfoalt.riseandfall.network.common.WireFormat;
+import fr.butinfoalt.riseandfall.network.common.WriteHelper;
+import fr.butinfoalt.riseandfall.server.RiseAndFallServer;
+import fr.butinfoalt.riseandfall.server.ServerPlayer;
+import fr.butinfoalt.riseandfall.server.UserManager;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.data.User;
+import fr.butinfoalt.riseandfall.server.orders.TurnRandom;
+import fr.butinfoalt.riseandfall.util.IdIntMap;
+import fr.butinfoalt.riseandfall.util.ObjectIntMap;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Stockage des données du serveur en mémoire, pour faire tourner le serveur sans base de données, par exemple pour
+ * mesurer les performances du moteur de tours et de la couche réseau indépendamment du coût de la base.
+ * <p>
+ * Les tables sont reproduites par des associations en mémoire, avec les mêmes valeurs par défaut que SQL/init.sql.
+ * Les données statiques (races, bâtiments et unités) sont lues dans les instructions INSERT de ce script.
+ * Toutes les opérations sont exécutées sous le verrou du stockage, qu'une transaction garde jusqu'à sa fin : les
+ * transactions sont donc sérialisées. Elles ne sont pas annulées en cas d'erreur, mais les opérations du stockage ne
+ * modifient les tables qu'une fois leurs vérifications passées.
+ * </p>
+ * <p>
+ * Si un fichier de stockage est configuré, les tables y sont chargées au démarrage, puis y sont réécrites
+ * périodiquement lorsqu'elles ont été modifiées et à la fermeture du stockage. Les écritures effectuées depuis la
+ * dernière sauvegarde du fichier sont perdues en cas d'arrêt brutal. Le fichier est écrit dans un format binaire
+ * versionné, lu et écrit avec les mêmes outils que les paquets réseau.
+ * </p>
+ */
+public class InMemoryGameRepository implements GameRepository {
+    /**
+     * Nombre magique au début du fichier de stockage ("RFSM").
+     */
+    private static final int MAGIC = 0x5246534D;
+    /**
+     * Version du format du fichier de stockage, à incrémenter à chaque changement du format.
+     */
+    private static final int VERSION = 3;
+
+    /**
+     * Valeurs par défaut des colonnes des tables game et player, reprises de SQL/init.sql.
+     */
+    private static final int DEFAULT_TURN_INTERVAL = 15, DEFAULT_CURRENT_TURN = 1, DEFAULT_MIN_PLAYERS = 3, DEFAULT_MAX_PLAYERS = 30;
+    private static final float DEFAULT_GOLD = 50, DEFAULT_INTELLIGENCE = 0;
+
+    /**
+     * Ligne de la table user.
+     */
+    private record UserRow(int id, String username, String passwordHash) {
+    }
+
+    /**
+     * Ligne de la table game.
+     */
+    private static final class GameRow {
+        private final int id;
+        private final String name;
+        private final int turnInterval;
+        private final int minPlayers;
+        private final int maxPlayers;
+        private final long randomSeed;
+        private GameState state = GameState.WAITING;
+        private Timestamp nextActionAt = null;
+        private int currentTurn = DEFAULT_CURRENT_TURN;
+        private boolean archived = false;
+
+        private GameRow(int id, String name, long randomSeed) {
+            this(id, name, DEFAULT_TURN_INTERVAL, DEFAULT_MIN_PLAYERS, DEFAULT_MAX_PLAYERS, randomSeed);
+        }
+
+        private GameRow(int id, String name, int turnInterval, int minPlayers, int maxPlayers, long randomSeed) {
+            this.id = id;
+            this.name = name;
+            this.turnInterval = turnInterval;
+            this.minPlayers = minPlayers;
+            this.maxPlayers = maxPlayers;
+            this.randomSeed = randomSeed;
+        }
+    }
+
+    /**
+     * Ligne de la table player, avec les lignes des tables qui en dépendent, associées à l'identifiant du type concerné.
+     */
+    private static final class PlayerRow {
+        private final int id;
+        private final int userId;
+        private final int gameId;
+        private final int raceId;
+        private float gold = DEFAULT_GOLD;
+        private float intelligence = DEFAULT_INTELLIGENCE;
+        private int eliminationTurn = -1;
+        private boolean exitedGame = false;
+        private final Map<Integer, Integer> buildings = new HashMap<>();
+        private final Map<Integer, Integer> units = new HashMap<>();
+        private final Map<Integer, Integer> buildingOrders = new HashMap<>();
+        private final Map<Integer, Integer> unitOrders = new HashMap<>();
+        private final List<AttackOrderRow> attackOrders = new ArrayList<>();
+
+        private PlayerRow(int id, int userId, int gameId, int raceId) {
+            this.id = id;
+            this.userId = userId;
+            this.gameId = gameId;
+            this.raceId = raceId;
+        }
+    }
+
+    /**
+     * Ligne de la table attack_player_order, avec les unités utilisées.
+     *
+     * @param targetPlayerId L'identifiant du joueur ciblé.
+     * @param units          Les quantités d'unités utilisées, associées à l'identifiant de leur type.
+     */
+    private record AttackOrderRow(int targetPlayerId, HashMap<Integer, Integer> units) {
+    }
+
+    /**
+     * Ligne de la table attacks_logs, avec ses détails.
+     */
+    private record AttackLogRow(int attackerId, int targetId, int turn, HashMap<Integer, Integer> destroyedBuildings,
+                                HashMap<Integer, Integer> destroyedUnits, HashMap<Integer, Integer> lostUnits) {
+    }
+
+    /**
+     * Ensemble des tables, sauvegardé dans le fichier de stockage.
+     */
+    private static final class Tables {
+        private int lastUserId = 0;
+        private int lastGameId = 0;
+        private int lastPlayerId = 0;
+        private long lastChatMessageId = 0;
+        /**
+         * Version des données chargées au démarrage, incrémentée à chaque modification de ces données.
+         */
+        private long dataVersion = 0;
+        private final Map<Integer, UserRow> users = new LinkedHashMap<>();
+        private final Map<String, Integer> userIdsByName = new HashMap<>();
+        private final Map<String, Integer> userIdsByToken = new HashMap<>();
+        private final Map<Integer, GameRow> games = new LinkedHashMap<>();
+        private final Map<Integer, PlayerRow> players = new LinkedHashMap<>();
+        /**
+         * Journaux d'attaques de chaque partie, dans l'ordre d'enregistrement.
+         */
+        private final Map<Integer, List<AttackLogRow>> attackLogsByGame = new HashMap<>();
+        /**
+         * Messages de chat de chaque partie, dans l'ordre d'envoi.
+         */
+        private final Map<Integer, List<StoredChatMessage>> chatMessagesByGame = new HashMap<>();
+
+        /**
+         * Écrit les tables, précédées de l'en-tête du format.
+         *
+         * @param writeHelper L'outil d'écriture du fichier de stockage.
+         * @throws IOException Si une erreur se produit lors de l'écriture.
+         */
+        private void write(WriteHelper writeHelper) throws IOException {
+            writeHelper.writeInt(MAGIC);
+            writeHelper.writeInt(VERSION);
+            writeHelper.writeInt(this.lastUserId);
+            writeHelper.writeInt(this.lastGameId);
+            writeHelper.writeInt(this.lastPlayerId);
+            writeHelper.writeLong(this.lastChatMessageId);
+            writeHelper.writeLong(this.dataVersion);
+
+            writeHelper.writeSize(this.users.size());
+            for (UserRow row : this.users.values()) {
+                writeHelper.writeInt(row.id);
+                writeHelper.writeString(row.username);
+                writeHelper.writeString(row.passwordHash);
+            }
+            writeHelper.writeSize(this.userIdsByToken.size());
+            for (Map.Entry<String, Integer> entry : this.userIdsByToken.entrySet()) {
+                writeHelper.writeString(entry.getKey());
+                writeHelper.writeInt(entry.getValue());
+            }
+
+            writeHelper.writeSize(this.games.size());
+            for (GameRow row : this.games.values()) {
+                writeHelper.writeInt(row.id);
+                writeHelper.writeString(row.name);
+                writeHelper.writeInt(row.turnInterval);
+                writeHelper.writeInt(row.minPlayers);
+                writeHelper.writeInt(row.maxPlayers);
+                writeHelper.writeLong(row.randomSeed);
+                writeHelper.writeInt(row.state.ordinal());
+                writeHelper.writeLong(row.nextActionAt == null ? -1 : row.nextActionAt.getTime());
+                writeHelper.writeInt(row.currentTurn);
+                writeHelper.writeBoolean(row.archived);
+            }
+
+            writeHelper.writeSize(this.players.size());
+            for (PlayerRow row : this.players.values()) {
+                writeHelper.writeInt(row.id);
+                writeHelper.writeInt(row.userId);
+                writeHelper.writeInt(row.gameId);
+                writeHelper.writeInt(row.raceId);
+                writeHelper.writeFloat(row.gold);
+                writeHelper.writeFloat(row.intelligence);
+                writeHelper.writeInt(row.eliminationTurn);
+                writeHelper.writeBoolean(row.exitedGame);
+                writeAmounts(writeHelper, row.buildings);
+                writeAmounts(writeHelper, row.units);
+                writeAmounts(writeHelper, row.buildingOrders);
+                writeAmounts(writeHelper, row.unitOrders);
+                writeHelper.writeSize(row.attackOrders.size());
+                for (AttackOrderRow order : row.attackOrders) {
+                    writeHelper.writeInt(order.targetPlayerId);
+                    writeAmounts(writeHelper, order.units);
+                }
+            }
+
+            writeHelper.writeSize(this.attackLogsByGame.size());
+            for (Map.Entry<Integer, List<AttackLogRow>> entry : this.attackLogsByGame.entrySet()) {
+                writeHelper.writeInt(entry.getKey());
+                writeHelper.writeSize(entry.getValue().size());
+                for (AttackLogRow log : entry.getValue()) {
+                    writeHelper.writeInt(log.attackerId);
+                    writeHelper.writeInt(log.targetId);
+                    writeHelper.writeInt(log.turn);
+                    writeAmounts(writeHelper, log.destroyedBuildings);
+                    writeAmounts(writeHelper, log.destroyedUnits);
+                    writeAmounts(writeHelper, log.lostUnits);
+                }
+            }
+
+            writeHelper.writeSize(this.chatMessagesByGame.size());
+            for (Map.Entry<Integer, List<StoredChatMessage>> entry : this.chatMessagesByGame.entrySet()) {
+                writeHelper.writeInt(entry.getKey());
+                writeHelper.writeSize(entry.getValue().size());
+                for (StoredChatMessage message : entry.getValue()) {
+                    writeHelper.writeLong(message.id());
+                    writeHelper.writeInt(message.senderId());
+                    writeHelper.writeInt(message.receiverId());
+                    writeHelper.writeString(message.message());
+                    writeHelper.writeLong(message.timestamp());
+                }
+            }
+        }
+
+        /**
+         * Lit les tables écrites par {@link #write(WriteHelper)}.
+         *
+         * @param readHelper L'outil de lecture du fichier de stockage.
+         * @return Les tables lues.
+         * @throws IOException Si le fichier est incomplet ou n'est pas dans ce format.
+         */
+        private static Tables read(ReadHelper readHelper) throws IOException {
+            if (readHelper.readInt() != MAGIC) {
+                throw new IOException("Unknown memory storage format");
+            }
+            int version = readHelper.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported memory storage version " + version);
+            }
+            Tables tables = new Tables();
+            tables.lastUserId = readHelper.readInt();
+            tables.lastGameId = readHelper.readInt();
+            tables.lastPlayerId = readHelper.readInt();
+            tables.lastChatMessageId = readHelper.readLong();
+            tables.dataVersion = readHelper.readLong();
+
+            for (int count = readHelper.readSize(); count > 0; count--) {
+                tables.addUser(new UserRow(readHelper.readInt(), readHelper.readString(), readHelper.readString()));
+            }
+            for (int count = readHelper.readSize(); count > 0; count--) {
+                String token = readHelper.readString();
+                tables.userIdsByToken.put(token, readHelper.readInt());
+            }
+
+            for (int count = readHelper.readSize(); count > 0; count--) {
+                GameRow row = new GameRow(readHelper.readInt(), readHelper.readString(), readHelper.readInt(),
+                        readHelper.readInt(), readHelper.readInt(), readHelper.readLong());
+                row.state = GameState.values()[readHelper.readInt()];
+                long nextActionAt = readHelper.readLong();
+                row.nextActionAt = nextActionAt == -1 ? null : new Timestamp(nextActionAt);
+                row.currentTurn = readHelper.readInt();
+                row.archived = readHelper.readBoolean();
+                tables.games.put(row.id, row);
+            }
+
+            for (int count = readHelper.readSize(); count > 0; count--) {
+                PlayerRow row = new PlayerRow(readHelper.readInt(), readHelper.readInt(), readHelper.readInt(), readHelper.readInt());
+                row.gold = readHelper.readFloat();
+                row.intelligence = readHelper.readFloat();
+                row.eliminationTurn = readHelper.readInt();
+                row.exitedGame = readHelper.readBoolean();
+                row.buildings.putAll(readAmounts(readHelper));
+                row.units.putAll(readAmounts(readHelper));
+                row.buildingOrders.putAll(readAmounts(readHelper));
+                row.unitOrders.putAll(readAmounts(readHelper));
+                for (int orders = readHelper.readSize(); orders > 0; orders--) {
+                    row.attackOrders.add(new AttackOrderRow(readHelper.readInt(), readAmounts(readHelper)));
+                }
+                tables.players.put(row.id, row);
+            }
+
+            for (int count = readHelper.readSize(); count > 0; count--) {
+                int gameId = readHelper.readInt();
+                int size = readHelper.readSize();
+                List<AttackLogRow> logs = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    logs.add(new AttackLogRow(readHelper.readInt(), readHelper.readInt(), readHelper.readInt(),
+                            readAmounts(readHelper), readAmounts(readHelper), readAmounts(readHelper)));
+                }
+                tables.attackLogsByGame.put(gameId, logs);
+            }
+
+            for (int count = readHelper.readSize(); count > 0; count--) {
+                int gameId = readHelper.readInt();
+                int size = readHelper.readSize();
+                List<StoredChatMessage> messages = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    messages.add(new StoredChatMessage(readHelper.readLong(), readHelper.readInt(), readHelper.readInt(),
+                            readHelper.readString(), readHelper.readLong()));
+                }
+                tables.chatMessagesByGame.put(gameId, messages);
+            }
+            return tables;
+        }
+
+        /**
+         * Ajoute un utilisateur et l'associe à son nom, si aucun utilisateur plus ancien n'a ce nom.
+         *
+         * @param row La ligne de l'utilisateur.
+         */
+        private void addUser(UserRow row) {
+            this.users.put(row.id, row);
+            this.userIdsByName.putIfAbsent(row.username, row.id);
+        }
+    }
+
+    /**
+     * Écrit des quantités associées à l'identifiant de leur type.
+     *
+     * @param writeHelper L'outil d'écriture.
+     * @param amounts     Les quantités à écrire.
+     * @throws IOException Si une erreur se produit lors de l'écriture.
+     */
+    private static void writeAmounts(WriteHelper writeHelper, Map<Integer, Integer> amounts) throws IOException {
+        writeHelper.writeSize(amounts.size());
+        for (Map.Entry<Integer, Integer> entry : amounts.entrySet()) {
+            writeHelper.writeInt(entry.getKey());
+            writeHelper.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Lit des quantités écrites par {@link #writeAmounts(WriteHelper, Map)}.
+     *
+     * @param readHelper L'outil de lecture.
+     * @return Les quantités lues, associées à l'identifiant de leur type.
+     * @throws IOException Si une erreur se produit lors de la lecture.
+     */
+    private static HashMap<Integer, Integer> readAmounts(ReadHelper readHelper) throws IOException {
+        int size = readHelper.readSize();
+        HashMap<Integer, Integer> amounts = HashMap.newHashMap(size);
+        for (int i = 0; i < size; i++) {
+            amounts.put(readHelper.readInt(), readHelper.readInt());
+        }
+        return amounts;
+    }
+
+    /**
+     * Script SQL dont les instructions INSERT fournissent les données statiques.
+     */
+    private final Path seedScript;
+
+    /**
+     * Fichier de stockage des tables, ou null si les données ne sont gardées qu'en mémoire.
+     */
+    private final Path storageFile;
+
+    /**
+     * Thread de sauvegarde périodique du fichier de stockage, ou null s'il n'y en a pas.
+     */
+    private final ScheduledExecutorService snapshotExecutor;
+
+    /**
+     * Verrou des écritures du fichier de stockage.
+     */
+    private final Object snapshotLock = new Object();
+
+    private final Tables tables;
+
+    /**
+     * Indique si les tables ont été modifiées depuis la dernière sauvegarde du fichier de stockage.
+     */
+    private boolean dirty = false;
+
+    private boolean closed = false;
+
+    /**
+     * Constructeur du stockage en mémoire.
+     *
+     * @param seedScript             Le chemin du script SQL dont les instructions INSERT fournissent les données statiques.
+     * @param storageFile            Le chemin du fichier de stockage, ou null pour ne garder les données qu'en mémoire.
+     * @param snapshotIntervalMillis L'intervalle entre deux sauvegardes du fichier de stockage, en millisecondes,
+     *                               ou 0 pour ne le sauvegarder qu'à la fermeture.
+     */
+    public InMemoryGameRepository(String seedScript, String storageFile, long snapshotIntervalMillis) {
+        this.seedScript = Path.of(seedScript);
+        this.storageFile = storageFile == null || storageFile.isBlank() ? null : Path.of(storageFile);
+        if (this.storageFile != null && Files.exists(this.storageFile)) {
+            try {
+                byte[] content = Files.readAllBytes(this.storageFile);
+                ReadHelper readHelper = new ReadHelper();
+                readHelper.setWireFormat(WireFormat.V2);
+                readHelper.reset(content, 0, content.length);
+                this.tables = Tables.read(readHelper);
+                LogManager.logMessage("Stockage en mémoire chargé depuis " + this.storageFile);
+            } catch (IOException | RuntimeException e) {
+                throw new RuntimeException("Erreur lors de la lecture du fichier de stockage " + this.storageFile, e);
+            }
+        } else {
+            this.tables = new Tables();
+            LogManager.logMessage(this.storageFile == null ? "Stockage en mémoire sans fichier, les données seront perdues à l'arrêt du serveur." : "Nouveau stockage en mémoire, sauvegardé dans " + this.storageFile);
+        }
+        if (this.storageFile != null && snapshotIntervalMillis > 0) {
+            this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Memory Storage Snapshot Thread");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.snapshotExecutor.scheduleWithFixedDelay(this::writeSnapshot, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotExecutor = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * La transaction garde le verrou du stockage jusqu'à sa fin.
+     */
+    @Override
+    public synchronized void inTransaction(Work work) throws SQLException {
+        work.run();
+    }
+
+    @Override
+    public synchronized LoadedData load(RiseAndFallServer server) throws SQLException {
+        long start = System.nanoTime();
+        this.loadStaticData();
+
+        // Archivage des parties terminées dont tous les joueurs sont sortis, avant de charger les autres
+        for (GameRow game : this.tables.games.values()) {
+            if (!game.archived && game.state == GameState.ENDED && this.tables.players.values().stream().noneMatch(player -> player.gameId == game.id && !player.exitedGame)) {
+                game.archived = true;
+                this.markDataChanged();
+            }
+        }
+
+        List<User> users = new ArrayList<>();
+        for (UserRow row : this.tables.users.values()) {
+            users.add(new User(row.id, row.username));
+        }
+        IdRegistry<User> usersById = IdRegistry.of(users);
+        List<ServerGame> games = new ArrayList<>();
+        for (GameRow row : this.tables.games.values()) {
+            if (!row.archived) {
+                games.add(toGame(server, row));
+            }
+        }
+        IdRegistry<ServerGame> gamesById = IdRegistry.of(games);
+
+        List<ServerPlayer> players = new ArrayList<>();
+        List<PlayerRow> playerRows = new ArrayList<>();
+        for (PlayerRow row : this.tables.players.values()) {
+            ServerGame game = gamesById.get(row.gameId);
+            if (game == null) {
+                continue;
+            }
+            ServerPlayer player = toPlayer(row, usersById.getById(row.userId), game);
+            players.add(player);
+            playerRows.add(row);
+            // Ajout forcé car la partie peut avoir déjà démarré, mais on est dans un cas particulier car les données ne sont pas encore chargées
+            game.forceAddPlayer(player);
+        }
+        IdRegistry<ServerPlayer> playersById = IdRegistry.of(players);
+        for (int i = 0; i < players.size(); i++) {
+            ServerPlayer player = players.get(i);
+            PlayerRow row = playerRows.get(i);
+            copyInto(row.buildingOrders, player.getPendingBuildingsCreation(), ServerData.getBuildingTypes());
+            copyInto(row.unitOrders, player.getPendingUnitsCreation(), ServerData.getUnitTypes());
+            for (AttackOrderRow order : row.attackOrders) {
+                ObjectIntMap<UnitType> usingUnits = new IdIntMap<>(ServerData.getUnitTypes());
+                copyInto(order.units, usingUnits, ServerData.getUnitTypes());
+                player.getPendingAttacks().add(new AttackPlayerOrderData(playersById.getById(order.targetPlayerId), usingUnits));
+            }
+        }
+        LogManager.logMessage("Données du serveur chargées en mémoire en %.1f ms : %d utilisateurs, %d parties, %d joueurs".formatted(
+                (System.nanoTime() - start) / 1e6, users.size(), games.size(), players.size()));
+        return new LoadedData(users, games, players);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Les données statiques sont représentées par la taille et la date de modification du script SQL dont elles sont lues,
+     * et les autres données par leur version, incrémentée à chaque écriture.
+     */
+    @Override
+    public synchronized long computeWatermark() throws SQLException {
+        try {
+            long watermark = 31 * Files.size(this.seedScript) + Files.getLastModifiedTime(this.seedScript).toMillis();
+            return 31 * watermark + this.tables.dataVersion;
+        } catch (IOException e) {
+            throw new SQLException("Error while reading the seed script " + this.seedScript, e);
+        }
+    }
+
+    /**
+     * Signale une modification des données chargées au démarrage, qui change leur {@link #computeWatermark() empreinte}
+     * et doit être écrite dans le fichier de stockage.
+     */
+    private void markDataChanged() {
+        this.tables.dataVersion++;
+        this.dirty = true;
+    }
+
+    /**
+     * Lit les données statiques dans le script SQL et les charge dans {@link ServerData}.
+     * Les lignes insérées sans identifiant reçoivent des identifiants consécutifs à partir de 1, comme une colonne SERIAL.
+     *
+     * @throws SQLException Si le script ne peut pas être lu.
+     */
+    private void loadStaticData() throws SQLException {
+        Map<String, List<Map<String, String>>> rowsByTable;
+        try {
+            rowsByTable = SqlSeedReader.readInserts(this.seedScript);
+        } catch (IOException e) {
+            throw new SQLException("Error while reading the seed script " + this.seedScript, e);
+        }
+        List<Race> races = new ArrayList<>();
+        int nextId = 1;
+        for (Map<String, String> row : rowsByTable.getOrDefault("race", List.of())) {
+            int id = row.containsKey("id") ? Integer.parseInt(row.get("id")) : nextId;
+            nextId = id + 1;
+            races.add(new Race(id, row.get("name"), row.get("description"), Float.parseFloat(row.get("gold_multiplier")),
+                    Float.parseFloat(row.get("intelligence_multiplier")), Float.parseFloat(row.get("damage_multiplier")),
+                    Float.parseFloat(row.get("health_multiplier"))));
+        }
+        IdRegistry<Race> racesById = IdRegistry.of(races);
+        List<BuildingType> buildingTypes = new ArrayList<>();
+        nextId = 1;
+        for (Map<String, String> row : rowsByTable.getOrDefault("building_type", List.of())) {
+            int id = row.containsKey("id") ? Integer.parseInt(row.get("id")) : nextId;
+            nextId = id + 1;
+            String accessibleRaceId = row.get("accessible_race_id");
+            buildingTypes.add(new BuildingType(id, row.get("name"), row.get("description"), Float.parseFloat(row.get("price")),
+                    Float.parseFloat(row.getOrDefault("required_intelligence", "0")), Float.parseFloat(row.get("gold_production")),
+                    Float.parseFloat(row.get("intelligence_production")), Float.parseFloat(row.get("resistance")),
+                    Integer.parseInt(row.get("max_units")), Integer.parseInt(row.get("initial_amount")),
+                    accessibleRaceId == null ? null : racesById.getById(Integer.parseInt(accessibleRaceId)),
+                    Boolean.parseBoolean(row.get("defensive"))));
+        }
+        List<UnitType> unitTypes = new ArrayList<>();
+        nextId = 1;
+        for (Map<String, String> row : rowsByTable.getOrDefault("unit_type", List.of())) {
+            int id = row.containsKey("id") ? Integer.parseInt(row.get("id")) : nextId;
+            nextId = id + 1;
+            String accessibleRaceId = row.get("accessible_race_id");
+            unitTypes.add(new UnitType(id, row.get("name"), row.get("description"), Float.parseFloat(row.get("price")),
+                    Float.parseFloat(row.get("required_intelligence")), Float.parseFloat(row.get("health")), Float.parseFloat(row.get("damage")),
+                    accessibleRaceId == null ? null : racesById.getById(Integer.parseInt(accessibleRaceId))));
+        }
+        ServerData.init(races, buildingTypes, unitTypes);
+    }
+
+    /**
+     * Crée une partie à partir de sa ligne.
+     *
+     * @param server Instance du serveur.
+     * @param row    La ligne de la partie.
+     * @return La partie.
+     */
+    private static ServerGame toGame(RiseAndFallServer server, GameRow row) {
+        return new ServerGame(server, row.id, row.name, row.turnInterval, row.minPlayers, row.maxPlayers, false, row.state, row.nextActionAt, row.currentTurn, row.randomSeed);
+    }
+
+    /**
+     * Crée un joueur à partir de sa ligne, avec ses bâtiments et ses unités.
+     *
+     * @param row  La ligne du joueur.
+     * @param user L'utilisateur du joueur.
+     * @param game La partie du joueur.
+     * @return Le joueur, sans ses ordres.
+     */
+    private static ServerPlayer toPlayer(PlayerRow row, User user, ServerGame game) {
+        Race race = Identifiable.getById(ServerData.getRaces(), row.raceId);
+        ServerPlayer player = new ServerPlayer(row.id, user, game, race, row.gold, row.intelligence, row.eliminationTurn, row.exitedGame);
+        copyInto(row.buildings, player.getBuildingMap(), ServerData.getBuildingTypes());
+        copyInto(row.units, player.getUnitMap(), ServerData.getUnitTypes());
+        return player;
+    }
+
+    /**
+     * Copie des quantités associées à l'identifiant de leur type dans une association d'objets.
+     *
+     * @param source      Les quantités associées à l'identifiant de leur type.
+     * @param destination L'association à remplir.
+     * @param types       Les types possibles.
+     * @param <T>         Le type des clés de l'association.
+     */
+    private static <T extends Identifiable> void copyInto(Map<Integer, Integer> source, ObjectIntMap<T> destination, List<T> types) {
+        for (Map.Entry<Integer, Integer> entry : source.entrySet()) {
+            destination.set(Identifiable.getById(types, entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Copie une association d'objets dans une association de quantités par identifiant de type.
+     *
+     * @param map L'association à copier.
+     * @return Les quantités associées à l'identifiant de leur type.
+     */
+    private static HashMap<Integer, Integer> copyOf(ObjectIntMap<? extends Identifiable> map) {
+        HashMap<Integer, Integer> copy = new HashMap<>();
+        ObjectIntMap.Cursor<? extends Identifiable> cursor = map.cursor();
+        while (cursor.next()) {
+            copy.put(cursor.getKey().getId(), cursor.getValue());
+        }
+        return copy;
+    }
+
+    /**
+     * Récupère la ligne d'un joueur.
+     *
+     * @param playerId L'identifiant du joueur.
+     * @return La ligne du joueur.
+     * @throws SQLException Si aucun joueur n'a cet identifiant.
+     */
+    private PlayerRow getPlayerRow(int playerId) throws SQLException {
+        PlayerRow row = this.tables.players.get(playerId);
+        if (row == null) {
+            throw new SQLException("Unknown player " + playerId);
+        }
+        return row;
+    }
+
+    @Override
+    public synchronized int findUserId(String username, String passwordHash) {
+        Integer userId = this.tables.userIdsByName.get(username);
+        return userId != null && this.tables.users.get(userId).passwordHash.equals(passwordHash) ? userId : -1;
+    }
+
+    @Override
+    public synchronized int findUserIdByToken(String token) {
+        return this.tables.userIdsByToken.getOrDefault(token, -1);
+    }
+
+    @Override
+    public synchronized boolean isUsernameTaken(String username) {
+        return this.tables.userIdsByName.containsKey(username);
+    }
+
+    @Override
+    public synchronized int createUser(String username, String passwordHash) {
+        int id = ++this.tables.lastUserId;
+        this.tables.addUser(new UserRow(id, username, passwordHash));
+        this.markDataChanged();
+        return id;
+    }
+
+    @Override
+    public synchronized void saveToken(int userId, String token) throws SQLException {
+        if (!this.tables.users.containsKey(userId)) {
+            throw new SQLException("Unknown user " + userId);
+        }
+        this.tables.userIdsByToken.put(token, userId);
+        this.dirty = true;
+    }
+
+    @Override
+    public synchronized ServerGame createGame(RiseAndFallServer server, String name) {
+        GameRow row = new GameRow(++this.tables.lastGameId, name, TurnRandom.newGameSeed());
+        this.tables.games.put(row.id, row);
+        this.markDataChanged();
+        return toGame(server, row);
+    }
+
+    @Override
+    public synchronized int createPlayer(int userId, int gameId, int raceId) throws SQLException {
+        if (!this.tables.users.containsKey(userId) || !this.tables.games.containsKey(gameId)) {
+            throw new SQLException("Unknown user %d or game %d".formatted(userId, gameId));
+        }
+        PlayerRow row = new PlayerRow(++this.tables.lastPlayerId, userId, gameId, raceId);
+        this.tables.players.put(row.id, row);
+        this.markDataChanged();
+        return row.id;
+    }
+
+    @Override
+    public synchronized void deletePlayer(int playerId) {
+        PlayerRow removed = this.tables.players.remove(playerId);
+        if (removed == null) {
+            return;
+        }
+        // Suppressions en cascade des lignes qui font référence au joueur
+        for (PlayerRow row : this.tables.players.values()) {
+            if (row.gameId == removed.gameId) {
+                row.attackOrders.removeIf(order -> order.targetPlayerId == playerId);
+            }
+        }
+        List<AttackLogRow> attackLogs = this.tables.attackLogsByGame.get(removed.gameId);
+        if (attackLogs != null) {
+            attackLogs.removeIf(log -> log.attackerId == playerId || log.targetId == playerId);
+        }
+        List<StoredChatMessage> messages = this.tables.chatMessagesByGame.get(removed.gameId);
+        if (messages != null) {
+            messages.removeIf(message -> message.senderId() == playerId || message.receiverId() == playerId);
+        }
+        this.markDataChanged();
+    }
+
+    @Override
+    public synchronized void saveChanges(StateChanges changes) throws SQLException {
+        // Vérification préalable, pour ne rien modifier si un joueur n'existe pas
+        for (StateChanges.PlayerRow player : changes.updatedPlayers) {
+            this.getPlayerRow(player.playerId());
+        }
+        for (StateChanges.NewAttack attack : changes.newAttacks) {
+            this.getPlayerRow(attack.playerId());
+        }
+        if (changes.game != null && !this.tables.games.containsKey(changes.game.id())) {
+            throw new SQLException("Unknown game " + changes.game.id());
+        }
+
+        for (StateChanges.PlayerRow player : changes.updatedPlayers) {
+            PlayerRow row = this.getPlayerRow(player.playerId());
+            row.gold = player.gold();
+            row.intelligence = player.intelligence();
+            row.eliminationTurn = player.eliminationTurn();
+            row.exitedGame = player.exitedGame();
+        }
+        int rows = changes.updatedPlayers.size();
+        for (int[] reset : changes.resetOrdersPlayers) {
+            PlayerRow row = this.tables.players.get(reset[0]);
+            if (row != null) {
+                row.buildingOrders.clear();
+                row.unitOrders.clear();
+            }
+        }
+        rows += changes.resetOrdersPlayers.size();
+        rows += this.applyRows(changes.deletedBuildingOrders, row -> row.buildingOrders);
+        rows += this.applyRows(changes.deletedUnitOrders, row -> row.unitOrders);
+        rows += this.applyRows(changes.buildingRows, row -> row.buildings);
+        rows += this.applyRows(changes.unitRows, row -> row.units);
+        rows += this.applyRows(changes.buildingOrderRows, row -> row.buildingOrders);
+        rows += this.applyRows(changes.unitOrderRows, row -> row.unitOrders);
+        for (int[] reset : changes.resetAttacksPlayers) {
+            PlayerRow row = this.tables.players.get(reset[0]);
+            if (row != null) {
+                row.attackOrders.clear();
+            }
+        }
+        rows += changes.resetAttacksPlayers.size();
+        for (StateChanges.NewAttack attack : changes.newAttacks) {
+            HashMap<Integer, Integer> units = copyOf(attack.order().getUsingUnits());
+            units.values().removeIf(amount -> amount == 0);
+            this.getPlayerRow(attack.playerId()).attackOrders.add(new AttackOrderRow(attack.order().getTargetPlayer().getId(), units));
+        }
+        rows += changes.newAttacks.size();
+        if (changes.game != null) {
+            GameRow row = this.tables.games.get(changes.game.id());
+            row.state = changes.game.state();
+            row.nextActionAt = changes.game.nextActionAt();
+            row.currentTurn = changes.game.currentTurn();
+            rows++;
+        }
+        changes.count(0, rows);
+        if (rows != 0) {
+            this.markDataChanged();
+        }
+    }
+
+    /**
+     * Applique des lignes (joueur, type, quantité) ou des suppressions (joueur, type) à une association des joueurs.
+     *
+     * @param rows  Les lignes à appliquer.
+     * @param table La fonction qui renvoie l'association concernée d'un joueur.
+     * @return Le nombre de lignes appliquées.
+     */
+    private int applyRows(List<int[]> rows, Function<PlayerRow, Map<Integer, Integer>> table) {
+        for (int[] values : rows) {
+            PlayerRow row = this.tables.players.get(values[0]);
+            if (row == null) {
+                continue;
+            }
+            if (values.length == 2) {
+                table.apply(row).remove(values[1]);
+            } else {
+                table.apply(row).put(values[1], values[2]);
+            }
+        }
+        return rows.size();
+    }
+
+    @Override
+    public synchronized void archiveGame(int gameId) {
+        GameRow row = this.tables.games.get(gameId);
+        if (row != null) {
+            row.archived = true;
+            this.markDataChanged();
+        }
+    }
+
+    @Override
+    public synchronized ServerGame loadArchivedGame(RiseAndFallServer server, int gameId) {
+        GameRow gameRow = this.tables.games.get(gameId);
+        if (gameRow == null || !gameRow.archived) {
+            return null;
+        }
+        UserManager userManager = server.getUserManager();
+        ServerGame game = toGame(server, gameRow);
+        for (PlayerRow row : this.tables.players.values()) {
+            if (row.gameId != gameId) {
+                continue;
+            }
+            User user = userManager.getUser(row.userId);
+            if (user == null) {
+                continue; // Le compte de l'utilisateur a été supprimé
+            }
+            game.forceAddPlayer(toPlayer(row, user, game));
+        }
+        return game;
+    }
+
+    @Override
+    public synchronized void saveAttackResults(int turn, List<AttackResult> results) throws SQLException {
+        for (AttackResult result : results) {
+            this.getPlayerRow(result.getTarget().getId());
+        }
+        for (AttackResult result : results) {
+            PlayerRow attacker = this.getPlayerRow(result.getAttacker().getId());
+            this.tables.attackLogsByGame.computeIfAbsent(attacker.gameId, id -> new ArrayList<>()).add(new AttackLogRow(
+                    attacker.id, result.getTarget().getId(), turn, copyOf(result.getDestroyedBuildings()),
+                    copyOf(result.getDestroyedUnits()), copyOf(result.getLostUnits())));
+        }
+        this.dirty = true;
+    }
+
+    @Override
+    public synchronized Map<Integer, List<AttackResult>> loadAttackResults(int gameId, IdRegistry<ServerPlayer> playersById) {
+        Map<Integer, List<AttackResult>> resultsByTurn = new HashMap<>();
+        for (AttackLogRow log : this.tables.attackLogsByGame.getOrDefault(gameId, List.of())) {
+            ServerPlayer attacker = playersById.getByIdOrNull(log.attackerId);
+            ServerPlayer target = playersById.getByIdOrNull(log.targetId);
+            if (attacker == null || target == null) {
+                continue;
+            }
+            AttackResult result = new AttackResult(attacker, target, new IdIntMap<>(ServerData.getBuildingTypes()),
+                    new IdIntMap<>(ServerData.getUnitTypes()), new IdIntMap<>(ServerData.getUnitTypes()));
+            copyInto(log.destroyedBuildings, result.getDestroyedBuildings(), ServerData.getBuildingTypes());
+            copyInto(log.destroyedUnits, result.getDestroyedUnits(), ServerData.getUnitTypes());
+            copyInto(log.lostUnits, result.getLostUnits(), ServerData.getUnitTypes());
+            resultsByTurn.computeIfAbsent(log.turn, k -> new ArrayList<>()).add(result);
+        }
+        return resultsByTurn;
+    }
+
+    @Override
+    public synchronized StoredChatMessage saveChatMessage(int senderId, int receiverId, String message) throws SQLException {
+        PlayerRow sender = this.getPlayerRow(senderId);
+        this.getPlayerRow(receiverId);
+        StoredChatMessage stored = new StoredChatMessage(++this.tables.lastChatMessageId, senderId, receiverId, message, System.currentTimeMillis());
+        this.tables.chatMessagesByGame.computeIfAbsent(sender.gameId, id -> new ArrayList<>()).add(stored);
+        this.dirty = true;
+        return stored;
+    }
+
+    @Override
+    public synchronized List<StoredChatMessage> loadRecentChatMessages(int gameId, int perConversation) {
+        List<StoredChatMessage> messages = this.tables.chatMessagesByGame.getOrDefault(gameId, List.of());
+        Map<Long, Integer> counts = new HashMap<>();
+        List<StoredChatMessage> recent = new ArrayList<>();
+        for (StoredChatMessage message : messages.reversed()) {
+            long key = ((long) Math.min(message.senderId(), message.receiverId()) << 32) | (Math.max(message.senderId(), message.receiverId()) & 0xFFFFFFFFL);
+            if (counts.merge(key, 1, Integer::sum) <= perConversation) {
+                recent.add(message);
+            }
+        }
+        return recent.reversed();
+    }
+
+    @Override
+    public synchronized List<StoredChatMessage> loadChatMessagesBefore(int playerId, int otherPlayerId, long beforeId, int limit) {
+        PlayerRow player = this.tables.players.get(playerId);
+        if (player == null) {
+            return List.of();
+        }
+        List<StoredChatMessage> page = new ArrayList<>();
+        for (StoredChatMessage message : this.tables.chatMessagesByGame.getOrDefault(player.gameId, List.of()).reversed()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (message.id() < beforeId && ((message.senderId() == playerId && message.receiverId() == otherPlayerId)
+                    || (message.senderId() == otherPlayerId && message.receiverId() == playerId))) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Sauvegarde les tables dans le fichier de stockage si elles ont été modifiées depuis la dernière sauvegarde.
+     * Les tables sont copiées sous le verrou du stockage, puis écrites dans un fichier temporaire qui remplace le
+     * fichier de stockage, pour ne jamais laisser un fichier incomplet.
+     */
+    private void writeSnapshot() {
+        synchronized (this.snapshotLock) {
+            byte[] snapshot;
+            synchronized (this) {
+                if (!this.dirty) {
+                    return;
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+                WriteHelper writeHelper = new WriteHelper(bytes);
+                writeHelper.setWireFormat(WireFormat.V2);
+                try {
+                    this.tables.write(writeHelper);
+                } catch (IOException e) {
+                    LogManager.logError("Erreur lors de la copie des tables du stockage en mémoire.", e);
+                    return;
+                }
+                snapshot = bytes.toByteArray();
+                this.dirty = false;
+            }
+            Path temporaryFile = this.storageFile.resolveSibling(this.storageFile.getFileName() + ".tmp");
+            try {
+                Files.write(temporaryFile, snapshot);
+                Files.move(temporaryFile, this.storageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                synchronized (this) {
+                    this.dirty = true; // Nouvelle tentative à la prochaine sauvegarde
+                }
+                LogManager.logError("Erreur lors de l'écriture du fichier de stockage " + this.storageFile, e);
+            }
+        }
+    }
+
+    /**
+     * Arrête la sauvegarde périodique puis sauvegarde une dernière fois le fichier de stockage.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            LogManager.logMessage("Stockage en mémoire : %d utilisateurs, %d parties, %d joueurs".formatted(
+                    this.tables.users.size(), this.tables.games.size(), this.tables.players.size()));
+        }
+        if (this.snapshotExecutor != null) {
+            this.snapshotExecutor.shutdownNow();
+        }
+        if (this.storageFile != null) {
+            this.writeSnapshot();
+        }
+    }
+}
@@ -0,0 +1,961 @@
+package fr.butinfoalt.riseandfall.server.repository;
+
+import fr.butinfoalt.riseandfall.gamelogic.GameState;
+import fr.butinfoalt.riseandfall.gamelogic.data.*;
+import fr.butinfoalt.riseandfall.server.DatabaseManager;
+import fr.butinfoalt.riseandfall.server.PooledConnection;
+import fr.butinfoalt.riseandfall.server.RiseAndFallServer;
+import fr.butinfoalt.riseandfall.server.ServerPlayer;
+import fr.butinfoalt.riseandfall.server.UserManager;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.data.User;
+import fr.butinfoalt.riseandfall.server.orders.TurnRandom;
+import fr.butinfoalt.riseandfall.util.IdIntMap;
+import fr.butinfoalt.riseandfall.util.ObjectIntMap;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static fr.butinfoalt.riseandfall.server.Environment.DB_POOL_SIZE;
+
+/**
+ * Stockage des données du serveur dans la base de données MariaDB décrite par SQL/init.sql.
+ * Chaque opération emprunte une connexion au pool du {@link DatabaseManager} ; les opérations exécutées par un même
+ * thread pendant {@link #inTransaction(Work)} partagent la connexion de la transaction.
+ */
+public class JdbcGameRepository implements GameRepository {
+    /**
+     * Nombre maximal de lignes écrites par une même requête.
+     */
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    /**
+     * Requête chargeant tous les résultats d'attaques d'une partie. Chaque attaque est suivie de ses détails :
+     * bâtiments détruits (type 0), unités détruites (type 1) et unités perdues par l'attaquant (type 2).
+     */
+    private static final String ATTACK_RESULTS_QUERY = """
+            SELECT l.id, l.attacker_player_id, l.target_player_id, l.turn, -1 AS kind, 0 AS type_id, 0 AS amount
+            FROM attacks_logs l JOIN player p ON p.id = l.attacker_player_id WHERE p.game_id = ?
+            UNION ALL
+            SELECT l.id, l.attacker_player_id, l.target_player_id, l.turn, 0, d.building_type_id, d.amount
+            FROM attacks_destroyed_buildings d JOIN attacks_logs l ON l.id = d.attack_log_id JOIN player p ON p.id = l.attacker_player_id WHERE p.game_id = ?
+            UNION ALL
+            SELECT l.id, l.attacker_player_id, l.target_player_id, l.turn, 1, d.unit_type_id, d.amount
+            FROM attacks_destroyed_units d JOIN attacks_logs l ON l.id = d.attack_log_id JOIN player p ON p.id = l.attacker_player_id WHERE p.game_id = ?
+            UNION ALL
+            SELECT l.id, l.attacker_player_id, l.target_player_id, l.turn, 2, d.unit_type_id, d.amount
+            FROM attacks_lost_units d JOIN attacks_logs l ON l.id = d.attack_log_id JOIN player p ON p.id = l.attacker_player_id WHERE p.game_id = ?
+            ORDER BY id, kind""";
+
+    /**
+     * Requête chargeant les messages les plus récents de chaque conversation d'une partie.
+     */
+    private static final String RECENT_CHAT_QUERY = """
+            SELECT id, sender_player_id, receiver_player_id, message, sent_at FROM (
+                SELECT c.*, ROW_NUMBER() OVER (
+                    PARTITION BY LEAST(c.sender_player_id, c.receiver_player_id), GREATEST(c.sender_player_id, c.receiver_player_id)
+                    ORDER BY c.id DESC) AS position
+                FROM chat_message c JOIN player p ON p.id = c.sender_player_id WHERE p.game_id = ?
+            ) m WHERE position <= ? ORDER BY id""";
+
+    /**
+     * Requête chargeant les messages d'une conversation plus anciens qu'un identifiant.
+     */
+    private static final String CHAT_PAGE_QUERY = """
+            SELECT id, sender_player_id, receiver_player_id, message, sent_at FROM chat_message
+            WHERE ((sender_player_id = ? AND receiver_player_id = ?) OR (sender_player_id = ? AND receiver_player_id = ?)) AND id < ?
+            ORDER BY id DESC LIMIT ?""";
+
+    /**
+     * Requête calculant l'empreinte des données chargées au démarrage : la version des données modifiées par le serveur,
+     * incrémentée avant la première transaction qui suit chaque calcul de l'empreinte, et un résumé des tables de
+     * données statiques, qui ne sont modifiées qu'à la main et ne contiennent que quelques lignes. Chaque table statique
+     * est résumée côté serveur par son nombre de lignes et le ou exclusif des sommes de contrôle de ses lignes, sans
+     * transférer les lignes.
+     */
+    private static final String WATERMARK_QUERY = "SELECT " + String.join(", ",
+            "(SELECT version FROM data_version WHERE id = 1)",
+            tableFingerprint("id, name, description, gold_multiplier, intelligence_multiplier, damage_multiplier, health_multiplier", "race"),
+            tableFingerprint("id, name, description, price, required_intelligence, gold_production, intelligence_production, resistance, max_units, initial_amount, accessible_race_id, defensive", "building_type"),
+            tableFingerprint("id, name, description, price, required_intelligence, health, damage, accessible_race_id", "unit_type"));
+
+    /**
+     * Le gestionnaire de base de données, qui fournit les connexions.
+     */
+    private final DatabaseManager databaseManager;
+
+    /**
+     * Verrou partagé par les transactions et pris en exclusivité par le calcul de l'empreinte, pour que l'empreinte ne
+     * soit jamais lue entre l'incrément de la version et la validation de la transaction qui l'a déclenché.
+     */
+    private final ReentrantReadWriteLock dataVersionLock = new ReentrantReadWriteLock();
+
+    /**
+     * Indique que la version des données a été incrémentée depuis le dernier calcul de l'empreinte : les transactions
+     * suivantes n'ont plus besoin de l'incrémenter, puisque l'empreinte calculée a déjà changé.
+     */
+    private volatile boolean dataVersionBumped = false;
+
+    /**
+     * Constructeur du stockage.
+     *
+     * @param databaseManager Le gestionnaire de base de données, fermé avec le stockage.
+     */
+    public JdbcGameRepository(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    /**
+     * Emprunte une connexion à la base de données, celle de la transaction en cours si le thread en a ouvert une.
+     *
+     * @return La connexion empruntée, à fermer pour la rendre au pool.
+     * @throws SQLException Si aucune connexion n'est disponible à temps.
+     */
+    private PooledConnection getDb() throws SQLException {
+        return this.databaseManager.getDb();
+    }
+
+    /**
+     * Incrémente la version des données chargées au démarrage, qui fait partie de leur {@link #computeWatermark() empreinte}.
+     *
+     * @param db La connexion à la base de données.
+     * @throws SQLException Si la version ne peut pas être incrémentée.
+     */
+    private static void bumpDataVersion(PooledConnection db) throws SQLException {
+        try (PreparedStatement statement = db.prepareStatement("UPDATE data_version SET version = version + 1 WHERE id = 1")) {
+            if (statement.executeUpdate() != 1) {
+                throw new SQLException("The data_version table has no row with id 1");
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * La première transaction qui suit un calcul de l'empreinte incrémente la version des données avant de commencer,
+     * par une requête validée à part : les transactions suivantes ne prennent pas le verrou de la ligne de version, si
+     * bien que les écritures des différentes parties ne s'attendent pas les unes les autres.
+     */
+    @Override
+    public void inTransaction(Work work) throws SQLException {
+        try (PooledConnection db = this.getDb()) {
+            Connection connection = db.getConnection();
+            if (!connection.getAutoCommit()) {
+                // Transaction déjà ouverte par ce thread, les opérations en font partie
+                work.run();
+                return;
+            }
+            Lock sharedLock = this.dataVersionLock.readLock();
+            sharedLock.lock();
+            try {
+                if (!this.dataVersionBumped) {
+                    bumpDataVersion(db);
+                    this.dataVersionBumped = true;
+                }
+                connection.setAutoCommit(false);
+                try {
+                    work.run();
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    try {
+                        connection.rollback();
+                    } catch (SQLException rollbackException) {
+                        e.addSuppressed(rollbackException);
+                    }
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                sharedLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Les tables indépendantes sont chargées en parallèle, et les lignes qui font référence à d'autres objets
+     * sont résolues avec des index par identifiant. Le temps de chargement de chaque table est journalisé.
+     */
+    @Override
+    public LoadedData load(RiseAndFallServer server) throws SQLException {
+        try (StartupLoader loader = new StartupLoader(this.databaseManager, DB_POOL_SIZE)) {
+            List<Race> races = new ArrayList<>();
+            List<User> users = new ArrayList<>();
+            List<ServerPlayer> players = new ArrayList<>();
+            List<ServerGame> games = new ArrayList<>();
+
+            List<BuildingType> buildingTypes = new ArrayList<>();
+            List<UnitType> unitTypes = new ArrayList<>();
+
+            // Archivage des parties terminées dont tous les joueurs sont sortis, avant de charger les autres
+            loader.load("game (archivage)", db -> {
+                int[] archived = new int[1];
+                this.inTransaction(() -> {
+                    try (PreparedStatement statement = db.prepareStatement("UPDATE game g SET archived = true WHERE NOT archived AND state = 'ENDED' AND NOT EXISTS (SELECT 1 FROM player p WHERE p.game_id = g.id AND NOT p.exited_game)")) {
+                        archived[0] = statement.executeUpdate();
+                    }
+                });
+                return archived[0];
+            });
+            loader.await();
+
+            loader.load("race", db -> {
+                try (PreparedStatement statement = db.prepareStatement("SELECT * FROM race ORDER BY id")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        int id = set.getInt("id");
+                        String name = set.getString("name");
+                        String description = set.getString("description");
+                        float goldMultiplier = set.getFloat("gold_multiplier");
+                        float intelligenceMultiplier = set.getFloat("intelligence_multiplier");
+                        float damageMultiplier = set.getFloat("damage_multiplier");
+                        float healthMultiplier = set.getFloat("health_multiplier");
+                        races.add(new Race(id, name, description, goldMultiplier, intelligenceMultiplier, damageMultiplier, healthMultiplier));
+                    }
+                }
+                return races.size();
+            });
+            loader.load("game", db -> {
+                try (PreparedStatement statement = db.prepareStatement("SELECT * FROM game WHERE NOT archived")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        games.add(readGame(server, set));
+                    }
+                }
+                return games.size();
+            });
+            loader.load("user", db -> {
+                try (PreparedStatement statement = db.prepareStatement("SELECT * FROM `user`")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        int id = set.getInt("id");
+                        String username = set.getString("username");
+                        users.add(new User(id, username));
+                    }
+                }
+                return users.size();
+            });
+            loader.await();
+
+            IdRegistry<Race> racesById = IdRegistry.of(races);
+            loader.load("building_type", db -> {
+                try (PreparedStatement statement = db.prepareStatement("SELECT * FROM building_type ORDER BY id")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        int id = set.getInt("id");
+                        String name = set.getString("name");
+                        String description = set.getString("description");
+                        float price = set.getFloat("price");
+                        float requiredIntelligence = set.getFloat("required_intelligence");
+                        float goldProduction = set.getFloat("gold_production");
+                        float intelligenceProduction = set.getFloat("intelligence_production");
+                        float resistance = set.getFloat("resistance");
+                        int maxUnits = set.getInt("max_units");
+                        int initialAmount = set.getInt("initial_amount");
+                        int accessibleRaceId = set.getInt("accessible_race_id");
+                        Race accessibleRace = set.wasNull() ? null : racesById.getById(accessibleRaceId);
+                        boolean defensive = set.getBoolean("defensive");
+                        buildingTypes.add(new BuildingType(id, name, description, price, requiredIntelligence, goldProduction, intelligenceProduction, resistance, maxUnits, initialAmount, accessibleRace, defensive));
+                    }
+                }
+                return buildingTypes.size();
+            });
+            loader.load("unit_type", db -> {
+                try (PreparedStatement statement = db.prepareStatement("SELECT * FROM unit_type ORDER BY id")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        int id = set.getInt("id");
+                        String name = set.getString("name");
+                        String description = set.getString("description");
+                        float price = set.getFloat("price");
+                        float requiredIntelligence = set.getFloat("required_intelligence");
+                        float health = set.getFloat("health");
+                        float damage = set.getFloat("damage");
+                        int accessibleRaceId = set.getInt("accessible_race_id");
+                        Race accessibleRace = set.wasNull() ? null : racesById.getById(accessibleRaceId);
+                        unitTypes.add(new UnitType(id, name, description, price, requiredIntelligence, health, damage, accessibleRace));
+                    }
+                }
+                return unitTypes.size();
+            });
+            loader.await();
+
+            // Nécessaire pour charger les joueurs juste après
+            ServerData.init(races, buildingTypes, unitTypes);
+
+            IdRegistry<User> usersById = IdRegistry.of(users);
+            IdRegistry<ServerGame> gamesById = IdRegistry.of(games);
+            loader.load("player", db -> {
+                try (PreparedStatement statement = db.prepareStatement("SELECT p.* FROM player p JOIN game g ON g.id = p.game_id WHERE NOT g.archived")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        User user = usersById.getById(set.getInt("user_id"));
+                        ServerGame game = gamesById.getById(set.getInt("game_id"));
+                        ServerPlayer player = readPlayer(set, user, game);
+                        players.add(player);
+                        // Ajout forcé car la partie peut avoir déjà démarré, mais on est dans un cas particulier car les données ne sont pas encore chargées
+                        game.forceAddPlayer(player);
+                    }
+                }
+                return players.size();
+            });
+            loader.await();
+
+            // Chaque table ci-dessous ne modifie qu'une seule association des joueurs, elles peuvent donc être chargées en parallèle
+            IdRegistry<ServerPlayer> playersById = IdRegistry.of(players);
+            IdRegistry<BuildingType> buildingTypesById = IdRegistry.of(buildingTypes);
+            IdRegistry<UnitType> unitTypesById = IdRegistry.of(unitTypes);
+            loader.load("player_building", db -> {
+                int rows = 0;
+                try (PreparedStatement statement = db.prepareStatement("SELECT pb.* FROM player_building pb JOIN player p ON p.id = pb.player_id JOIN game g ON g.id = p.game_id WHERE NOT g.archived")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        ServerPlayer player = playersById.getById(set.getInt("player_id"));
+                        BuildingType buildingType = buildingTypesById.getById(set.getInt("building_id"));
+                        player.getBuildingMap().set(buildingType, set.getInt("quantity"));
+                        rows++;
+                    }
+                }
+                return rows;
+            });
+            loader.load("player_unit", db -> {
+                int rows = 0;
+                try (PreparedStatement statement = db.prepareStatement("SELECT pu.* FROM player_unit pu JOIN player p ON p.id = pu.player_id JOIN game g ON g.id = p.game_id WHERE NOT g.archived")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        ServerPlayer player = playersById.getById(set.getInt("player_id"));
+                        UnitType unitType = unitTypesById.getById(set.getInt("unit_id"));
+                        player.getUnitMap().set(unitType, set.getInt("quantity"));
+                        rows++;
+                    }
+                }
+                return rows;
+            });
+            loader.load("building_creation_order", db -> {
+                int rows = 0;
+                try (PreparedStatement statement = db.prepareStatement("SELECT bo.* FROM building_creation_order bo JOIN player p ON p.id = bo.player_id JOIN game g ON g.id = p.game_id WHERE NOT g.archived")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        ServerPlayer player = playersById.getById(set.getInt("player_id"));
+                        BuildingType buildingType = buildingTypesById.getById(set.getInt("building_type_id"));
+                        player.getPendingBuildingsCreation().set(buildingType, set.getInt("amount"));
+                        rows++;
+                    }
+                }
+                return rows;
+            });
+            loader.load("unit_creation_order", db -> {
+                int rows = 0;
+                try (PreparedStatement statement = db.prepareStatement("SELECT uo.* FROM unit_creation_order uo JOIN player p ON p.id = uo.player_id JOIN game g ON g.id = p.game_id WHERE NOT g.archived")) {
+                    ResultSet set = statement.executeQuery();
+                    while (set.next()) {
+                        ServerPlayer player = playersById.getById(set.getInt("player_id"));
+                        UnitType unitType = unitTypesById.getById(set.getInt("unit_type_id"));
+                        player.getPendingUnitsCreation().set(unitType, set.getInt("amount"));
+                        rows++;
+                    }
+                }
+                return rows;
+            });
+            loader.load("attack_player_order", db -> {
+                int rows = 0;
+                // Une seule requête pour les ordres et leurs unités, les lignes d'un même ordre étant consécutives
+                try (PreparedStatement statement = db.prepareStatement("SELECT o.id, o.player_id, o.target_player_id, u.unit_type_id, u.amount FROM attack_player_order o JOIN player p ON p.id = o.player_id JOIN game g ON g.id = p.game_id LEFT JOIN attack_player_order_unit u ON u.order_id = o.id WHERE NOT g.archived ORDER BY o.id")) {
+                    ResultSet set = statement.executeQuery();
+                    int currentOrderId = -1;
+                    ObjectIntMap<UnitType> usingUnits = null;
+                    while (set.next()) {
+                        int orderId = set.getInt("id");
+                        if (orderId != currentOrderId) {
+                            currentOrderId = orderId;
+                            ServerPlayer player = playersById.getById(set.getInt("player_id"));
+                            ServerPlayer targetPlayer = playersById.getById(set.getInt("target_player_id"));
+                            usingUnits = new IdIntMap<>(unitTypes);
+                            player.getPendingAttacks().add(new AttackPlayerOrderData(targetPlayer, usingUnits));
+                        }
+                        int unitTypeId = set.getInt("unit_type_id");
+                        if (!set.wasNull()) {
+                            usingUnits.set(unitTypesById.getById(unitTypeId), set.getInt("amount"));
+                        }
+                        rows++;
+                    }
+                }
+                return rows;
+            });
+            loader.await();
+            loader.logReport();
+            return new LoadedData(users, games, players);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * L'empreinte est calculée par une seule requête, qui lit la ligne de version et ne parcourt que les tables de
+     * données statiques. Le calcul attend la fin des transactions en cours, et la transaction suivante incrémentera de
+     * nouveau la version. Ne doit pas être appelée pendant une transaction.
+     */
+    @Override
+    public long computeWatermark() throws SQLException {
+        Lock exclusiveLock = this.dataVersionLock.writeLock();
+        exclusiveLock.lock();
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement(WATERMARK_QUERY)) {
+            this.dataVersionBumped = false;
+            ResultSet set = statement.executeQuery();
+            set.next();
+            long watermark = 1;
+            for (int i = 1; i <= set.getMetaData().getColumnCount(); i++) {
+                watermark = 31 * watermark + set.getLong(i);
+            }
+            return watermark;
+        } finally {
+            exclusiveLock.unlock();
+        }
+    }
+
+    /**
+     * Crée la sous-requête résumant une table pour {@link #WATERMARK_QUERY} : le nombre de lignes dans les bits de
+     * poids fort, et le ou exclusif des sommes de contrôle CRC32 des lignes dans les 32 bits de poids faible.
+     *
+     * @param columns Les colonnes de chaque ligne prises en compte.
+     * @param from    La table et ses éventuelles jointures et conditions.
+     * @return La sous-requête.
+     */
+    private static String tableFingerprint(String columns, String from) {
+        return "(SELECT (COUNT(*) << 32) | COALESCE(BIT_XOR(CRC32(CONCAT_WS('|', %s))), 0) FROM %s)".formatted(columns, from);
+    }
+
+    /**
+     * Crée une partie à partir de la ligne courante d'un résultat de requête sur la table game.
+     *
+     * @param server Instance du serveur.
+     * @param set    Le résultat de la requête, positionné sur la ligne de la partie.
+     * @return La partie.
+     * @throws SQLException Si une colonne ne peut pas être lue.
+     */
+    private static ServerGame readGame(RiseAndFallServer server, ResultSet set) throws SQLException {
+        int id = set.getInt("id");
+        String name = set.getString("name");
+        int turnInterval = set.getInt("turn_interval");
+        int currentTurn = set.getInt("current_turn");
+        int minPlayers = set.getInt("min_players");
+        int maxPlayers = set.getInt("max_players");
+        boolean isPrivate = set.getString("password_hash") != null;
+        GameState state = GameState.valueOf(set.getString("state"));
+        Timestamp nextActionAt = set.getTimestamp("next_action_at");
+        long randomSeed = set.getLong("random_seed");
+        return new ServerGame(server, id, name, turnInterval, minPlayers, maxPlayers, isPrivate, state, nextActionAt, currentTurn, randomSeed);
+    }
+
+    /**
+     * Crée un joueur à partir de la ligne courante d'un résultat de requête sur la table player.
+     *
+     * @param set  Le résultat de la requête, positionné sur la ligne du joueur.
+     * @param user L'utilisateur du joueur.
+     * @param game La partie du joueur.
+     * @return Le joueur, sans ses bâtiments, unités et ordres.
+     * @throws SQLException Si une colonne ne peut pas être lue.
+     */
+    private static ServerPlayer readPlayer(ResultSet set, User user, ServerGame game) throws SQLException {
+        int id = set.getInt("id");
+        Race race = Identifiable.getById(ServerData.getRaces(), set.getInt("race_id"));
+        float gold = set.getFloat("gold");
+        float intelligence = set.getFloat("intelligence");
+        int eliminationTurn = set.getInt("elimination_turn");
+        if (set.wasNull()) {
+            eliminationTurn = -1; // -1 signifie que le joueur n'est pas éliminé
+        }
+        boolean exitedGame = set.getBoolean("exited_game");
+        return new ServerPlayer(id, user, game, race, gold, intelligence, eliminationTurn, exitedGame);
+    }
+
+    @Override
+    public int findUserId(String username, String passwordHash) throws SQLException {
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("SELECT id FROM user WHERE username = ? AND password_hash = ?")) {
+            statement.setString(1, username);
+            statement.setString(2, passwordHash);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getInt("id") : -1;
+        }
+    }
+
+    @Override
+    public int findUserIdByToken(String token) throws SQLException {
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("SELECT user.id FROM user JOIN user_token ON user.id = user_token.user_id WHERE token = ?")) {
+            statement.setString(1, token);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getInt("user.id") : -1;
+        }
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) throws SQLException {
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("SELECT * FROM user WHERE username = ? LIMIT 1")) {
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next();
+        }
+    }
+
+    @Override
+    public int createUser(String username, String passwordHash) throws SQLException {
+        int[] userId = new int[1];
+        this.inTransaction(() -> {
+            try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("INSERT INTO user(username, password_hash) VALUES (?, ?) RETURNING id")) {
+                statement.setString(1, username);
+                statement.setString(2, passwordHash);
+                statement.execute();
+                ResultSet resultSet = statement.getResultSet();
+                if (!resultSet.next()) {
+                    throw new SQLException("Creating user failed, no ID obtained.");
+                }
+                userId[0] = resultSet.getInt("id");
+            }
+        });
+        return userId[0];
+    }
+
+    @Override
+    public void saveToken(int userId, String token) throws SQLException {
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("INSERT INTO user_token (user_id, token) VALUES (?, ?)")) {
+            statement.setInt(1, userId);
+            statement.setString(2, token);
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public ServerGame createGame(RiseAndFallServer server, String name) throws SQLException {
+        ServerGame[] game = new ServerGame[1];
+        this.inTransaction(() -> {
+            try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("INSERT INTO game(name, random_seed) VALUES (?, ?) RETURNING *")) {
+                statement.setString(1, name);
+                statement.setLong(2, TurnRandom.newGameSeed());
+                statement.execute();
+                ResultSet resultSet = statement.getResultSet();
+                if (!resultSet.next()) {
+                    throw new SQLException("Creating game failed, no row returned.");
+                }
+                game[0] = readGame(server, resultSet);
+            }
+        });
+        return game[0];
+    }
+
+    @Override
+    public int createPlayer(int userId, int gameId, int raceId) throws SQLException {
+        int[] playerId = new int[1];
+        this.inTransaction(() -> {
+            try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement(
+                    "INSERT INTO player (user_id, game_id, race_id) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+
+                statement.setInt(1, userId);
+                statement.setInt(2, gameId);
+                statement.setInt(3, raceId);
+
+                int affectedRows = statement.executeUpdate();
+
+                if (affectedRows == 0) {
+                    throw new SQLException("Creating player failed, no rows affected.");
+                }
+
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Creating player failed, no ID obtained.");
+                    }
+                    playerId[0] = generatedKeys.getInt(1);
+                }
+            }
+        });
+        return playerId[0];
+    }
+
+    @Override
+    public void deletePlayer(int playerId) throws SQLException {
+        // Les données du joueur sont supprimées en cascade
+        this.inTransaction(() -> {
+            try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("DELETE FROM player WHERE id = ?")) {
+                statement.setInt(1, playerId);
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * Les lignes sont regroupées dans des requêtes à plusieurs lignes, si bien que le nombre de requêtes ne dépend pas
+     * du nombre de joueurs.
+     */
+    @Override
+    public void saveChanges(StateChanges changes) throws SQLException {
+        try (PooledConnection db = this.getDb()) {
+            if (!changes.updatedPlayers.isEmpty()) {
+                try (PreparedStatement statement = db.prepareStatement("UPDATE player SET gold = ?, intelligence = ?, elimination_turn = ?, exited_game = ? WHERE id = ?")) {
+                    for (StateChanges.PlayerRow player : changes.updatedPlayers) {
+                        statement.setFloat(1, player.gold());
+                        statement.setFloat(2, player.intelligence());
+                        if (player.eliminationTurn() == -1) {
+                            statement.setNull(3, Types.INTEGER); // Si le joueur n'est pas éliminé, on met la colonne à NULL
+                        } else {
+                            statement.setInt(3, player.eliminationTurn());
+                        }
+                        statement.setBoolean(4, player.exitedGame());
+                        statement.setInt(5, player.playerId());
+                        statement.addBatch();
+                    }
+                    countBatch(changes, statement.executeBatch());
+                }
+            }
+
+            executeRows(db, changes, "DELETE FROM building_creation_order WHERE player_id IN (", "?", ")", changes.resetOrdersPlayers);
+            executeRows(db, changes, "DELETE FROM unit_creation_order WHERE player_id IN (", "?", ")", changes.resetOrdersPlayers);
+            executeRows(db, changes, "DELETE FROM building_creation_order WHERE (player_id, building_type_id) IN (", "(?, ?)", ")", changes.deletedBuildingOrders);
+            executeRows(db, changes, "DELETE FROM unit_creation_order WHERE (player_id, unit_type_id) IN (", "(?, ?)", ")", changes.deletedUnitOrders);
+
+            executeRows(db, changes, "INSERT INTO player_building (player_id, building_id, quantity) VALUES ", "(?, ?, ?)", " ON DUPLICATE KEY UPDATE quantity = VALUES(quantity)", changes.buildingRows);
+            executeRows(db, changes, "INSERT INTO player_unit (player_id, unit_id, quantity) VALUES ", "(?, ?, ?)", " ON DUPLICATE KEY UPDATE quantity = VALUES(quantity)", changes.unitRows);
+            executeRows(db, changes, "INSERT INTO building_creation_order (player_id, building_type_id, amount) VALUES ", "(?, ?, ?)", " ON DUPLICATE KEY UPDATE amount = VALUES(amount)", changes.buildingOrderRows);
+            executeRows(db, changes, "INSERT INTO unit_creation_order (player_id, unit_type_id, amount) VALUES ", "(?, ?, ?)", " ON DUPLICATE KEY UPDATE amount = VALUES(amount)", changes.unitOrderRows);
+
+            // Les unités des ordres d'attaque supprimés sont supprimées en cascade
+            executeRows(db, changes, "DELETE FROM attack_player_order WHERE player_id IN (", "?", ")", changes.resetAttacksPlayers);
+            insertAttacks(db, changes);
+
+            if (changes.game != null) {
+                try (PreparedStatement statement = db.prepareStatement("UPDATE game SET state = ?, next_action_at = ?, current_turn = ? WHERE id = ?")) {
+                    statement.setString(1, changes.game.state().name());
+                    statement.setTimestamp(2, changes.game.nextActionAt());
+                    statement.setInt(3, changes.game.currentTurn());
+                    statement.setInt(4, changes.game.id());
+                    statement.executeUpdate();
+                }
+                changes.count(1, 1);
+            }
+        }
+    }
+
+    /**
+     * Comptabilise les requêtes d'un lot exécuté et les lignes qu'elles ont modifiées.
+     * Une requête dont le pilote ne donne pas le nombre de lignes modifiées compte pour une ligne.
+     *
+     * @param changes Les modifications, dans lesquelles les requêtes sont comptabilisées.
+     * @param results Les résultats de {@link Statement#executeBatch()}, un par requête du lot.
+     */
+    private static void countBatch(StateChanges changes, int[] results) {
+        int rows = 0;
+        for (int result : results) {
+            rows += result == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, result);
+        }
+        changes.count(results.length, rows);
+    }
+
+    /**
+     * Insère les nouveaux ordres d'attaque et les unités qu'ils utilisent.
+     *
+     * @param db      La connexion à la base de données.
+     * @param changes Les modifications contenant les ordres d'attaque.
+     * @throws SQLException Si une erreur se produit lors de l'insertion.
+     */
+    private static void insertAttacks(PooledConnection db, StateChanges changes) throws SQLException {
+        List<StateChanges.NewAttack> newAttacks = changes.newAttacks;
+        List<int[]> unitRows = new ArrayList<>();
+        for (int from = 0; from < newAttacks.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<StateChanges.NewAttack> chunk = newAttacks.subList(from, Math.min(newAttacks.size(), from + MAX_ROWS_PER_STATEMENT));
+            String sql = "INSERT INTO attack_player_order (player_id, target_player_id) VALUES " + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?)")) + " RETURNING id";
+            List<Integer> orderIds = new ArrayList<>(chunk.size());
+            try (PreparedStatement statement = db.prepareStatement(sql)) {
+                int index = 1;
+                for (StateChanges.NewAttack attack : chunk) {
+                    statement.setInt(index++, attack.playerId());
+                    statement.setInt(index++, attack.order().getTargetPlayer().getId());
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        orderIds.add(resultSet.getInt("id"));
+                    }
+                }
+            }
+            if (orderIds.size() != chunk.size()) {
+                throw new SQLException("Expected %d attack order ids, got %d".formatted(chunk.size(), orderIds.size()));
+            }
+            // Les identifiants sont attribués dans l'ordre d'insertion des lignes
+            Collections.sort(orderIds);
+            changes.count(1, chunk.size());
+
+            for (int i = 0; i < chunk.size(); i++) {
+                for (ObjectIntMap.Entry<UnitType> entry : chunk.get(i).order().getUsingUnits()) {
+                    if (entry.getValue() != 0) {
+                        unitRows.add(new int[]{orderIds.get(i), entry.getKey().getId(), entry.getValue()});
+                    }
+                }
+            }
+        }
+        executeRows(db, changes, "INSERT INTO attack_player_order_unit (order_id, unit_type_id, amount) VALUES ", "(?, ?, ?)", "", unitRows);
+    }
+
+    /**
+     * Exécute une requête portant sur plusieurs lignes, en la découpant si elle dépasse {@link #MAX_ROWS_PER_STATEMENT} lignes.
+     * La requête est formée du préfixe, du motif d'une ligne répété pour chaque ligne et séparé par des virgules, puis du suffixe.
+     *
+     * @param db      La connexion à la base de données.
+     * @param changes Les modifications, dans lesquelles les requêtes sont comptabilisées.
+     * @param prefix  Le début de la requête.
+     * @param tuple   Le motif des paramètres d'une ligne, qui doit contenir autant de paramètres que chaque ligne a de valeurs.
+     * @param suffix  La fin de la requête.
+     * @param rows    Les valeurs des lignes.
+     * @throws SQLException Si une erreur se produit lors de l'exécution de la requête.
+     */
+    private static void executeRows(PooledConnection db, StateChanges changes, String prefix, String tuple, String suffix, List<int[]> rows) throws SQLException {
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<int[]> chunk = rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT));
+            String sql = prefix + String.join(", ", Collections.nCopies(chunk.size(), tuple)) + suffix;
+            try (PreparedStatement statement = db.prepareStatement(sql)) {
+                int index = 1;
+                for (int[] row : chunk) {
+                    for (int value : row) {
+                        statement.setInt(index++, value);
+                    }
+                }
+                statement.executeUpdate();
+            }
+            changes.count(1, chunk.size());
+        }
+    }
+
+    @Override
+    public void archiveGame(int gameId) throws SQLException {
+        this.inTransaction(() -> {
+            try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("UPDATE game SET archived = true WHERE id = ?")) {
+                statement.setInt(1, gameId);
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public ServerGame loadArchivedGame(RiseAndFallServer server, int gameId) throws SQLException {
+        UserManager userManager = server.getUserManager();
+        ServerGame game;
+        Map<Integer, ServerPlayer> players = new HashMap<>();
+        try (PooledConnection db = this.getDb()) {
+            try (PreparedStatement statement = db.prepareStatement("SELECT * FROM game WHERE id = ? AND archived")) {
+                statement.setInt(1, gameId);
+                ResultSet set = statement.executeQuery();
+                if (!set.next()) {
+                    return null;
+                }
+                game = readGame(server, set);
+            }
+            try (PreparedStatement statement = db.prepareStatement("SELECT * FROM player WHERE game_id = ?")) {
+                statement.setInt(1, gameId);
+                ResultSet set = statement.executeQuery();
+                while (set.next()) {
+                    User user = userManager.getUser(set.getInt("user_id"));
+                    if (user == null) {
+                        continue; // Le compte de l'utilisateur a été supprimé
+                    }
+                    ServerPlayer player = readPlayer(set, user, game);
+                    players.put(player.getId(), player);
+                    game.forceAddPlayer(player);
+                }
+            }
+            try (PreparedStatement statement = db.prepareStatement("SELECT pb.* FROM player_building pb JOIN player p ON p.id = pb.player_id WHERE p.game_id = ?")) {
+                statement.setInt(1, gameId);
+                ResultSet set = statement.executeQuery();
+                while (set.next()) {
+                    ServerPlayer player = players.get(set.getInt("player_id"));
+                    if (player != null) {
+                        BuildingType buildingType = Identifiable.getById(ServerData.getBuildingTypes(), set.getInt("building_id"));
+                        player.getBuildingMap().set(buildingType, set.getInt("quantity"));
+                    }
+                }
+            }
+            try (PreparedStatement statement = db.prepareStatement("SELECT pu.* FROM player_unit pu JOIN player p ON p.id = pu.player_id WHERE p.game_id = ?")) {
+                statement.setInt(1, gameId);
+                ResultSet set = statement.executeQuery();
+                while (set.next()) {
+                    ServerPlayer player = players.get(set.getInt("player_id"));
+                    if (player != null) {
+                        UnitType unitType = Identifiable.getById(ServerData.getUnitTypes(), set.getInt("unit_id"));
+                        player.getUnitMap().set(unitType, set.getInt("quantity"));
+                    }
+                }
+            }
+        }
+        return game;
+    }
+
+    /**
+     * Prépare les détails des résultats d'attaques pour l'insertion dans la base de données.
+     *
+     * @param map         La map contenant ces détails du résultat d'attaque, où la clé est un objet identifiable (par exemple, un type de bâtiment ou d'unité) et la valeur est le nombre d'instances détruites ou perdues.
+     * @param statement   La requête préparée pour insérer les détails des résultats d'attaques.
+     * @param attackLogId L'identifiant du journal d'attaque auquel ces détails sont associés.
+     * @throws SQLException Si une erreur SQL se produit lors de l'exécution de la requête.
+     */
+    private static void saveAttackResultDetails(ObjectIntMap<? extends Identifiable> map, PreparedStatement statement, int attackLogId) throws SQLException {
+        ObjectIntMap.Cursor<? extends Identifiable> cursor = map.cursor();
+        while (cursor.next()) {
+            statement.setInt(1, attackLogId);
+            statement.setInt(2, cursor.getKey().getId());
+            statement.setInt(3, cursor.getValue());
+            statement.addBatch();
+        }
+    }
+
+    @Override
+    public void saveAttackResults(int turn, List<AttackResult> results) throws SQLException {
+        try (PooledConnection db = this.getDb()) {
+            // Préparation de la requête primaire
+            try (PreparedStatement attacksStatement = db.prepareStatement("INSERT INTO attacks_logs(attacker_player_id, target_player_id, turn) VALUES (?, ?, ?) RETURNING id")) {
+                for (AttackResult result : results) {
+                    attacksStatement.setInt(1, result.getAttacker().getId());
+                    attacksStatement.setInt(2, result.getTarget().getId());
+                    attacksStatement.setInt(3, turn);
+                    attacksStatement.addBatch();
+                }
+                // Exécution de la requête primaire
+                attacksStatement.executeBatch();
+
+                // On récupère les identifiants des attaques insérées et on prépare les requêtes secondaires.
+                ResultSet resultSet = attacksStatement.getResultSet();
+                Iterator<AttackResult> iterator = results.iterator();
+                try (PreparedStatement destroyedBuildingsStatement = db.prepareStatement("INSERT INTO attacks_destroyed_buildings(attack_log_id, building_type_id, amount) VALUES (?, ?, ?)");
+                     PreparedStatement destroyedUnitsStatement = db.prepareStatement("INSERT INTO attacks_destroyed_units(attack_log_id, unit_type_id, amount) VALUES (?, ?, ?)");
+                     PreparedStatement lostUnitsStatement = db.prepareStatement("INSERT INTO attacks_lost_units(attack_log_id, unit_type_id, amount) VALUES (?, ?, ?)")) {
+                    while (resultSet.next()) {
+                        assert iterator.hasNext() : "Des résultats d'attaques supplémentaires ont été retournés par la base de données !";
+                        int attackLogId = resultSet.getInt("id");
+                        AttackResult result = iterator.next();
+
+                        saveAttackResultDetails(result.getDestroyedBuildings(), destroyedBuildingsStatement, attackLogId);
+                        saveAttackResultDetails(result.getDestroyedUnits(), destroyedUnitsStatement, attackLogId);
+                        saveAttackResultDetails(result.getLostUnits(), lostUnitsStatement, attackLogId);
+                    }
+                    assert !iterator.hasNext() : "Il reste des attaques à traiter mais la base de données n'a pas retourné assez de résultats !";
+
+                    // On exécute les requêtes secondaires.
+                    destroyedBuildingsStatement.executeBatch();
+                    destroyedUnitsStatement.executeBatch();
+                    lostUnitsStatement.executeBatch();
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Les attaques et leurs détails sont lus avec une seule requête.
+     */
+    @Override
+    public Map<Integer, List<AttackResult>> loadAttackResults(int gameId, IdRegistry<ServerPlayer> playersById) throws SQLException {
+        Map<Integer, List<AttackResult>> resultsByTurn = new HashMap<>();
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement(ATTACK_RESULTS_QUERY)) {
+            for (int i = 1; i <= 4; i++) {
+                statement.setInt(i, gameId);
+            }
+            ResultSet set = statement.executeQuery();
+            int currentAttackLogId = -1;
+            AttackResult current = null;
+            while (set.next()) {
+                int attackLogId = set.getInt("id");
+                int kind = set.getInt("kind");
+                if (attackLogId != currentAttackLogId) {
+                    currentAttackLogId = attackLogId;
+                    ServerPlayer attacker = playersById.getByIdOrNull(set.getInt("attacker_player_id"));
+                    ServerPlayer target = playersById.getByIdOrNull(set.getInt("target_player_id"));
+                    if (attacker == null || target == null) {
+                        current = null;
+                        continue;
+                    }
+                    current = new AttackResult(attacker, target, new IdIntMap<>(ServerData.getBuildingTypes()),
+                            new IdIntMap<>(ServerData.getUnitTypes()), new IdIntMap<>(ServerData.getUnitTypes()));
+                    resultsByTurn.computeIfAbsent(set.getInt("turn"), k -> new ArrayList<>()).add(current);
+                }
+                if (current == null || kind < 0) {
+                    continue;
+                }
+                int typeId = set.getInt("type_id");
+                int amount = set.getInt("amount");
+                switch (kind) {
+                    case 0 -> {
+                        BuildingType buildingType = Identifiable.getById(ServerData.getBuildingTypes(), typeId);
+                        current.getDestroyedBuildings().set(buildingType, amount);
+                    }
+                    case 1 -> {
+                        UnitType unitType = Identifiable.getById(ServerData.getUnitTypes(), typeId);
+                        current.getDestroyedUnits().set(unitType, amount);
+                    }
+                    case 2 -> {
+                        UnitType unitType = Identifiable.getById(ServerData.getUnitTypes(), typeId);
+                        current.getLostUnits().set(unitType, amount);
+                    }
+                }
+            }
+        }
+        return resultsByTurn;
+    }
+
+    @Override
+    public StoredChatMessage saveChatMessage(int senderId, int receiverId, String message) throws SQLException {
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement("INSERT INTO chat_message (sender_player_id, receiver_player_id, message) VALUES (?, ?, ?) RETURNING id, sent_at")) {
+            statement.setInt(1, senderId);
+            statement.setInt(2, receiverId);
+            statement.setString(3, message);
+            statement.execute();
+            ResultSet resultSet = statement.getResultSet();
+            if (!resultSet.next()) {
+                throw new SQLException("Saving chat message failed, no row returned.");
+            }
+            return new StoredChatMessage(resultSet.getLong("id"), senderId, receiverId, message, resultSet.getTimestamp("sent_at").getTime());
+        }
+    }
+
+    @Override
+    public List<StoredChatMessage> loadRecentChatMessages(int gameId, int perConversation) throws SQLException {
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement(RECENT_CHAT_QUERY)) {
+            statement.setInt(1, gameId);
+            statement.setInt(2, perConversation);
+            return readChatMessages(statement.executeQuery());
+        }
+    }
+
+    @Override
+    public List<StoredChatMessage> loadChatMessagesBefore(int playerId, int otherPlayerId, long beforeId, int limit) throws SQLException {
+        try (PooledConnection db = this.getDb(); PreparedStatement statement = db.prepareStatement(CHAT_PAGE_QUERY)) {
+            statement.setInt(1, playerId);
+            statement.setInt(2, otherPlayerId);
+            statement.setInt(3, otherPlayerId);
+            statement.setInt(4, playerId);
+            statement.setLong(5, beforeId);
+            statement.setInt(6, limit);
+            return readChatMessages(statement.executeQuery());
+        }
+    }
+
+    /**
+     * Lit les messages de chat d'un résultat de requête, dans l'ordre des lignes.
+     *
+     * @param set Le résultat de la requête.
+     * @return Les messages lus.
+     * @throws SQLException Si une colonne ne peut pas être lue.
+     */
+    private static List<StoredChatMessage> readChatMessages(ResultSet set) throws SQLException {
+        List<StoredChatMessage> messages = new ArrayList<>();
+        while (set.next()) {
+            messages.add(new StoredChatMessage(set.getLong("id"), set.getInt("sender_player_id"), set.getInt("receiver_player_id"),
+                    set.getString("message"), set.getTimestamp("sent_at").getTime()));
+        }
+        return messages;
+    }
+
+    /**
+     * Ferme le pool de connexions à la base de données.
+     */
+    @Override
+    public void close() {
+        this.databaseManager.close();
+    }
+}
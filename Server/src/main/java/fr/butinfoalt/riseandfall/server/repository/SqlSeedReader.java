@@ -0,0 +1,156 @@
+package fr.butinfoalt.riseandfall.server.repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lecteur des instructions INSERT d'un script SQL, utilisé pour reprendre les données statiques de SQL/init.sql
+ * sans base de données. Les autres instructions du script sont ignorées.
+ * Seule la forme {@code INSERT INTO table (colonnes) VALUES (valeurs), ...;} est reconnue, avec des valeurs littérales :
+ * chaînes entre apostrophes, nombres, booléens et NULL.
+ */
+final class SqlSeedReader {
+    private static final Pattern INSERT_PATTERN = Pattern.compile("INSERT\\s+INTO\\s+`?(\\w+)`?\\s*\\(([^)]*)\\)\\s*VALUES\\s*(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private SqlSeedReader() {
+    }
+
+    /**
+     * Lit les lignes insérées par un script SQL.
+     *
+     * @param script Le chemin du script.
+     * @return Les lignes insérées dans chaque table, dans l'ordre du script. Chaque ligne associe le nom d'une colonne
+     * à sa valeur, sans apostrophes, ou à null pour NULL.
+     * @throws IOException Si le script ne peut pas être lu ou si une instruction INSERT est mal formée.
+     */
+    static Map<String, List<Map<String, String>>> readInserts(Path script) throws IOException {
+        Map<String, List<Map<String, String>>> rowsByTable = new HashMap<>();
+        for (String statement : splitStatements(Files.readString(script, StandardCharsets.UTF_8))) {
+            Matcher matcher = INSERT_PATTERN.matcher(statement);
+            if (!matcher.matches()) {
+                continue;
+            }
+            String table = matcher.group(1).toLowerCase(Locale.ROOT);
+            List<String> columns = new ArrayList<>();
+            for (String column : matcher.group(2).split(",")) {
+                columns.add(column.trim().replace("`", ""));
+            }
+            List<Map<String, String>> rows = rowsByTable.computeIfAbsent(table, key -> new ArrayList<>());
+            for (List<String> values : parseTuples(matcher.group(3))) {
+                if (values.size() != columns.size()) {
+                    throw new IOException("Expected %d values for table %s, got %d".formatted(columns.size(), table, values.size()));
+                }
+                Map<String, String> row = new LinkedHashMap<>();
+                for (int i = 0; i < columns.size(); i++) {
+                    row.put(columns.get(i), values.get(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rowsByTable;
+    }
+
+    /**
+     * Découpe un script en instructions séparées par des points-virgules, en retirant les commentaires de fin de ligne.
+     * Les points-virgules et tirets contenus dans les chaînes sont conservés.
+     *
+     * @param script Le contenu du script.
+     * @return Les instructions, sans leur point-virgule final.
+     */
+    private static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inString = false;
+        for (int i = 0; i < script.length(); i++) {
+            char c = script.charAt(i);
+            if (inString) {
+                current.append(c);
+                if (c == '\'') {
+                    if (i + 1 < script.length() && script.charAt(i + 1) == '\'') {
+                        current.append(script.charAt(++i));
+                    } else {
+                        inString = false;
+                    }
+                }
+            } else if (c == '-' && i + 1 < script.length() && script.charAt(i + 1) == '-') {
+                while (i < script.length() && script.charAt(i) != '\n') {
+                    i++;
+                }
+                current.append('\n');
+            } else if (c == ';') {
+                statements.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                inString = c == '\'';
+                current.append(c);
+            }
+        }
+        if (!current.toString().isBlank()) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    /**
+     * Lit les n-uplets de valeurs d'une instruction INSERT.
+     *
+     * @param values La partie de l'instruction qui suit le mot-clé VALUES.
+     * @return Les valeurs de chaque n-uplet.
+     * @throws IOException Si un n-uplet n'est pas fermé.
+     */
+    private static List<List<String>> parseTuples(String values) throws IOException {
+        List<List<String>> tuples = new ArrayList<>();
+        List<String> tuple = null;
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < values.length(); i++) {
+            char c = values.charAt(i);
+            if (tuple == null) {
+                if (c == '(') {
+                    tuple = new ArrayList<>();
+                }
+                continue;
+            }
+            if (c == '\'') {
+                // Chaîne littérale, dont les apostrophes sont doublées
+                quoted = true;
+                value.setLength(0);
+                for (i++; i < values.length(); i++) {
+                    if (values.charAt(i) == '\'') {
+                        if (i + 1 < values.length() && values.charAt(i + 1) == '\'') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    value.append(values.charAt(i));
+                }
+            } else if (c == ',' || c == ')') {
+                String text = quoted ? value.toString() : value.toString().trim();
+                tuple.add(!quoted && text.equalsIgnoreCase("NULL") ? null : text);
+                value.setLength(0);
+                quoted = false;
+                if (c == ')') {
+                    tuples.add(tuple);
+                    tuple = null;
+                }
+            } else if (!quoted) {
+                value.append(c);
+            }
+        }
+        if (tuple != null) {
+            throw new IOException("Unterminated values tuple");
+        }
+        return tuples;
+    }
+}
@@ -0,0 +1,135 @@
+package fr.butinfoalt.riseandfall.server.repository;
+
+import fr.butinfoalt.riseandfall.server.DatabaseManager;
+import fr.butinfoalt.riseandfall.server.PooledConnection;
+import fr.butinfoalt.riseandfall.util.logging.LogManager;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Charge les tables de la base de données au démarrage du serveur.
+ * <p>
+ * Les tables sont chargées par étapes : toutes les tables demandées depuis la dernière attente sont chargées en
+ * parallèle, chacune avec sa propre connexion, et {@link #await()} attend la fin de l'étape avant de passer aux tables
+ * qui en dépendent. Le temps de chargement et le nombre de lignes de chaque table sont retenus pour le rapport de démarrage.
+ * </p>
+ */
+public class StartupLoader implements AutoCloseable {
+    /**
+     * Interface pour le chargement d'une table.
+     */
+    @FunctionalInterface
+    public interface TableLoader {
+        /**
+         * Charge la table.
+         *
+         * @param db La connexion à la base de données, réservée au chargement de cette table.
+         * @return Le nombre de lignes lues.
+         * @throws SQLException Si une erreur se produit lors de la lecture.
+         */
+        int load(PooledConnection db) throws SQLException;
+    }
+
+    /**
+     * Résultat du chargement d'une table.
+     *
+     * @param table        Le nom de la table.
+     * @param rows         Le nombre de lignes lues.
+     * @param elapsedNanos Le temps de chargement, en nanosecondes.
+     */
+    private record TableReport(String table, int rows, long elapsedNanos) {
+    }
+
+    private final DatabaseManager databaseManager;
+    private final ExecutorService executor;
+    private final List<Future<TableReport>> pending = new ArrayList<>();
+    private final List<TableReport> reports = new ArrayList<>();
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * Constructeur du chargeur.
+     *
+     * @param databaseManager Le gestionnaire de base de données, pour emprunter les connexions.
+     * @param threads         Le nombre maximal de tables chargées en parallèle.
+     */
+    public StartupLoader(DatabaseManager databaseManager, int threads) {
+        this.databaseManager = databaseManager;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "Startup Loader Thread " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Lance le chargement d'une table, en parallèle des autres tables de l'étape en cours.
+     *
+     * @param table  Le nom de la table, pour le rapport de démarrage.
+     * @param loader Le chargement de la table.
+     */
+    public void load(String table, TableLoader loader) {
+        this.pending.add(this.executor.submit(() -> {
+            long start = System.nanoTime();
+            int rows;
+            try (PooledConnection db = this.databaseManager.getDb()) {
+                rows = loader.load(db);
+            }
+            return new TableReport(table, rows, System.nanoTime() - start);
+        }));
+    }
+
+    /**
+     * Attend la fin du chargement de toutes les tables de l'étape en cours.
+     * Les données chargées sont alors visibles par le thread appelant.
+     *
+     * @throws SQLException Si le chargement d'une table a échoué.
+     */
+    public void await() throws SQLException {
+        try {
+            for (Future<TableReport> future : this.pending) {
+                this.reports.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading the server data", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new SQLException("Error while loading the server data", e.getCause());
+        } finally {
+            this.pending.clear();
+        }
+    }
+
+    /**
+     * Journalise le temps de chargement de chaque table, de la plus lente à la plus rapide, et le temps total.
+     */
+    public void logReport() {
+        this.reports.sort(Comparator.comparingLong(TableReport::elapsedNanos).reversed());
+        for (TableReport report : this.reports) {
+            LogManager.logMessage("Chargement de la table %s : %d lignes en %.1f ms".formatted(report.table, report.rows, report.elapsedNanos / 1e6));
+        }
+        LogManager.logMessage("Données du serveur chargées en %.1f ms".formatted((System.nanoTime() - this.startedAt) / 1e6));
+    }
+
+    /**
+     * Arrête les threads de chargement.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,212 @@
+package fr.butinfoalt.riseandfall.server.repository;
+
+import fr.butinfoalt.riseandfall.gamelogic.GameState;
+import fr.butinfoalt.riseandfall.gamelogic.PlayerDataSnapshot;
+import fr.butinfoalt.riseandfall.gamelogic.data.AttackPlayerOrderData;
+import fr.butinfoalt.riseandfall.gamelogic.data.Identifiable;
+import fr.butinfoalt.riseandfall.util.ObjectIntMap;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ensemble des lignes à écrire pour une sauvegarde de l'état d'une partie et de ses joueurs, regroupées par table.
+ * Seules les valeurs qui ont changé depuis la dernière sauvegarde réussie de chaque joueur sont retenues.
+ * Les lignes sont écrites par {@link GameRepository#saveChanges(StateChanges)}.
+ */
+public class StateChanges {
+    /**
+     * État d'une partie à sauvegarder.
+     *
+     * @param id           L'identifiant de la partie.
+     * @param state        L'état de la partie.
+     * @param nextActionAt La date de la prochaine action de la partie.
+     * @param currentTurn  Le tour actuel de la partie.
+     */
+    public record GameRow(int id, GameState state, Timestamp nextActionAt, int currentTurn) {
+    }
+
+    /**
+     * Valeurs simples d'un joueur à sauvegarder.
+     *
+     * @param playerId        L'identifiant du joueur.
+     * @param gold            La quantité d'or du joueur.
+     * @param intelligence    L'intelligence du joueur.
+     * @param eliminationTurn Le tour d'élimination du joueur, ou -1 s'il n'est pas éliminé.
+     * @param exitedGame      Indique si le joueur a quitté la partie.
+     */
+    record PlayerRow(int playerId, float gold, float intelligence, int eliminationTurn, boolean exitedGame) {
+    }
+
+    /**
+     * Ordre d'attaque à insérer.
+     *
+     * @param playerId L'identifiant du joueur attaquant.
+     * @param order    L'ordre d'attaque.
+     */
+    record NewAttack(int playerId, AttackPlayerOrderData order) {
+    }
+
+    /**
+     * État de la partie à sauvegarder, ou null s'il n'a pas changé.
+     */
+    GameRow game;
+    /**
+     * Valeurs simples des joueurs qui ont changé.
+     */
+    final List<PlayerRow> updatedPlayers = new ArrayList<>();
+    /**
+     * Bâtiments à insérer ou mettre à jour : identifiant du joueur, du type de bâtiment et quantité.
+     */
+    final List<int[]> buildingRows = new ArrayList<>();
+    /**
+     * Unités à insérer ou mettre à jour : identifiant du joueur, du type d'unité et quantité.
+     */
+    final List<int[]> unitRows = new ArrayList<>();
+    /**
+     * Joueurs jamais sauvegardés entièrement, dont tous les ordres de création sont supprimés avant d'être réécrits :
+     * identifiant du joueur.
+     */
+    final List<int[]> resetOrdersPlayers = new ArrayList<>();
+    /**
+     * Ordres de création de bâtiments à insérer ou mettre à jour : identifiant du joueur, du type de bâtiment et quantité.
+     */
+    final List<int[]> buildingOrderRows = new ArrayList<>();
+    /**
+     * Ordres de création de bâtiments revenus à zéro, à supprimer : identifiant du joueur et du type de bâtiment.
+     */
+    final List<int[]> deletedBuildingOrders = new ArrayList<>();
+    /**
+     * Ordres de création d'unités à insérer ou mettre à jour : identifiant du joueur, du type d'unité et quantité.
+     */
+    final List<int[]> unitOrderRows = new ArrayList<>();
+    /**
+     * Ordres de création d'unités revenus à zéro, à supprimer : identifiant du joueur et du type d'unité.
+     */
+    final List<int[]> deletedUnitOrders = new ArrayList<>();
+    /**
+     * Joueurs dont les ordres d'attaque ont changé et sont supprimés avant d'être réécrits : identifiant du joueur.
+     */
+    final List<int[]> resetAttacksPlayers = new ArrayList<>();
+    /**
+     * Ordres d'attaque à insérer, après la suppression des anciens ordres de leur joueur.
+     */
+    final List<NewAttack> newAttacks = new ArrayList<>();
+    /**
+     * Nombre de requêtes exécutées par la sauvegarde.
+     */
+    private int statementCount = 0;
+    /**
+     * Nombre de lignes écrites ou supprimées par la sauvegarde.
+     */
+    private int rowCount = 0;
+
+    /**
+     * Ajoute l'état d'une partie à sauvegarder.
+     *
+     * @param game L'état de la partie.
+     */
+    public void updateGame(GameRow game) {
+        this.game = game;
+    }
+
+    /**
+     * Ajoute les lignes modifiées d'un joueur depuis sa dernière sauvegarde réussie.
+     * Si le joueur n'a jamais été entièrement sauvegardé, toutes ses données sont écrites.
+     *
+     * @param playerId            L'identifiant du joueur.
+     * @param previous            Les données de la dernière sauvegarde réussie, ou null si aucune n'a réussi.
+     * @param current             Les données copiées à sauvegarder.
+     * @param exitedGame          Indique si le joueur a quitté la partie.
+     * @param persistedExitedGame Indique si le joueur avait quitté la partie lors de la dernière sauvegarde réussie.
+     */
+    public void addPlayer(int playerId, PlayerDataSnapshot previous, PlayerDataSnapshot current, boolean exitedGame, boolean persistedExitedGame) {
+        int changedFields = current.getChangedFields(previous);
+
+        if ((changedFields & (PlayerDataSnapshot.GOLD | PlayerDataSnapshot.INTELLIGENCE | PlayerDataSnapshot.ELIMINATION_TURN)) != 0
+                || exitedGame != persistedExitedGame) {
+            this.updatedPlayers.add(new PlayerRow(playerId, current.getGoldAmount(), current.getIntelligence(), current.getEliminationTurn(), exitedGame));
+        }
+        // Les bâtiments et unités à zéro sont gardés en base, sinon le chargement leur donnerait leur quantité initiale
+        if ((changedFields & PlayerDataSnapshot.BUILDINGS) != 0) {
+            addChangedRows(playerId, current.getBuildingMap(), previous == null ? null : previous.getBuildingMap(), this.buildingRows, null);
+        }
+        if ((changedFields & PlayerDataSnapshot.UNITS) != 0) {
+            addChangedRows(playerId, current.getUnitMap(), previous == null ? null : previous.getUnitMap(), this.unitRows, null);
+        }
+        if (previous == null) {
+            this.resetOrdersPlayers.add(new int[]{playerId});
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_BUILDINGS) != 0) {
+            addChangedRows(playerId, current.getPendingBuildingsCreation(), previous == null ? null : previous.getPendingBuildingsCreation(), this.buildingOrderRows, this.deletedBuildingOrders);
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_UNITS) != 0) {
+            addChangedRows(playerId, current.getPendingUnitsCreation(), previous == null ? null : previous.getPendingUnitsCreation(), this.unitOrderRows, this.deletedUnitOrders);
+        }
+        if ((changedFields & PlayerDataSnapshot.PENDING_ATTACKS) != 0) {
+            // Les ordres d'attaque n'ont pas de clé stable, ils sont remplacés en bloc
+            this.resetAttacksPlayers.add(new int[]{playerId});
+            for (AttackPlayerOrderData order : current.getPendingAttacks()) {
+                this.newAttacks.add(new NewAttack(playerId, order));
+            }
+        }
+    }
+
+    /**
+     * Ajoute les entrées d'une association qui diffèrent de l'association précédente.
+     *
+     * @param playerId     L'identifiant du joueur.
+     * @param current      L'association actuelle.
+     * @param previous     L'association enregistrée, ou null si aucune n'a été enregistrée.
+     * @param upsertedRows Les lignes à insérer ou mettre à jour.
+     * @param deletedRows  Les lignes à supprimer pour les entrées revenues à zéro,
+     *                     ou null pour enregistrer les entrées à zéro comme les autres.
+     * @param <T>          Le type des clés de l'association.
+     */
+    private static <T extends Identifiable> void addChangedRows(int playerId, ObjectIntMap<T> current, ObjectIntMap<T> previous, List<int[]> upsertedRows, List<int[]> deletedRows) {
+        ObjectIntMap.Cursor<T> cursor = current.cursor();
+        while (cursor.next()) {
+            int previousValue = previous == null ? 0 : previous.get(cursor.getKey());
+            if (previous != null && cursor.getValue() == previousValue) {
+                continue;
+            }
+            if (deletedRows == null || cursor.getValue() != 0) {
+                upsertedRows.add(new int[]{playerId, cursor.getKey().getId(), cursor.getValue()});
+            } else if (previous != null) {
+                // Sans référence, les lignes du joueur sont déjà toutes supprimées
+                deletedRows.add(new int[]{playerId, cursor.getKey().getId()});
+            }
+        }
+    }
+
+    /**
+     * Comptabilise des requêtes exécutées et des lignes écrites pour cette sauvegarde.
+     *
+     * @param statements Le nombre de requêtes exécutées.
+     * @param rows       Le nombre de lignes écrites ou supprimées.
+     */
+    void count(int statements, int rows) {
+        this.statementCount += statements;
+        this.rowCount += rows;
+    }
+
+    /**
+     * Récupère le nombre de requêtes exécutées par la sauvegarde, une fois celle-ci terminée.
+     * Chaque requête d'un lot compte pour une requête.
+     *
+     * @return Le nombre de requêtes exécutées par la sauvegarde, 0 pour un stockage sans requêtes.
+     */
+    public int getStatementCount() {
+        return this.statementCount;
+    }
+
+    /**
+     * Récupère le nombre de lignes écrites ou supprimées par la sauvegarde, une fois celle-ci terminée.
+     *
+     * @return Le nombre de lignes écrites ou supprimées par la sauvegarde.
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+}
@@ -0,0 +1,13 @@
+package fr.butinfoalt.riseandfall.server.repository;
+
+/**
+ * Message de chat enregistré.
+ *
+ * @param id         L'identifiant du message, croissant dans l'ordre d'envoi.
+ * @param senderId   L'identifiant du joueur qui a envoyé le message.
+ * @param receiverId L'identifiant du joueur qui a reçu le message.
+ * @param message    Le contenu du message.
+ * @param timestamp  L'horodatage du message, en millisecondes depuis l'époque Unix.
+ */
+public record StoredChatMessage(long id, int senderId, int receiverId, String message, long timestamp) {
+}
@@ -0,0 +1,116 @@
+package fr.butinfoalt.riseandfall.server.orders;
+
+import fr.butinfoalt.riseandfall.gamelogic.GameState;
+import fr.butinfoalt.riseandfall.gamelogic.data.*;
+import fr.butinfoalt.riseandfall.server.ServerPlayer;
+import fr.butinfoalt.riseandfall.server.data.ServerGame;
+import fr.butinfoalt.riseandfall.server.data.User;
+import fr.butinfoalt.riseandfall.util.ObjectIntMap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Vérifie qu'un tour rejoué à partir de la graine de sa partie donne exactement les mêmes résultats d'attaques.
+ */
+class AttacksExecutionContextTest {
+    private static final long GAME_SEED = 0x5EED_0123_4567_89ABL;
+    private static final int TURN = 7;
+    private static final int PLAYER_COUNT = 4;
+
+    /**
+     * Résultat d'une attaque, comparable d'une simulation à l'autre.
+     */
+    private record Outcome(int attackerId, int targetId, ObjectIntMap<BuildingType> destroyedBuildings,
+                           ObjectIntMap<UnitType> destroyedUnits, ObjectIntMap<UnitType> lostUnits) {
+    }
+
+    @BeforeAll
+    static void initData() {
+        Race humans = new Race(1, "Humains", "", 1, 1, 1, 1);
+        Race orcs = new Race(2, "Orcs", "", 1, 1, 1.2f, 0.9f);
+        List<BuildingType> buildingTypes = List.of(
+                new BuildingType(1, "Ferme", "", 10, 0, 5, 0, 40, 0, 1, null, false),
+                new BuildingType(2, "Bibliothèque", "", 20, 0, 0, 5, 60, 0, 0, null, false),
+                new BuildingType(3, "Tour", "", 30, 0, 0, 0, 120, 0, 0, null, true));
+        List<UnitType> unitTypes = List.of(
+                new UnitType(1, "Soldat", "", 5, 0, 10, 4, null),
+                new UnitType(2, "Archer", "", 8, 0, 6, 7, null),
+                new UnitType(3, "Chevalier", "", 15, 0, 25, 9, humans),
+                new UnitType(4, "Berserker", "", 15, 0, 20, 12, orcs));
+        ServerData.init(List.of(humans, orcs), buildingTypes, unitTypes);
+    }
+
+    /**
+     * Simule les attaques d'un tour entre des joueurs créés à l'identique, où chaque joueur attaque tous les autres
+     * avec un quart de ses unités.
+     *
+     * @param gameSeed La graine de la partie.
+     * @param turn     Le numéro du tour.
+     * @return Les résultats des attaques du tour, dans leur ordre d'exécution.
+     */
+    private static List<Outcome> simulateTurn(long gameSeed, int turn) {
+        ServerGame game = new ServerGame(null, 1, "Partie de test", 15, 3, 30, false, GameState.RUNNING, null, turn, gameSeed);
+        List<ServerPlayer> players = new ArrayList<>();
+        for (int i = 0; i < PLAYER_COUNT; i++) {
+            Race race = ServerData.getRaces().get(i % ServerData.getRaces().size());
+            ServerPlayer player = new ServerPlayer(10 + i, new User(100 + i, "joueur" + i), game, race);
+            for (UnitType unitType : player.getUnitMap().getKeys()) {
+                player.getUnitMap().set(unitType, 30 + 7 * i + 3 * unitType.getId());
+            }
+            for (BuildingType buildingType : player.getBuildingMap().getKeys()) {
+                player.getBuildingMap().set(buildingType, 2 + i + buildingType.getId());
+            }
+            game.forceAddPlayer(player);
+            players.add(player);
+        }
+        for (ServerPlayer attacker : players) {
+            for (ServerPlayer target : players) {
+                if (attacker != target) {
+                    ObjectIntMap<UnitType> usingUnits = attacker.getUnitMap().createEmptyClone();
+                    for (ObjectIntMap.Entry<UnitType> entry : attacker.getUnitMap()) {
+                        usingUnits.set(entry.getKey(), entry.getValue() / 4);
+                    }
+                    attacker.getPendingAttacks().add(new AttackPlayerOrderData(target, usingUnits));
+                }
+            }
+        }
+
+        AttacksExecutionContext context = new AttacksExecutionContext(game, TurnRandom.turnSeed(game.getRandomSeed(), game.getCurrentTurn()));
+        for (ServerPlayer player : players) {
+            player.prepareAttacks(context);
+        }
+        context.executeAttacks();
+
+        List<Outcome> outcomes = new ArrayList<>();
+        for (AttackResult result : context.getAttackResults()) {
+            outcomes.add(new Outcome(result.getAttacker().getId(), result.getTarget().getId(), result.getDestroyedBuildings(),
+                    result.getDestroyedUnits(), result.getLostUnits()));
+        }
+        return outcomes;
+    }
+
+    @Test
+    void replayingATurnFromTheSameSeedGivesTheSameResults() {
+        List<Outcome> first = simulateTurn(GAME_SEED, TURN);
+        List<Outcome> replay = simulateTurn(GAME_SEED, TURN);
+
+        assertEquals(PLAYER_COUNT * (PLAYER_COUNT - 1), first.size());
+        assertTrue(first.stream().anyMatch(outcome -> !outcome.destroyedUnits().isEmpty()), "Les attaques doivent détruire des unités");
+        assertEquals(first, replay);
+    }
+
+    @Test
+    void eachTurnDrawsDifferentResults() {
+        assertNotEquals(simulateTurn(GAME_SEED, TURN), simulateTurn(GAME_SEED, TURN + 1));
+    }
+
+    @Test
+    void eachGameDrawsDifferentResults() {
+        assertNotEquals(simulateTurn(GAME_SEED, TURN), simulateTurn(GAME_SEED + 1, TURN));
+    }
+}
@@ -0,0 +1,197 @@
+package fr.butinfoalt.riseandfall.server.orders;
+
+import fr.butinfoalt.riseandfall.util.ObjectIntMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Vérifie que le tirage sans remise de {@link DamageApplier} suit la même loi que l'ancien parcours des éléments
+ * mélangés, par un test du khi-deux d'homogénéité sur les éléments détruits par deux attaques successives.
+ */
+class DamageApplierTest {
+    private static final List<String> TYPES = List.of("fantassin", "cavalier", "catapulte");
+    private static final Map<String, Float> RESISTANCES = Map.of("fantassin", 1f, "cavalier", 3f, "catapulte", 7f);
+    private static final int[] QUANTITIES = {5, 3, 2};
+    /**
+     * Dégâts des attaques successives sur les mêmes éléments.
+     */
+    private static final float[] DAMAGES = {9f, 6f};
+    private static final int SAMPLES = 100_000;
+    /**
+     * Effectif total minimal d'une issue pour qu'elle compte dans le test, en dessous les écarts ne sont pas significatifs.
+     */
+    private static final int MIN_OUTCOME_COUNT = 10;
+    /**
+     * Quantile d'ordre 0,999 de la loi normale centrée réduite : le test échoue à tort une fois sur mille au plus.
+     */
+    private static final double NORMAL_QUANTILE = 3.09;
+
+    /**
+     * Résultat d'un test du khi-deux.
+     *
+     * @param statistic        La statistique du khi-deux.
+     * @param degreesOfFreedom Le nombre de degrés de liberté.
+     */
+    private record ChiSquare(double statistic, int degreesOfFreedom) {
+        /**
+         * Calcule la valeur critique du test par l'approximation de Wilson et Hilferty.
+         *
+         * @return La valeur au-delà de laquelle les deux échantillons sont considérés comme de lois différentes.
+         */
+        double criticalValue() {
+            double variance = 2.0 / (9 * this.degreesOfFreedom);
+            return this.degreesOfFreedom * Math.pow(1 - variance + NORMAL_QUANTILE * Math.sqrt(variance), 3);
+        }
+
+        /**
+         * Indique si les deux échantillons peuvent suivre la même loi.
+         *
+         * @return Vrai si la statistique ne dépasse pas la valeur critique.
+         */
+        boolean sameDistribution() {
+            return this.statistic < this.criticalValue();
+        }
+    }
+
+    /**
+     * Crée les éléments cibles du scénario de test.
+     *
+     * @return L'association des types d'éléments à leur quantité.
+     */
+    private static ObjectIntMap<String> targetElements() {
+        ObjectIntMap<String> elements = new ObjectIntMap<>(TYPES);
+        for (int i = 0; i < TYPES.size(); i++) {
+            elements.set(TYPES.get(i), QUANTITIES[i]);
+        }
+        return elements;
+    }
+
+    /**
+     * Décrit les éléments détruits par une attaque.
+     *
+     * @param destroyed Les éléments détruits.
+     * @return Les quantités détruites de chaque type, dans l'ordre des types.
+     */
+    private static String describe(ObjectIntMap<String> destroyed) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (String type : TYPES) {
+            joiner.add(Integer.toString(destroyed.get(type)));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Compte les issues des attaques successives du scénario avec le tirage de {@link DamageApplier}.
+     *
+     * @param random Le générateur utilisé pour les tirages.
+     * @return Le nombre d'occurrences de chaque issue.
+     */
+    private static Map<String, Integer> sampleDamageApplier(RandomGenerator random) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            DamageApplier<String> applier = new DamageApplier<>(targetElements(), RESISTANCES::get, random);
+            StringJoiner outcome = new StringJoiner("|");
+            for (float damage : DAMAGES) {
+                outcome.add(describe(applier.applyDamage(damage).getDestroyedElements()));
+            }
+            counts.merge(outcome.toString(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Compte les issues des attaques successives du scénario avec l'ancien algorithme, qui mélangeait la liste de tous
+     * les éléments puis la parcourait depuis la fin.
+     *
+     * @param random Le générateur utilisé pour les mélanges.
+     * @return Le nombre d'occurrences de chaque issue.
+     */
+    private static Map<String, Integer> sampleShuffle(Random random) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            ArrayList<String> flattenedElements = new ArrayList<>();
+            for (int i = 0; i < TYPES.size(); i++) {
+                for (int j = 0; j < QUANTITIES[i]; j++) {
+                    flattenedElements.add(TYPES.get(i));
+                }
+            }
+            Collections.shuffle(flattenedElements, random);
+            StringJoiner outcome = new StringJoiner("|");
+            for (float damage : DAMAGES) {
+                ObjectIntMap<String> destroyed = new ObjectIntMap<>(TYPES);
+                while (damage > 0 && !flattenedElements.isEmpty()) {
+                    String element = flattenedElements.removeLast();
+                    float resistance = RESISTANCES.get(element);
+                    if (damage > resistance * 0.5) {
+                        destroyed.increment(element, 1);
+                    }
+                    damage -= resistance;
+                }
+                outcome.add(describe(destroyed));
+            }
+            counts.merge(outcome.toString(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Calcule la statistique du khi-deux d'homogénéité de deux échantillons de même taille, en ignorant les issues
+     * trop rares.
+     *
+     * @param expected Les occurrences des issues du premier échantillon.
+     * @param actual   Les occurrences des issues du second échantillon.
+     * @return La statistique et son nombre de degrés de liberté.
+     */
+    private static ChiSquare chiSquare(Map<String, Integer> expected, Map<String, Integer> actual) {
+        Set<String> outcomes = new TreeSet<>(expected.keySet());
+        outcomes.addAll(actual.keySet());
+        double statistic = 0;
+        int degreesOfFreedom = -1;
+        for (String outcome : outcomes) {
+            int x = expected.getOrDefault(outcome, 0);
+            int y = actual.getOrDefault(outcome, 0);
+            if (x + y < MIN_OUTCOME_COUNT) {
+                continue;
+            }
+            degreesOfFreedom++;
+            statistic += (double) (x - y) * (x - y) / (x + y);
+        }
+        return new ChiSquare(statistic, degreesOfFreedom);
+    }
+
+    @Test
+    void samplingFollowsTheSameDistributionAsTheShuffle() {
+        Map<String, Integer> shuffle = sampleShuffle(new Random(0x5EED_0001L));
+        Map<String, Integer> sampling = sampleDamageApplier(new SplittableRandom(0x5EED_0002L));
+
+        ChiSquare result = chiSquare(shuffle, sampling);
+        assertTrue(result.degreesOfFreedom() >= 10, "Le scénario doit avoir assez d'issues différentes : " + result);
+        assertTrue(result.sameDistribution(), result + " dépasse la valeur critique " + result.criticalValue());
+    }
+
+    @Test
+    void biasedSamplingIsDetected() {
+        Map<String, Integer> shuffle = sampleShuffle(new Random(0x5EED_0001L));
+        // Un générateur qui favorise les premiers éléments restants : le test doit le distinguer de l'ancien mélange.
+        SplittableRandom random = new SplittableRandom(0x5EED_0002L);
+        RandomGenerator biased = new RandomGenerator() {
+            @Override
+            public long nextLong() {
+                return random.nextLong();
+            }
+
+            @Override
+            public int nextInt(int bound) {
+                return Math.min(random.nextInt(bound), random.nextInt(bound));
+            }
+        };
+        Map<String, Integer> sampling = sampleDamageApplier(biased);
+
+        ChiSquare result = chiSquare(shuffle, sampling);
+        assertFalse(result.sameDistribution(), result + " ne dépasse pas la valeur critique " + result.criticalValue());
+    }
+}